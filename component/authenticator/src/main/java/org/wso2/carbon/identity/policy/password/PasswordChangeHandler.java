@@ -26,18 +26,36 @@ import org.wso2.carbon.identity.event.event.Event;
 import org.wso2.carbon.identity.event.handler.AbstractEventHandler;
 import org.wso2.carbon.identity.governance.IdentityGovernanceException;
 import org.wso2.carbon.identity.governance.common.IdentityConnectorConfig;
+import org.wso2.carbon.identity.policy.password.analytics.CredentialUpdatePublisher;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+import org.wso2.carbon.identity.policy.password.cache.SessionExpiryDeadlineCache;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.deadline.PasswordExpiryDeadline;
+import org.wso2.carbon.identity.policy.password.metrics.CounterMetric;
+import org.wso2.carbon.identity.policy.password.metrics.LatencyMetric;
+import org.wso2.carbon.identity.policy.password.metrics.PasswordPolicyMetrics;
+import org.wso2.carbon.identity.policy.password.reminder.PasswordExpiryReminderScheduler;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeWriter;
+import org.wso2.carbon.user.core.UserCoreConstants;
 import org.wso2.carbon.user.core.UserStoreException;
 import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
 /**
- * Event Handler class which handles password update by user, password update by admin and add user events.
+ * Event Handler class which handles password update by user, password update by admin, add user and delete user
+ * events.
  * <p>
- * This updates the http://wso2.org/claims/lastPasswordChangedTimestamp claim upon the password change.
- * This also publishes the password change event to IS Analytics.
+ * This updates the http://wso2.org/claims/lastPasswordChangedTimestamp claim upon the password change, along with
+ * the password expiry deadline claim if one is configured.
+ * This also publishes the password change event to IS Analytics, without waiting for the analytics server.
+ * The password expiry reminder of the user is scheduled as well when the embedded reminders are enabled, and is
+ * removed again when the user is deleted. When the claim is set directly, e.g. through the user profile, the cached
+ * last password update time of the user is replaced and the expiry deadline and the reminder follow the new value.
  */
 public class PasswordChangeHandler extends AbstractEventHandler implements IdentityConnectorConfig {
     private static final Log log = LogFactory.getLog(PasswordChangeHandler.class);
@@ -48,23 +66,150 @@ public class PasswordChangeHandler extends AbstractEventHandler implements Ident
         String username = (String) event.getEventProperties().get(IdentityEventConstants.EventProperty.USER_NAME);
         UserStoreManager userStoreManager = (UserStoreManager) event.getEventProperties()
                 .get(IdentityEventConstants.EventProperty.USER_STORE_MANAGER);
+        String tenantDomain = (String) event.getEventProperties()
+                .get(IdentityEventConstants.EventProperty.TENANT_DOMAIN);
+        String tenantAwareUsername = getDomainQualifiedUsername(userStoreManager, username);
+
+        // Dropping the pending reminder and the queued password update time of a deleted user
+        if (IdentityEventConstants.Event.POST_DELETE_USER.equals(event.getEventName())) {
+            PasswordExpiryReminderScheduler.getInstance().cancel(tenantDomain, tenantAwareUsername);
+            PasswordUpdateTimeWriter.getInstance().remove(tenantDomain, tenantAwareUsername);
+            PasswordUpdateTimeCache.getInstance().invalidate(tenantDomain, tenantAwareUsername);
+            if (log.isDebugEnabled()) {
+                log.debug("Removed the password expiry reminder and the pending password update time of the "
+                        + "deleted user " + username);
+            }
+            return;
+        }
+
+        // Taking up the last password update time set directly on the user profile
+        if (IdentityEventConstants.Event.POST_SET_USER_CLAIMS.equals(event.getEventName())
+                || IdentityEventConstants.Event.POST_SET_USER_CLAIM.equals(event.getEventName())) {
+            handleClaimUpdate(event, userStoreManager, username, tenantDomain, tenantAwareUsername);
+            return;
+        }
         long timestamp = System.currentTimeMillis();
 
+        // Queuing the last password changed claim update if the write behind mode is enabled
+        if (PasswordUpdateTimeWriter.getInstance().offer(tenantDomain, tenantAwareUsername, timestamp)) {
+            PasswordUpdateTimeCache.getInstance().put(tenantDomain, tenantAwareUsername, timestamp);
+            PasswordExpiryReminderScheduler.getInstance().schedule(tenantDomain, tenantAwareUsername, timestamp);
+            CredentialUpdatePublisher.getInstance().offer(tenantDomain, tenantAwareUsername, timestamp);
+            if (log.isDebugEnabled()) {
+                log.debug("Queued the update of the claim uri "
+                        + PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM + " of " + username);
+            }
+            return;
+        }
+
         // Updating the last password changed claim
         Map<String, String> claimMap = new HashMap<>();
         claimMap.put(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM, Long.toString(timestamp));
+        PasswordExpiryDeadline.addClaim(claimMap, tenantDomain, timestamp);
         try {
+            long writeStartTime = System.nanoTime();
             userStoreManager.setUserClaimValues(username, claimMap, null);
+            PasswordPolicyMetrics.getInstance().recordLatency(LatencyMetric.CLAIM_WRITE, tenantDomain, writeStartTime);
+            PasswordUpdateTimeCache.getInstance().put(tenantDomain, tenantAwareUsername, timestamp);
+            PasswordExpiryReminderScheduler.getInstance().schedule(tenantDomain, tenantAwareUsername, timestamp);
+            CredentialUpdatePublisher.getInstance().offer(tenantDomain, tenantAwareUsername, timestamp);
             if (log.isDebugEnabled()) {
                 log.debug("The claim uri "
                         + PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM + " of "
                         + username + " updated with the current timestamp");
             }
         } catch (UserStoreException e) {
+            PasswordPolicyMetrics.getInstance().increment(CounterMetric.FAILURE, tenantDomain);
+            PasswordUpdateTimeCache.getInstance().invalidate(tenantDomain, tenantAwareUsername);
             throw new IdentityEventException("An Error Occurred in updating the password. Please contact admin.", e);
         }
     }
 
+    /**
+     * Refresh the cached state of a user whose last password update time claim was set, e.g. by an administrator
+     * through the user profile, and write the matching expiry deadline. The updates of the other claims, as well as
+     * the claim writes made upon the password changes, which already carry the deadline, are ignored.
+     *
+     * @param event               The claim update event
+     * @param userStoreManager    The user store manager of the user
+     * @param username            The username
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The domain qualified username
+     * @throws IdentityEventException if the expiry deadline could not be written
+     */
+    @SuppressWarnings("unchecked")
+    private void handleClaimUpdate(Event event, UserStoreManager userStoreManager, String username,
+                                   String tenantDomain, String tenantAwareUsername) throws IdentityEventException {
+        Map<String, String> claims;
+        if (IdentityEventConstants.Event.POST_SET_USER_CLAIMS.equals(event.getEventName())) {
+            claims = (Map<String, String>) event.getEventProperties()
+                    .get(IdentityEventConstants.EventProperty.USER_CLAIMS);
+        } else {
+            claims = Collections.singletonMap(
+                    (String) event.getEventProperties().get(IdentityEventConstants.EventProperty.CLAIM_URI),
+                    (String) event.getEventProperties().get(IdentityEventConstants.EventProperty.CLAIM_VALUE));
+        }
+        if (claims == null || !claims.containsKey(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM)) {
+            return;
+        }
+
+        SessionExpiryDeadlineCache.getInstance().invalidateUser(tenantDomain, tenantAwareUsername);
+        long timestamp;
+        try {
+            timestamp = Long.parseLong(claims.get(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM));
+        } catch (NumberFormatException e) {
+            // The claim is read again upon the next login
+            PasswordUpdateTimeCache.getInstance().invalidate(tenantDomain, tenantAwareUsername);
+            return;
+        }
+        Long pendingTimestamp = PasswordUpdateTimeWriter.getInstance().getPendingTimestamp(tenantDomain,
+                tenantAwareUsername);
+        if (pendingTimestamp != null && pendingTimestamp != timestamp) {
+            // The queued write of an earlier password change must not override the claim set since
+            PasswordUpdateTimeWriter.getInstance().remove(tenantDomain, tenantAwareUsername);
+        }
+        PasswordUpdateTimeCache.getInstance().put(tenantDomain, tenantAwareUsername, timestamp);
+        PasswordExpiryReminderScheduler.getInstance().schedule(tenantDomain, tenantAwareUsername, timestamp);
+
+        String deadlineClaimUri = PasswordExpiryDeadline.getClaimUri();
+        if (deadlineClaimUri == null) {
+            return;
+        }
+        String deadline = Long.toString(PasswordExpiryDeadline.getDeadline(tenantDomain, timestamp));
+        if (deadline.equals(claims.get(deadlineClaimUri))) {
+            return;
+        }
+        try {
+            long writeStartTime = System.nanoTime();
+            userStoreManager.setUserClaimValues(username, Collections.singletonMap(deadlineClaimUri, deadline), null);
+            PasswordPolicyMetrics.getInstance().recordLatency(LatencyMetric.CLAIM_WRITE, tenantDomain, writeStartTime);
+            if (log.isDebugEnabled()) {
+                log.debug("The claim uri " + deadlineClaimUri + " of " + username
+                        + " updated with the deadline of the last password update time set on the profile");
+            }
+        } catch (UserStoreException e) {
+            PasswordPolicyMetrics.getInstance().increment(CounterMetric.FAILURE, tenantDomain);
+            throw new IdentityEventException("An Error Occurred in updating the password expiry deadline of "
+                    + username + ". Please contact admin.", e);
+        }
+    }
+
+    /**
+     * Get the username qualified with the domain of the user store to which the user belongs to.
+     *
+     * @param userStoreManager The user store manager of the user store to which the user belongs to
+     * @param username         The username
+     * @return The domain qualified username
+     */
+    private String getDomainQualifiedUsername(UserStoreManager userStoreManager, String username) {
+        String domain = null;
+        if (userStoreManager.getRealmConfiguration() != null) {
+            domain = userStoreManager.getRealmConfiguration()
+                    .getUserStoreProperty(UserCoreConstants.RealmConfig.PROPERTY_DOMAIN_NAME);
+        }
+        return UserCoreUtil.addDomainToName(username, domain);
+    }
+
     @Override
     public String getName() {
         return PasswordPolicyConstants.PASSWORD_CHANGE_EVENT_HANDLER_NAME;
@@ -99,6 +244,8 @@ public class PasswordChangeHandler extends AbstractEventHandler implements Ident
                 PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS_DISPLAYED_NAME);
         nameMapping.put(PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS,
                 PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS_DISPLAYED_NAME);
+        nameMapping.put(PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE_DISPLAYED_NAME);
         return nameMapping;
     }
 
@@ -111,6 +258,8 @@ public class PasswordChangeHandler extends AbstractEventHandler implements Ident
                 PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS_DESCRIPTION);
         nameMapping.put(PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS,
                 PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS_DESCRIPTION);
+        nameMapping.put(PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE_DESCRIPTION);
         return nameMapping;
     }
 
@@ -121,56 +270,7 @@ public class PasswordChangeHandler extends AbstractEventHandler implements Ident
 
     @Override
     public Properties getDefaultPropertyValues(String tenantDomain) throws IdentityGovernanceException {
-        Properties properties = new Properties();
-
-        // Setting the password expiry in days default value
-        String passwordExpiryInDays = PasswordPolicyUtils.getIdentityEventProperty(tenantDomain,
-                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS);
-        if (passwordExpiryInDays == null) {     // To avoid null pointer exceptions if user had not added module config
-            passwordExpiryInDays =
-                    Integer.toString(PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS_DEFAULT_VALUE);
-            if (log.isDebugEnabled()) {
-                log.debug("Using the default property value: " +
-                        PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS_DEFAULT_VALUE + " for the " +
-                        "configuration: " + PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS
-                        + " because no module configuration is present.");
-            }
-        }
-        properties.setProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS, passwordExpiryInDays);
-
-        // Setting the enable email notifications default value
-        String enableDataPublishing = PasswordPolicyUtils.getIdentityEventProperty(tenantDomain,
-                PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS);
-        if (enableDataPublishing == null) {     // To avoid null pointer exceptions if user had not added module config
-            enableDataPublishing =
-                    Boolean.toString(PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS_DEFAULT_VALUE);
-            if (log.isDebugEnabled()) {
-                log.debug("Using the default property value: " +
-                        PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS_DEFAULT_VALUE + " for the "
-                        + "configuration: " + PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS
-                        + " because no module configuration is present.");
-            }
-        }
-        properties.setProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS,
-                enableDataPublishing);
-
-        // Setting the prior notice in days default value
-        String priorReminderTimeInDays = PasswordPolicyUtils.getIdentityEventProperty(tenantDomain,
-                PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS);
-        if (priorReminderTimeInDays == null) {   // To avoid null pointer exceptions if user had not added module config
-            priorReminderTimeInDays =
-                    Integer.toString(PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_NOTICE_TIME_IN_DAYS_DEFAULT_VALUE);
-            if (log.isDebugEnabled()) {
-                log.debug("Using the default property value: " +
-                        PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_NOTICE_TIME_IN_DAYS_DEFAULT_VALUE + " for the "
-                        + "configuration: " + PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS
-                        + " because no module configuration is present.");
-            }
-        }
-        properties.setProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS,
-                priorReminderTimeInDays);
-
-        return properties;
+        return PasswordPolicyConfigManager.getInstance().getDefaultConfig(tenantDomain).toProperties();
     }
 
     @Override
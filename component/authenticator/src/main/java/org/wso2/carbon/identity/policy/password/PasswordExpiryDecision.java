@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password;
+
+import org.wso2.carbon.identity.policy.password.deadline.PasswordExpiryDeadline;
+
+import java.io.Serializable;
+
+/**
+ * Whether the password of a user had expired, along with the last password update time and the policy it was
+ * decided with. The decision is kept in the authentication context, so that it is not made again when the user is
+ * asked to retry the password change.
+ */
+public class PasswordExpiryDecision implements Serializable {
+    private static final long serialVersionUID = -2418405163386728187L;
+
+    private final String tenantDomain;
+    private final String tenantAwareUsername;
+    private final Long lastPasswordUpdateTime;
+    private final int passwordExpiryInDays;
+    private final boolean expired;
+
+    public PasswordExpiryDecision(String tenantDomain, String tenantAwareUsername, Long lastPasswordUpdateTime,
+                                  int passwordExpiryInDays, boolean expired) {
+        this.tenantDomain = tenantDomain;
+        this.tenantAwareUsername = tenantAwareUsername;
+        this.lastPasswordUpdateTime = lastPasswordUpdateTime;
+        this.passwordExpiryInDays = passwordExpiryInDays;
+        this.expired = expired;
+    }
+
+    /**
+     * Check whether the decision was made for a user.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user
+     * @return True if the decision was made for the user
+     */
+    public boolean isFor(String tenantDomain, String tenantAwareUsername) {
+        return this.tenantDomain.equals(tenantDomain) && this.tenantAwareUsername.equals(tenantAwareUsername);
+    }
+
+    public String getTenantDomain() {
+        return tenantDomain;
+    }
+
+    public String getTenantAwareUsername() {
+        return tenantAwareUsername;
+    }
+
+    /**
+     * Get the last password update time of the user.
+     *
+     * @return The last password update time or null if it was not set
+     */
+    public Long getLastPasswordUpdateTime() {
+        return lastPasswordUpdateTime;
+    }
+
+    public int getPasswordExpiryInDays() {
+        return passwordExpiryInDays;
+    }
+
+    public boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * Get the time until which the password stays valid under the policy the decision was made with.
+     *
+     * @return The time at which the password expires, or null if the password had already expired
+     */
+    public Long getDeadline() {
+        if (expired || lastPasswordUpdateTime == null) {
+            return null;
+        }
+        if (lastPasswordUpdateTime <= 0) {
+            // The passwords without a valid update time are treated as just changed
+            return Long.MAX_VALUE;
+        }
+        return PasswordExpiryDeadline.getDeadline(lastPasswordUpdateTime, passwordExpiryInDays);
+    }
+}
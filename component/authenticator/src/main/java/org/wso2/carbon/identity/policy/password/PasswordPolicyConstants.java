@@ -27,6 +27,7 @@ public class PasswordPolicyConstants {
     public static final String AUTHENTICATOR_FRIENDLY_NAME = "Password Reset Enforcer";
     public static final String AUTHENTICATOR_TYPE = "LOCAL";
     public static final String STATE = "state";
+    public static final String PASSWORD_EXPIRY_DECISION = "passwordExpiryDecision";
 
     public static final String CURRENT_PWD = "CURRENT_PWD";
     public static final String NEW_PWD = "NEW_PWD";
@@ -34,6 +35,7 @@ public class PasswordPolicyConstants {
 
     public static final String LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM =
             "http://wso2.org/claims/identity/lastPasswordUpdateTime";
+    public static final String EMAIL_ADDRESS_CLAIM = "http://wso2.org/claims/emailaddress";
 
     public static final String PASSWORD_CHANGE_STREAM_NAME =
             "org.wso2.carbon.identity.policy.password.PendingNotifications:1.0.0";
@@ -64,6 +66,133 @@ public class PasswordPolicyConstants {
             "Number of days before the password expiry that the users should be reminded of password expiry";
     public static final int CONNECTOR_CONFIG_PRIOR_NOTICE_TIME_IN_DAYS_DEFAULT_VALUE = 0;
 
+    public static final String CONNECTOR_CONFIG_MIN_EDIT_DISTANCE = "passwordExpiry.minEditDistance";
+    public static final String CONNECTOR_CONFIG_MIN_EDIT_DISTANCE_DISPLAYED_NAME = "Minimum Edit Distance";
+    public static final String CONNECTOR_CONFIG_MIN_EDIT_DISTANCE_DESCRIPTION =
+            "Number of characters, ignoring the case, by which a new password must differ from the current password";
+    public static final int CONNECTOR_CONFIG_MIN_EDIT_DISTANCE_DEFAULT_VALUE = 1;
+
+    public static final String PASSWORD_JAVA_REG_EX_PROPERTY = "PasswordJavaRegEx";
+    public static final String PASSWORD_JAVA_REG_EX_VIOLATION_ERROR_MSG_PROPERTY = "PasswordJavaRegExViolationErrorMsg";
+    public static final String PASSWORD_MIN_LENGTH_PROPERTY = "PasswordMinLength";
+    public static final String PASSWORD_MAX_LENGTH_PROPERTY = "PasswordMaxLength";
+    public static final String PASSWORD_REQUIRED_CHARACTERS_PROPERTY = "PasswordRequiredCharacters";
+    public static final String PASSWORD_MAX_REPEATED_CHARACTERS_PROPERTY = "PasswordMaxRepeatedCharacters";
+    public static final String PASSWORD_BANNED_SEQUENCES_PROPERTY = "PasswordBannedSequences";
+
+    public static final String PASSWORD_PATTERN_CACHE_MAX_ENTRIES = "passwordExpiry.passwordPatternCacheSize";
+    public static final int PASSWORD_PATTERN_CACHE_MAX_ENTRIES_DEFAULT_VALUE = 1000;
+    public static final String PASSWORD_PATTERN_MATCH_TIMEOUT = "passwordExpiry.passwordPatternMatchTimeout";
+    public static final int PASSWORD_PATTERN_MATCH_TIMEOUT_DEFAULT_VALUE = 100;
+
+    public static final String PASSWORD_UPDATE_TIME_CACHE_MAX_ENTRIES = "passwordExpiry.passwordUpdateTimeCacheSize";
+    public static final int PASSWORD_UPDATE_TIME_CACHE_MAX_ENTRIES_DEFAULT_VALUE = 10000;
+    public static final String PASSWORD_UPDATE_TIME_CACHE_TIMEOUT = "passwordExpiry.passwordUpdateTimeCacheTimeout";
+    public static final int PASSWORD_UPDATE_TIME_CACHE_TIMEOUT_DEFAULT_VALUE = 300;
+    public static final String SESSION_EXPIRY_DEADLINE_CACHE_MAX_ENTRIES =
+            "passwordExpiry.sessionExpiryDeadlineCacheSize";
+    public static final int SESSION_EXPIRY_DEADLINE_CACHE_MAX_ENTRIES_DEFAULT_VALUE = 10000;
+    public static final String SESSION_EXPIRY_DEADLINE_CACHE_TIMEOUT =
+            "passwordExpiry.sessionExpiryDeadlineCacheTimeout";
+    public static final int SESSION_EXPIRY_DEADLINE_CACHE_TIMEOUT_DEFAULT_VALUE = 900;
+
+    public static final String POLICY_CONFIG_CACHE_TIMEOUT = "passwordExpiry.policyConfigCacheTimeout";
+    public static final int POLICY_CONFIG_CACHE_TIMEOUT_DEFAULT_VALUE = 300;
+
+    public static final String WRITE_BEHIND_ENABLE = "passwordExpiry.writeBehind.enable";
+    public static final String WRITE_BEHIND_QUEUE_SIZE = "passwordExpiry.writeBehind.queueSize";
+    public static final int WRITE_BEHIND_QUEUE_SIZE_DEFAULT_VALUE = 10000;
+    public static final String WRITE_BEHIND_BATCH_SIZE = "passwordExpiry.writeBehind.batchSize";
+    public static final int WRITE_BEHIND_BATCH_SIZE_DEFAULT_VALUE = 100;
+    public static final String WRITE_BEHIND_FLUSH_INTERVAL = "passwordExpiry.writeBehind.flushInterval";
+    public static final int WRITE_BEHIND_FLUSH_INTERVAL_DEFAULT_VALUE = 1000;
+    public static final String WRITE_BEHIND_OFFER_TIMEOUT = "passwordExpiry.writeBehind.offerTimeout";
+    public static final int WRITE_BEHIND_OFFER_TIMEOUT_DEFAULT_VALUE = 100;
+    public static final String WRITE_BEHIND_MAX_ATTEMPTS = "passwordExpiry.writeBehind.maxAttempts";
+    public static final int WRITE_BEHIND_MAX_ATTEMPTS_DEFAULT_VALUE = 3;
+    public static final String WRITE_BEHIND_JOURNAL = "passwordExpiry.writeBehind.journal";
+    public static final String WRITE_BEHIND_JOURNAL_DEFAULT_VALUE =
+            "repository/data/password-policy/password-update-time.journal";
+
+    public static final String REMINDER_ENABLE = "passwordExpiry.reminder.enable";
+    public static final String REMINDER_NOTIFICATION_TEMPLATE = "passwordExpiry.reminder.notificationTemplate";
+    public static final String REMINDER_NOTIFICATION_TEMPLATE_DEFAULT_VALUE = "PasswordExpiryReminder";
+    public static final String REMINDER_RETRY_INTERVAL = "passwordExpiry.reminder.retryInterval";
+    public static final int REMINDER_RETRY_INTERVAL_DEFAULT_VALUE = 300;
+    public static final String REMINDER_MAX_ATTEMPTS = "passwordExpiry.reminder.maxAttempts";
+    public static final int REMINDER_MAX_ATTEMPTS_DEFAULT_VALUE = 3;
+    public static final String REMINDER_JOURNAL = "passwordExpiry.reminder.journal";
+    public static final String REMINDER_JOURNAL_DEFAULT_VALUE =
+            "repository/data/password-policy/password-expiry-reminder.journal";
+    public static final String REMINDER_SWEEP_INTERVAL = "passwordExpiry.reminder.sweepInterval";
+    public static final int REMINDER_SWEEP_INTERVAL_DEFAULT_VALUE = 24;
+    public static final String REMINDER_RATE_LIMIT = "passwordExpiry.reminder.rateLimit";
+    public static final String REMINDER_TENANT_RATE_LIMIT = "passwordExpiry.reminder.tenantRateLimit";
+    public static final String REMINDER_NOTIFIER = "passwordExpiry.reminder.notifier";
+    public static final String REMINDER_NOTIFIER_SMTP = "smtp";
+    public static final String REMINDER_SMTP_HOST = "passwordExpiry.reminder.smtp.host";
+    public static final String REMINDER_SMTP_PORT = "passwordExpiry.reminder.smtp.port";
+    public static final int REMINDER_SMTP_PORT_DEFAULT_VALUE = 25;
+    public static final String REMINDER_SMTP_START_TLS = "passwordExpiry.reminder.smtp.startTls";
+    public static final String REMINDER_SMTP_USERNAME = "passwordExpiry.reminder.smtp.username";
+    public static final String REMINDER_SMTP_PASSWORD = "passwordExpiry.reminder.smtp.password";
+    public static final String REMINDER_SMTP_FROM = "passwordExpiry.reminder.smtp.from";
+    public static final String REMINDER_SMTP_TIMEOUT = "passwordExpiry.reminder.smtp.timeout";
+    public static final int REMINDER_SMTP_TIMEOUT_DEFAULT_VALUE = 30;
+    public static final String REMINDER_SMTP_POOL_SIZE = "passwordExpiry.reminder.smtp.poolSize";
+    public static final int REMINDER_SMTP_POOL_SIZE_DEFAULT_VALUE = 2;
+    public static final String REMINDER_SMTP_MAX_IDLE_TIME = "passwordExpiry.reminder.smtp.maxIdleTime";
+    public static final int REMINDER_SMTP_MAX_IDLE_TIME_DEFAULT_VALUE = 60;
+    public static final String REMINDER_SMTP_MAX_RECIPIENTS = "passwordExpiry.reminder.smtp.maxRecipients";
+    public static final int REMINDER_SMTP_MAX_RECIPIENTS_DEFAULT_VALUE = 50;
+    public static final String REMINDER_SMTP_SUBJECT = "passwordExpiry.reminder.smtp.subject";
+    public static final String REMINDER_SMTP_SUBJECT_DEFAULT_VALUE = "Your password is about to expire";
+    public static final String REMINDER_SMTP_TEMPLATE = "passwordExpiry.reminder.smtp.template";
+    public static final String REMINDER_SMTP_TEMPLATE_DEFAULT_VALUE =
+            "repository/conf/email/password-expiry-reminder.html";
+    public static final String SCAN_THREAD_COUNT = "passwordExpiry.scan.threadCount";
+    public static final int SCAN_THREAD_COUNT_DEFAULT_VALUE = 4;
+    public static final String SCAN_PAGE_SIZE = "passwordExpiry.scan.pageSize";
+    public static final int SCAN_PAGE_SIZE_DEFAULT_VALUE = 100;
+    public static final String SCAN_PREFIX_ALPHABET = "passwordExpiry.scan.prefixAlphabet";
+    public static final String SCAN_PREFIX_ALPHABET_DEFAULT_VALUE = "abcdefghijklmnopqrstuvwxyz0123456789.-@";
+    public static final String SCAN_USER_STORE_CONCURRENCY = "passwordExpiry.scan.userStoreConcurrency";
+    public static final int SCAN_USER_STORE_CONCURRENCY_DEFAULT_VALUE = 4;
+    public static final String EXPIRY_DEADLINE_CLAIM = "passwordExpiry.expiryDeadline.claim";
+    public static final String EXPIRY_DEADLINE_MIGRATE_ON_STARTUP = "passwordExpiry.expiryDeadline.migrateOnStartup";
+    public static final String EXPIRY_DEADLINE_BATCH_SIZE = "passwordExpiry.expiryDeadline.batchSize";
+    public static final int EXPIRY_DEADLINE_BATCH_SIZE_DEFAULT_VALUE = 100;
+    public static final String EXPIRY_DEADLINE_COORDINATOR_WAIT_TIME =
+            "passwordExpiry.expiryDeadline.coordinatorWaitTime";
+    public static final int EXPIRY_DEADLINE_COORDINATOR_WAIT_TIME_DEFAULT_VALUE = 60;
+    public static final String BREACHED_PASSWORDS_INDEX = "passwordExpiry.breachedPasswords.index";
+    public static final String DICTIONARY_ENABLE = "passwordExpiry.dictionary.enable";
+    public static final String DICTIONARY_FILES = "passwordExpiry.dictionary.files";
+    public static final String DICTIONARY_TENANT_WORDS = "passwordExpiry.dictionary.tenantWords";
+    public static final String DICTIONARY_TENANT_WORDS_DEFAULT_VALUE = "repository/data/password-policy/words";
+    public static final String DICTIONARY_MIN_WORD_LENGTH = "passwordExpiry.dictionary.minWordLength";
+    public static final int DICTIONARY_MIN_WORD_LENGTH_DEFAULT_VALUE = 4;
+
+    public static final String CREDENTIAL_UPDATES_STREAM_NAME =
+            "org.wso2.carbon.identity.policy.password.CredentialUpdates:1.0.0";
+    public static final String DATA_PUBLISHING_ENABLE = "passwordExpiry.enableDataPublishing";
+    public static final String DATA_PUBLISHING_BUFFER_SIZE = "passwordExpiry.dataPublishing.bufferSize";
+    public static final int DATA_PUBLISHING_BUFFER_SIZE_DEFAULT_VALUE = 4096;
+    public static final String DATA_PUBLISHING_BATCH_SIZE = "passwordExpiry.dataPublishing.batchSize";
+    public static final int DATA_PUBLISHING_BATCH_SIZE_DEFAULT_VALUE = 100;
+    public static final String DATA_PUBLISHING_FLUSH_INTERVAL = "passwordExpiry.dataPublishing.flushInterval";
+    public static final int DATA_PUBLISHING_FLUSH_INTERVAL_DEFAULT_VALUE = 1000;
+    public static final String DATA_PUBLISHING_RETRY_INTERVAL = "passwordExpiry.dataPublishing.retryInterval";
+    public static final int DATA_PUBLISHING_RETRY_INTERVAL_DEFAULT_VALUE = 30;
+    public static final String DATA_PUBLISHING_SPOOL = "passwordExpiry.dataPublishing.spool";
+    public static final String DATA_PUBLISHING_SPOOL_DEFAULT_VALUE =
+            "repository/data/password-policy/credential-updates.spool";
+    public static final String DATA_PUBLISHING_SPOOL_SIZE = "passwordExpiry.dataPublishing.spoolSize";
+    public static final int DATA_PUBLISHING_SPOOL_SIZE_DEFAULT_VALUE = 64;
+
+    public static final String NOTIFICATION_TEMPLATE_TYPE_PROPERTY = "TEMPLATE_TYPE";
+    public static final String NOTIFICATION_REMAINING_DAYS_PROPERTY = "remaining-days";
+
     public static final String LOGIN_STANDARD_PAGE = "login.do";
     public static final String PASSWORD_RESET_ENFORCER_PAGE = "pwd-reset.jsp";
 
@@ -30,22 +30,36 @@ import org.wso2.carbon.identity.application.authentication.framework.context.Aut
 import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
 import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
 import org.wso2.carbon.identity.application.authentication.framework.util.FrameworkUtils;
-import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.mgt.policy.PolicyViolationException;
 import org.wso2.carbon.identity.password.history.exeption.IdentityPasswordHistoryException;
-import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.identity.policy.password.breach.BreachedPasswordChecker;
+import org.wso2.carbon.identity.policy.password.cache.PasswordPatternCache;
+import org.wso2.carbon.identity.policy.password.cache.PasswordPatternRule;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+import org.wso2.carbon.identity.policy.password.cache.SessionExpiryDeadlineCache;
+import org.wso2.carbon.identity.policy.password.cache.SingleFlight;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.deadline.PasswordExpiryDeadline;
+import org.wso2.carbon.identity.policy.password.dictionary.DictionaryChecker;
+import org.wso2.carbon.identity.policy.password.dictionary.LeetNormalizer;
+import org.wso2.carbon.identity.policy.password.metrics.CounterMetric;
+import org.wso2.carbon.identity.policy.password.metrics.LatencyMetric;
+import org.wso2.carbon.identity.policy.password.metrics.PasswordPolicyMetrics;
+import org.wso2.carbon.identity.policy.password.pattern.EditDistance;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeWriter;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.UserCoreConstants;
 import org.wso2.carbon.user.core.UserStoreManager;
-import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
 import java.io.IOException;
-import java.util.Calendar;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -60,6 +74,8 @@ public class PasswordResetEnforcer extends AbstractApplicationAuthenticator
 
     private static final long serialVersionUID = 307784186695787941L;
 
+    private static final SingleFlight<String, Long> lastPasswordUpdateTimeReads = new SingleFlight<>();
+
     @Override
     public boolean canHandle(HttpServletRequest arg0) {
         return true;
@@ -94,6 +110,7 @@ public class PasswordResetEnforcer extends AbstractApplicationAuthenticator
             try {
                 processAuthenticationResponse(request, response, context);
             } catch (Exception e) {
+                PasswordPolicyMetrics.getInstance().increment(CounterMetric.RETRY, getUser(context).getTenantDomain());
                 context.setRetrying(true);
                 context.setCurrentAuthenticator(getName());
                 return initiateAuthRequest(response, context, e.getMessage());
@@ -130,7 +147,7 @@ public class PasswordResetEnforcer extends AbstractApplicationAuthenticator
             String username = authenticatedUser.getAuthenticatedSubjectIdentifier();
             String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
 
-            if (hadPasswordExpired(tenantDomain, tenantAwareUsername)) {
+            if (getPasswordExpiryDecision(context, tenantDomain, tenantAwareUsername).isExpired()) {
                 // The password has expired or the password changed time is not set
                 try {
                     // Creating the URL to which the user will be redirected
@@ -187,15 +204,18 @@ public class PasswordResetEnforcer extends AbstractApplicationAuthenticator
         if (currentPassword.equals(newPassword)) {
             throw new AuthenticationFailedException("You cannot use your previous password as your new password");
         }
+        if (isSimilarToCurrentPassword(authenticatedUser.getTenantDomain(), currentPassword, newPassword)) {
+            throw new AuthenticationFailedException("Your new password is too similar to your previous password");
+        }
         if (newPassword.equals(newPasswordConfirmation)) {
             // Fetching user store manager
+            String tenantDomain = authenticatedUser.getTenantDomain();
             UserStoreManager userStoreManager;
+            int tenantId;
             try {
-                String tenantDomain = authenticatedUser.getTenantDomain();
-                int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-                RealmService realmService = IdentityTenantUtil.getRealmService();
-                UserRealm userRealm = realmService.getTenantUserRealm(tenantId);
-                userStoreManager = (UserStoreManager) userRealm.getUserStoreManager();
+                UserStoreManagerCache userStoreManagerCache = UserStoreManagerCache.getInstance();
+                tenantId = userStoreManagerCache.getTenantId(tenantDomain);
+                userStoreManager = userStoreManagerCache.getUserStoreManager(tenantDomain);
             } catch (UserStoreException e) {
                 throw new AuthenticationFailedException("Error occurred while loading user realm or user store manager",
                         e);
@@ -204,14 +224,25 @@ public class PasswordResetEnforcer extends AbstractApplicationAuthenticator
             // Updating the credentials
             try {
                 String domain = UserCoreUtil.extractDomainFromName(tenantAwareUsername);
-                validatePassword(userStoreManager, newPassword, domain);
+                long validationStartTime = System.nanoTime();
+                try {
+                    validatePassword(tenantId, userStoreManager, newPassword, domain, tenantDomain,
+                            tenantAwareUsername);
+                } finally {
+                    PasswordPolicyMetrics.getInstance().recordLatency(LatencyMetric.PASSWORD_VALIDATION, tenantDomain,
+                            validationStartTime);
+                }
 
                 // Since password is valid updating credentials
+                long updateStartTime = System.nanoTime();
                 userStoreManager.updateCredential(tenantAwareUsername, newPassword, currentPassword);
+                PasswordPolicyMetrics.getInstance().recordLatency(LatencyMetric.CREDENTIAL_UPDATE, tenantDomain,
+                        updateStartTime);
                 if (log.isDebugEnabled()) {
                     log.debug("Updated user credentials of " + tenantAwareUsername);
                 }
             } catch (UserStoreException e) {
+                PasswordPolicyMetrics.getInstance().increment(CounterMetric.FAILURE, tenantDomain);
                 String errorMessage = getAuthenticationErrorMessage(e);
                 if (log.isDebugEnabled()) {
                     log.debug(errorMessage, e);
@@ -226,22 +257,127 @@ public class PasswordResetEnforcer extends AbstractApplicationAuthenticator
         }
     }
 
+    /**
+     * Get the expiry decision of the password of a user. The decision is made once in an authentication flow and is
+     * kept in the authentication context, so that it is reused when the user retries the password change. A password
+     * which has not expired is also recorded in the SSO session until its deadline.
+     *
+     * @param context             The authentication context
+     * @param tenantDomain        The tenant domain of the user trying to authenticate
+     * @param tenantAwareUsername The tenant aware username of the user trying to authenticate
+     * @return The expiry decision
+     * @throws AuthenticationFailedException if the authentication failed for the user trying to login
+     */
+    private PasswordExpiryDecision getPasswordExpiryDecision(AuthenticationContext context, String tenantDomain,
+                                                             String tenantAwareUsername)
+            throws AuthenticationFailedException {
+        Object decision = context.getProperty(PasswordPolicyConstants.PASSWORD_EXPIRY_DECISION);
+        if (decision instanceof PasswordExpiryDecision
+                && ((PasswordExpiryDecision) decision).isFor(tenantDomain, tenantAwareUsername)) {
+            return (PasswordExpiryDecision) decision;
+        }
+
+        // A password found to be valid earlier in the SSO session stays valid until its deadline
+        SessionExpiryDeadlineCache sessionExpiryDeadlineCache = SessionExpiryDeadlineCache.getInstance();
+        String sessionIdentifier = context.getSessionIdentifier();
+        PasswordExpiryDecision passwordExpiryDecision = sessionExpiryDeadlineCache.get(sessionIdentifier,
+                tenantDomain, tenantAwareUsername, PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain)
+                        .getPasswordExpiryInDays());
+        if (passwordExpiryDecision == null) {
+            passwordExpiryDecision = evaluatePasswordExpiry(tenantDomain, tenantAwareUsername);
+            sessionExpiryDeadlineCache.put(sessionIdentifier, passwordExpiryDecision);
+        }
+        context.setProperty(PasswordPolicyConstants.PASSWORD_EXPIRY_DECISION, passwordExpiryDecision);
+        return passwordExpiryDecision;
+    }
+
     /**
      * Checks if the password had expired.
      *
      * @param tenantDomain        The tenant domain of the user trying to authenticate
      * @param tenantAwareUsername The tenant aware username of the user trying to authenticate
-     * @return True if the password had expired
+     * @return The expiry decision
      * @throws AuthenticationFailedException if the authentication failed for the user trying to login
      */
-    private boolean hadPasswordExpired(String tenantDomain, String tenantAwareUsername)
+    private PasswordExpiryDecision evaluatePasswordExpiry(String tenantDomain, String tenantAwareUsername)
+            throws AuthenticationFailedException {
+        Long passwordLastChangedTime = getLastPasswordUpdateTime(tenantDomain, tenantAwareUsername);
+        int passwordExpiryInDays = PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain)
+                .getPasswordExpiryInDays();
+
+        if (passwordLastChangedTime == null) {      // The password changed time is not set
+            PasswordPolicyMetrics.getInstance().increment(CounterMetric.EXPIRED, tenantDomain);
+            return new PasswordExpiryDecision(tenantDomain, tenantAwareUsername, null, passwordExpiryInDays, true);
+        }
+
+        // The passwords without a valid update time are treated as just changed
+        boolean expired = passwordLastChangedTime > 0 && System.currentTimeMillis()
+                >= PasswordExpiryDeadline.getDeadline(passwordLastChangedTime, passwordExpiryInDays);
+        PasswordPolicyMetrics.getInstance().increment(expired ? CounterMetric.EXPIRED : CounterMetric.NOT_EXPIRED,
+                tenantDomain);
+        return new PasswordExpiryDecision(tenantDomain, tenantAwareUsername, passwordLastChangedTime,
+                passwordExpiryInDays, expired);
+    }
+
+    /**
+     * Get the last password update time of a user.
+     * The user store is only queried if the timestamp is not already cached, and only once for concurrent logins.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user
+     * @return The last password update timestamp or null if it is not set
+     * @throws AuthenticationFailedException if the user store could not be queried
+     */
+    private Long getLastPasswordUpdateTime(final String tenantDomain, final String tenantAwareUsername)
+            throws AuthenticationFailedException {
+        PasswordUpdateTimeCache passwordUpdateTimeCache = PasswordUpdateTimeCache.getInstance();
+        Long cachedPasswordLastChangedTime = passwordUpdateTimeCache.get(tenantDomain, tenantAwareUsername);
+        if (cachedPasswordLastChangedTime != null) {
+            return cachedPasswordLastChangedTime;
+        }
+        Long pendingPasswordLastChangedTime = PasswordUpdateTimeWriter.getInstance()
+                .getPendingTimestamp(tenantDomain, tenantAwareUsername);
+        if (pendingPasswordLastChangedTime != null) {
+            // The latest password update is not yet written to the user store
+            return pendingPasswordLastChangedTime;
+        }
+
+        // The concurrent logins of a user share a single read of the claim
+        try {
+            return lastPasswordUpdateTimeReads.load(PasswordUpdateTimeCache.getUserKey(tenantDomain,
+                    tenantAwareUsername), new Callable<Long>() {
+                @Override
+                public Long call() throws AuthenticationFailedException {
+                    return readLastPasswordUpdateTime(tenantDomain, tenantAwareUsername);
+                }
+            });
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AuthenticationFailedException) {
+                throw (AuthenticationFailedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AuthenticationFailedException("Error occurred while loading user claim - "
+                    + PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM, cause);
+        }
+    }
+
+    /**
+     * Read the last password update time of a user from the user store, and cache it.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user
+     * @return The last password update timestamp or null if it is not set
+     * @throws AuthenticationFailedException if the user store could not be queried
+     */
+    private Long readLastPasswordUpdateTime(String tenantDomain, String tenantAwareUsername)
             throws AuthenticationFailedException {
         UserStoreManager userStoreManager;
         try {
-            int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-            RealmService realmService = IdentityTenantUtil.getRealmService();
-            UserRealm userRealm = realmService.getTenantUserRealm(tenantId);
-            userStoreManager = (UserStoreManager) userRealm.getUserStoreManager();
+            userStoreManager = UserStoreManagerCache.getInstance().getUserStoreManager(tenantDomain);
         } catch (UserStoreException e) {
             throw new AuthenticationFailedException("Error occurred while loading user manager from user realm", e);
         }
@@ -249,77 +385,107 @@ public class PasswordResetEnforcer extends AbstractApplicationAuthenticator
         String passwordLastChangedTime;
         try {
             String[] claimURIs = new String[]{PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM};
+            long readStartTime = System.nanoTime();
             Map<String, String> claimValueMap =
                     userStoreManager.getUserClaimValues(tenantAwareUsername, claimURIs, null);
+            PasswordPolicyMetrics.getInstance().recordLatency(LatencyMetric.CLAIM_READ, tenantDomain, readStartTime);
             passwordLastChangedTime = claimValueMap.get(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM);
         } catch (org.wso2.carbon.user.core.UserStoreException e) {
+            PasswordPolicyMetrics.getInstance().increment(CounterMetric.FAILURE, tenantDomain);
             throw new AuthenticationFailedException("Error occurred while loading user claim - "
                     + PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM, e);
         }
 
-        long passwordChangedTime = 0;
-        if (passwordLastChangedTime != null) {
-            passwordChangedTime = Long.parseLong(passwordLastChangedTime);
-        }
-
-        int daysDifference = 0;
-        long currentTimeMillis = System.currentTimeMillis();
-        if (passwordChangedTime > 0) {
-            Calendar currentTime = Calendar.getInstance();
-            currentTime.add(Calendar.DATE, (int) currentTime.getTimeInMillis());
-            daysDifference = (int) ((currentTimeMillis - passwordChangedTime) / (1000 * 60 * 60 * 24));
+        if (passwordLastChangedTime == null) {
+            // Not cached since the users without the claim are redirected to change the password anyway
+            return null;
         }
+        long passwordChangedTime = Long.parseLong(passwordLastChangedTime);
+        PasswordUpdateTimeCache.getInstance().putIfNewer(tenantDomain, tenantAwareUsername, passwordChangedTime);
+        return passwordChangedTime;
+    }
 
-        // Getting the number of days before password expiry in days
-        String passwordExpiryInDaysProperty = PasswordPolicyUtils.getIdentityEventProperty(tenantDomain,
-                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS);
-        int passwordExpiryInDays =
-                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS_DEFAULT_VALUE;
-        if (passwordExpiryInDaysProperty != null) {
-            passwordExpiryInDays = Integer.parseInt(passwordExpiryInDaysProperty);
+    /**
+     * Check whether the new password differs from the current password by fewer characters than configured
+     *
+     * @param tenantDomain    The tenant domain of the user
+     * @param currentPassword The current password of the user
+     * @param newPassword     The new password of the user
+     * @return True if the new password is too similar to the current password
+     */
+    private boolean isSimilarToCurrentPassword(String tenantDomain, String currentPassword, String newPassword) {
+        int minEditDistance = PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain).getMinEditDistance();
+        if (minEditDistance <= 1) {
+            // Only the identical passwords are rejected, which is already checked
+            return false;
         }
-
-        return (daysDifference > passwordExpiryInDays || passwordLastChangedTime == null);
+        return EditDistance.isWithin(currentPassword, newPassword, minEditDistance - 1);
     }
 
     /**
      * Validate a password
      *
-     * @param userStoreManager The user store to which the user belongs to
-     * @param password         The password that needs to be validated
+     * @param tenantId            The tenant to which the user belongs to
+     * @param userStoreManager    The user store to which the user belongs to
+     * @param password            The password that needs to be validated
+     * @param domain              The user store domain of the user
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user
      * @throws AuthenticationFailedException If the password is invalid
      */
-    private void validatePassword(UserStoreManager userStoreManager, String password, String domain)
+    private void validatePassword(int tenantId, UserStoreManager userStoreManager, String password, String domain,
+                                  String tenantDomain, String tenantAwareUsername)
             throws AuthenticationFailedException {
 
         if (StringUtils.isNotBlank(domain) && !UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equals(domain)) {
             userStoreManager = userStoreManager.getSecondaryUserStoreManager(domain);
         }
-        String regularExpression = userStoreManager.getRealmConfiguration()
-                .getUserStoreProperty("PasswordJavaRegEx");
-        if (StringUtils.isNotEmpty(regularExpression) && !isFormatCorrect(regularExpression, password)) {
-            String errorMsg = userStoreManager.getRealmConfiguration()
-                    .getUserStoreProperty("PasswordJavaRegExViolationErrorMsg");
-
-            if (StringUtils.isEmpty(errorMsg)) {
-                errorMsg = "New password doesn't meet the policy requirement. " +
-                        "It must be in the following format, " + regularExpression;
+        PasswordPatternRule passwordPatternRule = PasswordPatternCache.getInstance()
+                .getRule(tenantId, domain, userStoreManager.getRealmConfiguration());
+
+        // All the rules are evaluated, so that the user is told of every violation at once
+        char[] passwordCharacters = password.toCharArray();
+        char[] normalizedPassword = null;
+        try {
+            int ruleViolations = passwordPatternRule.getRules().evaluate(passwordCharacters);
+            boolean formatViolation = passwordPatternRule.hasPattern()
+                    && !passwordPatternRule.getMatcher().matches(CharBuffer.wrap(passwordCharacters));
+            boolean breached = BreachedPasswordChecker.getInstance().isBreached(passwordCharacters);
+            boolean containsDictionaryWord = false;
+            boolean containsContextWord = false;
+            DictionaryChecker dictionaryChecker = DictionaryChecker.getInstance();
+            if (dictionaryChecker.isEnabled()) {
+                normalizedPassword = LeetNormalizer.normalize(passwordCharacters);
+                containsDictionaryWord = dictionaryChecker.containsDictionaryWord(normalizedPassword, tenantDomain);
+                containsContextWord = dictionaryChecker.containsContextWord(normalizedPassword,
+                        UserCoreUtil.removeDomainFromName(tenantAwareUsername), tenantDomain, domain);
+            }
+            if (ruleViolations != 0 || formatViolation || breached || containsDictionaryWord || containsContextWord) {
+                StringBuilder errorMessage = new StringBuilder(
+                        passwordPatternRule.getViolationErrorMessage(ruleViolations, formatViolation));
+                if (breached) {
+                    appendErrorMessage(errorMessage,
+                            "The password has appeared in a data breach. Choose a different password.");
+                }
+                if (containsDictionaryWord) {
+                    appendErrorMessage(errorMessage, "The password must not contain a dictionary word.");
+                }
+                if (containsContextWord) {
+                    appendErrorMessage(errorMessage,
+                            "The password must not contain the username or the organization name.");
+                }
+                throw new AuthenticationFailedException(errorMessage.toString());
+            }
+        } finally {
+            Arrays.fill(passwordCharacters, '\0');
+            if (normalizedPassword != null) {
+                Arrays.fill(normalizedPassword, '\0');
             }
-            throw new AuthenticationFailedException(errorMsg);
         }
     }
 
-    /**
-     * Check if the format of the password is correct
-     *
-     * @param regularExpression The regular expression indicating the password format
-     * @param password          The password to be checked
-     * @return True if the password matches the format. False otherwise.
-     */
-    private boolean isFormatCorrect(String regularExpression, String password) {
-        Pattern p2 = Pattern.compile(regularExpression);
-        Matcher m2 = p2.matcher(password);
-        return m2.matches();
+    private static void appendErrorMessage(StringBuilder errorMessage, String message) {
+        errorMessage.append(errorMessage.length() > 0 ? " " : "").append(message);
     }
 
     /**
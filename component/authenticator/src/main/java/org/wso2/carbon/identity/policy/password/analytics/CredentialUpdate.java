@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.analytics;
+
+/**
+ * An event of the CredentialUpdates analytics stream, published when the password of a user is changed.
+ */
+public class CredentialUpdate {
+    private final String username;
+    private final String userStoreDomain;
+    private final String tenantDomain;
+    private final long updateTimestamp;
+
+    public CredentialUpdate(String username, String userStoreDomain, String tenantDomain, long updateTimestamp) {
+        this.username = username;
+        this.userStoreDomain = userStoreDomain;
+        this.tenantDomain = tenantDomain;
+        this.updateTimestamp = updateTimestamp;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getUserStoreDomain() {
+        return userStoreDomain;
+    }
+
+    public String getTenantDomain() {
+        return tenantDomain;
+    }
+
+    public long getUpdateTimestamp() {
+        return updateTimestamp;
+    }
+
+    /**
+     * Get the payload of the event, in the order of the attributes of the stream definition.
+     *
+     * @return The payload data
+     */
+    public Object[] toPayloadData() {
+        return new Object[]{username, userStoreDomain, tenantDomain, updateTimestamp};
+    }
+}
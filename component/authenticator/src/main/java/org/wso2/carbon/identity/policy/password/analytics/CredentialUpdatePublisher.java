@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.analytics;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.CarbonUtils;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the credential update events to the CredentialUpdates analytics stream asynchronously and in batches.
+ * <p>
+ * The password change handler adds the events to a bounded ring buffer without waiting, and a background thread
+ * publishes them whenever the batch size is reached or the flush interval elapses. While the analytics server is
+ * slow or down, and whenever the ring buffer is full, the events are written to a local spool file instead, from
+ * which they are published in order once publishing succeeds again. The events are published at least once, so a
+ * batch which partially failed may be published twice.
+ */
+public class CredentialUpdatePublisher implements Runnable {
+    private static final Log log = LogFactory.getLog(CredentialUpdatePublisher.class);
+
+    private static final CredentialUpdatePublisher instance = new CredentialUpdatePublisher();
+
+    private static final long SHUTDOWN_TIMEOUT = 30000;
+
+    private volatile CredentialUpdateRingBuffer ringBuffer;
+    private volatile boolean running;
+    private volatile Thread workerThread;
+    private CredentialUpdateSink sink;
+    private CredentialUpdateSpool spool;
+    private int batchSize;
+    private long flushIntervalMillis;
+    private long retryIntervalMillis;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong spooledCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private CredentialUpdatePublisher() {     // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the CredentialUpdatePublisher
+     *
+     * @return A singleton instance of the CredentialUpdatePublisher
+     */
+    public static CredentialUpdatePublisher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start publishing the credential update events if the data publishing is enabled.
+     * The events left in the spool by the previous run are published first.
+     */
+    public synchronized void start() {
+        if (running || !Boolean.parseBoolean(getProperty(PasswordPolicyConstants.DATA_PUBLISHING_ENABLE))) {
+            return;
+        }
+
+        int bufferSize = NumberUtils.toInt(getProperty(PasswordPolicyConstants.DATA_PUBLISHING_BUFFER_SIZE),
+                PasswordPolicyConstants.DATA_PUBLISHING_BUFFER_SIZE_DEFAULT_VALUE);
+        int publishBatchSize = NumberUtils.toInt(getProperty(PasswordPolicyConstants.DATA_PUBLISHING_BATCH_SIZE),
+                PasswordPolicyConstants.DATA_PUBLISHING_BATCH_SIZE_DEFAULT_VALUE);
+        int flushInterval = NumberUtils.toInt(getProperty(PasswordPolicyConstants.DATA_PUBLISHING_FLUSH_INTERVAL),
+                PasswordPolicyConstants.DATA_PUBLISHING_FLUSH_INTERVAL_DEFAULT_VALUE);
+        int retryInterval = NumberUtils.toInt(getProperty(PasswordPolicyConstants.DATA_PUBLISHING_RETRY_INTERVAL),
+                PasswordPolicyConstants.DATA_PUBLISHING_RETRY_INTERVAL_DEFAULT_VALUE);
+        int spoolSizeInMB = NumberUtils.toInt(getProperty(PasswordPolicyConstants.DATA_PUBLISHING_SPOOL_SIZE),
+                PasswordPolicyConstants.DATA_PUBLISHING_SPOOL_SIZE_DEFAULT_VALUE);
+
+        File spoolFile = getSpoolFile();
+        CredentialUpdateSpool credentialUpdateSpool = null;
+        try {
+            credentialUpdateSpool = CredentialUpdateSpool.open(spoolFile, spoolSizeInMB << 20);
+            if (!credentialUpdateSpool.isEmpty()) {
+                log.info("Recovered " + credentialUpdateSpool.size() + " credential update events to be published");
+            }
+        } catch (IOException e) {
+            log.error("Error occurred while opening the credential update spool " + spoolFile + ". The events "
+                    + "which cannot be published immediately are dropped.", e);
+        }
+        start(new EventStreamCredentialUpdateSink(), credentialUpdateSpool, bufferSize, publishBatchSize,
+                flushInterval, TimeUnit.SECONDS.toMillis(retryInterval));
+    }
+
+    /**
+     * Start publishing the credential update events to the given sink.
+     *
+     * @param credentialUpdateSink  The sink to which the events are published
+     * @param credentialUpdateSpool The spool of the events which could not be published, or null to drop them
+     * @param bufferSize            The number of events buffered in the memory
+     * @param publishBatchSize      The maximum number of events published at once
+     * @param flushIntervalMillis   The time to wait for a full batch before publishing the buffered events
+     * @param retryIntervalMillis   The time to wait before publishing again after a failure
+     */
+    public synchronized void start(CredentialUpdateSink credentialUpdateSink,
+                                   CredentialUpdateSpool credentialUpdateSpool, int bufferSize, int publishBatchSize,
+                                   long flushIntervalMillis, long retryIntervalMillis) {
+        if (running) {
+            return;
+        }
+        sink = credentialUpdateSink;
+        spool = credentialUpdateSpool;
+        batchSize = Math.max(1, publishBatchSize);
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.retryIntervalMillis = Math.max(0, retryIntervalMillis);
+        ringBuffer = new CredentialUpdateRingBuffer(bufferSize);
+        running = true;
+        workerThread = new Thread(this, "CredentialUpdatePublisher");
+        workerThread.setDaemon(true);
+        workerThread.start();
+        if (log.isDebugEnabled()) {
+            log.debug("Credential update publishing is started with the buffer size " + ringBuffer.capacity()
+                    + " and the batch size " + batchSize);
+        }
+    }
+
+    /**
+     * Stop accepting events. The buffered events are published, or spooled for the next start.
+     */
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Thread thread = workerThread;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            log.warn("Timed out while publishing the buffered credential update events.");
+        }
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                log.warn("Error occurred while closing the credential update spool", e);
+            }
+            spool = null;
+        }
+        workerThread = null;
+    }
+
+    /**
+     * Publish the credential update event of a user, without waiting.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The domain qualified username of the user
+     * @param timestamp           The time at which the password was changed
+     * @return True if the event is accepted
+     */
+    public boolean offer(String tenantDomain, String tenantAwareUsername, long timestamp) {
+        CredentialUpdateRingBuffer credentialUpdateRingBuffer = ringBuffer;
+        if (!running || credentialUpdateRingBuffer == null) {
+            return false;
+        }
+        String domain = UserCoreUtil.extractDomainFromName(tenantAwareUsername);
+        if (StringUtils.isBlank(domain)) {
+            domain = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+        }
+        CredentialUpdate update = new CredentialUpdate(UserCoreUtil.removeDomainFromName(tenantAwareUsername),
+                domain, tenantDomain, timestamp);
+        if (credentialUpdateRingBuffer.offer(update)) {
+            if (credentialUpdateRingBuffer.size() >= batchSize) {
+                LockSupport.unpark(workerThread);
+            }
+            return true;
+        }
+        // The buffer is full, which happens when the events are added faster than they are published
+        return spill(Collections.singletonList(update)) == 1;
+    }
+
+    @Override
+    public void run() {
+        CredentialUpdateRingBuffer credentialUpdateRingBuffer = ringBuffer;
+        List<CredentialUpdate> batch = new ArrayList<>(batchSize);
+        long nextAttemptTime = 0;
+        while (true) {
+            boolean stopping = !running;
+            batch.clear();
+            credentialUpdateRingBuffer.drainTo(batch, batchSize);
+            boolean published = true;
+            if (!batch.isEmpty()) {
+                if (System.currentTimeMillis() >= nextAttemptTime && (spool == null || spool.isEmpty())) {
+                    published = publish(batch);
+                } else {
+                    // The spooled events are published first, so that the events are published in order
+                    published = false;
+                }
+                if (!published) {
+                    spill(batch);
+                }
+            }
+            if (!published) {
+                nextAttemptTime = Math.max(nextAttemptTime, System.currentTimeMillis() + retryIntervalMillis);
+            }
+
+            boolean backlog = false;
+            if (spool != null && !spool.isEmpty() && !stopping && System.currentTimeMillis() >= nextAttemptTime) {
+                List<CredentialUpdate> spooledBatch = spool.peek(batchSize);
+                if (publish(spooledBatch)) {
+                    spool.remove(spooledBatch.size());
+                    backlog = !spool.isEmpty();
+                } else {
+                    nextAttemptTime = System.currentTimeMillis() + retryIntervalMillis;
+                }
+            }
+
+            if (stopping) {
+                if (credentialUpdateRingBuffer.size() == 0) {
+                    if (spool != null) {
+                        spool.force();
+                    }
+                    return;
+                }
+                continue;
+            }
+            if (spool != null && !spool.isEmpty()) {
+                spool.force();
+            }
+            if (!backlog && credentialUpdateRingBuffer.size() < batchSize) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+            }
+        }
+    }
+
+    private boolean publish(List<CredentialUpdate> updates) {
+        try {
+            sink.publish(updates);
+            publishedCount.addAndGet(updates.size());
+            if (log.isDebugEnabled()) {
+                log.debug("Published " + updates.size() + " credential update events");
+            }
+            return true;
+        } catch (IdentityEventException | RuntimeException e) {
+            log.warn("Error occurred while publishing " + updates.size() + " credential update events. "
+                    + "They are published again after " + retryIntervalMillis + " milliseconds.", e);
+            return false;
+        }
+    }
+
+    private int spill(List<CredentialUpdate> updates) {
+        CredentialUpdateSpool credentialUpdateSpool = spool;
+        int spooled = credentialUpdateSpool == null ? 0 : credentialUpdateSpool.append(updates);
+        spooledCount.addAndGet(spooled);
+        if (spooled < updates.size()) {
+            droppedCount.addAndGet(updates.size() - spooled);
+            log.error("Dropped " + (updates.size() - spooled) + " credential update events since the spool is "
+                    + (credentialUpdateSpool == null ? "not available" : "full"));
+        }
+        return spooled;
+    }
+
+    private static File getSpoolFile() {
+        String spool = getProperty(PasswordPolicyConstants.DATA_PUBLISHING_SPOOL);
+        if (StringUtils.isBlank(spool)) {
+            spool = PasswordPolicyConstants.DATA_PUBLISHING_SPOOL_DEFAULT_VALUE;
+        }
+        File spoolFile = new File(spool);
+        if (!spoolFile.isAbsolute()) {
+            spoolFile = new File(CarbonUtils.getCarbonHome(), spool);
+        }
+        return spoolFile;
+    }
+
+    private static String getProperty(String propertyName) {
+        return PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                propertyName);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Get the number of events waiting to be published, in the memory and in the spool.
+     *
+     * @return The number of events waiting to be published
+     */
+    public int getBacklog() {
+        CredentialUpdateRingBuffer credentialUpdateRingBuffer = ringBuffer;
+        CredentialUpdateSpool credentialUpdateSpool = spool;
+        return (credentialUpdateRingBuffer == null ? 0 : credentialUpdateRingBuffer.size())
+                + (credentialUpdateSpool == null ? 0 : credentialUpdateSpool.size());
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.analytics;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock free ring buffer of the credential update events, written by many threads and read by the single
+ * publisher thread.
+ * <p>
+ * Each slot carries a sequence number telling whether it is free for the producer of a given position or holds the
+ * event for the consumer of a given position, so the producers only contend on claiming a position and never wait
+ * for each other. A producer finding the buffer full is told so immediately instead of waiting.
+ */
+public class CredentialUpdateRingBuffer {
+    private final int mask;
+    private final AtomicReferenceArray<CredentialUpdate> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+
+    /**
+     * Create a ring buffer.
+     *
+     * @param capacity The minimum number of events the buffer holds, which is rounded up to a power of two
+     */
+    public CredentialUpdateRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        slots = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an event to the buffer without waiting.
+     *
+     * @param update The event
+     * @return True if the event is added, false if the buffer is full
+     */
+    public boolean offer(CredentialUpdate update) {
+        long position = producerPosition.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (producerPosition.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, update);
+                    // Publish the event to the consumer of the position
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = producerPosition.get();
+            } else if (difference < 0) {
+                // The slot still holds the event of the previous lap
+                return false;
+            } else {
+                // Another producer claimed the position
+                position = producerPosition.get();
+            }
+        }
+    }
+
+    /**
+     * Move up to the given number of events to a list. This is only called by the single consumer.
+     *
+     * @param updates   The list to which the events are added
+     * @param maxEvents The maximum number of events to move
+     * @return The number of events moved
+     */
+    public int drainTo(List<CredentialUpdate> updates, int maxEvents) {
+        long position = consumerPosition.get();
+        int count = 0;
+        while (count < maxEvents) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                // The buffer is empty, or the producer of the position has not written the event yet
+                break;
+            }
+            updates.add(slots.get(index));
+            slots.lazySet(index, null);
+            // Free the slot for the producer of the next lap
+            sequences.set(index, position + mask + 1);
+            position++;
+            count++;
+        }
+        consumerPosition.lazySet(position);
+        return count;
+    }
+
+    /**
+     * Get the approximate number of events in the buffer.
+     *
+     * @return The number of events
+     */
+    public int size() {
+        long size = producerPosition.get() - consumerPosition.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
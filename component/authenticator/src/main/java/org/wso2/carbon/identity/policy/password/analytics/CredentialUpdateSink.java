@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.analytics;
+
+import org.wso2.carbon.identity.event.IdentityEventException;
+
+import java.util.List;
+
+/**
+ * Delivers the credential update events to the analytics server.
+ */
+public interface CredentialUpdateSink {
+
+    /**
+     * Publish a batch of credential update events.
+     *
+     * @param updates The events, in the order they occurred
+     * @throws IdentityEventException if the events could not be published. The whole batch is spooled and published
+     *                                again later.
+     */
+    void publish(List<CredentialUpdate> updates) throws IdentityEventException;
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.analytics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory mapped append only file holding the credential update events which could not be published yet, such as
+ * while the analytics server is down, so that they are published later and survive restarts.
+ * <p>
+ * The file has a fixed size. It holds a header with the position of the first event which is not yet published,
+ * followed by the events, each written as its length and its fields. The length of an event is written after its
+ * fields, so an event partially written by a crash is not read back. The space is reclaimed once all the events are
+ * published, and events are rejected while the file is full.
+ * <p>
+ * This class is thread safe.
+ */
+public class CredentialUpdateSpool implements Closeable {
+    static final int MAGIC = 0x50574355;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private static final int READ_POSITION_OFFSET = 8;
+    private static final int LENGTH_SIZE = 4;
+    private static final byte[] ZEROS = new byte[8192];
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int readPosition;
+    private int writePosition;
+    private int eventCount;
+
+    private CredentialUpdateSpool(RandomAccessFile file, MappedByteBuffer buffer, int capacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Open a spool file, creating it if it does not exist. The events left in the file by the previous run are kept.
+     *
+     * @param spoolFile The spool file
+     * @param size      The size of the file in bytes, if the file is created
+     * @return The opened spool
+     * @throws IOException if the file could not be opened or is not a spool
+     */
+    public static CredentialUpdateSpool open(File spoolFile, int size) throws IOException {
+        File parent = spoolFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create the directory " + parent);
+        }
+        RandomAccessFile file = new RandomAccessFile(spoolFile, "rw");
+        try {
+            boolean created = file.length() == 0;
+            if (created) {
+                file.setLength(Math.max(size, HEADER_SIZE + LENGTH_SIZE));
+            }
+            if (file.length() > Integer.MAX_VALUE) {
+                throw new IOException("The spool " + spoolFile + " is too large");
+            }
+            int capacity = (int) file.length();
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            CredentialUpdateSpool spool = new CredentialUpdateSpool(file, buffer, capacity);
+            if (created) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException(spoolFile + " is not a credential update spool");
+            }
+            spool.recover();
+            return spool;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        readPosition = buffer.getInt(READ_POSITION_OFFSET);
+        if (readPosition < HEADER_SIZE || readPosition > capacity) {
+            throw new IOException("The read position of the credential update spool is corrupted");
+        }
+        writePosition = readPosition;
+        eventCount = 0;
+        int length;
+        while ((length = getLength(writePosition)) > 0) {
+            writePosition += LENGTH_SIZE + length;
+            eventCount++;
+        }
+    }
+
+    /**
+     * Append events to the spool.
+     *
+     * @param updates The events
+     * @return The number of events appended, which is less than the number of events if the spool is full
+     */
+    public synchronized int append(List<CredentialUpdate> updates) {
+        int appended = 0;
+        for (CredentialUpdate update : updates) {
+            byte[] username = encode(update.getUsername());
+            byte[] userStoreDomain = encode(update.getUserStoreDomain());
+            byte[] tenantDomain = encode(update.getTenantDomain());
+            int length = 8 + 6 + username.length + userStoreDomain.length + tenantDomain.length;
+            // The length of the next event must also fit, to tell where the events end
+            if ((long) writePosition + 2 * LENGTH_SIZE + length > capacity) {
+                break;
+            }
+            buffer.position(writePosition + LENGTH_SIZE);
+            buffer.putLong(update.getUpdateTimestamp());
+            putString(username);
+            putString(userStoreDomain);
+            putString(tenantDomain);
+            buffer.putInt(writePosition, length);
+            writePosition += LENGTH_SIZE + length;
+            eventCount++;
+            appended++;
+        }
+        return appended;
+    }
+
+    /**
+     * Read the oldest events without removing them.
+     *
+     * @param maxEvents The maximum number of events to read
+     * @return The events, oldest first
+     */
+    public synchronized List<CredentialUpdate> peek(int maxEvents) {
+        List<CredentialUpdate> updates = new ArrayList<>(Math.min(maxEvents, eventCount));
+        int position = readPosition;
+        while (updates.size() < maxEvents && position < writePosition) {
+            int length = buffer.getInt(position);
+            buffer.position(position + LENGTH_SIZE);
+            long updateTimestamp = buffer.getLong();
+            String username = getString();
+            String userStoreDomain = getString();
+            String tenantDomain = getString();
+            updates.add(new CredentialUpdate(username, userStoreDomain, tenantDomain, updateTimestamp));
+            position += LENGTH_SIZE + length;
+        }
+        return updates;
+    }
+
+    /**
+     * Remove the oldest events, once they are published.
+     *
+     * @param count The number of events to remove
+     */
+    public synchronized void remove(int count) {
+        for (int i = 0; i < count && readPosition < writePosition; i++) {
+            readPosition += LENGTH_SIZE + buffer.getInt(readPosition);
+            eventCount--;
+        }
+        if (readPosition == writePosition) {
+            // All the events are published, so the space is reclaimed. The old events are cleared first, so that
+            // they are not read back if the process stops before the read position is reset.
+            clear(HEADER_SIZE, writePosition);
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+        }
+        buffer.putInt(READ_POSITION_OFFSET, readPosition);
+    }
+
+    /**
+     * Write the appended events to the disk.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    public synchronized int size() {
+        return eventCount;
+    }
+
+    public synchronized boolean isEmpty() {
+        return eventCount == 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private int getLength(int position) {
+        if (position + LENGTH_SIZE > capacity) {
+            return 0;
+        }
+        int length = buffer.getInt(position);
+        return position + LENGTH_SIZE + (long) length > capacity ? 0 : length;
+    }
+
+    private void clear(int from, int to) {
+        buffer.position(from);
+        while (buffer.position() < to) {
+            buffer.put(ZEROS, 0, Math.min(ZEROS.length, to - buffer.position()));
+        }
+    }
+
+    private void putString(byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private String getString() {
+        byte[] value = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(String value) {
+        byte[] encoded = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (encoded.length > 0xFFFF) {
+            throw new IllegalArgumentException("The value is too long to be spooled");
+        }
+        return encoded;
+    }
+}
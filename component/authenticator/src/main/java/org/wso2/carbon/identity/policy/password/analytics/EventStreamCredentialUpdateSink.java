@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.analytics;
+
+import org.wso2.carbon.databridge.commons.Event;
+import org.wso2.carbon.event.stream.core.EventStreamService;
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.internal.PasswordPolicyDataHolder;
+
+import java.util.List;
+
+/**
+ * Publishes the credential update events to the CredentialUpdates stream through the event stream service, from
+ * which the configured event publishers deliver them to IS Analytics.
+ */
+public class EventStreamCredentialUpdateSink implements CredentialUpdateSink {
+
+    @Override
+    public void publish(List<CredentialUpdate> updates) throws IdentityEventException {
+        EventStreamService eventStreamService = PasswordPolicyDataHolder.getInstance().getEventStreamService();
+        if (eventStreamService == null) {
+            throw new IdentityEventException("The event stream service is not available to publish to the stream "
+                    + PasswordPolicyConstants.CREDENTIAL_UPDATES_STREAM_NAME);
+        }
+        try {
+            for (CredentialUpdate update : updates) {
+                eventStreamService.publish(new Event(PasswordPolicyConstants.CREDENTIAL_UPDATES_STREAM_NAME,
+                        update.getUpdateTimestamp(), null, null, update.toPayloadData()));
+            }
+        } catch (RuntimeException e) {
+            throw new IdentityEventException("Error occurred while publishing to the stream "
+                    + PasswordPolicyConstants.CREDENTIAL_UPDATES_STREAM_NAME, e);
+        }
+    }
+}
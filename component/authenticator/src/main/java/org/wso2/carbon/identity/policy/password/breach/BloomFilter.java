@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.breach;
+
+/**
+ * A Bloom filter of password hashes, which rules out most of the passwords without reading the index file.
+ * <p>
+ * The hashes are already uniformly distributed, so the bit positions are derived from the last 16 bytes of a hash
+ * by double hashing instead of hashing it again.
+ */
+final class BloomFilter {
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+
+    BloomFilter(long[] words, int hashCount) {
+        this.words = words;
+        this.bitCount = (long) words.length * Long.SIZE;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Create an empty filter.
+     *
+     * @param entryCount    The number of hashes which will be added
+     * @param bitsPerEntry  The number of bits per hash, where 10 bits give about 1% false positives
+     * @return The empty filter
+     */
+    static BloomFilter create(long entryCount, int bitsPerEntry) {
+        long wordCount = Math.max(1, (entryCount * bitsPerEntry + Long.SIZE - 1) / Long.SIZE);
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The Bloom filter of " + entryCount + " hashes is too large");
+        }
+        int hashCount = Math.max(1, (int) Math.round(bitsPerEntry * Math.log(2)));
+        return new BloomFilter(new long[(int) wordCount], hashCount);
+    }
+
+    void add(byte[] hash) {
+        long h1 = getLong(hash, hash.length - 16);
+        long h2 = getLong(hash, hash.length - 8);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(byte[] hash) {
+        long h1 = getLong(hash, hash.length - 16);
+        long h2 = getLong(hash, hash.length - 8);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long[] getWords() {
+        return words;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+}
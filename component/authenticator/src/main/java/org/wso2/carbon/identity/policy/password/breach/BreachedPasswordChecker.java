@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.breach;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.utils.CarbonUtils;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Rejects the new passwords which appear in a breached password corpus, using a local
+ * {@link BreachedPasswordIndex} of their SHA-1 hashes. No external service is called.
+ */
+public class BreachedPasswordChecker {
+    private static final Log log = LogFactory.getLog(BreachedPasswordChecker.class);
+
+    private static final BreachedPasswordChecker instance = new BreachedPasswordChecker();
+
+    private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-1 is not supported by the JVM", e);
+            }
+        }
+    };
+
+    private volatile BreachedPasswordIndex index;
+
+    private BreachedPasswordChecker() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the BreachedPasswordChecker
+     *
+     * @return A singleton instance of the BreachedPasswordChecker
+     */
+    public static BreachedPasswordChecker getInstance() {
+        return instance;
+    }
+
+    /**
+     * Open the configured breached password index, if any.
+     */
+    public synchronized void start() {
+        String indexPath = PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.BREACHED_PASSWORDS_INDEX);
+        if (index != null || StringUtils.isBlank(indexPath)) {
+            return;
+        }
+        File indexFile = new File(indexPath);
+        if (!indexFile.isAbsolute()) {
+            indexFile = new File(CarbonUtils.getCarbonHome(), indexPath);
+        }
+        try {
+            start(BreachedPasswordIndex.open(indexFile));
+            log.info("Loaded " + index.getEntryCount() + " breached password hashes from " + indexFile);
+        } catch (IOException e) {
+            log.error("Error occurred while opening the breached password index " + indexFile
+                    + ". The new passwords are not checked against the breached passwords.", e);
+        }
+    }
+
+    /**
+     * Check the new passwords against an index.
+     *
+     * @param breachedPasswordIndex The index of the breached password hashes
+     */
+    public synchronized void start(BreachedPasswordIndex breachedPasswordIndex) {
+        if (breachedPasswordIndex.getHashLength() != BreachedPasswordIndexBuilder.SHA1_HASH_LENGTH) {
+            throw new IllegalArgumentException("The breached password index does not have SHA-1 hashes");
+        }
+        shutdown();
+        index = breachedPasswordIndex;
+    }
+
+    /**
+     * Close the breached password index.
+     */
+    public synchronized void shutdown() {
+        if (index == null) {
+            return;
+        }
+        try {
+            index.close();
+        } catch (IOException e) {
+            log.warn("Error occurred while closing the breached password index", e);
+        }
+        index = null;
+    }
+
+    public boolean isEnabled() {
+        return index != null;
+    }
+
+    /**
+     * Check whether a password appears in the breached password corpus.
+     *
+     * @param password The password
+     * @return True if the password is breached, false if it is not or if no index is configured
+     */
+    public boolean isBreached(char[] password) {
+        BreachedPasswordIndex breachedPasswordIndex = index;
+        if (breachedPasswordIndex == null) {
+            return false;
+        }
+        ByteBuffer encodedPassword = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        MessageDigest digest = SHA1.get();
+        digest.update(encodedPassword.duplicate());
+        if (encodedPassword.hasArray()) {
+            Arrays.fill(encodedPassword.array(), (byte) 0);
+        }
+        return breachedPasswordIndex.contains(digest.digest());
+    }
+}
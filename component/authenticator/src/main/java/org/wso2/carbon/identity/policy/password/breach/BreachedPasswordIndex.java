@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.breach;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read only index of breached password hashes, built by {@link BreachedPasswordIndexBuilder}.
+ * <p>
+ * The file holds a header, the sorted and distinct hashes, a fan out table of the positions of the hashes by their
+ * first two bytes, and a Bloom filter. The fan out table and the Bloom filter are loaded to the heap, while the
+ * hashes are memory mapped, so the heap footprint does not depend on the number of hashes. A lookup is answered by
+ * the Bloom filter for most of the passwords, and otherwise by a binary search within a single fan out bucket.
+ * <p>
+ * The lookups are thread safe.
+ */
+public class BreachedPasswordIndex implements Closeable {
+    static final int MAGIC = 0x50574248;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int FAN_OUT_SIZE = 65536 + 1;
+
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final RandomAccessFile file;
+    private final int hashLength;
+    private final long entryCount;
+    private final long[] fanOut;
+    private final BloomFilter bloomFilter;
+    private final MappedByteBuffer[] segments;
+    private final int entriesPerSegment;
+
+    private BreachedPasswordIndex(RandomAccessFile file, int hashLength, long entryCount, long[] fanOut,
+                                  BloomFilter bloomFilter, MappedByteBuffer[] segments, int entriesPerSegment) {
+        this.file = file;
+        this.hashLength = hashLength;
+        this.entryCount = entryCount;
+        this.fanOut = fanOut;
+        this.bloomFilter = bloomFilter;
+        this.segments = segments;
+        this.entriesPerSegment = entriesPerSegment;
+    }
+
+    /**
+     * Open an index file.
+     *
+     * @param indexFile The index file
+     * @return The opened index
+     * @throws IOException if the file could not be read or is not an index
+     */
+    public static BreachedPasswordIndex open(File indexFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(indexFile + " is not a breached password index");
+            }
+            int hashLength = header.getInt();
+            header.getInt();
+            long entryCount = header.getLong();
+            long bloomFilterWordCount = header.getLong();
+            int bloomFilterHashCount = header.getInt();
+            long fanOutOffset = HEADER_SIZE + entryCount * hashLength;
+            long bloomFilterOffset = fanOutOffset + (long) FAN_OUT_SIZE * 8;
+            if (hashLength < 16 || entryCount < 0 || bloomFilterWordCount <= 0
+                    || bloomFilterWordCount > Integer.MAX_VALUE
+                    || file.length() != bloomFilterOffset + bloomFilterWordCount * 8) {
+                throw new IOException(indexFile + " is a corrupted breached password index");
+            }
+
+            long[] fanOut = new long[FAN_OUT_SIZE];
+            readLongs(channel, fanOutOffset, fanOut);
+            long[] bloomFilterWords = new long[(int) bloomFilterWordCount];
+            readLongs(channel, bloomFilterOffset, bloomFilterWords);
+
+            int entriesPerSegment = Integer.MAX_VALUE / hashLength;
+            int segmentCount = (int) ((entryCount + entriesPerSegment - 1) / entriesPerSegment);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long first = (long) i * entriesPerSegment;
+                long count = Math.min(entriesPerSegment, entryCount - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * hashLength,
+                        count * hashLength);
+            }
+            return new BreachedPasswordIndex(file, hashLength, entryCount, fanOut,
+                    new BloomFilter(bloomFilterWords, bloomFilterHashCount), segments, entriesPerSegment);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether a hash is in the index.
+     *
+     * @param hash The hash of a password
+     * @return True if the hash is in the index
+     */
+    public boolean contains(byte[] hash) {
+        if (hash.length != hashLength || !bloomFilter.mightContain(hash)) {
+            return false;
+        }
+        int prefix = ((hash[0] & 0xFF) << 8) | (hash[1] & 0xFF);
+        long low = fanOut[prefix];
+        long high = fanOut[prefix + 1] - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            int comparison = compare(middle, hash);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getHashLength() {
+        return hashLength;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapped buffers are released when they are garbage collected
+        file.close();
+    }
+
+    private int compare(long entry, byte[] hash) {
+        MappedByteBuffer segment = segments[(int) (entry / entriesPerSegment)];
+        int offset = (int) (entry % entriesPerSegment) * hashLength;
+        for (int i = 0; i < hashLength; i++) {
+            int difference = (segment.get(offset + i) & 0xFF) - (hash[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    private static void readLongs(FileChannel channel, long offset, long[] longs) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        int index = 0;
+        while (index < longs.length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(READ_BUFFER_SIZE, (long) (longs.length - index) * 8));
+            readFully(channel, buffer, offset + (long) index * 8);
+            buffer.flip();
+            while (buffer.remaining() >= 8) {
+                longs[index++] = buffer.getLong();
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the breached password index");
+            }
+        }
+    }
+}
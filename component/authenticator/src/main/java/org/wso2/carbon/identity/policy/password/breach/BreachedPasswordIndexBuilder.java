@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.breach;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a {@link BreachedPasswordIndex} from a list of hexadecimal SHA-1 password hashes, one per line.
+ * <p>
+ * Anything after a ':' in a line is ignored, so the downloadable hash lists with the breach counts can be used as
+ * they are. The list does not need to be sorted. It is sorted in runs which fit in the memory and the runs are
+ * merged, so lists of hundreds of millions of hashes can be indexed.
+ * <pre>
+ * java -cp org.wso2.carbon.extension.identity.authenticator.passwordpolicy.connector-&lt;version&gt;.jar \
+ *     org.wso2.carbon.identity.policy.password.breach.BreachedPasswordIndexBuilder \
+ *     pwned-passwords-sha1.txt breached-passwords.idx
+ * </pre>
+ */
+public class BreachedPasswordIndexBuilder {
+    public static final int SHA1_HASH_LENGTH = 20;
+    public static final int DEFAULT_BITS_PER_ENTRY = 10;
+    public static final int DEFAULT_RUN_SIZE = 1 << 20;
+
+    private static final Comparator<byte[]> HASH_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] hash1, byte[] hash2) {
+            for (int i = 0; i < hash1.length; i++) {
+                int difference = (hash1[i] & 0xFF) - (hash2[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return 0;
+        }
+    };
+
+    private final int bitsPerEntry;
+    private final int runSize;
+
+    /**
+     * @param bitsPerEntry The number of Bloom filter bits per hash, where 10 bits give about 1% false positives
+     * @param runSize      The number of hashes sorted in the memory at a time
+     */
+    public BreachedPasswordIndexBuilder(int bitsPerEntry, int runSize) {
+        this.bitsPerEntry = bitsPerEntry;
+        this.runSize = runSize;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BreachedPasswordIndexBuilder <SHA-1 hash list> <index file> "
+                    + "[Bloom filter bits per hash, default " + DEFAULT_BITS_PER_ENTRY + "]");
+            System.exit(1);
+        }
+        int bitsPerEntry = args.length == 3 ? Integer.parseInt(args[2]) : DEFAULT_BITS_PER_ENTRY;
+        long entryCount;
+        try (Reader reader = Files.newBufferedReader(new File(args[0]).toPath(), StandardCharsets.US_ASCII)) {
+            entryCount = new BreachedPasswordIndexBuilder(bitsPerEntry, DEFAULT_RUN_SIZE)
+                    .build(reader, new File(args[1]));
+        }
+        System.out.println("Indexed " + entryCount + " distinct hashes to " + args[1]);
+    }
+
+    /**
+     * Build an index.
+     *
+     * @param hashList  The list of hexadecimal hashes
+     * @param indexFile The index file to write
+     * @return The number of distinct hashes in the index
+     * @throws IOException if the list could not be read, has an invalid hash or the index could not be written
+     */
+    public long build(Reader hashList, File indexFile) throws IOException {
+        List<File> runs = new ArrayList<>();
+        try {
+            writeRuns(hashList, runs);
+            return writeIndex(runs, indexFile);
+        } finally {
+            for (File run : runs) {
+                Files.deleteIfExists(run.toPath());
+            }
+        }
+    }
+
+    private void writeRuns(Reader hashList, List<File> runs) throws IOException {
+        BufferedReader reader = new BufferedReader(hashList);
+        List<byte[]> run = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int end = line.indexOf(':');
+            String hex = (end < 0 ? line : line.substring(0, end)).trim();
+            if (hex.isEmpty() || hex.startsWith("#")) {
+                continue;
+            }
+            run.add(parseHash(hex, lineNumber));
+            if (run.size() >= runSize) {
+                runs.add(writeRun(run));
+                run.clear();
+            }
+        }
+        if (!run.isEmpty() || runs.isEmpty()) {
+            runs.add(writeRun(run));
+        }
+    }
+
+    private File writeRun(List<byte[]> run) throws IOException {
+        byte[][] hashes = run.toArray(new byte[run.size()][]);
+        Arrays.sort(hashes, HASH_ORDER);
+        File file = File.createTempFile("breached-passwords-", ".run");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (byte[] hash : hashes) {
+                output.write(hash);
+            }
+        }
+        return file;
+    }
+
+    private long writeIndex(List<File> runs, File indexFile) throws IOException {
+        long[] fanOut = new long[BreachedPasswordIndex.FAN_OUT_SIZE];
+        long entryCount = 0;
+
+        // Merge the sorted runs, dropping the duplicates
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFile)))) {
+            output.write(new byte[BreachedPasswordIndex.HEADER_SIZE]);
+            PriorityQueue<RunReader> readers = new PriorityQueue<>(runs.size(), new Comparator<RunReader>() {
+                @Override
+                public int compare(RunReader reader1, RunReader reader2) {
+                    return HASH_ORDER.compare(reader1.hash, reader2.hash);
+                }
+            });
+            try {
+                for (File run : runs) {
+                    RunReader reader = new RunReader(run);
+                    if (reader.next()) {
+                        readers.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+                byte[] previous = null;
+                while (!readers.isEmpty()) {
+                    RunReader reader = readers.poll();
+                    if (previous == null || HASH_ORDER.compare(previous, reader.hash) != 0) {
+                        output.write(reader.hash);
+                        fanOut[(((reader.hash[0] & 0xFF) << 8) | (reader.hash[1] & 0xFF)) + 1]++;
+                        entryCount++;
+                        previous = reader.hash.clone();
+                    }
+                    if (reader.next()) {
+                        readers.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.close();
+                }
+            }
+        }
+
+        for (int i = 1; i < fanOut.length; i++) {
+            fanOut[i] += fanOut[i - 1];
+        }
+
+        // The Bloom filter is sized by the number of distinct hashes, so it is built from the written hashes
+        BloomFilter bloomFilter = BloomFilter.create(entryCount, bitsPerEntry);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            input.readFully(new byte[BreachedPasswordIndex.HEADER_SIZE]);
+            byte[] hash = new byte[SHA1_HASH_LENGTH];
+            for (long i = 0; i < entryCount; i++) {
+                input.readFully(hash);
+                bloomFilter.add(hash);
+            }
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFile, true)))) {
+            for (long position : fanOut) {
+                output.writeLong(position);
+            }
+            for (long word : bloomFilter.getWords()) {
+                output.writeLong(word);
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+            file.writeInt(BreachedPasswordIndex.MAGIC);
+            file.writeInt(BreachedPasswordIndex.VERSION);
+            file.writeInt(SHA1_HASH_LENGTH);
+            file.writeInt(0);
+            file.writeLong(entryCount);
+            file.writeLong(bloomFilter.getWords().length);
+            file.writeInt(bloomFilter.getHashCount());
+            file.writeInt(0);
+        }
+        return entryCount;
+    }
+
+    private static byte[] parseHash(String hex, int lineNumber) throws IOException {
+        if (hex.length() != SHA1_HASH_LENGTH * 2) {
+            throw new IOException("Invalid SHA-1 hash at line " + lineNumber);
+        }
+        byte[] hash = new byte[SHA1_HASH_LENGTH];
+        for (int i = 0; i < SHA1_HASH_LENGTH; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Invalid SHA-1 hash at line " + lineNumber);
+            }
+            hash[i] = (byte) ((high << 4) | low);
+        }
+        return hash;
+    }
+
+    /**
+     * Reads the hashes of a sorted run one at a time.
+     */
+    private static final class RunReader {
+        private final DataInputStream input;
+        private final byte[] hash = new byte[SHA1_HASH_LENGTH];
+
+        private RunReader(File run) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+        }
+
+        private boolean next() throws IOException {
+            try {
+                input.readFully(hash);
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        private void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded cache which evicts the least recently used entries.
+ * Entries can optionally be expired after a fixed time since they were added.
+ * <p>
+ * The entries are spread over a fixed number of segments, each guarded by its own lock,
+ * so that concurrent requests for different keys rarely contend with each other.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the cached values
+ */
+public class LRUCache<K, V> {
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long timeToLiveMillis;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Create a cache which holds at most the given number of entries.
+     *
+     * @param maxEntries The maximum number of entries held by the cache
+     */
+    public LRUCache(int maxEntries) {
+        this(maxEntries, 0);
+    }
+
+    /**
+     * Create a cache which holds at most the given number of entries for at most the given time.
+     *
+     * @param maxEntries       The maximum number of entries held by the cache
+     * @param timeToLiveMillis The time after which an entry expires. Entries never expire if this is not positive.
+     */
+    @SuppressWarnings("unchecked")
+    public LRUCache(int maxEntries, long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        int segmentCapacity = Math.max(1, (maxEntries + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment<>(segmentCapacity);
+        }
+    }
+
+    /**
+     * Get the value cached against a key.
+     *
+     * @param key The key of the entry
+     * @return The cached value or null if there is no such entry
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        CacheEntry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+                segment.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Add or replace the value cached against a key.
+     *
+     * @param key   The key of the entry
+     * @param value The value to be cached
+     */
+    public void put(K key, V value) {
+        long expiryTime = timeToLiveMillis > 0 ? System.currentTimeMillis() + timeToLiveMillis : Long.MAX_VALUE;
+        CacheEntry<V> entry = new CacheEntry<>(value, expiryTime);
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    /**
+     * Remove the entry cached against a key.
+     *
+     * @param key The key of the entry
+     */
+    public void remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Remove all the entries whose keys match the given matcher.
+     *
+     * @param keyMatcher The matcher which selects the keys of the entries to be removed
+     */
+    public void removeAll(KeyMatcher<K> keyMatcher) {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                Iterator<K> keys = segment.keySet().iterator();
+                while (keys.hasNext()) {
+                    if (keyMatcher.matches(keys.next())) {
+                        keys.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all the entries in the cache.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries in the cache.
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * Selects the keys of the entries to be removed from the cache.
+     *
+     * @param <K> The type of the keys
+     */
+    public interface KeyMatcher<K> {
+        boolean matches(K key);
+    }
+
+    /**
+     * A cached value along with the time at which it expires.
+     */
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expiryTime;
+
+        CacheEntry(V value, long expiryTime) {
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+
+        boolean isExpired(long currentTime) {
+            return currentTime >= expiryTime;
+        }
+    }
+
+    /**
+     * An access ordered map which drops its eldest entry once the capacity is exceeded.
+     */
+    private static class Segment<K, V> extends LinkedHashMap<K, CacheEntry<V>> {
+        private static final long serialVersionUID = -2318419512407417457L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.Locale;
+
+/**
+ * Cache of the compiled password format rules, keyed by the tenant and the user store domain.
+ */
+public class PasswordPatternCache {
+    private static final Log log = LogFactory.getLog(PasswordPatternCache.class);
+
+    private static final PasswordPatternCache instance = new PasswordPatternCache();
+
+    private final LRUCache<String, PasswordPatternRule> cache;
+    private final long matchTimeoutMillis;
+
+    private PasswordPatternCache() {
+        String maxEntriesProperty = PasswordPolicyUtils.getIdentityEventProperty(
+                MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.PASSWORD_PATTERN_CACHE_MAX_ENTRIES);
+        int maxEntries = NumberUtils.toInt(maxEntriesProperty,
+                PasswordPolicyConstants.PASSWORD_PATTERN_CACHE_MAX_ENTRIES_DEFAULT_VALUE);
+        cache = new LRUCache<>(maxEntries);
+
+        String matchTimeoutProperty = PasswordPolicyUtils.getIdentityEventProperty(
+                MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.PASSWORD_PATTERN_MATCH_TIMEOUT);
+        matchTimeoutMillis = NumberUtils.toLong(matchTimeoutProperty,
+                PasswordPolicyConstants.PASSWORD_PATTERN_MATCH_TIMEOUT_DEFAULT_VALUE);
+    }
+
+    /**
+     * Return a singleton instance of the PasswordPatternCache
+     *
+     * @return A singleton instance of the PasswordPatternCache
+     */
+    public static PasswordPatternCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the compiled password format rule of a user store.
+     * The rule is compiled and cached if it is not cached or if the realm configuration had changed.
+     *
+     * @param tenantId           The tenant to which the user store belongs to
+     * @param domain             The domain name of the user store
+     * @param realmConfiguration The current realm configuration of the user store
+     * @return The compiled password format rule
+     */
+    public PasswordPatternRule getRule(int tenantId, String domain, RealmConfiguration realmConfiguration) {
+        String key = getKey(tenantId, domain);
+        PasswordPatternRule rule = cache.get(key);
+        if (rule == null || !rule.isCompiledFrom(realmConfiguration)) {
+            rule = PasswordPatternRule.compile(realmConfiguration, matchTimeoutMillis);
+            cache.put(key, rule);
+            if (log.isDebugEnabled()) {
+                log.debug("Compiled the password format rule of the user store " + domain + " in tenant " + tenantId);
+            }
+        }
+        return rule;
+    }
+
+    /**
+     * Remove the cached password format rule of a user store.
+     *
+     * @param tenantId The tenant to which the user store belongs to
+     * @param domain   The domain name of the user store
+     */
+    public void invalidate(int tenantId, String domain) {
+        cache.remove(getKey(tenantId, domain));
+    }
+
+    /**
+     * Remove the cached password format rules of all the user stores of a tenant.
+     *
+     * @param tenantId The tenant
+     */
+    public void invalidate(int tenantId) {
+        final String keyPrefix = tenantId + ":";
+        cache.removeAll(new LRUCache.KeyMatcher<String>() {
+            @Override
+            public boolean matches(String key) {
+                return key.startsWith(keyPrefix);
+            }
+        });
+    }
+
+    /**
+     * Remove all the cached password format rules.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    private String getKey(int tenantId, String domain) {
+        if (StringUtils.isBlank(domain)) {
+            domain = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+        }
+        return tenantId + ":" + domain.toUpperCase(Locale.ENGLISH);
+    }
+}
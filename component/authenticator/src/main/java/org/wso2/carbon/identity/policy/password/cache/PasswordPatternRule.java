@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.pattern.PasswordMatcher;
+import org.wso2.carbon.identity.policy.password.pattern.PasswordMatcherCompiler;
+import org.wso2.carbon.identity.policy.password.pattern.PasswordRules;
+import org.wso2.carbon.user.api.RealmConfiguration;
+
+/**
+ * The password format rule and the structured password rules of a user store, compiled from its realm
+ * configuration.
+ */
+public class PasswordPatternRule {
+    private final RealmConfiguration realmConfiguration;
+    private final String regularExpression;
+    private final PasswordMatcher matcher;
+    private final String violationErrorMessage;
+    private final PasswordRules rules;
+
+    private PasswordPatternRule(RealmConfiguration realmConfiguration, String regularExpression,
+                                PasswordMatcher matcher, String violationErrorMessage, PasswordRules rules) {
+        this.realmConfiguration = realmConfiguration;
+        this.regularExpression = regularExpression;
+        this.matcher = matcher;
+        this.violationErrorMessage = violationErrorMessage;
+        this.rules = rules;
+    }
+
+    /**
+     * Compile the password format rule of a user store, without a time budget for the formats which can not be
+     * matched in linear time.
+     *
+     * @param realmConfiguration The realm configuration of the user store
+     * @return The compiled password format rule
+     */
+    public static PasswordPatternRule compile(RealmConfiguration realmConfiguration) {
+        return compile(realmConfiguration, 0);
+    }
+
+    /**
+     * Compile the password format rule of a user store.
+     *
+     * @param realmConfiguration The realm configuration of the user store
+     * @param matchTimeoutMillis The time budget in milliseconds of matching a password against a format which can
+     *                           not be matched in linear time, or 0 for no budget
+     * @return The compiled password format rule
+     */
+    public static PasswordPatternRule compile(RealmConfiguration realmConfiguration, long matchTimeoutMillis) {
+        PasswordRules rules = PasswordRules.compile(
+                NumberUtils.toInt(realmConfiguration
+                        .getUserStoreProperty(PasswordPolicyConstants.PASSWORD_MIN_LENGTH_PROPERTY)),
+                NumberUtils.toInt(realmConfiguration
+                        .getUserStoreProperty(PasswordPolicyConstants.PASSWORD_MAX_LENGTH_PROPERTY)),
+                realmConfiguration.getUserStoreProperty(PasswordPolicyConstants.PASSWORD_REQUIRED_CHARACTERS_PROPERTY),
+                NumberUtils.toInt(realmConfiguration
+                        .getUserStoreProperty(PasswordPolicyConstants.PASSWORD_MAX_REPEATED_CHARACTERS_PROPERTY)),
+                realmConfiguration.getUserStoreProperty(PasswordPolicyConstants.PASSWORD_BANNED_SEQUENCES_PROPERTY));
+
+        String regularExpression = realmConfiguration
+                .getUserStoreProperty(PasswordPolicyConstants.PASSWORD_JAVA_REG_EX_PROPERTY);
+        if (StringUtils.isEmpty(regularExpression)) {
+            return new PasswordPatternRule(realmConfiguration, null, null, null, rules);
+        }
+
+        String errorMsg = realmConfiguration
+                .getUserStoreProperty(PasswordPolicyConstants.PASSWORD_JAVA_REG_EX_VIOLATION_ERROR_MSG_PROPERTY);
+        if (StringUtils.isEmpty(errorMsg)) {
+            errorMsg = "New password doesn't meet the policy requirement. " +
+                    "It must be in the following format, " + regularExpression;
+        }
+        return new PasswordPatternRule(realmConfiguration, regularExpression,
+                PasswordMatcherCompiler.compile(regularExpression, matchTimeoutMillis), errorMsg, rules);
+    }
+
+    /**
+     * Check if this rule was compiled from the given realm configuration.
+     * <p>
+     * A redeployed user store gets a new realm configuration instance, therefore a rule compiled
+     * from an older instance is considered stale.
+     *
+     * @param realmConfiguration The current realm configuration of the user store
+     * @return True if the rule is up to date with the realm configuration
+     */
+    public boolean isCompiledFrom(RealmConfiguration realmConfiguration) {
+        return this.realmConfiguration == realmConfiguration;
+    }
+
+    public boolean hasPattern() {
+        return matcher != null;
+    }
+
+    public String getRegularExpression() {
+        return regularExpression;
+    }
+
+    public PasswordMatcher getMatcher() {
+        return matcher;
+    }
+
+    public String getViolationErrorMessage() {
+        return violationErrorMessage;
+    }
+
+    public PasswordRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Get the error message of all the rules a password violates.
+     *
+     * @param ruleViolations  The violations of the structured rules, returned by {@link PasswordRules#evaluate}
+     * @param formatViolation True if the password is not in the format
+     * @return The error message
+     */
+    public String getViolationErrorMessage(int ruleViolations, boolean formatViolation) {
+        StringBuilder errorMessage = new StringBuilder();
+        for (String ruleViolationMessage : rules.getViolationMessages(ruleViolations)) {
+            errorMessage.append(errorMessage.length() > 0 ? " " : "").append(ruleViolationMessage);
+        }
+        if (formatViolation) {
+            errorMessage.append(errorMessage.length() > 0 ? " " : "").append(violationErrorMessage);
+        }
+        return errorMessage.toString();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.Locale;
+
+/**
+ * Cache of the last password update timestamps of the users, keyed by the tenant, the user store domain
+ * and the username.
+ * <p>
+ * The entries expire after the configured timeout, which bounds how long a node can miss a password
+ * update done through another node of a cluster. The cache is local to a node and is not invalidated across the
+ * cluster, so it should be disabled or given a short timeout unless the logins of a user stick to one node.
+ * <p>
+ * The timestamps are kept in a {@link UserTimestampTable}, so that caching the timestamps of millions of users
+ * neither holds an object per user nor adds to the garbage collection work.
+ */
+public class PasswordUpdateTimeCache {
+    private static final PasswordUpdateTimeCache instance = new PasswordUpdateTimeCache();
+
+    private final UserTimestampTable cache;
+
+    private PasswordUpdateTimeCache() {
+        int maxEntries = NumberUtils.toInt(PasswordPolicyUtils.getIdentityEventProperty(
+                MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.PASSWORD_UPDATE_TIME_CACHE_MAX_ENTRIES),
+                PasswordPolicyConstants.PASSWORD_UPDATE_TIME_CACHE_MAX_ENTRIES_DEFAULT_VALUE);
+        int timeoutInSeconds = NumberUtils.toInt(PasswordPolicyUtils.getIdentityEventProperty(
+                MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.PASSWORD_UPDATE_TIME_CACHE_TIMEOUT),
+                PasswordPolicyConstants.PASSWORD_UPDATE_TIME_CACHE_TIMEOUT_DEFAULT_VALUE);
+
+        if (maxEntries > 0 && timeoutInSeconds > 0) {
+            cache = new UserTimestampTable(maxEntries, timeoutInSeconds * 1000L);
+        } else {
+            cache = null;       // Caching is disabled
+        }
+    }
+
+    /**
+     * Return a singleton instance of the PasswordUpdateTimeCache
+     *
+     * @return A singleton instance of the PasswordUpdateTimeCache
+     */
+    public static PasswordUpdateTimeCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the cached last password update timestamp of a user.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user, which may contain the user store domain
+     * @return The last password update timestamp or null if it is not cached
+     */
+    public Long get(String tenantDomain, String tenantAwareUsername) {
+        if (cache == null) {
+            return null;
+        }
+        long timestamp = cache.get(getUserKey(tenantDomain, tenantAwareUsername));
+        return timestamp == UserTimestampTable.NO_VALUE ? null : timestamp;
+    }
+
+    /**
+     * Cache the last password update timestamp of a user.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user, which may contain the user store domain
+     * @param timestamp           The last password update timestamp
+     */
+    public void put(String tenantDomain, String tenantAwareUsername, long timestamp) {
+        if (cache != null) {
+            cache.put(getUserKey(tenantDomain, tenantAwareUsername), timestamp);
+        }
+    }
+
+    /**
+     * Cache the last password update timestamp of a user read from the user store, unless a later timestamp is
+     * already cached. A password change cached while the read was in progress is therefore not lost.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user, which may contain the user store domain
+     * @param timestamp           The last password update timestamp read from the user store
+     */
+    public void putIfNewer(String tenantDomain, String tenantAwareUsername, long timestamp) {
+        if (cache != null) {
+            cache.putIfNewer(getUserKey(tenantDomain, tenantAwareUsername), timestamp);
+        }
+    }
+
+    /**
+     * Remove the cached last password update timestamp of a user.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user, which may contain the user store domain
+     */
+    public void invalidate(String tenantDomain, String tenantAwareUsername) {
+        if (cache != null) {
+            cache.remove(getUserKey(tenantDomain, tenantAwareUsername));
+        }
+    }
+
+    /**
+     * Remove all the cached last password update timestamps.
+     */
+    public void clear() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    public long getHitCount() {
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache == null ? 0 : cache.getMissCount();
+    }
+
+    /**
+     * Get the key identifying a user across the tenants and the user stores.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user, which may contain the user store domain
+     * @return The key of the user
+     */
+    public static String getUserKey(String tenantDomain, String tenantAwareUsername) {
+        String domain = UserCoreUtil.extractDomainFromName(tenantAwareUsername);
+        if (StringUtils.isBlank(domain)) {
+            domain = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+        }
+        return tenantDomain + ":" + domain.toUpperCase(Locale.ENGLISH) + ":"
+                + UserCoreUtil.removeDomainFromName(tenantAwareUsername);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cache;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.wso2.carbon.identity.policy.password.PasswordExpiryDecision;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+/**
+ * Cache of the password expiry deadlines established in the SSO sessions, keyed by the user and the session.
+ * <p>
+ * Once the password of a user is found to be valid until a deadline, the later authentications of the user in the
+ * same SSO session, such as the logins to the other service providers, are allowed without reading the last
+ * password update time again until the deadline passes or the expiry policy of the tenant changes.
+ * <p>
+ * The deadlines are kept on the node which checked the password, rather than in the replicated session context of
+ * the framework. An authentication of the same session served by another node of a cluster therefore reads the last
+ * password update time again and records the deadline on that node. This only costs a read, since a password
+ * change made through another node moves the deadline later, and a change of the expiry policy is checked on each use.
+ */
+public class SessionExpiryDeadlineCache {
+    private static final SessionExpiryDeadlineCache instance = new SessionExpiryDeadlineCache();
+
+    private final LRUCache<String, PasswordExpiryDecision> cache;
+
+    private SessionExpiryDeadlineCache() {
+        int maxEntries = NumberUtils.toInt(PasswordPolicyUtils.getIdentityEventProperty(
+                MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.SESSION_EXPIRY_DEADLINE_CACHE_MAX_ENTRIES),
+                PasswordPolicyConstants.SESSION_EXPIRY_DEADLINE_CACHE_MAX_ENTRIES_DEFAULT_VALUE);
+        int timeoutInSeconds = NumberUtils.toInt(PasswordPolicyUtils.getIdentityEventProperty(
+                MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.SESSION_EXPIRY_DEADLINE_CACHE_TIMEOUT),
+                PasswordPolicyConstants.SESSION_EXPIRY_DEADLINE_CACHE_TIMEOUT_DEFAULT_VALUE);
+
+        if (maxEntries > 0 && timeoutInSeconds > 0) {
+            cache = new LRUCache<>(maxEntries, timeoutInSeconds * 1000L);
+        } else {
+            cache = null;       // Caching is disabled
+        }
+    }
+
+    /**
+     * Return a singleton instance of the SessionExpiryDeadlineCache
+     *
+     * @return A singleton instance of the SessionExpiryDeadlineCache
+     */
+    public static SessionExpiryDeadlineCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the expiry decision recorded for a user in an SSO session, if the password is still valid under it.
+     *
+     * @param sessionIdentifier    The identifier of the SSO session
+     * @param tenantDomain         The tenant domain of the user
+     * @param tenantAwareUsername  The tenant aware username of the user, which may contain the user store domain
+     * @param passwordExpiryInDays The current password expiry policy of the tenant
+     * @return The decision or null if there is no valid decision for the user in the session
+     */
+    public PasswordExpiryDecision get(String sessionIdentifier, String tenantDomain, String tenantAwareUsername,
+                                      int passwordExpiryInDays) {
+        if (cache == null || sessionIdentifier == null) {
+            return null;
+        }
+        String key = getKey(sessionIdentifier, tenantDomain, tenantAwareUsername);
+        PasswordExpiryDecision decision = cache.get(key);
+        if (decision == null) {
+            return null;
+        }
+        Long deadline = decision.getDeadline();
+        if (decision.getPasswordExpiryInDays() != passwordExpiryInDays || deadline == null
+                || System.currentTimeMillis() >= deadline) {
+            // The policy changed or the password expired since the decision was made
+            cache.remove(key);
+            return null;
+        }
+        return decision;
+    }
+
+    /**
+     * Record the expiry decision of a user in an SSO session. Only the decisions of the passwords which have not
+     * expired are recorded.
+     *
+     * @param sessionIdentifier The identifier of the SSO session
+     * @param decision          The expiry decision
+     */
+    public void put(String sessionIdentifier, PasswordExpiryDecision decision) {
+        if (cache != null && sessionIdentifier != null && decision.getDeadline() != null) {
+            cache.put(getKey(sessionIdentifier, decision.getTenantDomain(), decision.getTenantAwareUsername()),
+                    decision);
+        }
+    }
+
+    /**
+     * Remove the recorded expiry decisions of all the users of a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     */
+    public void invalidateTenant(String tenantDomain) {
+        if (cache != null) {
+            final String keyPrefix = tenantDomain + ":";
+            cache.removeAll(new LRUCache.KeyMatcher<String>() {
+                @Override
+                public boolean matches(String key) {
+                    return key.startsWith(keyPrefix);
+                }
+            });
+        }
+    }
+
+    /**
+     * Remove the recorded expiry decisions of a user in all the sessions.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user, which may contain the user store domain
+     */
+    public void invalidateUser(String tenantDomain, String tenantAwareUsername) {
+        if (cache != null) {
+            final String keyPrefix = PasswordUpdateTimeCache.getUserKey(tenantDomain, tenantAwareUsername) + ":";
+            cache.removeAll(new LRUCache.KeyMatcher<String>() {
+                @Override
+                public boolean matches(String key) {
+                    // The session identifiers do not contain a colon, unlike the keys of the other users
+                    return key.startsWith(keyPrefix) && key.indexOf(':', keyPrefix.length()) < 0;
+                }
+            });
+        }
+    }
+
+    /**
+     * Remove all the recorded expiry decisions.
+     */
+    public void clear() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    private static String getKey(String sessionIdentifier, String tenantDomain, String tenantAwareUsername) {
+        return PasswordUpdateTimeCache.getUserKey(tenantDomain, tenantAwareUsername) + ":" + sessionIdentifier;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces the concurrent loads of the same key into a single load, whose result is shared by all the callers
+ * which asked for the key while it was in flight.
+ * <p>
+ * The load runs in the thread of the first caller and nothing is kept once it completes, so a caller which arrives
+ * after the load completed starts a new load. The in-flight loads are tracked in a concurrent map without locking.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the loaded values
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Load the value of a key, or wait for the load of the key which is already in flight.
+     *
+     * @param key    The key
+     * @param loader The loader which is called if no load of the key is in flight
+     * @return The loaded value
+     * @throws ExecutionException if the load failed, with the exception thrown by the loader as the cause
+     */
+    public V load(K key, Callable<V> loader) throws ExecutionException {
+        FutureTask<V> task = new FutureTask<>(loader);
+        FutureTask<V> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            running = task;
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return running.get();
+                } catch (InterruptedException e) {
+                    // The shared load is not abandoned, since the other callers wait for it as well
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Get the number of loads which are in flight.
+     *
+     * @return The number of loads in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
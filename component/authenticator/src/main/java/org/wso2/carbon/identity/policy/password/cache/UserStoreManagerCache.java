@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.service.RealmService;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the tenant ids and the primary user store managers of the tenants.
+ * <p>
+ * The secondary user store managers are always resolved through the cached primary user store manager.
+ * A redeployed secondary user store replaces the entry held by the primary user store manager, therefore
+ * it is picked up without invalidating this cache. The entries of a tenant are dropped when the tenant is
+ * unloaded, and all the entries are dropped if the realm service changes.
+ */
+public class UserStoreManagerCache {
+    private static final Log log = LogFactory.getLog(UserStoreManagerCache.class);
+
+    private static final UserStoreManagerCache instance = new UserStoreManagerCache();
+
+    private final ConcurrentMap<String, TenantUserStore> tenantUserStores = new ConcurrentHashMap<>();
+    private volatile RealmService realmService;
+
+    private UserStoreManagerCache() {     // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the UserStoreManagerCache
+     *
+     * @return A singleton instance of the UserStoreManagerCache
+     */
+    public static UserStoreManagerCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the tenant id of a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The tenant id
+     * @throws UserStoreException if the user realm of the tenant could not be loaded
+     */
+    public int getTenantId(String tenantDomain) throws UserStoreException {
+        return getTenantUserStore(tenantDomain).tenantId;
+    }
+
+    /**
+     * Get the primary user store manager of a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The primary user store manager of the tenant
+     * @throws UserStoreException if the user realm of the tenant could not be loaded
+     */
+    public UserStoreManager getUserStoreManager(String tenantDomain) throws UserStoreException {
+        return getTenantUserStore(tenantDomain).userStoreManager;
+    }
+
+    /**
+     * Get the user store manager of a user store of a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     * @param domain       The domain name of the user store. The primary user store is used if this is blank.
+     * @return The user store manager of the user store
+     * @throws UserStoreException if the user realm of the tenant could not be loaded
+     */
+    public UserStoreManager getUserStoreManager(String tenantDomain, String domain) throws UserStoreException {
+        UserStoreManager userStoreManager = getUserStoreManager(tenantDomain);
+        if (StringUtils.isNotBlank(domain) && !UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equals(domain)) {
+            userStoreManager = userStoreManager.getSecondaryUserStoreManager(domain);
+        }
+        return userStoreManager;
+    }
+
+    /**
+     * Drop the cached user store manager of a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     */
+    public void invalidate(String tenantDomain) {
+        tenantUserStores.remove(tenantDomain);
+    }
+
+    /**
+     * Drop the cached user store managers of all the tenants.
+     */
+    public void clear() {
+        tenantUserStores.clear();
+    }
+
+    private TenantUserStore getTenantUserStore(String tenantDomain) throws UserStoreException {
+        RealmService currentRealmService = IdentityTenantUtil.getRealmService();
+        if (currentRealmService != realmService) {
+            // The cached user store managers belong to the previous realm service
+            tenantUserStores.clear();
+            realmService = currentRealmService;
+        }
+
+        TenantUserStore tenantUserStore = tenantUserStores.get(tenantDomain);
+        if (tenantUserStore == null) {
+            int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+            UserRealm userRealm = currentRealmService.getTenantUserRealm(tenantId);
+            tenantUserStore = new TenantUserStore(tenantId, (UserStoreManager) userRealm.getUserStoreManager());
+            tenantUserStores.put(tenantDomain, tenantUserStore);
+            if (log.isDebugEnabled()) {
+                log.debug("Cached the user store manager of the tenant: " + tenantDomain);
+            }
+        }
+        return tenantUserStore;
+    }
+
+    /**
+     * The tenant id and the primary user store manager of a tenant.
+     */
+    private static class TenantUserStore {
+        private final int tenantId;
+        private final UserStoreManager userStoreManager;
+
+        TenantUserStore(int tenantId, UserStoreManager userStoreManager) {
+            this.tenantId = tenantId;
+            this.userStoreManager = userStoreManager;
+        }
+    }
+}
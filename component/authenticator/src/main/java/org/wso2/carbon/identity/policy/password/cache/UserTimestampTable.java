@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cache;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded table of timestamps keyed by the users, which holds millions of entries without a per entry object.
+ * <p>
+ * A user key is only kept as a 128 bit hash, computed with seeds chosen randomly for each table, so that keys which
+ * collide can not be crafted. The entries are kept in open addressed {@code long} arrays with linear probing,
+ * which take 32 bytes per slot. At most three quarters of the slots are used, and the arrays only grow as entries
+ * are added. Once the table is full, an entry which has expired or has not been read since the clock hand last
+ * passed it is evicted, which approximates evicting the least recently used entry.
+ * <p>
+ * The entries are spread over a fixed number of segments, each guarded by its own lock, so that concurrent reads
+ * and writes of different users rarely contend with each other.
+ */
+public class UserTimestampTable {
+    /**
+     * The value returned when there is no timestamp for a user.
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int SEGMENT_SHIFT = 60;
+    private static final int MIN_CAPACITY = 16;
+
+    // The layout of a slot
+    private static final int SLOT_WIDTH = 4;
+    private static final int KEY_HIGH = 0;
+    private static final int KEY_LOW = 1;
+    private static final int VALUE = 2;
+    private static final int EXPIRY = 3;
+
+    // The expiry time of an entry is relative to the creation of the table
+    private static final long NEVER_EXPIRES = Long.MAX_VALUE;
+
+    private static final long MULTIPLIER_1 = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final Segment[] segments;
+    private final long timeToLiveMillis;
+    private final long baseTime;
+    private final long seed1;
+    private final long seed2;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Create a table which holds at most the given number of entries for at most the given time.
+     *
+     * @param maxEntries       The maximum number of entries held by the table
+     * @param timeToLiveMillis The time after which an entry expires. Entries never expire if this is not positive.
+     */
+    public UserTimestampTable(int maxEntries, long timeToLiveMillis) {
+        Random random = new SecureRandom();
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.baseTime = System.currentTimeMillis();
+        this.seed1 = random.nextLong();
+        this.seed2 = random.nextLong();
+        int segmentEntries = Math.max(1, (maxEntries + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentEntries);
+        }
+    }
+
+    /**
+     * Get the timestamp of a user.
+     *
+     * @param userKey The key of the user
+     * @return The timestamp or {@link #NO_VALUE} if there is no such entry
+     */
+    public long get(String userKey) {
+        long keyHigh = hash(userKey, seed1, MULTIPLIER_1);
+        long keyLow = hash(userKey, seed2, MULTIPLIER_2) | 1;
+        long value;
+        Segment segment = segmentFor(keyHigh);
+        synchronized (segment) {
+            value = segment.get(keyHigh, keyLow, getRelativeTime());
+        }
+        if (value == NO_VALUE) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Add or replace the timestamp of a user.
+     *
+     * @param userKey   The key of the user
+     * @param timestamp The timestamp
+     */
+    public void put(String userKey, long timestamp) {
+        put(userKey, timestamp, false);
+    }
+
+    /**
+     * Add the timestamp of a user, unless a later timestamp of the user is already in the table.
+     * This is used for the timestamps read from the user store, which must not replace a newer timestamp written
+     * while the read was in progress.
+     *
+     * @param userKey   The key of the user
+     * @param timestamp The timestamp
+     */
+    public void putIfNewer(String userKey, long timestamp) {
+        put(userKey, timestamp, true);
+    }
+
+    private void put(String userKey, long timestamp, boolean newerOnly) {
+        long keyHigh = hash(userKey, seed1, MULTIPLIER_1);
+        long keyLow = hash(userKey, seed2, MULTIPLIER_2) | 1;
+        long now = getRelativeTime();
+        long expiryTime = timeToLiveMillis > 0 ? now + timeToLiveMillis : NEVER_EXPIRES;
+        Segment segment = segmentFor(keyHigh);
+        synchronized (segment) {
+            segment.put(keyHigh, keyLow, timestamp, expiryTime, now, newerOnly);
+        }
+    }
+
+    /**
+     * Remove the timestamp of a user.
+     *
+     * @param userKey The key of the user
+     */
+    public void remove(String userKey) {
+        long keyHigh = hash(userKey, seed1, MULTIPLIER_1);
+        long keyLow = hash(userKey, seed2, MULTIPLIER_2) | 1;
+        Segment segment = segmentFor(keyHigh);
+        synchronized (segment) {
+            segment.remove(keyHigh, keyLow);
+        }
+    }
+
+    /**
+     * Remove all the entries in the table.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries in the table, including the expired entries which are not yet removed.
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private Segment segmentFor(long keyHigh) {
+        return segments[(int) (keyHigh >>> SEGMENT_SHIFT)];
+    }
+
+    private long getRelativeTime() {
+        return Math.max(0, System.currentTimeMillis() - baseTime);
+    }
+
+    private static long hash(String key, long seed, long multiplier) {
+        long hash = seed ^ (key.length() * multiplier);
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * multiplier;
+            hash ^= hash >>> 29;
+        }
+
+        // The finalizer of MurmurHash3
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * An open addressed hash table of the entries, in which an empty slot has a zero low key.
+     * The slots of a removed entry are refilled by shifting the following entries back, instead of leaving markers.
+     */
+    private static final class Segment {
+        private final int maxEntries;
+        private final int maxCapacity;
+        private long[] slots;
+        private long[] referenced;
+        private int capacity;
+        private int size;
+        private int clockHand;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.maxCapacity = getMaxCapacity(maxEntries);
+            allocate(Math.min(MIN_CAPACITY, maxCapacity));
+        }
+
+        long get(long keyHigh, long keyLow, long now) {
+            int slot = find(keyHigh, keyLow);
+            if (slot < 0) {
+                return NO_VALUE;
+            }
+            if (isExpired(slot, now)) {
+                delete(slot);
+                return NO_VALUE;
+            }
+            referenced[slot >>> 6] |= 1L << slot;
+            return slots[slot * SLOT_WIDTH + VALUE];
+        }
+
+        void put(long keyHigh, long keyLow, long value, long expiryTime, long now, boolean newerOnly) {
+            int slot = find(keyHigh, keyLow);
+            if (slot >= 0 && newerOnly && !isExpired(slot, now) && slots[slot * SLOT_WIDTH + VALUE] >= value) {
+                return;
+            }
+            if (slot < 0) {
+                if (size >= maxEntries) {
+                    evict(now);
+                }
+                if (size >= capacity / 4 * 3 && capacity < maxCapacity) {
+                    rebuild(capacity * 2, now);
+                }
+                slot = (int) keyHigh & (capacity - 1);
+                while (slots[slot * SLOT_WIDTH + KEY_LOW] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                slots[slot * SLOT_WIDTH + KEY_HIGH] = keyHigh;
+                slots[slot * SLOT_WIDTH + KEY_LOW] = keyLow;
+                size++;
+            }
+            slots[slot * SLOT_WIDTH + VALUE] = value;
+            slots[slot * SLOT_WIDTH + EXPIRY] = expiryTime;
+            referenced[slot >>> 6] |= 1L << slot;
+        }
+
+        void remove(long keyHigh, long keyLow) {
+            int slot = find(keyHigh, keyLow);
+            if (slot >= 0) {
+                delete(slot);
+            }
+        }
+
+        /**
+         * Move the entries to new arrays, dropping the expired entries.
+         *
+         * @param newCapacity The number of slots of the new arrays
+         * @param now         The current time relative to the creation of the table
+         */
+        void rebuild(int newCapacity, long now) {
+            long[] oldSlots = slots;
+            int oldCapacity = capacity;
+            allocate(newCapacity);
+            for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+                int base = oldSlot * SLOT_WIDTH;
+                if (oldSlots[base + KEY_LOW] == 0 || oldSlots[base + EXPIRY] <= now) {
+                    continue;
+                }
+                int slot = (int) oldSlots[base + KEY_HIGH] & (capacity - 1);
+                while (slots[slot * SLOT_WIDTH + KEY_LOW] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                System.arraycopy(oldSlots, base, slots, slot * SLOT_WIDTH, SLOT_WIDTH);
+                size++;
+            }
+        }
+
+        void clear() {
+            allocate(Math.min(MIN_CAPACITY, maxCapacity));
+        }
+
+        int getCapacity() {
+            return capacity;
+        }
+
+        private void allocate(int newCapacity) {
+            capacity = newCapacity;
+            slots = new long[newCapacity * SLOT_WIDTH];
+            referenced = new long[(newCapacity + 63) >>> 6];
+            size = 0;
+            clockHand = 0;
+        }
+
+        private int find(long keyHigh, long keyLow) {
+            int mask = capacity - 1;
+            int slot = (int) keyHigh & mask;
+            while (true) {
+                long low = slots[slot * SLOT_WIDTH + KEY_LOW];
+                if (low == 0) {
+                    return -1;
+                }
+                if (low == keyLow && slots[slot * SLOT_WIDTH + KEY_HIGH] == keyHigh) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private boolean isExpired(int slot, long now) {
+            return slots[slot * SLOT_WIDTH + EXPIRY] <= now;
+        }
+
+        /**
+         * Evict an expired entry or an entry which has not been read since the clock hand last passed it.
+         */
+        private void evict(long now) {
+            while (true) {
+                int slot = clockHand;
+                clockHand = (clockHand + 1) & (capacity - 1);
+                if (slots[slot * SLOT_WIDTH + KEY_LOW] == 0) {
+                    continue;
+                }
+                long bit = 1L << slot;
+                if ((referenced[slot >>> 6] & bit) != 0 && !isExpired(slot, now)) {
+                    referenced[slot >>> 6] &= ~bit;       // Second chance
+                    continue;
+                }
+                delete(slot);
+                return;
+            }
+        }
+
+        private void delete(int slot) {
+            int mask = capacity - 1;
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                int base = next * SLOT_WIDTH;
+                if (slots[base + KEY_LOW] == 0) {
+                    break;
+                }
+                // An entry can fill the hole unless the hole is before the slot at which its probing starts
+                int home = (int) slots[base + KEY_HIGH] & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    System.arraycopy(slots, base, slots, hole * SLOT_WIDTH, SLOT_WIDTH);
+                    setReferenced(hole, (referenced[next >>> 6] & (1L << next)) != 0);
+                    hole = next;
+                }
+            }
+            Arrays.fill(slots, hole * SLOT_WIDTH, (hole + 1) * SLOT_WIDTH, 0L);
+            setReferenced(hole, false);
+            size--;
+        }
+
+        private void setReferenced(int slot, boolean isReferenced) {
+            if (isReferenced) {
+                referenced[slot >>> 6] |= 1L << slot;
+            } else {
+                referenced[slot >>> 6] &= ~(1L << slot);
+            }
+        }
+
+        private static int getMaxCapacity(int maxEntries) {
+            int capacity = MIN_CAPACITY;
+            while (capacity / 4 * 3 < maxEntries) {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
+    }
+}
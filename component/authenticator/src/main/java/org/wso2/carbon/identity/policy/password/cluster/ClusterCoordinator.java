@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cluster;
+
+import java.util.Set;
+
+/**
+ * Membership and locking across the nodes of a cluster, used to share the background work of the connector.
+ * <p>
+ * An implementation can be plugged in by registering it as an OSGi service. The nodes are standalone when there is
+ * none.
+ */
+public interface ClusterCoordinator {
+
+    /**
+     * Get the identifier of this node.
+     *
+     * @return The identifier of this node, unique within the cluster
+     */
+    String getLocalNodeId();
+
+    /**
+     * Get the nodes which are currently members of the cluster, including this node.
+     *
+     * @return The identifiers of the live nodes
+     */
+    Set<String> getLiveNodes();
+
+    /**
+     * Register a listener which is notified whenever a node joins or leaves the cluster.
+     *
+     * @param listener The listener
+     */
+    void addMembershipListener(MembershipListener listener);
+
+    /**
+     * Remove a membership listener.
+     *
+     * @param listener The listener
+     */
+    void removeMembershipListener(MembershipListener listener);
+
+    /**
+     * Acquire a cluster wide lock if it is free, or extend it if this node already holds it.
+     * The lock is released automatically once the lease expires, so that the work of a failed node is not blocked.
+     *
+     * @param lockName    The name of the lock
+     * @param leaseMillis The time after which the lock is released unless it is acquired again
+     * @return True if this node holds the lock
+     */
+    boolean tryLock(String lockName, long leaseMillis);
+
+    /**
+     * Release a lock held by this node.
+     *
+     * @param lockName The name of the lock
+     */
+    void unlock(String lockName);
+}
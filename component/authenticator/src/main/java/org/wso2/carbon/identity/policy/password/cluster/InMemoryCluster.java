@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cluster;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cluster whose members live in the same JVM.
+ * <p>
+ * This backs the {@link InMemoryClusterCoordinator}, allowing several nodes to be simulated within one process.
+ */
+public class InMemoryCluster {
+    private static final Log log = LogFactory.getLog(InMemoryCluster.class);
+
+    private final Map<String, InMemoryClusterCoordinator> members = new LinkedHashMap<>();
+    private final Map<String, Lease> leases = new HashMap<>();
+
+    /**
+     * Add a node to the cluster and notify the members.
+     *
+     * @param coordinator The coordinator of the joining node
+     */
+    void join(InMemoryClusterCoordinator coordinator) {
+        List<InMemoryClusterCoordinator> coordinators;
+        Set<String> liveNodes;
+        synchronized (this) {
+            if (members.containsKey(coordinator.getLocalNodeId())) {
+                return;
+            }
+            members.put(coordinator.getLocalNodeId(), coordinator);
+            coordinators = new ArrayList<>(members.values());
+            liveNodes = getLiveNodes();
+        }
+        notifyMembers(coordinators, liveNodes);
+    }
+
+    /**
+     * Remove a node from the cluster, release its locks and notify the remaining members.
+     *
+     * @param nodeId The identifier of the leaving node
+     */
+    void leave(String nodeId) {
+        List<InMemoryClusterCoordinator> coordinators;
+        Set<String> liveNodes;
+        synchronized (this) {
+            if (members.remove(nodeId) == null) {
+                return;
+            }
+            List<String> releasedLocks = new ArrayList<>();
+            for (Map.Entry<String, Lease> lease : leases.entrySet()) {
+                if (lease.getValue().nodeId.equals(nodeId)) {
+                    releasedLocks.add(lease.getKey());
+                }
+            }
+            leases.keySet().removeAll(releasedLocks);
+            coordinators = new ArrayList<>(members.values());
+            liveNodes = getLiveNodes();
+        }
+        notifyMembers(coordinators, liveNodes);
+    }
+
+    synchronized Set<String> getLiveNodes() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(members.keySet()));
+    }
+
+    synchronized boolean tryLock(String nodeId, String lockName, long leaseMillis) {
+        if (!members.containsKey(nodeId)) {
+            return false;
+        }
+        long currentTime = System.currentTimeMillis();
+        Lease lease = leases.get(lockName);
+        if (lease != null && !lease.nodeId.equals(nodeId) && lease.expiryTime > currentTime) {
+            return false;
+        }
+        leases.put(lockName, new Lease(nodeId, currentTime + leaseMillis));
+        if (leases.size() > 1024 && leases.size() % 1024 == 0) {
+            purgeExpiredLeases(currentTime);
+        }
+        return true;
+    }
+
+    synchronized void unlock(String nodeId, String lockName) {
+        Lease lease = leases.get(lockName);
+        if (lease != null && lease.nodeId.equals(nodeId)) {
+            leases.remove(lockName);
+        }
+    }
+
+    private void purgeExpiredLeases(long currentTime) {
+        List<String> expiredLocks = new ArrayList<>();
+        for (Map.Entry<String, Lease> lease : leases.entrySet()) {
+            if (lease.getValue().expiryTime <= currentTime) {
+                expiredLocks.add(lease.getKey());
+            }
+        }
+        leases.keySet().removeAll(expiredLocks);
+    }
+
+    private static void notifyMembers(List<InMemoryClusterCoordinator> coordinators, Set<String> liveNodes) {
+        for (InMemoryClusterCoordinator coordinator : coordinators) {
+            try {
+                coordinator.notifyMembershipChanged(liveNodes);
+            } catch (RuntimeException e) {
+                log.error("Error occurred while notifying the membership change to the node "
+                        + coordinator.getLocalNodeId(), e);
+            }
+        }
+    }
+
+    private static class Lease {
+        private final String nodeId;
+        private final long expiryTime;
+
+        private Lease(String nodeId, long expiryTime) {
+            this.nodeId = nodeId;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
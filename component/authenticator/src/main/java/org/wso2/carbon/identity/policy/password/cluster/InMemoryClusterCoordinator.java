@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cluster;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A cluster coordinator for the nodes living in the same JVM.
+ * <p>
+ * Each simulated node has its own coordinator, and the coordinators of a cluster share an {@link InMemoryCluster}.
+ */
+public class InMemoryClusterCoordinator implements ClusterCoordinator {
+    private final InMemoryCluster cluster;
+    private final String nodeId;
+    private final CopyOnWriteArrayList<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+
+    public InMemoryClusterCoordinator(InMemoryCluster cluster, String nodeId) {
+        this.cluster = cluster;
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Add this node to the cluster.
+     */
+    public void join() {
+        cluster.join(this);
+    }
+
+    /**
+     * Remove this node from the cluster, releasing its locks.
+     */
+    public void leave() {
+        cluster.leave(nodeId);
+    }
+
+    @Override
+    public String getLocalNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Set<String> getLiveNodes() {
+        return cluster.getLiveNodes();
+    }
+
+    @Override
+    public void addMembershipListener(MembershipListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    @Override
+    public void removeMembershipListener(MembershipListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public boolean tryLock(String lockName, long leaseMillis) {
+        return cluster.tryLock(nodeId, lockName, leaseMillis);
+    }
+
+    @Override
+    public void unlock(String lockName) {
+        cluster.unlock(nodeId, lockName);
+    }
+
+    void notifyMembershipChanged(Set<String> liveNodes) {
+        for (MembershipListener listener : listeners) {
+            listener.membershipChanged(liveNodes);
+        }
+    }
+}
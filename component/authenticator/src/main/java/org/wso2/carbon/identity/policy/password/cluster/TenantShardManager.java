@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cluster;
+
+import java.util.Collections;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Decides which node of the cluster does the background work of each tenant.
+ * <p>
+ * The node is standalone, owning all the tenants, until a {@link ClusterCoordinator} is set.
+ */
+public class TenantShardManager {
+    private static final TenantShardManager instance = new TenantShardManager();
+
+    private final CopyOnWriteArrayList<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile TenantShards shards;
+
+    private TenantShardManager() {     // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the TenantShardManager
+     *
+     * @return A singleton instance of the TenantShardManager
+     */
+    public static TenantShardManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Set the coordinator of the cluster to which this node belongs.
+     *
+     * @param coordinator The coordinator or null to make this node standalone
+     */
+    public synchronized void setCoordinator(ClusterCoordinator coordinator) {
+        if (shards != null) {
+            shards.stop();
+        }
+        if (coordinator == null) {
+            shards = null;
+            for (MembershipListener listener : listeners) {
+                listener.membershipChanged(Collections.<String>emptySet());
+            }
+            return;
+        }
+        TenantShards tenantShards = new TenantShards(coordinator);
+        for (MembershipListener listener : listeners) {
+            tenantShards.addListener(listener);
+        }
+        shards = tenantShards;
+        tenantShards.start();
+    }
+
+    /**
+     * Register a listener which is notified after the tenants are reassigned.
+     *
+     * @param listener The listener
+     */
+    public synchronized void addListener(MembershipListener listener) {
+        listeners.addIfAbsent(listener);
+        if (shards != null) {
+            shards.addListener(listener);
+        }
+    }
+
+    public synchronized void removeListener(MembershipListener listener) {
+        listeners.remove(listener);
+        if (shards != null) {
+            shards.removeListener(listener);
+        }
+    }
+
+    public boolean isClustered() {
+        return shards != null;
+    }
+
+    /**
+     * Check whether this node does the background work of a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     * @return True if this node owns the tenant
+     */
+    public boolean isLocal(String tenantDomain) {
+        TenantShards tenantShards = shards;
+        return tenantShards == null || tenantShards.isLocal(tenantDomain);
+    }
+
+    /**
+     * Acquire a cluster wide lock. A standalone node always acquires it.
+     *
+     * @param lockName    The name of the lock
+     * @param leaseMillis The time after which the lock is released unless it is acquired again
+     * @return True if this node holds the lock
+     */
+    public boolean tryLock(String lockName, long leaseMillis) {
+        TenantShards tenantShards = shards;
+        return tenantShards == null || tenantShards.getCoordinator().tryLock(lockName, leaseMillis);
+    }
+
+    /**
+     * Release a cluster wide lock held by this node.
+     *
+     * @param lockName The name of the lock
+     */
+    public void unlock(String lockName) {
+        TenantShards tenantShards = shards;
+        if (tenantShards != null) {
+            tenantShards.getCoordinator().unlock(lockName);
+        }
+    }
+}
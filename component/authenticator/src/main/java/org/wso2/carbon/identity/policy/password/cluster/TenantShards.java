@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.cluster;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The assignment of the tenants to the live nodes of a cluster, as seen by one node.
+ * <p>
+ * The tenants are assigned by consistent hashing of the tenant domains over the live nodes, so all the nodes agree
+ * on the owner of a tenant once they see the same members. The assignment is recomputed whenever the members change,
+ * moving only the tenants of the joining or leaving nodes.
+ */
+public class TenantShards implements MembershipListener {
+    private static final Log log = LogFactory.getLog(TenantShards.class);
+
+    private final ClusterCoordinator coordinator;
+    private final CopyOnWriteArrayList<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ConsistentHashRing ring;
+
+    public TenantShards(ClusterCoordinator coordinator) {
+        this.coordinator = coordinator;
+        this.ring = new ConsistentHashRing(coordinator.getLiveNodes());
+    }
+
+    /**
+     * Start following the members of the cluster.
+     */
+    public void start() {
+        coordinator.addMembershipListener(this);
+        membershipChanged(coordinator.getLiveNodes());
+    }
+
+    /**
+     * Stop following the members of the cluster.
+     */
+    public void stop() {
+        coordinator.removeMembershipListener(this);
+    }
+
+    /**
+     * Register a listener which is notified after the tenants are reassigned.
+     *
+     * @param listener The listener
+     */
+    public void addListener(MembershipListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(MembershipListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Get the node which owns a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The identifier of the owner or null if there are no live nodes
+     */
+    public String getOwner(String tenantDomain) {
+        return ring.getNode(tenantDomain);
+    }
+
+    /**
+     * Check whether this node owns a tenant.
+     * A node which is not yet a member of a cluster owns all the tenants, so that no work is left behind.
+     *
+     * @param tenantDomain The tenant domain
+     * @return True if the work of the tenant is done by this node
+     */
+    public boolean isLocal(String tenantDomain) {
+        String owner = getOwner(tenantDomain);
+        return owner == null || owner.equals(coordinator.getLocalNodeId());
+    }
+
+    public ClusterCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    @Override
+    public void membershipChanged(Set<String> liveNodes) {
+        ring = new ConsistentHashRing(liveNodes);
+        if (log.isDebugEnabled()) {
+            log.debug("Reassigned the tenants of the node " + coordinator.getLocalNodeId() + " over the nodes "
+                    + liveNodes);
+        }
+        for (MembershipListener listener : listeners) {
+            listener.membershipChanged(liveNodes);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.config;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.common.model.Property;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+
+import java.util.Properties;
+
+/**
+ * An immutable snapshot of the password expiry policy of a tenant.
+ * <p>
+ * The values are parsed once when the snapshot is built, so that the authentication flow
+ * only reads plain fields.
+ */
+public class PasswordPolicyConfig {
+    private static final Log log = LogFactory.getLog(PasswordPolicyConfig.class);
+
+    private final int passwordExpiryInDays;
+    private final boolean enableEmailNotifications;
+    private final int priorReminderTimeInDays;
+    private final int minEditDistance;
+
+    public PasswordPolicyConfig(int passwordExpiryInDays, boolean enableEmailNotifications,
+                                int priorReminderTimeInDays) {
+        this(passwordExpiryInDays, enableEmailNotifications, priorReminderTimeInDays,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE_DEFAULT_VALUE);
+    }
+
+    public PasswordPolicyConfig(int passwordExpiryInDays, boolean enableEmailNotifications,
+                                int priorReminderTimeInDays, int minEditDistance) {
+        this.passwordExpiryInDays = passwordExpiryInDays;
+        this.enableEmailNotifications = enableEmailNotifications;
+        this.priorReminderTimeInDays = priorReminderTimeInDays;
+        this.minEditDistance = minEditDistance;
+    }
+
+    /**
+     * Build the password expiry policy from the module configuration in identity-event.properties.
+     * The default values are used for the properties which are not configured.
+     *
+     * @param tenantDomain The tenant domain for which the policy is built
+     * @return The password expiry policy
+     */
+    public static PasswordPolicyConfig fromIdentityEventProperties(String tenantDomain) {
+        int passwordExpiryInDays = getIntProperty(tenantDomain,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS_DEFAULT_VALUE);
+
+        boolean enableEmailNotifications =
+                PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS_DEFAULT_VALUE;
+        String enableEmailNotificationsProperty = getProperty(tenantDomain,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS,
+                enableEmailNotifications);
+        if (enableEmailNotificationsProperty != null) {
+            enableEmailNotifications = Boolean.parseBoolean(enableEmailNotificationsProperty);
+        }
+
+        int priorReminderTimeInDays = getIntProperty(tenantDomain,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_NOTICE_TIME_IN_DAYS_DEFAULT_VALUE);
+
+        int minEditDistance = getIntProperty(tenantDomain,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE_DEFAULT_VALUE);
+
+        return new PasswordPolicyConfig(passwordExpiryInDays, enableEmailNotifications, priorReminderTimeInDays,
+                minEditDistance);
+    }
+
+    /**
+     * Build the password expiry policy from the connector configuration properties of a tenant.
+     * The values of the given policy are used for the properties which are not present or invalid.
+     *
+     * @param properties    The connector configuration properties of the tenant
+     * @param defaultConfig The policy used for the properties which are not present
+     * @return The password expiry policy
+     */
+    public static PasswordPolicyConfig fromConnectorProperties(Property[] properties,
+                                                               PasswordPolicyConfig defaultConfig) {
+        if (properties == null || properties.length == 0) {
+            return defaultConfig;
+        }
+        int passwordExpiryInDays = defaultConfig.getPasswordExpiryInDays();
+        boolean enableEmailNotifications = defaultConfig.isEnableEmailNotifications();
+        int priorReminderTimeInDays = defaultConfig.getPriorReminderTimeInDays();
+        int minEditDistance = defaultConfig.getMinEditDistance();
+
+        for (Property property : properties) {
+            if (property == null || property.getValue() == null) {
+                continue;
+            }
+            if (PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS.equals(property.getName())) {
+                passwordExpiryInDays = parseInt(property.getName(), property.getValue(), passwordExpiryInDays);
+            } else if (PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS
+                    .equals(property.getName())) {
+                enableEmailNotifications = Boolean.parseBoolean(property.getValue().trim());
+            } else if (PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS
+                    .equals(property.getName())) {
+                priorReminderTimeInDays = parseInt(property.getName(), property.getValue(), priorReminderTimeInDays);
+            } else if (PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE.equals(property.getName())) {
+                minEditDistance = parseInt(property.getName(), property.getValue(), minEditDistance);
+            }
+        }
+        return new PasswordPolicyConfig(passwordExpiryInDays, enableEmailNotifications, priorReminderTimeInDays,
+                minEditDistance);
+    }
+
+    public int getPasswordExpiryInDays() {
+        return passwordExpiryInDays;
+    }
+
+    public boolean isEnableEmailNotifications() {
+        return enableEmailNotifications;
+    }
+
+    public int getPriorReminderTimeInDays() {
+        return priorReminderTimeInDays;
+    }
+
+    public int getMinEditDistance() {
+        return minEditDistance;
+    }
+
+    /**
+     * Get the policy as connector configuration properties.
+     *
+     * @return The properties of the policy
+     */
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS,
+                Integer.toString(passwordExpiryInDays));
+        properties.setProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS,
+                Boolean.toString(enableEmailNotifications));
+        properties.setProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS,
+                Integer.toString(priorReminderTimeInDays));
+        properties.setProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE,
+                Integer.toString(minEditDistance));
+        return properties;
+    }
+
+    private static int getIntProperty(String tenantDomain, String propertyName, int defaultValue) {
+        String propertyValue = getProperty(tenantDomain, propertyName, defaultValue);
+        if (propertyValue == null) {
+            return defaultValue;
+        }
+        return parseInt(propertyName, propertyValue, defaultValue);
+    }
+
+    private static int parseInt(String propertyName, String propertyValue, int defaultValue) {
+        try {
+            return Integer.parseInt(propertyValue.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value: " + propertyValue + " for the configuration: " + propertyName
+                    + ". Using the default value: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static String getProperty(String tenantDomain, String propertyName, Object defaultValue) {
+        String propertyValue = PasswordPolicyUtils.getIdentityEventProperty(tenantDomain, propertyName);
+        if (propertyValue == null && log.isDebugEnabled()) {
+            log.debug("Using the default property value: " + defaultValue + " for the configuration: "
+                    + propertyName + " because no module configuration is present.");
+        }
+        return propertyValue;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.config;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.common.model.Property;
+import org.wso2.carbon.identity.governance.IdentityGovernanceException;
+import org.wso2.carbon.identity.governance.IdentityGovernanceService;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.deadline.ExpiryDeadlineMigrator;
+import org.wso2.carbon.identity.policy.password.internal.PasswordPolicyDataHolder;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the password expiry policy snapshots of each tenant.
+ * <p>
+ * Two snapshots are kept per tenant. The default policy is built from the module configuration in
+ * identity-event.properties. The tenant policy is resolved through the identity governance service,
+ * so that the values set for the tenant in the resident identity provider take effect. Resolving the
+ * tenant policy is expensive, therefore it is reused until it expires or the resident identity
+ * provider of the tenant is updated.
+ * <p>
+ * Reads do not lock. A snapshot is never modified, it is replaced as a whole when the policy changes.
+ */
+public class PasswordPolicyConfigManager {
+    private static final Log log = LogFactory.getLog(PasswordPolicyConfigManager.class);
+
+    private static final PasswordPolicyConfigManager instance = new PasswordPolicyConfigManager();
+
+    private final ConcurrentMap<String, PasswordPolicyConfig> defaultConfigs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TenantConfig> tenantConfigs = new ConcurrentHashMap<>();
+    private final long timeToLiveMillis;
+
+    private PasswordPolicyConfigManager() {     // Prevent instantiation
+        int timeoutInSeconds = NumberUtils.toInt(PasswordPolicyUtils.getIdentityEventProperty(
+                MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.POLICY_CONFIG_CACHE_TIMEOUT),
+                PasswordPolicyConstants.POLICY_CONFIG_CACHE_TIMEOUT_DEFAULT_VALUE);
+        timeToLiveMillis = timeoutInSeconds * 1000L;
+    }
+
+    /**
+     * Return a singleton instance of the PasswordPolicyConfigManager
+     *
+     * @return A singleton instance of the PasswordPolicyConfigManager
+     */
+    public static PasswordPolicyConfigManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the password expiry policy in effect for a tenant.
+     * The policy is resolved through the identity governance service if it is not cached or had expired.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The password expiry policy of the tenant
+     */
+    public PasswordPolicyConfig getConfig(String tenantDomain) {
+        long currentTime = System.currentTimeMillis();
+        TenantConfig tenantConfig = tenantConfigs.get(tenantDomain);
+        if (tenantConfig != null && currentTime < tenantConfig.expiryTime) {
+            return tenantConfig.config;
+        }
+
+        PasswordPolicyConfig config = resolveTenantConfig(tenantDomain);
+        if (config != null) {
+            if (timeToLiveMillis > 0) {
+                tenantConfigs.put(tenantDomain, new TenantConfig(config, currentTime + timeToLiveMillis));
+            }
+            if (tenantConfig != null) {
+                // The policy may have been updated on another node
+                ExpiryDeadlineMigrator.getInstance().migrateIfChanged(tenantDomain, tenantConfig.config, config);
+            }
+            return config;
+        }
+        // The tenant policy could not be resolved. It is resolved again on the next use.
+        return getDefaultConfig(tenantDomain);
+    }
+
+    /**
+     * Get the default password expiry policy of a tenant, building it on the first use.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The default password expiry policy, built from the module configuration
+     */
+    public PasswordPolicyConfig getDefaultConfig(String tenantDomain) {
+        PasswordPolicyConfig config = defaultConfigs.get(tenantDomain);
+        if (config == null) {
+            config = PasswordPolicyConfig.fromIdentityEventProperties(tenantDomain);
+            PasswordPolicyConfig existingConfig = defaultConfigs.putIfAbsent(tenantDomain, config);
+            if (existingConfig != null) {
+                config = existingConfig;
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Replace the password expiry policy in effect for a tenant, until it expires as a resolved policy would.
+     * Nothing is kept if the policies are not cached, in which case the policy is resolved on each use.
+     *
+     * @param tenantDomain The tenant domain
+     * @param config       The new password expiry policy of the tenant
+     */
+    public void updateConfig(String tenantDomain, PasswordPolicyConfig config) {
+        if (timeToLiveMillis > 0) {
+            tenantConfigs.put(tenantDomain, new TenantConfig(config, System.currentTimeMillis() + timeToLiveMillis));
+        } else {
+            tenantConfigs.remove(tenantDomain);
+        }
+    }
+
+    /**
+     * Drop the password expiry policy in effect for a tenant so that it is resolved again on the next use.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The dropped policy, even if it had expired, or null if the policy of the tenant was not cached
+     */
+    public PasswordPolicyConfig invalidate(String tenantDomain) {
+        TenantConfig tenantConfig = tenantConfigs.remove(tenantDomain);
+        return tenantConfig == null ? null : tenantConfig.config;
+    }
+
+    /**
+     * Drop the password expiry policies of all the tenants.
+     */
+    public void clear() {
+        tenantConfigs.clear();
+        defaultConfigs.clear();
+    }
+
+    /**
+     * Resolve the password expiry policy of a tenant through the identity governance service.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The password expiry policy or null if it could not be resolved
+     */
+    private PasswordPolicyConfig resolveTenantConfig(String tenantDomain) {
+        PasswordPolicyConfig defaultConfig = getDefaultConfig(tenantDomain);
+        IdentityGovernanceService identityGovernanceService =
+                PasswordPolicyDataHolder.getInstance().getIdentityGovernanceService();
+        if (identityGovernanceService == null) {
+            return defaultConfig;
+        }
+
+        try {
+            Property[] properties = identityGovernanceService.getConfiguration(
+                    PasswordPolicyUtils.getPasswordExpiryPropertyNames(), tenantDomain);
+            return PasswordPolicyConfig.fromConnectorProperties(properties, defaultConfig);
+        } catch (IdentityGovernanceException e) {
+            log.warn("Error occurred while retrieving the password expiry configurations of the tenant: "
+                    + tenantDomain + ". Using the default configurations.");
+            if (log.isDebugEnabled()) {
+                log.debug("Error occurred while retrieving the password expiry configurations of the tenant: "
+                        + tenantDomain, e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The password expiry policy in effect for a tenant along with the time at which it expires.
+     */
+    private static class TenantConfig {
+        private final PasswordPolicyConfig config;
+        private final long expiryTime;
+
+        TenantConfig(PasswordPolicyConfig config, long expiryTime) {
+            this.config = config;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
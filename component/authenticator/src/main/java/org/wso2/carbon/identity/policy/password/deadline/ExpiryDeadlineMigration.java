@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.deadline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.metrics.CounterMetric;
+import org.wso2.carbon.identity.policy.password.metrics.LatencyMetric;
+import org.wso2.carbon.identity.policy.password.metrics.PasswordPolicyMetrics;
+import org.wso2.carbon.identity.policy.password.scan.UserListPager;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeWriter;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Writes the password expiry deadlines of all the users of a tenant, a page of users at a time.
+ * <p>
+ * The deadline of each user is computed from the last password update time and the current policy of the tenant,
+ * and is written only if it differs from the stored one. Therefore running it again after an interruption only
+ * updates the remaining users.
+ */
+class ExpiryDeadlineMigration implements Callable<ExpiryDeadlineMigrationResult> {
+    private static final Log log = LogFactory.getLog(ExpiryDeadlineMigration.class);
+
+    private final String tenantDomain;
+    private final String claimUri;
+    private final int batchSize;
+    private final String alphabet;
+    private final String[] claimUris;
+
+    private long listedCount;
+    private long updatedCount;
+    private long failedCount;
+
+    ExpiryDeadlineMigration(String tenantDomain, String claimUri, int batchSize, String alphabet) {
+        this.tenantDomain = tenantDomain;
+        this.claimUri = claimUri;
+        this.batchSize = batchSize;
+        this.alphabet = alphabet;
+        this.claimUris = new String[]{PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM, claimUri};
+    }
+
+    @Override
+    public ExpiryDeadlineMigrationResult call() throws Exception {
+        long startTime = System.currentTimeMillis();
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain, true);
+            UserStoreManager userStoreManager = UserStoreManagerCache.getInstance().getUserStoreManager(tenantDomain);
+            int passwordExpiryInDays = PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain)
+                    .getPasswordExpiryInDays();
+
+            for (String domain : UserListPager.getDomains(userStoreManager)) {
+                UserListPager pager = new UserListPager(userStoreManager, domain, batchSize, alphabet);
+                List<String> page;
+                while ((page = pager.nextPage()) != null) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
+                    listedCount += page.size();
+                    migrate(userStoreManager, page, passwordExpiryInDays);
+                }
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        return new ExpiryDeadlineMigrationResult(tenantDomain, listedCount, updatedCount, failedCount,
+                System.currentTimeMillis() - startTime);
+    }
+
+    private void migrate(UserStoreManager userStoreManager, List<String> page, int passwordExpiryInDays) {
+        for (String tenantAwareUsername : page) {
+            try {
+                long readStartTime = System.nanoTime();
+                Map<String, String> claimValueMap =
+                        userStoreManager.getUserClaimValues(tenantAwareUsername, claimUris, null);
+                PasswordPolicyMetrics.getInstance().recordLatency(LatencyMetric.CLAIM_READ, tenantDomain,
+                        readStartTime);
+                if (claimValueMap == null) {
+                    claimValueMap = Collections.emptyMap();
+                }
+                Long lastPasswordUpdateTime = PasswordUpdateTimeWriter.getInstance()
+                        .getPendingTimestamp(tenantDomain, tenantAwareUsername);
+                if (lastPasswordUpdateTime == null) {
+                    String lastPasswordUpdateClaim =
+                            claimValueMap.get(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM);
+                    if (lastPasswordUpdateClaim == null) {
+                        // The user is asked to change the password upon the next login anyway
+                        continue;
+                    }
+                    lastPasswordUpdateTime = Long.parseLong(lastPasswordUpdateClaim);
+                }
+
+                String deadline = Long.toString(
+                        PasswordExpiryDeadline.getDeadline(lastPasswordUpdateTime, passwordExpiryInDays));
+                if (deadline.equals(claimValueMap.get(claimUri))) {
+                    continue;
+                }
+                long writeStartTime = System.nanoTime();
+                userStoreManager.setUserClaimValues(tenantAwareUsername,
+                        Collections.singletonMap(claimUri, deadline), null);
+                PasswordPolicyMetrics.getInstance().recordLatency(LatencyMetric.CLAIM_WRITE, tenantDomain,
+                        writeStartTime);
+                updatedCount++;
+            } catch (UserStoreException | RuntimeException e) {
+                failedCount++;
+                PasswordPolicyMetrics.getInstance().increment(CounterMetric.FAILURE, tenantDomain);
+                log.error("Error occurred while updating the claim " + claimUri + " of " + tenantAwareUsername
+                        + " of the tenant " + tenantDomain, e);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Updated the password expiry deadlines of " + updatedCount + " of " + listedCount
+                    + " users of the tenant " + tenantDomain);
+        }
+    }
+}
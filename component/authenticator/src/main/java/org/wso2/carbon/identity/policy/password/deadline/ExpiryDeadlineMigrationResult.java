@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.deadline;
+
+/**
+ * The outcome of backfilling the password expiry deadlines of a tenant.
+ */
+public class ExpiryDeadlineMigrationResult {
+    private final String tenantDomain;
+    private final long listedCount;
+    private final long updatedCount;
+    private final long failedCount;
+    private final long elapsedMillis;
+
+    public ExpiryDeadlineMigrationResult(String tenantDomain, long listedCount, long updatedCount, long failedCount,
+                                         long elapsedMillis) {
+        this.tenantDomain = tenantDomain;
+        this.listedCount = listedCount;
+        this.updatedCount = updatedCount;
+        this.failedCount = failedCount;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getTenantDomain() {
+        return tenantDomain;
+    }
+
+    /**
+     * Get the number of users listed from the user stores.
+     *
+     * @return The number of listed users
+     */
+    public long getListedCount() {
+        return listedCount;
+    }
+
+    /**
+     * Get the number of users whose deadline was written. The users whose deadline is already up to date and the
+     * users who have never changed the password are not updated.
+     *
+     * @return The number of updated users
+     */
+    public long getUpdatedCount() {
+        return updatedCount;
+    }
+
+    /**
+     * Get the number of users whose deadline could not be read or written.
+     *
+     * @return The number of failed users
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "tenant: " + tenantDomain + ", listed: " + listedCount + ", updated: " + updatedCount
+                + ", failed: " + failedCount + ", elapsed: " + elapsedMillis + " ms";
+    }
+}
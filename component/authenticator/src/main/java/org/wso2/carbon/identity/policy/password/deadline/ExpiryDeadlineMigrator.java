@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.deadline;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.cluster.MembershipListener;
+import org.wso2.carbon.identity.policy.password.cluster.TenantShardManager;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.user.api.Tenant;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Backfills and recomputes the password expiry deadlines of the users.
+ * <p>
+ * The tenants are migrated one at a time in a background thread, a batch of users at a time. A tenant whose
+ * migration is still waiting is not queued again, so that a series of policy updates results in a single
+ * migration. All the tenants are backfilled upon startup when passwordExpiry.expiryDeadline.migrateOnStartup is
+ * enabled, which should be disabled again once the deadlines of the existing users are written.
+ * <p>
+ * In a cluster, the deadlines of a tenant are written by the node which owns the tenant. Since the coordinator of
+ * the cluster may be bound after the connector is activated, the startup migration waits until the node joins the
+ * cluster, or for passwordExpiry.expiryDeadline.coordinatorWaitTime seconds before migrating as a standalone node.
+ */
+public class ExpiryDeadlineMigrator {
+    private static final Log log = LogFactory.getLog(ExpiryDeadlineMigrator.class);
+
+    private static final ExpiryDeadlineMigrator instance = new ExpiryDeadlineMigrator();
+
+    private final ConcurrentMap<String, Future<ExpiryDeadlineMigrationResult>> pendingMigrations =
+            new ConcurrentHashMap<>();
+    private final AtomicBoolean startupMigrationPending = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    private final MembershipListener membershipListener = new MembershipListener() {
+        @Override
+        public void membershipChanged(Set<String> liveNodes) {
+            if (TenantShardManager.getInstance().isClustered() && startupMigrationPending.get()) {
+                getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        migrateOnStartup();
+                    }
+                });
+            }
+        }
+    };
+
+    private ExpiryDeadlineMigrator() {     // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the ExpiryDeadlineMigrator
+     *
+     * @return A singleton instance of the ExpiryDeadlineMigrator
+     */
+    public static ExpiryDeadlineMigrator getInstance() {
+        return instance;
+    }
+
+    /**
+     * Migrate all the tenants if the deadlines are enabled and the migration upon startup is requested.
+     * In a cluster, each node migrates the tenants it owns once it has joined the cluster.
+     */
+    public void start() {
+        if (!PasswordExpiryDeadline.isEnabled()
+                || !Boolean.parseBoolean(getProperty(PasswordPolicyConstants.EXPIRY_DEADLINE_MIGRATE_ON_STARTUP))) {
+            return;
+        }
+        startupMigrationPending.set(true);
+        TenantShardManager.getInstance().addListener(membershipListener);
+        if (TenantShardManager.getInstance().isClustered()) {
+            migrateOnStartup();
+            return;
+        }
+        int coordinatorWaitTime = NumberUtils.toInt(
+                getProperty(PasswordPolicyConstants.EXPIRY_DEADLINE_COORDINATOR_WAIT_TIME),
+                PasswordPolicyConstants.EXPIRY_DEADLINE_COORDINATOR_WAIT_TIME_DEFAULT_VALUE);
+        getExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                // No coordinator has been bound, so the node stays standalone
+                migrateOnStartup();
+            }
+        }, Math.max(0, coordinatorWaitTime), TimeUnit.SECONDS);
+    }
+
+    private void migrateOnStartup() {
+        if (!startupMigrationPending.compareAndSet(true, false)) {
+            return;
+        }
+        TenantShardManager.getInstance().removeListener(membershipListener);
+        try {
+            int tenantCount = 0;
+            for (String tenantDomain : getTenantDomains()) {
+                if (TenantShardManager.getInstance().isLocal(tenantDomain)) {
+                    migrate(tenantDomain);
+                    tenantCount++;
+                }
+            }
+            log.info("Scheduled the migration of the password expiry deadlines of " + tenantCount + " tenants");
+        } catch (UserStoreException | RuntimeException e) {
+            log.error("Error occurred while listing the tenants to migrate the password expiry deadlines", e);
+        }
+    }
+
+    /**
+     * Stop the migrations. The migration in progress is aborted.
+     */
+    public synchronized void shutdown() {
+        startupMigrationPending.set(false);
+        TenantShardManager.getInstance().removeListener(membershipListener);
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        pendingMigrations.clear();
+    }
+
+    /**
+     * Write the password expiry deadlines of the users of a tenant in the background.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The future result of the migration or null if the deadlines are not enabled
+     */
+    public synchronized Future<ExpiryDeadlineMigrationResult> migrate(final String tenantDomain) {
+        final ExpiryDeadlineMigration migration = createMigration(tenantDomain);
+        if (migration == null) {
+            return null;
+        }
+        Future<ExpiryDeadlineMigrationResult> pendingMigration = pendingMigrations.get(tenantDomain);
+        if (pendingMigration != null) {
+            return pendingMigration;
+        }
+
+        FutureTask<ExpiryDeadlineMigrationResult> task =
+                new FutureTask<>(new Callable<ExpiryDeadlineMigrationResult>() {
+                    @Override
+                    public ExpiryDeadlineMigrationResult call() throws Exception {
+                        // A policy update made from now on needs another migration
+                        pendingMigrations.remove(tenantDomain);
+                        return run(migration);
+                    }
+                });
+        pendingMigrations.put(tenantDomain, task);
+        getExecutor().execute(task);
+        return task;
+    }
+
+    /**
+     * Recompute the password expiry deadlines of the users of a tenant owned by this node if the expiry period of
+     * the tenant has changed. This is called whenever the policy of a tenant is resolved again, so that the owner of
+     * the tenant recomputes the deadlines even if the policy was updated on another node.
+     *
+     * @param tenantDomain   The tenant domain
+     * @param previousConfig The policy which was in effect, or null if it is not known
+     * @param config         The policy now in effect
+     * @return The future result of the migration or null if the deadlines are not recomputed by this node
+     */
+    public Future<ExpiryDeadlineMigrationResult> migrateIfChanged(String tenantDomain,
+                                                                  PasswordPolicyConfig previousConfig,
+                                                                  PasswordPolicyConfig config) {
+        if (previousConfig != null && previousConfig.getPasswordExpiryInDays() == config.getPasswordExpiryInDays()) {
+            return null;
+        }
+        if (!TenantShardManager.getInstance().isLocal(tenantDomain)) {
+            return null;
+        }
+        return migrate(tenantDomain);
+    }
+
+    /**
+     * Write the password expiry deadlines of the users of a tenant in the calling thread.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The result of the migration or null if the deadlines are not enabled
+     * @throws Exception if the user stores could not be listed or the migration is interrupted
+     */
+    public ExpiryDeadlineMigrationResult migrateAndWait(String tenantDomain) throws Exception {
+        ExpiryDeadlineMigration migration = createMigration(tenantDomain);
+        return migration == null ? null : run(migration);
+    }
+
+    private ExpiryDeadlineMigrationResult run(ExpiryDeadlineMigration migration) throws Exception {
+        try {
+            ExpiryDeadlineMigrationResult result = migration.call();
+            log.info("Migrated the password expiry deadlines. " + result);
+            return result;
+        } catch (Exception e) {
+            if (!(e instanceof InterruptedException)) {
+                log.error("Error occurred while migrating the password expiry deadlines", e);
+            }
+            throw e;
+        }
+    }
+
+    private static ExpiryDeadlineMigration createMigration(String tenantDomain) {
+        String claimUri = PasswordExpiryDeadline.getClaimUri();
+        if (claimUri == null) {
+            return null;
+        }
+        int batchSize = Math.max(1, NumberUtils.toInt(getProperty(PasswordPolicyConstants.EXPIRY_DEADLINE_BATCH_SIZE),
+                PasswordPolicyConstants.EXPIRY_DEADLINE_BATCH_SIZE_DEFAULT_VALUE));
+        String alphabet = getProperty(PasswordPolicyConstants.SCAN_PREFIX_ALPHABET);
+        if (StringUtils.isEmpty(alphabet)) {
+            alphabet = PasswordPolicyConstants.SCAN_PREFIX_ALPHABET_DEFAULT_VALUE;
+        }
+        return new ExpiryDeadlineMigration(tenantDomain, claimUri, batchSize, alphabet);
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "PasswordExpiryDeadlineMigrator");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private static List<String> getTenantDomains() throws UserStoreException {
+        List<String> tenantDomains = new ArrayList<>();
+        tenantDomains.add(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+        RealmService realmService = IdentityTenantUtil.getRealmService();
+        if (realmService != null) {
+            Tenant[] tenants = realmService.getTenantManager().getAllTenants();
+            if (tenants != null) {
+                for (Tenant tenant : tenants) {
+                    if (tenant.isActive()) {
+                        tenantDomains.add(tenant.getDomain());
+                    }
+                }
+            }
+        }
+        return tenantDomains;
+    }
+
+    private static String getProperty(String propertyName) {
+        return PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                propertyName);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.deadline;
+
+import org.apache.commons.lang.StringUtils;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utilities for the optional claim holding the absolute time at which the password of a user expires.
+ * <p>
+ * Unlike the last password update time, the deadline does not depend on the password expiry policy of the tenant,
+ * so the users whose passwords expire before a given time can be found by a range query on the attribute to which
+ * the claim is mapped. The claim is written along with the last password update time, and is recomputed by the
+ * {@link ExpiryDeadlineMigrator} when the policy of the tenant changes.
+ */
+public class PasswordExpiryDeadline {
+
+    private PasswordExpiryDeadline() {      // To prevent instantiation
+    }
+
+    /**
+     * Get the claim to which the password expiry deadlines are written.
+     *
+     * @return The claim URI or null if the deadlines are not written
+     */
+    public static String getClaimUri() {
+        String claimUri = PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.EXPIRY_DEADLINE_CLAIM);
+        return StringUtils.isBlank(claimUri) ? null : claimUri.trim();
+    }
+
+    public static boolean isEnabled() {
+        return getClaimUri() != null;
+    }
+
+    /**
+     * Get the time at which a password expires under the current policy of the tenant.
+     *
+     * @param tenantDomain           The tenant domain of the user
+     * @param lastPasswordUpdateTime The time at which the password was changed
+     * @return The expiry deadline
+     */
+    public static long getDeadline(String tenantDomain, long lastPasswordUpdateTime) {
+        return getDeadline(lastPasswordUpdateTime,
+                PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain).getPasswordExpiryInDays());
+    }
+
+    /**
+     * Get the time at which a password expires under the given policy.
+     * The password expires once more than the configured number of whole days have passed since it was changed,
+     * which is the rule the {@link org.wso2.carbon.identity.policy.password.PasswordResetEnforcer} enforces.
+     *
+     * @param lastPasswordUpdateTime The time at which the password was changed
+     * @param passwordExpiryInDays   The number of days a password stays valid
+     * @return The first time at which the password has expired
+     */
+    public static long getDeadline(long lastPasswordUpdateTime, int passwordExpiryInDays) {
+        return lastPasswordUpdateTime + TimeUnit.DAYS.toMillis(passwordExpiryInDays + 1L);
+    }
+
+    /**
+     * Add the expiry deadline to the claims written upon a password change, if the deadlines are enabled.
+     *
+     * @param claimMap               The claims to be written
+     * @param tenantDomain           The tenant domain of the user
+     * @param lastPasswordUpdateTime The time at which the password was changed
+     */
+    public static void addClaim(Map<String, String> claimMap, String tenantDomain, long lastPasswordUpdateTime) {
+        String claimUri = getClaimUri();
+        if (claimUri != null) {
+            claimMap.put(claimUri, Long.toString(getDeadline(tenantDomain, lastPasswordUpdateTime)));
+        }
+    }
+}
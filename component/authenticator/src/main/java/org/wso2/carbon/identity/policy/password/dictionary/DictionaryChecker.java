@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.dictionary;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.utils.CarbonUtils;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rejects the new passwords built from dictionary words, from the words of a tenant, or from the username and the
+ * tenant and user store domain names, after normalizing the case and the leetspeak substitutions.
+ * <p>
+ * The dictionaries are memory mapped {@link WordTrie} files shared by all the tenants. The words of a tenant are
+ * read from {@code <tenant domain>.txt} in the tenant words directory, and are reloaded when the file changes.
+ */
+public class DictionaryChecker {
+    private static final Log log = LogFactory.getLog(DictionaryChecker.class);
+
+    private static final DictionaryChecker instance = new DictionaryChecker();
+
+    private final ConcurrentMap<String, TenantWords> tenantWords = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile List<WordTrie> dictionaries = Collections.emptyList();
+    private volatile File tenantWordsDirectory;
+    private volatile int minWordLength = PasswordPolicyConstants.DICTIONARY_MIN_WORD_LENGTH_DEFAULT_VALUE;
+
+    private DictionaryChecker() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the DictionaryChecker
+     *
+     * @return A singleton instance of the DictionaryChecker
+     */
+    public static DictionaryChecker getInstance() {
+        return instance;
+    }
+
+    /**
+     * Open the configured dictionaries if the dictionary check is enabled.
+     */
+    public synchronized void start() {
+        if (enabled || !Boolean.parseBoolean(getProperty(PasswordPolicyConstants.DICTIONARY_ENABLE))) {
+            return;
+        }
+        List<WordTrie> wordTries = new ArrayList<>();
+        String files = getProperty(PasswordPolicyConstants.DICTIONARY_FILES);
+        for (String path : StringUtils.split(StringUtils.defaultString(files), ',')) {
+            if (StringUtils.isBlank(path)) {
+                continue;
+            }
+            File file = resolve(path.trim());
+            try {
+                WordTrie wordTrie = WordTrie.open(file);
+                wordTries.add(wordTrie);
+                log.info("Loaded " + wordTrie.getWordCount() + " dictionary words from " + file);
+            } catch (IOException e) {
+                log.error("Error occurred while opening the dictionary " + file
+                        + ". The new passwords are not checked against its words.", e);
+            }
+        }
+
+        String directory = getProperty(PasswordPolicyConstants.DICTIONARY_TENANT_WORDS);
+        if (StringUtils.isBlank(directory)) {
+            directory = PasswordPolicyConstants.DICTIONARY_TENANT_WORDS_DEFAULT_VALUE;
+        }
+        start(wordTries, resolve(directory), NumberUtils.toInt(
+                getProperty(PasswordPolicyConstants.DICTIONARY_MIN_WORD_LENGTH),
+                PasswordPolicyConstants.DICTIONARY_MIN_WORD_LENGTH_DEFAULT_VALUE));
+    }
+
+    /**
+     * Check the new passwords against the given dictionaries.
+     *
+     * @param wordTries       The dictionaries
+     * @param wordsDirectory  The directory of the tenant word lists
+     * @param minLength       The minimum length of the words which are looked for in the passwords
+     */
+    public synchronized void start(List<WordTrie> wordTries, File wordsDirectory, int minLength) {
+        dictionaries = Collections.unmodifiableList(new ArrayList<>(wordTries));
+        tenantWordsDirectory = wordsDirectory;
+        minWordLength = Math.max(1, minLength);
+        tenantWords.clear();
+        enabled = true;
+    }
+
+    /**
+     * Stop checking the new passwords and release the dictionaries.
+     */
+    public synchronized void shutdown() {
+        enabled = false;
+        dictionaries = Collections.emptyList();
+        tenantWords.clear();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Drop the loaded words of a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     */
+    public void invalidate(String tenantDomain) {
+        tenantWords.remove(tenantDomain);
+    }
+
+    /**
+     * Check whether a password contains a word of the dictionaries or of the tenant.
+     *
+     * @param normalizedPassword The password normalized by {@link LeetNormalizer}
+     * @param tenantDomain       The tenant domain of the user
+     * @return True if the password contains a word
+     */
+    public boolean containsDictionaryWord(char[] normalizedPassword, String tenantDomain) {
+        if (!enabled) {
+            return false;
+        }
+        int minLength = minWordLength;
+        for (WordTrie dictionary : dictionaries) {
+            if (dictionary.containsWord(normalizedPassword, minLength)) {
+                return true;
+            }
+        }
+        WordTrie words = getTenantWords(tenantDomain);
+        return words != null && words.containsWord(normalizedPassword, minLength);
+    }
+
+    /**
+     * Check whether a password contains a word of the context of the user, such as the username or the tenant
+     * domain. The values are split into words at the characters other than the letters and the digits.
+     *
+     * @param normalizedPassword The password normalized by {@link LeetNormalizer}
+     * @param contextValues      The values of the context of the user
+     * @return True if the password contains a word of the context
+     */
+    public boolean containsContextWord(char[] normalizedPassword, String... contextValues) {
+        if (!enabled) {
+            return false;
+        }
+        int minLength = minWordLength;
+        for (String value : contextValues) {
+            if (value == null) {
+                continue;
+            }
+            int start = 0;
+            for (int end = 0; end <= value.length(); end++) {
+                if (end == value.length() || !Character.isLetterOrDigit(value.charAt(end))) {
+                    if (end - start >= minLength && contains(normalizedPassword, value, start, end)) {
+                        return true;
+                    }
+                    start = end + 1;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(char[] normalizedPassword, String value, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i + length <= normalizedPassword.length; i++) {
+            int j = 0;
+            while (j < length && normalizedPassword[i + j] == LeetNormalizer.normalize(value.charAt(start + j))) {
+                j++;
+            }
+            if (j == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private WordTrie getTenantWords(String tenantDomain) {
+        File directory = tenantWordsDirectory;
+        if (directory == null || tenantDomain == null) {
+            return null;
+        }
+        File file = new File(directory, tenantDomain + ".txt");
+        long lastModified = file.lastModified();
+        if (lastModified == 0) {
+            // The tenant has no word list
+            tenantWords.remove(tenantDomain);
+            return null;
+        }
+        TenantWords words = tenantWords.get(tenantDomain);
+        if (words == null || words.lastModified != lastModified) {
+            words = new TenantWords(lastModified, loadWords(file));
+            tenantWords.put(tenantDomain, words);
+        }
+        return words.wordTrie;
+    }
+
+    private static WordTrie loadWords(File file) {
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            WordTrie wordTrie = new WordTrieBuilder().addWords(reader).build();
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded " + wordTrie.getWordCount() + " words from " + file);
+            }
+            return wordTrie;
+        } catch (IOException e) {
+            log.error("Error occurred while reading the word list " + file
+                    + ". The new passwords are not checked against its words.", e);
+            return null;
+        }
+    }
+
+    private static File resolve(String path) {
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(CarbonUtils.getCarbonHome(), path);
+        }
+        return file;
+    }
+
+    private static String getProperty(String propertyName) {
+        return PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                propertyName);
+    }
+
+    private static final class TenantWords {
+        private final long lastModified;
+        private final WordTrie wordTrie;
+
+        private TenantWords(long lastModified, WordTrie wordTrie) {
+            this.lastModified = lastModified;
+            this.wordTrie = wordTrie;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.dictionary;
+
+/**
+ * Folds the case and the common leetspeak substitutions of the characters, so that "P@55w0rd" and "password" are
+ * compared as the same word. The words and the passwords are normalized alike, so the ambiguous substitutions are
+ * folded together, such as 'l', '1', '!' and '|' into 'i'.
+ */
+public class LeetNormalizer {
+    private static final char[] ASCII = new char[128];
+
+    static {
+        for (char c = 0; c < ASCII.length; c++) {
+            ASCII[c] = Character.toLowerCase(c);
+        }
+        map("4@", 'a');
+        map("8", 'b');
+        map("3", 'e');
+        map("96", 'g');
+        map("1l!|", 'i');
+        map("0", 'o');
+        map("5$", 's');
+        map("7+", 't');
+        map("2", 'z');
+    }
+
+    private LeetNormalizer() {      // To prevent instantiation
+    }
+
+    /**
+     * Normalize a character.
+     *
+     * @param c The character
+     * @return The normalized character
+     */
+    public static char normalize(char c) {
+        return c < ASCII.length ? ASCII[c] : Character.toLowerCase(c);
+    }
+
+    /**
+     * Normalize the characters of a password or a word.
+     *
+     * @param characters The characters
+     * @return A new array of the normalized characters, which the caller should clear after use if it is a password
+     */
+    public static char[] normalize(char[] characters) {
+        char[] normalized = new char[characters.length];
+        for (int i = 0; i < characters.length; i++) {
+            normalized[i] = normalize(characters[i]);
+        }
+        return normalized;
+    }
+
+    private static void map(String substitutes, char letter) {
+        for (int i = 0; i < substitutes.length(); i++) {
+            char substitute = substitutes.charAt(i);
+            ASCII[substitute] = letter;
+            ASCII[Character.toUpperCase(substitute)] = letter;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.dictionary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read only Aho-Corasick automaton of normalized words, built by {@link WordTrieBuilder}.
+ * <p>
+ * The nodes are laid out in a buffer, which is memory mapped for the dictionaries so that large dictionaries of
+ * several languages take little heap. Each node holds its failure link, the length of the longest word ending at it,
+ * the number of its children and the children sorted by their characters. All the words in a password are found in a
+ * single pass over it, following at most one child or failure link per step on average.
+ * <p>
+ * The lookups are thread safe.
+ */
+public class WordTrie {
+    static final int MAGIC = 0x50574454;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int NODE_HEADER_SIZE = 8;
+    static final int CHILD_SIZE = 6;
+
+    private final ByteBuffer buffer;
+    private final int wordCount;
+
+    private WordTrie(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE + NODE_HEADER_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a word trie");
+        }
+        this.buffer = buffer;
+        this.wordCount = buffer.getInt(8);
+    }
+
+    /**
+     * Memory map a word trie file.
+     *
+     * @param trieFile The word trie file
+     * @return The word trie
+     * @throws IOException if the file could not be read or is not a word trie
+     */
+    public static WordTrie open(File trieFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(trieFile, "r")) {
+            // The mapping stays valid after the file is closed
+            return new WordTrie(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()));
+        }
+    }
+
+    static WordTrie wrap(ByteBuffer buffer) throws IOException {
+        return new WordTrie(buffer);
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Check whether a normalized password contains a word.
+     *
+     * @param normalizedPassword The password normalized by {@link LeetNormalizer}
+     * @param minWordLength      The minimum length of the words which are looked for
+     * @return True if the password contains a word at least as long as the minimum length
+     */
+    public boolean containsWord(char[] normalizedPassword, int minWordLength) {
+        int node = HEADER_SIZE;
+        for (char c : normalizedPassword) {
+            while (true) {
+                int child = getChild(node, c);
+                if (child != 0) {
+                    node = child;
+                    break;
+                }
+                if (node == HEADER_SIZE) {
+                    break;
+                }
+                node = buffer.getInt(node);
+            }
+            if (buffer.getChar(node + 4) >= minWordLength) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getChild(int node, char c) {
+        int low = 0;
+        int high = buffer.getChar(node + 6) - 1;
+        int children = node + NODE_HEADER_SIZE;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char childCharacter = buffer.getChar(children + middle * CHILD_SIZE);
+            if (childCharacter < c) {
+                low = middle + 1;
+            } else if (childCharacter > c) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(children + middle * CHILD_SIZE + 2);
+            }
+        }
+        return 0;
+    }
+}
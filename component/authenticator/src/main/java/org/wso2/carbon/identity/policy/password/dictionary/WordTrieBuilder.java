@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.dictionary;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds a {@link WordTrie} from word lists, one word per line.
+ * <p>
+ * The words are normalized by {@link LeetNormalizer}. A dictionary file is built once with the command below, and
+ * the smaller tenant word lists are built in the memory when they are loaded.
+ * <pre>
+ * java -cp org.wso2.carbon.extension.identity.authenticator.passwordpolicy.connector-&lt;version&gt;.jar \
+ *     org.wso2.carbon.identity.policy.password.dictionary.WordTrieBuilder words-en.txt words-fr.txt dictionary.trie
+ * </pre>
+ */
+public class WordTrieBuilder {
+    private final Node root = new Node();
+    private int wordCount;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: WordTrieBuilder <word list>... <word trie file>");
+            System.exit(1);
+        }
+        WordTrieBuilder builder = new WordTrieBuilder();
+        for (int i = 0; i < args.length - 1; i++) {
+            try (Reader reader = Files.newBufferedReader(new File(args[i]).toPath(), StandardCharsets.UTF_8)) {
+                builder.addWords(reader);
+            }
+        }
+        builder.write(new File(args[args.length - 1]));
+        System.out.println("Indexed " + builder.wordCount + " distinct words to " + args[args.length - 1]);
+    }
+
+    /**
+     * Add the words of a list, ignoring the blank lines and the lines starting with '#'.
+     *
+     * @param words The word list
+     * @return This builder
+     * @throws IOException if the list could not be read
+     */
+    public WordTrieBuilder addWords(Reader words) throws IOException {
+        BufferedReader reader = new BufferedReader(words);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                addWord(line);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Add a word.
+     *
+     * @param word The word
+     * @return This builder
+     */
+    public WordTrieBuilder addWord(String word) {
+        if (word.length() > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("The word is too long: " + word.substring(0, 32));
+        }
+        Node node = root;
+        for (int i = 0; i < word.length(); i++) {
+            char c = LeetNormalizer.normalize(word.charAt(i));
+            Node child = node.children.get(c);
+            if (child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        if (node.wordLength == 0 && word.length() > 0) {
+            node.wordLength = word.length();
+            wordCount++;
+        }
+        return this;
+    }
+
+    /**
+     * Build the word trie in the memory.
+     *
+     * @return The word trie
+     */
+    public WordTrie build() {
+        try {
+            return WordTrie.wrap(serialize());
+        } catch (IOException e) {
+            throw new IllegalStateException("The serialized word trie is invalid", e);
+        }
+    }
+
+    /**
+     * Write the word trie to a file, which is memory mapped by {@link WordTrie#open(File)}.
+     *
+     * @param trieFile The word trie file
+     * @throws IOException if the file could not be written
+     */
+    public void write(File trieFile) throws IOException {
+        ByteBuffer buffer = serialize();
+        try (OutputStream output = Files.newOutputStream(trieFile.toPath())) {
+            output.write(buffer.array(), 0, buffer.limit());
+        }
+    }
+
+    private ByteBuffer serialize() {
+        // Lay the nodes out in breadth first order, which also orders the failure links
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(root);
+        long size = WordTrie.HEADER_SIZE;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            node.offset = (int) size;
+            size += WordTrie.NODE_HEADER_SIZE + (long) node.children.size() * WordTrie.CHILD_SIZE;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("The word trie exceeds 2 GB");
+            }
+            nodes.addAll(node.children.values());
+        }
+
+        root.failure = root;
+        root.longestWordLength = 0;
+        for (Node node : nodes) {
+            for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                Node child = entry.getValue();
+                Node failure = node.failure;
+                while (node != root && failure.children.get(entry.getKey()) == null && failure != root) {
+                    failure = failure.failure;
+                }
+                Node failureChild = failure.children.get(entry.getKey());
+                child.failure = node == root || failureChild == null ? root : failureChild;
+                child.longestWordLength = Math.max(child.wordLength, child.failure.longestWordLength);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(WordTrie.MAGIC);
+        buffer.putInt(WordTrie.VERSION);
+        buffer.putInt(wordCount);
+        buffer.putInt(nodes.size());
+        for (Node node : nodes) {
+            buffer.putInt(node.failure.offset);
+            buffer.putChar((char) node.longestWordLength);
+            buffer.putChar((char) node.children.size());
+            for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                buffer.putChar(entry.getKey());
+                buffer.putInt(entry.getValue().offset);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new TreeMap<>();
+        private int wordLength;
+        private int longestWordLength;
+        private Node failure;
+        private int offset;
+    }
+}
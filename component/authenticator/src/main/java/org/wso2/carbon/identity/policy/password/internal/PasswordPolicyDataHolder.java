@@ -18,6 +18,8 @@
 
 package org.wso2.carbon.identity.policy.password.internal;
 
+import org.wso2.carbon.event.stream.core.EventStreamService;
+import org.wso2.carbon.identity.event.services.IdentityEventService;
 import org.wso2.carbon.identity.governance.IdentityGovernanceService;
 
 /**
@@ -27,6 +29,8 @@ public class PasswordPolicyDataHolder {
     private static PasswordPolicyDataHolder instance;
 
     private IdentityGovernanceService identityGovernanceService;
+    private IdentityEventService identityEventService;
+    private EventStreamService eventStreamService;
 
     private PasswordPolicyDataHolder() {     // Prevent instantiation
     }
@@ -50,4 +54,20 @@ public class PasswordPolicyDataHolder {
     public void setIdentityGovernanceService(IdentityGovernanceService identityGovernanceService) {
         this.identityGovernanceService = identityGovernanceService;
     }
+
+    public IdentityEventService getIdentityEventService() {
+        return identityEventService;
+    }
+
+    public void setIdentityEventService(IdentityEventService identityEventService) {
+        this.identityEventService = identityEventService;
+    }
+
+    public EventStreamService getEventStreamService() {
+        return eventStreamService;
+    }
+
+    public void setEventStreamService(EventStreamService eventStreamService) {
+        this.eventStreamService = eventStreamService;
+    }
 }
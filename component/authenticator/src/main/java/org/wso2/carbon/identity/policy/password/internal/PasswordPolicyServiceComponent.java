@@ -29,12 +29,35 @@ import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
+import org.wso2.carbon.event.stream.core.EventStreamService;
 import org.wso2.carbon.identity.application.authentication.framework.ApplicationAuthenticator;
 import org.wso2.carbon.identity.event.handler.AbstractEventHandler;
+import org.wso2.carbon.identity.event.services.IdentityEventService;
 import org.wso2.carbon.identity.governance.IdentityGovernanceService;
 import org.wso2.carbon.identity.governance.common.IdentityConnectorConfig;
 import org.wso2.carbon.identity.policy.password.PasswordChangeHandler;
 import org.wso2.carbon.identity.policy.password.PasswordResetEnforcer;
+import org.wso2.carbon.identity.policy.password.analytics.CredentialUpdatePublisher;
+import org.wso2.carbon.identity.policy.password.breach.BreachedPasswordChecker;
+import org.wso2.carbon.identity.policy.password.cluster.ClusterCoordinator;
+import org.wso2.carbon.identity.policy.password.cluster.TenantShardManager;
+import org.wso2.carbon.identity.policy.password.deadline.ExpiryDeadlineMigrator;
+import org.wso2.carbon.identity.policy.password.dictionary.DictionaryChecker;
+import org.wso2.carbon.identity.policy.password.listener.PasswordPolicyResidentIdPListener;
+import org.wso2.carbon.identity.policy.password.listener.PasswordPolicyTenantUnloadObserver;
+import org.wso2.carbon.identity.policy.password.metrics.MetricsRegistry;
+import org.wso2.carbon.identity.policy.password.metrics.PasswordPolicyMetrics;
+import org.wso2.carbon.identity.policy.password.reminder.PasswordExpiryReminderScheduler;
+import org.wso2.carbon.identity.policy.password.reminder.ReminderSweeper;
+import org.wso2.carbon.identity.policy.password.scan.PasswordExpiryScanner;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeWriter;
+import org.wso2.carbon.idp.mgt.listener.IdentityProviderMgtListener;
+import org.wso2.carbon.utils.Axis2ConfigurationContextObserver;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 @Component(
         name = "org.wso2.carbon.identity.policy.password.component",
@@ -43,6 +66,9 @@ import org.wso2.carbon.identity.policy.password.PasswordResetEnforcer;
 public class PasswordPolicyServiceComponent {
     private static final Log log = LogFactory.getLog(PasswordPolicyServiceComponent.class);
 
+    private static final String METRICS_MBEAN_NAME =
+            "org.wso2.carbon.identity.policy.password:type=PasswordPolicyMetrics";
+
     @Activate
     protected void activate(ComponentContext ctxt) {
         try {
@@ -53,11 +79,40 @@ public class PasswordPolicyServiceComponent {
             bundleContext.registerService(ApplicationAuthenticator.class.getName(),
                     new PasswordResetEnforcer(), null);
 
+            // Start writing the password update timestamps asynchronously if the write behind mode is enabled
+            PasswordUpdateTimeWriter.getInstance().start();
+
+            // Start sending the password expiry reminders if the embedded reminders are enabled
+            PasswordExpiryReminderScheduler.getInstance().start();
+            ReminderSweeper.getInstance().start();
+
+            // Backfill the password expiry deadlines of the existing users if requested
+            ExpiryDeadlineMigrator.getInstance().start();
+
+            // Load the breached password index if it is configured
+            BreachedPasswordChecker.getInstance().start();
+
+            // Load the dictionaries if the dictionary check is enabled
+            DictionaryChecker.getInstance().start();
+
+            // Start publishing the password changes to IS Analytics if the data publishing is enabled
+            CredentialUpdatePublisher.getInstance().start();
+
             // Register the listener to capture password change events.
             bundleContext.registerService(AbstractEventHandler.class.getName(), passwordChangeHandler, null);
 
             // Register the connector config to render the resident identity provider configurations
             bundleContext.registerService(IdentityConnectorConfig.class.getName(), passwordChangeHandler, null);
+
+            // Register the listener to refresh the cached configurations upon resident identity provider updates
+            bundleContext.registerService(IdentityProviderMgtListener.class.getName(),
+                    new PasswordPolicyResidentIdPListener(), null);
+
+            // Register the observer to clear the cached entries of the unloaded tenants
+            bundleContext.registerService(Axis2ConfigurationContextObserver.class.getName(),
+                    new PasswordPolicyTenantUnloadObserver(), null);
+            // Expose the measurements of the connector through JMX
+            registerMetricsMBean();
             if (log.isDebugEnabled()) {
                 log.debug("PasswordResetEnforcer handler is activated");
             }
@@ -70,6 +125,15 @@ public class PasswordPolicyServiceComponent {
 
     @Deactivate
     protected void deactivate(ComponentContext ctxt) {
+        ReminderSweeper.getInstance().shutdown();
+        PasswordExpiryReminderScheduler.getInstance().shutdown();
+        PasswordUpdateTimeWriter.getInstance().shutdown();
+        PasswordExpiryScanner.getInstance().shutdown();
+        ExpiryDeadlineMigrator.getInstance().shutdown();
+        BreachedPasswordChecker.getInstance().shutdown();
+        DictionaryChecker.getInstance().shutdown();
+        CredentialUpdatePublisher.getInstance().shutdown();
+        unregisterMetricsMBean();
         if (log.isDebugEnabled()) {
             log.debug("PasswordResetEnforcer is deactivated");
         }
@@ -89,4 +153,88 @@ public class PasswordPolicyServiceComponent {
     protected void unsetIdentityGovernanceService(IdentityGovernanceService idpManager) {
         PasswordPolicyDataHolder.getInstance().setIdentityGovernanceService(null);
     }
+
+    @Reference(
+            name = "IdentityEventService",
+            service = org.wso2.carbon.identity.event.services.IdentityEventService.class,
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "unsetIdentityEventService"
+    )
+    protected void setIdentityEventService(IdentityEventService identityEventService) {
+        PasswordPolicyDataHolder.getInstance().setIdentityEventService(identityEventService);
+    }
+
+    protected void unsetIdentityEventService(IdentityEventService identityEventService) {
+        PasswordPolicyDataHolder.getInstance().setIdentityEventService(null);
+    }
+
+    @Reference(
+            name = "EventStreamService",
+            service = org.wso2.carbon.event.stream.core.EventStreamService.class,
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "unsetEventStreamService"
+    )
+    protected void setEventStreamService(EventStreamService eventStreamService) {
+        PasswordPolicyDataHolder.getInstance().setEventStreamService(eventStreamService);
+    }
+
+    protected void unsetEventStreamService(EventStreamService eventStreamService) {
+        PasswordPolicyDataHolder.getInstance().setEventStreamService(null);
+    }
+
+    @Reference(
+            name = "PasswordPolicyClusterCoordinator",
+            service = ClusterCoordinator.class,
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "unsetClusterCoordinator"
+    )
+    protected void setClusterCoordinator(ClusterCoordinator clusterCoordinator) {
+        TenantShardManager.getInstance().setCoordinator(clusterCoordinator);
+    }
+
+    protected void unsetClusterCoordinator(ClusterCoordinator clusterCoordinator) {
+        TenantShardManager.getInstance().setCoordinator(null);
+    }
+
+    @Reference(
+            name = "PasswordPolicyMetricsRegistry",
+            service = MetricsRegistry.class,
+            cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "removeMetricsRegistry"
+    )
+    protected void addMetricsRegistry(MetricsRegistry metricsRegistry) {
+        PasswordPolicyMetrics.getInstance().addRegistry(metricsRegistry);
+    }
+
+    protected void removeMetricsRegistry(MetricsRegistry metricsRegistry) {
+        PasswordPolicyMetrics.getInstance().removeRegistry(metricsRegistry);
+    }
+
+    private void registerMetricsMBean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(METRICS_MBEAN_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(PasswordPolicyMetrics.getInstance().getDefaultRegistry(), objectName);
+            }
+        } catch (JMException e) {
+            log.warn("Error occurred while registering the password policy metrics MBean", e);
+        }
+    }
+
+    private void unregisterMetricsMBean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(METRICS_MBEAN_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.warn("Error occurred while unregistering the password policy metrics MBean", e);
+        }
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.listener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.common.model.IdentityProvider;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.deadline.ExpiryDeadlineMigrator;
+import org.wso2.carbon.identity.policy.password.reminder.PasswordExpiryReminderScheduler;
+import org.wso2.carbon.idp.mgt.IdentityProviderManagementException;
+import org.wso2.carbon.idp.mgt.listener.AbstractIdentityProviderMgtListener;
+
+/**
+ * Listener which drops the cached password expiry policy of a tenant when its resident identity provider,
+ * which holds the governance connector configurations, is updated. The scheduled password expiry reminders of the
+ * tenant are rescheduled according to the updated policy. If the expiry period of the tenant is changed, the password
+ * expiry deadlines of its users are recomputed by the node which owns the tenant.
+ */
+public class PasswordPolicyResidentIdPListener extends AbstractIdentityProviderMgtListener {
+    private static final Log log = LogFactory.getLog(PasswordPolicyResidentIdPListener.class);
+
+    private static final int DEFAULT_ORDER_ID = 250;
+
+    @Override
+    public int getDefaultOrderId() {
+        return DEFAULT_ORDER_ID;
+    }
+
+    @Override
+    public boolean doPostUpdateResidentIdP(IdentityProvider identityProvider, String tenantDomain)
+            throws IdentityProviderManagementException {
+        PasswordPolicyConfig previousConfig = PasswordPolicyConfigManager.getInstance().invalidate(tenantDomain);
+        PasswordExpiryReminderScheduler.getInstance().rescheduleTenant(tenantDomain);
+        ExpiryDeadlineMigrator.getInstance().migrateIfChanged(tenantDomain, previousConfig,
+                PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain));
+        if (log.isDebugEnabled()) {
+            log.debug("Cleared the cached password expiry configurations of the tenant: " + tenantDomain);
+        }
+        return true;
+    }
+}
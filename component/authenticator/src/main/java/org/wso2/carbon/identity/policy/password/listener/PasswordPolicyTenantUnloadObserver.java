@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.listener;
+
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.policy.password.cache.PasswordPatternCache;
+import org.wso2.carbon.identity.policy.password.cache.SessionExpiryDeadlineCache;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.dictionary.DictionaryChecker;
+import org.wso2.carbon.identity.policy.password.reminder.PasswordExpiryReminderScheduler;
+import org.wso2.carbon.utils.AbstractAxis2ConfigurationContextObserver;
+
+/**
+ * Drops the cached user store managers, configurations and session deadlines of a tenant when the tenant is unloaded.
+ * The cached password update times are kept, since they are still valid when the tenant is loaded again, and they
+ * expire as any other entry.
+ */
+public class PasswordPolicyTenantUnloadObserver extends AbstractAxis2ConfigurationContextObserver {
+    private static final Log log = LogFactory.getLog(PasswordPolicyTenantUnloadObserver.class);
+
+    @Override
+    public void terminatingConfigurationContext(ConfigurationContext configurationContext) {
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        invalidateTenant(carbonContext.getTenantDomain(), carbonContext.getTenantId());
+    }
+
+    /**
+     * Drop all the cached entries of a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     * @param tenantId     The tenant id
+     */
+    public void invalidateTenant(String tenantDomain, int tenantId) {
+        UserStoreManagerCache.getInstance().invalidate(tenantDomain);
+        PasswordPatternCache.getInstance().invalidate(tenantId);
+        SessionExpiryDeadlineCache.getInstance().invalidateTenant(tenantDomain);
+        PasswordPolicyConfigManager.getInstance().invalidate(tenantDomain);
+        DictionaryChecker.getInstance().invalidate(tenantDomain);
+        PasswordExpiryReminderScheduler.getInstance().invalidateTenant(tenantDomain);
+        if (log.isDebugEnabled()) {
+            log.debug("Cleared the cached password policy entries of the unloaded tenant: " + tenantDomain);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed email template with {{placeholder}} style placeholders.
+ * <p>
+ * The template is parsed once, and can be partially rendered, e.g. with the values common to a tenant, so that only
+ * the values of each recipient are substituted per email.
+ */
+public class MailTemplate {
+    private static final String PLACEHOLDER_START = "{{";
+    private static final String PLACEHOLDER_END = "}}";
+
+    // The literal text before each placeholder, followed by the text after the last placeholder
+    private final String[] texts;
+    private final String[] placeholders;
+
+    private MailTemplate(String[] texts, String[] placeholders) {
+        this.texts = texts;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * Parse a template.
+     *
+     * @param template The template text
+     * @return The parsed template
+     */
+    public static MailTemplate parse(String template) {
+        List<String> texts = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int start = template.indexOf(PLACEHOLDER_START, position);
+            int end = start < 0 ? -1 : template.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length());
+            if (end < 0) {
+                texts.add(template.substring(position));
+                break;
+            }
+            texts.add(template.substring(position, start));
+            placeholders.add(template.substring(start + PLACEHOLDER_START.length(), end).trim());
+            position = end + PLACEHOLDER_END.length();
+        }
+        return new MailTemplate(texts.toArray(new String[texts.size()]),
+                placeholders.toArray(new String[placeholders.size()]));
+    }
+
+    /**
+     * Substitute the given placeholders, keeping the others for a later rendering.
+     *
+     * @param values The values of the placeholders to substitute
+     * @return The partially rendered template
+     */
+    public MailTemplate render(Map<String, String> values) {
+        List<String> renderedTexts = new ArrayList<>();
+        List<String> renderedPlaceholders = new ArrayList<>();
+        StringBuilder text = new StringBuilder(texts[0]);
+        for (int i = 0; i < placeholders.length; i++) {
+            String value = values.get(placeholders[i]);
+            if (value != null) {
+                text.append(value);
+            } else {
+                renderedTexts.add(text.toString());
+                renderedPlaceholders.add(placeholders[i]);
+                text.setLength(0);
+            }
+            text.append(texts[i + 1]);
+        }
+        renderedTexts.add(text.toString());
+        return new MailTemplate(renderedTexts.toArray(new String[renderedTexts.size()]),
+                renderedPlaceholders.toArray(new String[renderedPlaceholders.size()]));
+    }
+
+    /**
+     * Render the template, replacing the placeholders without a value with empty strings.
+     *
+     * @param values The values of the placeholders
+     * @return The rendered text
+     */
+    public String format(Map<String, String> values) {
+        if (placeholders.length == 0) {
+            return texts[0];
+        }
+        StringBuilder text = new StringBuilder(texts[0]);
+        for (int i = 0; i < placeholders.length; i++) {
+            String value = values.get(placeholders[i]);
+            if (value != null) {
+                text.append(value);
+            }
+            text.append(texts[i + 1]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Get the names of the placeholders which are not rendered yet.
+     *
+     * @return The names of the placeholders in the order they appear
+     */
+    public List<String> getPlaceholders() {
+        return Collections.unmodifiableList(Arrays.asList(placeholders));
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.mail;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A connection to an SMTP server, over which any number of emails are sent one after the other.
+ * <p>
+ * Only the subset of SMTP needed to submit the notification emails is implemented, i.e. STARTTLS, AUTH PLAIN and
+ * sending a message to several recipients in one transaction.
+ */
+public class SmtpConnection implements Closeable {
+    private static final Log log = LogFactory.getLog(SmtpConnection.class);
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String CRLF = "\r\n";
+
+    private final String host;
+    private Socket socket;
+    private BufferedReader reader;
+    private OutputStream output;
+    private final List<String> extensions = new ArrayList<>();
+    private volatile long lastUsedTime = System.currentTimeMillis();
+
+    private SmtpConnection(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Connect to an SMTP server and log in.
+     *
+     * @param host          The host name of the SMTP server
+     * @param port          The port of the SMTP server
+     * @param timeoutMillis The timeout of connecting and of each reply of the server
+     * @param startTls      Whether to switch to TLS before logging in
+     * @param username      The username to log in with, or null to send without logging in
+     * @param password      The password to log in with
+     * @return The connection, ready to send emails
+     * @throws IOException if the connection or the login fails
+     */
+    public static SmtpConnection open(String host, int port, int timeoutMillis, boolean startTls, String username,
+                                      String password) throws IOException {
+        SmtpConnection connection = new SmtpConnection(host);
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            connection.attach(socket);
+            connection.expect(220);
+            connection.hello();
+            if (startTls) {
+                if (!connection.extensions.contains("STARTTLS")) {
+                    throw new IOException("The SMTP server " + host + " does not support STARTTLS");
+                }
+                connection.command("STARTTLS", 220);
+                SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(socket, host, port, true);
+                sslSocket.startHandshake();
+                connection.attach(sslSocket);
+                connection.hello();
+            }
+            if (StringUtils.isNotEmpty(username)) {
+                String credentials = "\0" + username + "\0" + StringUtils.defaultString(password);
+                connection.command("AUTH PLAIN " + Base64.encodeBase64String(
+                        credentials.getBytes(Charset.forName("UTF-8"))), 235);
+            }
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            connection.closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Send a message to several recipients in one transaction.
+     *
+     * @param from       The envelope sender
+     * @param recipients The envelope recipients
+     * @param message    The message, with the headers and the body, as 7 bit lines not starting with dots
+     * @return The recipients rejected by the server, to which the message was not sent
+     * @throws IOException if the message could not be sent. The connection should be closed then.
+     * @throws IllegalArgumentException if an address is not valid, in which case nothing is sent
+     */
+    public List<String> send(String from, List<String> recipients, String message) throws IOException {
+        if (!isValidAddress(from)) {
+            throw new IllegalArgumentException("Invalid envelope sender address");
+        }
+        for (String recipient : recipients) {
+            if (!isValidAddress(recipient)) {
+                throw new IllegalArgumentException("Invalid envelope recipient address");
+            }
+        }
+        lastUsedTime = System.currentTimeMillis();
+        command("MAIL FROM:<" + from + ">", 250);
+        List<String> rejectedRecipients = new ArrayList<>();
+        for (String recipient : recipients) {
+            int code = write("RCPT TO:<" + recipient + ">");
+            if (code != 250 && code != 251) {
+                rejectedRecipients.add(recipient);
+            }
+        }
+        if (rejectedRecipients.size() == recipients.size()) {
+            command("RSET", 250);
+            return rejectedRecipients;
+        }
+        command("DATA", 354);
+        output.write(message.getBytes(ASCII));
+        if (!message.endsWith(CRLF)) {
+            output.write(CRLF.getBytes(ASCII));
+        }
+        command(".", 250);
+        lastUsedTime = System.currentTimeMillis();
+        return rejectedRecipients;
+    }
+
+    /**
+     * Check whether an address can be sent as an envelope address.
+     * Only the printable ASCII characters other than the angle brackets are allowed, so that an address can not
+     * end the command it is sent in and inject other commands.
+     *
+     * @param address The email address
+     * @return True if the address can be sent to the server
+     */
+    public static boolean isValidAddress(String address) {
+        if (StringUtils.isEmpty(address)) {
+            return false;
+        }
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c <= ' ' || c > '~' || c == '<' || c == '>') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether the server still accepts commands on this connection, before it is reused.
+     *
+     * @return True if the connection can be used
+     */
+    public boolean isUsable() {
+        try {
+            command("RSET", 250);
+            return true;
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("The connection to the SMTP server " + host + " is no longer usable", e);
+            }
+            return false;
+        }
+    }
+
+    public long getLastUsedTime() {
+        return lastUsedTime;
+    }
+
+    @Override
+    public void close() {
+        try {
+            write("QUIT");
+        } catch (IOException e) {
+            // The server may have closed the connection already
+        }
+        closeQuietly();
+    }
+
+    private void attach(Socket socket) throws IOException {
+        this.socket = socket;
+        reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ASCII));
+        output = socket.getOutputStream();
+    }
+
+    private void hello() throws IOException {
+        writeLine("EHLO " + getLocalHostName());
+        List<String> lines = readReply();
+        if (getCode(lines) != 250) {
+            throw new IOException("The SMTP server " + host + " rejected EHLO: " + lines);
+        }
+        extensions.clear();
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).length() > 4) {
+                extensions.add(lines.get(i).substring(4).toUpperCase(Locale.ENGLISH));
+            }
+        }
+    }
+
+    private void command(String command, int expectedCode) throws IOException {
+        int code = write(command);
+        if (code != expectedCode) {
+            throw new IOException("The SMTP server " + host + " replied " + code + " to "
+                    + (command.startsWith("AUTH") ? "AUTH" : command));
+        }
+    }
+
+    private void expect(int expectedCode) throws IOException {
+        List<String> lines = readReply();
+        if (getCode(lines) != expectedCode) {
+            throw new IOException("Unexpected reply from the SMTP server " + host + ": " + lines);
+        }
+    }
+
+    private int write(String command) throws IOException {
+        writeLine(command);
+        return getCode(readReply());
+    }
+
+    private void writeLine(String line) throws IOException {
+        output.write((line + CRLF).getBytes(ASCII));
+        output.flush();
+    }
+
+    private List<String> readReply() throws IOException {
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("The SMTP server " + host + " closed the connection");
+            }
+            if (line.length() < 3) {
+                throw new IOException("Invalid reply from the SMTP server " + host + ": " + line);
+            }
+            lines.add(line);
+            // The last line of a multi line reply has a space after the code
+            if (line.length() == 3 || line.charAt(3) != '-') {
+                return lines;
+            }
+        }
+    }
+
+    private int getCode(List<String> lines) throws IOException {
+        String line = lines.get(lines.size() - 1);
+        try {
+            return Integer.parseInt(line.substring(0, 3));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid reply from the SMTP server " + host + ": " + line, e);
+        }
+    }
+
+    private void closeQuietly() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+
+    private static String getLocalHostName() {
+        try {
+            return InetAddress.getLocalHost().getCanonicalHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.mail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of connections to an SMTP server, so that the emails are not sent over a new connection each.
+ * <p>
+ * The most recently used connection is reused first. A connection which has been idle for a while is checked
+ * before it is reused, and one which has been idle for longer than the server is likely to keep it open is closed.
+ */
+public class SmtpConnectionPool implements Closeable {
+    private static final long VALIDATION_IDLE_MILLIS = 5000;
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private final boolean startTls;
+    private final String username;
+    private final String password;
+    private final long maxIdleMillis;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<SmtpConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final AtomicLong openedCount = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Create a pool of connections to an SMTP server. The connections are opened when they are first needed.
+     *
+     * @param host           The host name of the SMTP server
+     * @param port           The port of the SMTP server
+     * @param timeoutMillis  The timeout of connecting, of each reply, and of waiting for a free connection
+     * @param startTls       Whether to switch to TLS before logging in
+     * @param username       The username to log in with, or null to send without logging in
+     * @param password       The password to log in with
+     * @param maxConnections The maximum number of connections open at once
+     * @param maxIdleMillis  The time after which an idle connection is closed
+     */
+    public SmtpConnectionPool(String host, int port, int timeoutMillis, boolean startTls, String username,
+                              String password, int maxConnections, long maxIdleMillis) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        this.startTls = startTls;
+        this.username = username;
+        this.password = password;
+        this.maxIdleMillis = maxIdleMillis;
+        this.permits = new Semaphore(Math.max(1, maxConnections), true);
+    }
+
+    /**
+     * Take a connection from the pool, opening a new one if no idle connection is usable.
+     * The connection has to be given back with {@link #release(SmtpConnection, boolean)}.
+     *
+     * @return A connection ready to send emails
+     * @throws IOException if no connection is free within the timeout, or a new connection could not be opened
+     */
+    public SmtpConnection borrow() throws IOException {
+        if (closed) {
+            throw new IOException("The SMTP connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out while waiting for a connection to the SMTP server " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to the SMTP server " + host);
+        }
+        try {
+            SmtpConnection connection;
+            while ((connection = idleConnections.pollFirst()) != null) {
+                long idleMillis = System.currentTimeMillis() - connection.getLastUsedTime();
+                if (idleMillis <= maxIdleMillis && (idleMillis < VALIDATION_IDLE_MILLIS || connection.isUsable())) {
+                    return connection;
+                }
+                connection.close();
+            }
+            connection = SmtpConnection.open(host, port, timeoutMillis, startTls, username, password);
+            openedCount.incrementAndGet();
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a connection taken from the pool.
+     *
+     * @param connection The connection
+     * @param broken     True if sending over the connection failed, in which case it is closed
+     */
+    public void release(SmtpConnection connection, boolean broken) {
+        if (broken || closed) {
+            connection.close();
+        } else {
+            idleConnections.offerFirst(connection);
+        }
+        permits.release();
+        if (closed) {
+            closeIdleConnections();
+        }
+    }
+
+    /**
+     * Close the idle connections. The connections in use are closed when they are given back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeIdleConnections();
+    }
+
+    private void closeIdleConnections() {
+        SmtpConnection connection;
+        while ((connection = idleConnections.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Get the number of connections opened by this pool so far.
+     *
+     * @return The number of opened connections
+     */
+    public long getOpenedCount() {
+        return openedCount.get();
+    }
+
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.metrics;
+
+/**
+ * The events of the connector which are counted per tenant.
+ */
+public enum CounterMetric {
+    /**
+     * A login of a user whose password has expired.
+     */
+    EXPIRED,
+
+    /**
+     * A login of a user whose password has not expired.
+     */
+    NOT_EXPIRED,
+
+    /**
+     * A password change or a claim write which is attempted again after a failure.
+     */
+    RETRY,
+
+    /**
+     * A failed user store operation.
+     */
+    FAILURE
+}
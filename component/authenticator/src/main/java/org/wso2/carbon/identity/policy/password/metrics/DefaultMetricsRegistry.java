@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.metrics;
+
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeWriter;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The built-in registry, which keeps a histogram per operation and counters per tenant, and exposes them through JMX.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry, PasswordPolicyMetricsMXBean {
+    private static final LatencyMetric[] LATENCY_METRICS = LatencyMetric.values();
+    private static final CounterMetric[] COUNTER_METRICS = CounterMetric.values();
+
+    private volatile LatencyHistogram[] histograms = createHistograms();
+    private final ConcurrentMap<String, AtomicLongArray> tenantCounters = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordLatency(LatencyMetric metric, String tenantDomain, long latencyInNanos) {
+        histograms[metric.ordinal()].record(latencyInNanos);
+    }
+
+    @Override
+    public void increment(CounterMetric metric, String tenantDomain) {
+        AtomicLongArray counters = tenantCounters.get(tenantDomain);
+        if (counters == null) {
+            counters = new AtomicLongArray(COUNTER_METRICS.length);
+            AtomicLongArray existingCounters = tenantCounters.putIfAbsent(tenantDomain, counters);
+            if (existingCounters != null) {
+                counters = existingCounters;
+            }
+        }
+        counters.incrementAndGet(metric.ordinal());
+    }
+
+    /**
+     * Get the histogram of the latencies of an operation.
+     *
+     * @param metric The operation
+     * @return The histogram
+     */
+    public LatencyHistogram getHistogram(LatencyMetric metric) {
+        return histograms[metric.ordinal()];
+    }
+
+    /**
+     * Get the count of an event in a tenant.
+     *
+     * @param metric       The event
+     * @param tenantDomain The tenant domain
+     * @return The number of times the event occurred in the tenant
+     */
+    public long getCount(CounterMetric metric, String tenantDomain) {
+        AtomicLongArray counters = tenantCounters.get(tenantDomain);
+        return counters == null ? 0 : counters.get(metric.ordinal());
+    }
+
+    @Override
+    public LatencySummary getClaimReadLatency() {
+        return getHistogram(LatencyMetric.CLAIM_READ).getSummary();
+    }
+
+    @Override
+    public LatencySummary getClaimWriteLatency() {
+        return getHistogram(LatencyMetric.CLAIM_WRITE).getSummary();
+    }
+
+    @Override
+    public LatencySummary getPasswordValidationLatency() {
+        return getHistogram(LatencyMetric.PASSWORD_VALIDATION).getSummary();
+    }
+
+    @Override
+    public LatencySummary getCredentialUpdateLatency() {
+        return getHistogram(LatencyMetric.CREDENTIAL_UPDATE).getSummary();
+    }
+
+    @Override
+    public Map<String, Long> getExpiredCounts() {
+        return getCounts(CounterMetric.EXPIRED);
+    }
+
+    @Override
+    public Map<String, Long> getNotExpiredCounts() {
+        return getCounts(CounterMetric.NOT_EXPIRED);
+    }
+
+    @Override
+    public Map<String, Long> getRetryCounts() {
+        return getCounts(CounterMetric.RETRY);
+    }
+
+    @Override
+    public Map<String, Long> getFailureCounts() {
+        return getCounts(CounterMetric.FAILURE);
+    }
+
+    @Override
+    public long getPasswordUpdateTimeCacheHitCount() {
+        return PasswordUpdateTimeCache.getInstance().getHitCount();
+    }
+
+    @Override
+    public long getPasswordUpdateTimeCacheMissCount() {
+        return PasswordUpdateTimeCache.getInstance().getMissCount();
+    }
+
+    @Override
+    public int getWriteBehindQueueDepth() {
+        return PasswordUpdateTimeWriter.getInstance().getQueueDepth();
+    }
+
+    @Override
+    public long getWriteBehindLagInMillis() {
+        return PasswordUpdateTimeWriter.getInstance().getLagMillis();
+    }
+
+    @Override
+    public void reset() {
+        histograms = createHistograms();
+        tenantCounters.clear();
+    }
+
+    private Map<String, Long> getCounts(CounterMetric metric) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLongArray> entry : tenantCounters.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get(metric.ordinal()));
+        }
+        return counts;
+    }
+
+    private static LatencyHistogram[] createHistograms() {
+        LatencyHistogram[] latencyHistograms = new LatencyHistogram[LATENCY_METRICS.length];
+        for (int i = 0; i < latencyHistograms.length; i++) {
+            latencyHistograms[i] = new LatencyHistogram();
+        }
+        return latencyHistograms;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with power of two buckets in microseconds.
+ * <p>
+ * Bucket i counts the latencies from 2^(i-1) up to 2^i - 1 microseconds, and bucket 0 counts the latencies below
+ * a microsecond. Recording a latency does not allocate or lock. The percentiles are approximated by the upper bound
+ * of the bucket in which they fall, which is within a factor of two of the actual value.
+ */
+public class LatencyHistogram {
+    private static final int BUCKET_COUNT = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalInNanos = new AtomicLong();
+    private final AtomicLong maxInNanos = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param latencyInNanos The latency in nanoseconds
+     */
+    public void record(long latencyInNanos) {
+        if (latencyInNanos < 0) {
+            latencyInNanos = 0;
+        }
+        long latencyInMicros = TimeUnit.NANOSECONDS.toMicros(latencyInNanos);
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(latencyInMicros), BUCKET_COUNT - 1);
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalInNanos.addAndGet(latencyInNanos);
+
+        long max = maxInNanos.get();
+        while (latencyInNanos > max && !maxInNanos.compareAndSet(max, latencyInNanos)) {
+            max = maxInNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the mean latency.
+     *
+     * @return The mean latency in microseconds or 0 if nothing was recorded
+     */
+    public double getMeanInMicros() {
+        long recordedCount = count.get();
+        return recordedCount == 0 ? 0 : totalInNanos.get() / 1000.0 / recordedCount;
+    }
+
+    /**
+     * Get the maximum latency.
+     *
+     * @return The maximum latency in microseconds
+     */
+    public long getMaxInMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxInNanos.get());
+    }
+
+    /**
+     * Get an approximation of a percentile of the latencies.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The upper bound of the bucket containing the percentile in microseconds, capped by the maximum
+     */
+    public long getPercentileInMicros(double percentile) {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long recordedCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = buckets.get(i);
+            recordedCount += bucketCounts[i];
+        }
+        if (recordedCount == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile / 100.0 * recordedCount);
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulativeCount += bucketCounts[i];
+            if (cumulativeCount >= rank) {
+                return Math.min((1L << i) - 1, getMaxInMicros());
+            }
+        }
+        return getMaxInMicros();
+    }
+
+    /**
+     * Get a summary of the recorded latencies.
+     *
+     * @return The summary
+     */
+    public LatencySummary getSummary() {
+        return new LatencySummary(getCount(), getMeanInMicros(), getPercentileInMicros(50),
+                getPercentileInMicros(99), getMaxInMicros());
+    }
+}
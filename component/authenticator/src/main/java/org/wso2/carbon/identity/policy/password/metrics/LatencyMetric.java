@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.metrics;
+
+/**
+ * The operations of the connector whose latencies are measured.
+ */
+public enum LatencyMetric {
+    /**
+     * Reading the last password update time claim in order to decide whether the password has expired.
+     */
+    CLAIM_READ,
+
+    /**
+     * Writing the last password update time claim after a password change.
+     */
+    CLAIM_WRITE,
+
+    /**
+     * Validating a new password against the password format of the user store.
+     */
+    PASSWORD_VALIDATION,
+
+    /**
+     * Updating the credential of a user from the password reset page.
+     */
+    CREDENTIAL_UPDATE
+}
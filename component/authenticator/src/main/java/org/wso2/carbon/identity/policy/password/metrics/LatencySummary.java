@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summary of the latencies of an operation, as exposed through JMX.
+ */
+public class LatencySummary {
+    private final long count;
+    private final double meanInMicros;
+    private final long medianInMicros;
+    private final long percentile99InMicros;
+    private final long maxInMicros;
+
+    @ConstructorProperties({"count", "meanInMicros", "medianInMicros", "percentile99InMicros", "maxInMicros"})
+    public LatencySummary(long count, double meanInMicros, long medianInMicros, long percentile99InMicros,
+                          long maxInMicros) {
+        this.count = count;
+        this.meanInMicros = meanInMicros;
+        this.medianInMicros = medianInMicros;
+        this.percentile99InMicros = percentile99InMicros;
+        this.maxInMicros = maxInMicros;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanInMicros() {
+        return meanInMicros;
+    }
+
+    public long getMedianInMicros() {
+        return medianInMicros;
+    }
+
+    public long getPercentile99InMicros() {
+        return percentile99InMicros;
+    }
+
+    public long getMaxInMicros() {
+        return maxInMicros;
+    }
+}
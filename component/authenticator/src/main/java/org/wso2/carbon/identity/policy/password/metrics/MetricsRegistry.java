@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.metrics;
+
+/**
+ * Receives the measurements of the connector.
+ * <p>
+ * The built-in registry is exposed through JMX. Other registries, such as bridges to a monitoring system, can be
+ * registered as OSGi services of this type. The methods are called on the authentication and event handling threads,
+ * therefore implementations need to be thread safe, non blocking and should avoid allocating.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Record the latency of an operation.
+     *
+     * @param metric         The operation
+     * @param tenantDomain   The tenant on behalf of which the operation was done
+     * @param latencyInNanos The latency of the operation in nanoseconds
+     */
+    void recordLatency(LatencyMetric metric, String tenantDomain, long latencyInNanos);
+
+    /**
+     * Count an event.
+     *
+     * @param metric       The event
+     * @param tenantDomain The tenant in which the event occurred
+     */
+    void increment(CounterMetric metric, String tenantDomain);
+}
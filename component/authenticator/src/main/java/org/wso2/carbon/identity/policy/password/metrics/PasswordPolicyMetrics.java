@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Arrays;
+
+/**
+ * Entry point of the measurements of the connector, which forwards them to the built-in registry and to the
+ * registries registered as OSGi services.
+ * <p>
+ * Recording a measurement does not allocate, so that the measurements can be left on in production.
+ */
+public class PasswordPolicyMetrics {
+    private static final Log log = LogFactory.getLog(PasswordPolicyMetrics.class);
+
+    private static final PasswordPolicyMetrics instance = new PasswordPolicyMetrics();
+
+    /**
+     * The tenant reported when the tenant of an operation is not known.
+     */
+    public static final String UNKNOWN_TENANT = "unknown";
+
+    private final DefaultMetricsRegistry defaultRegistry = new DefaultMetricsRegistry();
+    private volatile MetricsRegistry[] registries = new MetricsRegistry[]{defaultRegistry};
+
+    private PasswordPolicyMetrics() {     // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the PasswordPolicyMetrics
+     *
+     * @return A singleton instance of the PasswordPolicyMetrics
+     */
+    public static PasswordPolicyMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Record the latency of an operation which started at the given time.
+     *
+     * @param metric       The operation
+     * @param tenantDomain The tenant on behalf of which the operation was done
+     * @param startTime    The value of {@link System#nanoTime()} when the operation started
+     */
+    public void recordLatency(LatencyMetric metric, String tenantDomain, long startTime) {
+        long latencyInNanos = System.nanoTime() - startTime;
+        String tenant = tenantDomain == null ? UNKNOWN_TENANT : tenantDomain;
+        MetricsRegistry[] currentRegistries = registries;
+        for (int i = 0; i < currentRegistries.length; i++) {
+            try {
+                currentRegistries[i].recordLatency(metric, tenant, latencyInNanos);
+            } catch (RuntimeException e) {
+                log.warn("Error occurred while recording the metric " + metric + " in " + currentRegistries[i], e);
+            }
+        }
+    }
+
+    /**
+     * Count an event.
+     *
+     * @param metric       The event
+     * @param tenantDomain The tenant in which the event occurred
+     */
+    public void increment(CounterMetric metric, String tenantDomain) {
+        String tenant = tenantDomain == null ? UNKNOWN_TENANT : tenantDomain;
+        MetricsRegistry[] currentRegistries = registries;
+        for (int i = 0; i < currentRegistries.length; i++) {
+            try {
+                currentRegistries[i].increment(metric, tenant);
+            } catch (RuntimeException e) {
+                log.warn("Error occurred while recording the metric " + metric + " in " + currentRegistries[i], e);
+            }
+        }
+    }
+
+    /**
+     * Start forwarding the measurements to a registry.
+     *
+     * @param registry The registry
+     */
+    public synchronized void addRegistry(MetricsRegistry registry) {
+        MetricsRegistry[] currentRegistries = registries;
+        MetricsRegistry[] newRegistries = Arrays.copyOf(currentRegistries, currentRegistries.length + 1);
+        newRegistries[currentRegistries.length] = registry;
+        registries = newRegistries;
+    }
+
+    /**
+     * Stop forwarding the measurements to a registry.
+     *
+     * @param registry The registry
+     */
+    public synchronized void removeRegistry(MetricsRegistry registry) {
+        MetricsRegistry[] currentRegistries = registries;
+        for (int i = 0; i < currentRegistries.length; i++) {
+            if (currentRegistries[i] == registry && registry != defaultRegistry) {
+                MetricsRegistry[] newRegistries = new MetricsRegistry[currentRegistries.length - 1];
+                System.arraycopy(currentRegistries, 0, newRegistries, 0, i);
+                System.arraycopy(currentRegistries, i + 1, newRegistries, i, currentRegistries.length - i - 1);
+                registries = newRegistries;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the built-in registry, which is exposed through JMX.
+     *
+     * @return The built-in registry
+     */
+    public DefaultMetricsRegistry getDefaultRegistry() {
+        return defaultRegistry;
+    }
+}
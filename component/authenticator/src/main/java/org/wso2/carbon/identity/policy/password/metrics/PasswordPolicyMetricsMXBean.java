@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the measurements of the password policy connector.
+ */
+public interface PasswordPolicyMetricsMXBean {
+
+    LatencySummary getClaimReadLatency();
+
+    LatencySummary getClaimWriteLatency();
+
+    LatencySummary getPasswordValidationLatency();
+
+    LatencySummary getCredentialUpdateLatency();
+
+    /**
+     * @return The number of logins with an expired password, per tenant
+     */
+    Map<String, Long> getExpiredCounts();
+
+    /**
+     * @return The number of logins with a password which has not expired, per tenant
+     */
+    Map<String, Long> getNotExpiredCounts();
+
+    /**
+     * @return The number of retried password changes and claim writes, per tenant
+     */
+    Map<String, Long> getRetryCounts();
+
+    /**
+     * @return The number of failed user store operations, per tenant
+     */
+    Map<String, Long> getFailureCounts();
+
+    long getPasswordUpdateTimeCacheHitCount();
+
+    long getPasswordUpdateTimeCacheMissCount();
+
+    int getWriteBehindQueueDepth();
+
+    long getWriteBehindLagInMillis();
+
+    /**
+     * Reset the latencies and the counters.
+     */
+    void reset();
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * An Aho-Corasick automaton which finds any of a set of banned sequences in a password, ignoring the case.
+ * The automaton is advanced a character at a time, so that it can be driven by a single pass over the password.
+ */
+final class BannedSequenceMatcher {
+    private static final int ASCII_SIZE = 128;
+
+    private final char[] alphabet;
+    private final int[] asciiSymbols = new int[ASCII_SIZE];
+    private final int symbolCount;
+    private final int[] transitions;
+    private final boolean[] matches;
+
+    /**
+     * @param sequences The banned sequences, which must not be empty
+     */
+    BannedSequenceMatcher(List<String> sequences) {
+        SortedSet<Character> characters = new TreeSet<>();
+        for (String sequence : sequences) {
+            for (int i = 0; i < sequence.length(); i++) {
+                characters.add(Character.toLowerCase(sequence.charAt(i)));
+            }
+        }
+        alphabet = new char[characters.size()];
+        int index = 0;
+        for (char c : characters) {
+            alphabet[index++] = c;
+        }
+        // The symbol 0 stands for the characters which are in no sequence
+        symbolCount = alphabet.length + 1;
+        for (char c = 0; c < ASCII_SIZE; c++) {
+            asciiSymbols[c] = search(Character.toLowerCase(c));
+        }
+
+        // The trie of the sequences
+        List<int[]> children = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        children.add(new int[symbolCount]);
+        terminal.add(false);
+        for (String sequence : sequences) {
+            int state = 0;
+            for (int i = 0; i < sequence.length(); i++) {
+                int symbol = search(Character.toLowerCase(sequence.charAt(i)));
+                if (children.get(state)[symbol] == 0) {
+                    children.get(state)[symbol] = children.size();
+                    children.add(new int[symbolCount]);
+                    terminal.add(false);
+                }
+                state = children.get(state)[symbol];
+            }
+            terminal.set(state, true);
+        }
+
+        // The failure links, in breadth first order, turn the trie into a complete automaton
+        int stateCount = children.size();
+        transitions = new int[stateCount * symbolCount];
+        matches = new boolean[stateCount];
+        int[] failures = new int[stateCount];
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int state = queue[head++];
+            matches[state] = terminal.get(state) || (state != 0 && matches[failures[state]]);
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int child = children.get(state)[symbol];
+                if (child != 0) {
+                    failures[child] = state == 0 ? 0 : transitions[failures[state] * symbolCount + symbol];
+                    transitions[state * symbolCount + symbol] = child;
+                    queue[tail++] = child;
+                } else {
+                    transitions[state * symbolCount + symbol] =
+                            state == 0 ? 0 : transitions[failures[state] * symbolCount + symbol];
+                }
+            }
+        }
+    }
+
+    /**
+     * Advance the automaton by a character of the password.
+     *
+     * @param state The current state, starting from 0
+     * @param c     The next character of the password
+     * @return The next state
+     */
+    int next(int state, char c) {
+        int symbol = c < ASCII_SIZE ? asciiSymbols[c] : search(Character.toLowerCase(c));
+        return transitions[state * symbolCount + symbol];
+    }
+
+    /**
+     * Check whether a banned sequence ends at a state.
+     *
+     * @param state The state reached by the characters read so far
+     * @return True if the characters read so far have a banned sequence
+     */
+    boolean isMatch(int state) {
+        return matches[state];
+    }
+
+    private int search(char c) {
+        int index = Arrays.binarySearch(alphabet, c);
+        return index >= 0 ? index + 1 : 0;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A partition of the characters into the classes which no character set of an expression tells apart.
+ * The automaton of the expression has a transition per class, rather than per character.
+ */
+final class CharClasses {
+    private static final int ASCII_SIZE = 128;
+
+    private final int[] starts;
+    private final int[] asciiClasses = new int[ASCII_SIZE];
+
+    CharClasses(List<CharSet> charSets) {
+        SortedSet<Integer> boundaries = new TreeSet<>();
+        boundaries.add((int) Character.MIN_VALUE);
+        for (CharSet charSet : charSets) {
+            int[] ranges = charSet.getRanges();
+            for (int i = 0; i < ranges.length; i += 2) {
+                boundaries.add(ranges[i]);
+                if (ranges[i + 1] < Character.MAX_VALUE) {
+                    boundaries.add(ranges[i + 1] + 1);
+                }
+            }
+        }
+        starts = new int[boundaries.size()];
+        int i = 0;
+        for (int boundary : boundaries) {
+            starts[i++] = boundary;
+        }
+        for (char c = 0; c < ASCII_SIZE; c++) {
+            asciiClasses[c] = search(c);
+        }
+    }
+
+    int size() {
+        return starts.length;
+    }
+
+    int getClass(char c) {
+        return c < ASCII_SIZE ? asciiClasses[c] : search(c);
+    }
+
+    /**
+     * Get the classes of the characters of a set.
+     *
+     * @param charSet A character set of the expression
+     * @return The classes, which together hold exactly the characters of the set
+     */
+    BitSet getClasses(CharSet charSet) {
+        BitSet classes = new BitSet(starts.length);
+        int[] ranges = charSet.getRanges();
+        for (int i = 0; i < ranges.length; i += 2) {
+            classes.set(search(ranges[i]), search(ranges[i + 1]) + 1);
+        }
+        return classes;
+    }
+
+    private int search(int c) {
+        int index = Arrays.binarySearch(starts, c);
+        return index >= 0 ? index : -index - 2;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable set of UTF-16 code units, held as sorted and disjoint inclusive ranges.
+ */
+final class CharSet {
+    static final CharSet EMPTY = new CharSet(new int[0]);
+    static final CharSet ALL = range(Character.MIN_VALUE, Character.MAX_VALUE);
+    static final CharSet DIGIT = range('0', '9');
+    static final CharSet LOWER = range('a', 'z');
+    static final CharSet UPPER = range('A', 'Z');
+    static final CharSet ALPHA = LOWER.union(UPPER);
+    static final CharSet ALNUM = ALPHA.union(DIGIT);
+    static final CharSet WORD = ALNUM.union(of('_'));
+    static final CharSet SPACE = of(' ').union(range('\t', '\r'));
+    static final CharSet PUNCT = range('!', '/').union(range(':', '@')).union(range('[', '`'))
+            .union(range('{', '~'));
+    static final CharSet LINE_TERMINATOR = of('\n').union(of('\r')).union(of((char) 0x85))
+            .union(range(0x2028, 0x2029));
+
+    private final int[] ranges;
+
+    private CharSet(int[] ranges) {
+        this.ranges = ranges;
+    }
+
+    static CharSet of(char c) {
+        return range(c, c);
+    }
+
+    static CharSet range(int low, int high) {
+        return new CharSet(new int[]{low, high});
+    }
+
+    CharSet union(CharSet other) {
+        List<int[]> all = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i += 2) {
+            all.add(new int[]{ranges[i], ranges[i + 1]});
+        }
+        for (int i = 0; i < other.ranges.length; i += 2) {
+            all.add(new int[]{other.ranges[i], other.ranges[i + 1]});
+        }
+        int[][] sorted = all.toArray(new int[all.size()][]);
+        Arrays.sort(sorted, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] range1, int[] range2) {
+                return range1[0] < range2[0] ? -1 : (range1[0] == range2[0] ? 0 : 1);
+            }
+        });
+
+        int[] merged = new int[sorted.length * 2];
+        int size = 0;
+        for (int[] range : sorted) {
+            if (size > 0 && range[0] <= merged[size - 1] + 1) {
+                merged[size - 1] = Math.max(merged[size - 1], range[1]);
+            } else {
+                merged[size++] = range[0];
+                merged[size++] = range[1];
+            }
+        }
+        return new CharSet(Arrays.copyOf(merged, size));
+    }
+
+    CharSet complement() {
+        int[] complement = new int[ranges.length + 2];
+        int size = 0;
+        int next = Character.MIN_VALUE;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                complement[size++] = next;
+                complement[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            complement[size++] = next;
+            complement[size++] = Character.MAX_VALUE;
+        }
+        return new CharSet(Arrays.copyOf(complement, size));
+    }
+
+    /**
+     * Add the other case of the ASCII letters, as java.util.regex does for CASE_INSENSITIVE without UNICODE_CASE.
+     *
+     * @return The case insensitive set
+     */
+    CharSet caseInsensitive() {
+        CharSet result = this;
+        for (int i = 0; i < ranges.length; i += 2) {
+            int lowerFrom = Math.max(ranges[i], 'a');
+            int lowerTo = Math.min(ranges[i + 1], 'z');
+            if (lowerFrom <= lowerTo) {
+                result = result.union(range(lowerFrom - 'a' + 'A', lowerTo - 'a' + 'A'));
+            }
+            int upperFrom = Math.max(ranges[i], 'A');
+            int upperTo = Math.min(ranges[i + 1], 'Z');
+            if (upperFrom <= upperTo) {
+                result = result.union(range(upperFrom - 'A' + 'a', upperTo - 'A' + 'a'));
+            }
+        }
+        return result;
+    }
+
+    boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    /**
+     * Get the ranges of the set.
+     *
+     * @return The inclusive low and high ends of the ranges, one after the other
+     */
+    int[] getRanges() {
+        return ranges;
+    }
+}
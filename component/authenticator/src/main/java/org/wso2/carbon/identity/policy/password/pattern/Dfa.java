@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A complete deterministic automaton over the classes of {@link CharClasses}, which starts from the state 0.
+ * A password is matched in a single pass with a table lookup per character, so the time taken is linear in the
+ * length of the password and does not depend on the expression.
+ */
+final class Dfa {
+    static final int AND = 0;
+    static final int OR = 1;
+    static final int AND_NOT = 2;
+
+    private static final int MAX_NFA_STATES = 10000;
+    private static final int MAX_DFA_STATES = 4096;
+
+    private final int classCount;
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    private Dfa(int classCount, int[] transitions, boolean[] accepting) {
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
+
+    /**
+     * Compile an expression to an automaton, through the subset construction of its Thompson automaton.
+     *
+     * @param node         The expression
+     * @param charClasses  The classes of the characters of the expression
+     * @return The automaton which matches the whole passwords matched by the expression
+     * @throws UnsupportedRegexException if the automaton is too large
+     */
+    static Dfa compile(RegexNode node, CharClasses charClasses) throws UnsupportedRegexException {
+        Nfa nfa = new Nfa(charClasses);
+        NfaState accept = nfa.newState();
+        NfaState start = nfa.build(node, accept);
+
+        int classCount = charClasses.size();
+        Map<BitSet, Integer> ids = new HashMap<>();
+        List<BitSet> stateSets = new ArrayList<>();
+        BitSet startSet = new BitSet();
+        startSet.set(start.id);
+        nfa.close(startSet);
+        ids.put(startSet, 0);
+        stateSets.add(startSet);
+
+        int[] transitions = new int[16 * classCount];
+        for (int state = 0; state < stateSets.size(); state++) {
+            BitSet[] moves = new BitSet[classCount];
+            BitSet stateSet = stateSets.get(state);
+            for (int i = stateSet.nextSetBit(0); i >= 0; i = stateSet.nextSetBit(i + 1)) {
+                NfaState nfaState = nfa.states.get(i);
+                if (nfaState.classes == null) {
+                    continue;
+                }
+                for (int c = nfaState.classes.nextSetBit(0); c >= 0; c = nfaState.classes.nextSetBit(c + 1)) {
+                    if (moves[c] == null) {
+                        moves[c] = new BitSet();
+                    }
+                    moves[c].set(nfaState.next.id);
+                }
+            }
+
+            if (transitions.length < (state + 1) * classCount) {
+                transitions = Arrays.copyOf(transitions, transitions.length * 2);
+            }
+            for (int c = 0; c < classCount; c++) {
+                BitSet target = moves[c] == null ? new BitSet() : moves[c];
+                nfa.close(target);
+                Integer id = ids.get(target);
+                if (id == null) {
+                    if (stateSets.size() >= MAX_DFA_STATES) {
+                        throw new UnsupportedRegexException("The automaton exceeds " + MAX_DFA_STATES + " states");
+                    }
+                    id = stateSets.size();
+                    ids.put(target, id);
+                    stateSets.add(target);
+                }
+                transitions[state * classCount + c] = id;
+            }
+        }
+
+        boolean[] accepting = new boolean[stateSets.size()];
+        for (int state = 0; state < accepting.length; state++) {
+            accepting[state] = stateSets.get(state).get(accept.id);
+        }
+        return new Dfa(classCount, Arrays.copyOf(transitions, accepting.length * classCount), accepting).minimize();
+    }
+
+    /**
+     * Combine this automaton with another over the same classes.
+     *
+     * @param other     The other automaton
+     * @param operation {@link #AND}, {@link #OR} or {@link #AND_NOT}
+     * @return The automaton which matches the passwords selected by the operation
+     * @throws UnsupportedRegexException if the automaton is too large
+     */
+    Dfa product(Dfa other, int operation) throws UnsupportedRegexException {
+        Map<Long, Integer> ids = new HashMap<>();
+        int[] pairs = new int[32];
+        int[] transitions = new int[16 * classCount];
+        ids.put(0L, 0);
+        int stateCount = 1;
+
+        for (int state = 0; state < stateCount; state++) {
+            if (transitions.length < (state + 1) * classCount) {
+                transitions = Arrays.copyOf(transitions, transitions.length * 2);
+            }
+            int left = pairs[2 * state];
+            int right = pairs[2 * state + 1];
+            for (int c = 0; c < classCount; c++) {
+                int nextLeft = transitions(left, c);
+                int nextRight = other.transitions(right, c);
+                long key = (long) nextLeft * other.accepting.length + nextRight;
+                Integer id = ids.get(key);
+                if (id == null) {
+                    if (stateCount >= MAX_DFA_STATES) {
+                        throw new UnsupportedRegexException("The automaton exceeds " + MAX_DFA_STATES + " states");
+                    }
+                    id = stateCount++;
+                    ids.put(key, id);
+                    if (pairs.length < 2 * stateCount) {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    }
+                    pairs[2 * id] = nextLeft;
+                    pairs[2 * id + 1] = nextRight;
+                }
+                transitions[state * classCount + c] = id;
+            }
+        }
+
+        boolean[] accepting = new boolean[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            boolean left = this.accepting[pairs[2 * state]];
+            boolean right = other.accepting[pairs[2 * state + 1]];
+            if (operation == AND) {
+                accepting[state] = left && right;
+            } else if (operation == OR) {
+                accepting[state] = left || right;
+            } else {
+                accepting[state] = left && !right;
+            }
+        }
+        return new Dfa(classCount, Arrays.copyOf(transitions, stateCount * classCount), accepting).minimize();
+    }
+
+    /**
+     * Match a whole password.
+     *
+     * @param password    The password, without surrogate characters
+     * @param charClasses The classes of the characters of the expression
+     * @return True if the automaton accepts the password
+     */
+    boolean matches(CharSequence password, CharClasses charClasses) {
+        int state = 0;
+        for (int i = 0; i < password.length(); i++) {
+            state = transitions[state * classCount + charClasses.getClass(password.charAt(i))];
+        }
+        return accepting[state];
+    }
+
+    int getStateCount() {
+        return accepting.length;
+    }
+
+    private int transitions(int state, int c) {
+        return transitions[state * classCount + c];
+    }
+
+    /**
+     * Merge the equivalent states by partition refinement, which keeps the products of the lookaheads small.
+     */
+    private Dfa minimize() {
+        int stateCount = accepting.length;
+        int[] blocks = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            blocks[state] = accepting[state] ? 1 : 0;
+        }
+        int blockCount = -1;
+        while (true) {
+            Map<Signature, Integer> signatures = new HashMap<>();
+            int[] refined = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                int[] targets = new int[classCount + 1];
+                targets[classCount] = blocks[state];
+                for (int c = 0; c < classCount; c++) {
+                    targets[c] = blocks[transitions(state, c)];
+                }
+                Signature signature = new Signature(targets);
+                Integer block = signatures.get(signature);
+                if (block == null) {
+                    block = signatures.size();
+                    signatures.put(signature, block);
+                }
+                refined[state] = block;
+            }
+            blocks = refined;
+            if (signatures.size() == blockCount) {
+                break;
+            }
+            blockCount = signatures.size();
+        }
+        if (blockCount == stateCount) {
+            return this;
+        }
+
+        // The state 0 is the first of its block, so the start state stays 0
+        int[] minimalTransitions = new int[blockCount * classCount];
+        boolean[] minimalAccepting = new boolean[blockCount];
+        for (int state = stateCount - 1; state >= 0; state--) {
+            int block = blocks[state];
+            minimalAccepting[block] = accepting[state];
+            for (int c = 0; c < classCount; c++) {
+                minimalTransitions[block * classCount + c] = blocks[transitions(state, c)];
+            }
+        }
+        return new Dfa(classCount, minimalTransitions, minimalAccepting);
+    }
+
+    /**
+     * A Thompson automaton, built backwards from the accepting state so that each node is given its continuation.
+     */
+    private static final class Nfa {
+        private final CharClasses charClasses;
+        private final List<NfaState> states = new ArrayList<>();
+
+        private Nfa(CharClasses charClasses) {
+            this.charClasses = charClasses;
+        }
+
+        private NfaState newState() throws UnsupportedRegexException {
+            if (states.size() >= MAX_NFA_STATES) {
+                throw new UnsupportedRegexException("The automaton exceeds " + MAX_NFA_STATES + " states");
+            }
+            NfaState state = new NfaState(states.size());
+            states.add(state);
+            return state;
+        }
+
+        private NfaState build(RegexNode node, NfaState next) throws UnsupportedRegexException {
+            if (node instanceof RegexNode.Chars) {
+                NfaState state = newState();
+                state.classes = charClasses.getClasses(((RegexNode.Chars) node).charSet);
+                state.next = next;
+                return state;
+            }
+            if (node instanceof RegexNode.Sequence) {
+                List<RegexNode> nodes = ((RegexNode.Sequence) node).nodes;
+                NfaState state = next;
+                for (int i = nodes.size() - 1; i >= 0; i--) {
+                    state = build(nodes.get(i), state);
+                }
+                return state;
+            }
+            if (node instanceof RegexNode.Alternation) {
+                NfaState state = newState();
+                for (RegexNode alternative : ((RegexNode.Alternation) node).nodes) {
+                    state.epsilons.add(build(alternative, next));
+                }
+                return state;
+            }
+
+            RegexNode.Repetition repetition = (RegexNode.Repetition) node;
+            NfaState state = next;
+            if (repetition.max == RegexNode.UNBOUNDED) {
+                NfaState loop = newState();
+                loop.epsilons.add(build(repetition.node, loop));
+                loop.epsilons.add(next);
+                state = loop;
+            } else {
+                for (int i = repetition.min; i < repetition.max; i++) {
+                    NfaState optional = newState();
+                    optional.epsilons.add(build(repetition.node, state));
+                    optional.epsilons.add(next);
+                    state = optional;
+                }
+            }
+            for (int i = 0; i < repetition.min; i++) {
+                state = build(repetition.node, state);
+            }
+            return state;
+        }
+
+        /**
+         * Add the states reachable through the epsilon transitions.
+         */
+        private void close(BitSet stateSet) {
+            int[] stack = new int[states.size()];
+            int size = 0;
+            for (int i = stateSet.nextSetBit(0); i >= 0; i = stateSet.nextSetBit(i + 1)) {
+                stack[size++] = i;
+            }
+            while (size > 0) {
+                for (NfaState epsilon : states.get(stack[--size]).epsilons) {
+                    if (!stateSet.get(epsilon.id)) {
+                        stateSet.set(epsilon.id);
+                        stack[size++] = epsilon.id;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The blocks of a state and of its targets, during the partition refinement.
+     */
+    private static final class Signature {
+        private final int[] blocks;
+        private final int hashCode;
+
+        private Signature(int[] blocks) {
+            this.blocks = blocks;
+            this.hashCode = Arrays.hashCode(blocks);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Signature && Arrays.equals(blocks, ((Signature) object).blocks);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class NfaState {
+        private final int id;
+        private final List<NfaState> epsilons = new ArrayList<>(2);
+        private BitSet classes;
+        private NfaState next;
+
+        private NfaState(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+/**
+ * Matches a password format with a deterministic automaton, in time linear in the length of the password.
+ * <p>
+ * java.util.regex matches by code points, so a password with surrogate characters is matched by the fallback.
+ */
+final class DfaPasswordMatcher implements PasswordMatcher {
+    private final CharClasses charClasses;
+    private final Dfa dfa;
+    private final PasswordMatcher fallback;
+
+    DfaPasswordMatcher(CharClasses charClasses, Dfa dfa, PasswordMatcher fallback) {
+        this.charClasses = charClasses;
+        this.dfa = dfa;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public boolean matches(CharSequence password) {
+        for (int i = 0; i < password.length(); i++) {
+            if (Character.isSurrogate(password.charAt(i))) {
+                return fallback.matches(password);
+            }
+        }
+        return dfa.matches(password, charClasses);
+    }
+
+    @Override
+    public boolean isLinearTime() {
+        return true;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+/**
+ * Bounded edit distance between two passwords, used to reject a new password which is only a small change of the
+ * current one, such as "Password1" and "Password2".
+ * <p>
+ * Only the diagonal band of the edit distance matrix within the bound is computed, and the computation stops as soon
+ * as a row exceeds the bound, so the cost is linear in the length of the passwords for a given bound. The rows are
+ * kept in a buffer of the thread, so that the passwords are compared without allocating.
+ */
+public final class EditDistance {
+    private static final ThreadLocal<int[]> rows = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[64];
+        }
+    };
+
+    private EditDistance() {      // To prevent instantiation
+    }
+
+    /**
+     * Check whether two passwords are at most the given number of single character insertions, deletions or
+     * substitutions apart, ignoring the case.
+     *
+     * @param first       The first password
+     * @param second      The second password
+     * @param maxDistance The maximum number of edits
+     * @return True if the edit distance of the passwords is at most {@code maxDistance}
+     */
+    public static boolean isWithin(String first, String second, int maxDistance) {
+        if (maxDistance < 0 || Math.abs(first.length() - second.length()) > maxDistance) {
+            return false;
+        }
+        if (maxDistance >= Math.max(first.length(), second.length())) {
+            // Any password can be changed into the other by replacing its characters
+            return true;
+        }
+
+        // Cell (i, j) of the matrix is at index j - i + maxDistance of the row i
+        int width = 2 * maxDistance + 1;
+        int outOfBound = maxDistance + 1;
+        int[] buffer = getRows(2 * width);
+        int previous = 0;
+        int current = width;
+        for (int d = 0; d < width; d++) {
+            int j = d - maxDistance;
+            buffer[d] = j >= 0 && j <= second.length() ? j : outOfBound;
+        }
+
+        for (int i = 1; i <= first.length(); i++) {
+            char c = Character.toLowerCase(first.charAt(i - 1));
+            int rowMinimum = outOfBound;
+            for (int d = 0; d < width; d++) {
+                int j = i + d - maxDistance;
+                int distance;
+                if (j < 0 || j > second.length()) {
+                    distance = outOfBound;
+                } else if (j == 0) {
+                    distance = i;
+                } else {
+                    distance = buffer[previous + d] + (c == Character.toLowerCase(second.charAt(j - 1)) ? 0 : 1);
+                    if (d + 1 < width) {
+                        distance = Math.min(distance, buffer[previous + d + 1] + 1);
+                    }
+                    if (d > 0) {
+                        distance = Math.min(distance, buffer[current + d - 1] + 1);
+                    }
+                    distance = Math.min(distance, outOfBound);
+                }
+                buffer[current + d] = distance;
+                rowMinimum = Math.min(rowMinimum, distance);
+            }
+            if (rowMinimum > maxDistance) {
+                return false;
+            }
+            int swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return buffer[previous + second.length() - first.length() + maxDistance] <= maxDistance;
+    }
+
+    private static int[] getRows(int length) {
+        int[] buffer = rows.get();
+        if (buffer.length < length) {
+            buffer = new int[Math.max(length, 2 * buffer.length)];
+            rows.set(buffer);
+        }
+        return buffer;
+    }
+}
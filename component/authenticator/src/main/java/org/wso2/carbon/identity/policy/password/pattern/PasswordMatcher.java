@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+/**
+ * A compiled password format.
+ */
+public interface PasswordMatcher {
+
+    /**
+     * Check whether a whole password is in the format.
+     *
+     * @param password The password
+     * @return True if the password is in the format
+     */
+    boolean matches(CharSequence password);
+
+    /**
+     * Check whether the time taken to match a password is linear in its length, regardless of the format.
+     *
+     * @return True if the format is matched by an automaton, false if it is matched by backtracking
+     */
+    boolean isLinearTime();
+}
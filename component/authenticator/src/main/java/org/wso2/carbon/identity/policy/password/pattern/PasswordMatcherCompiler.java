@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles the password formats of the user stores to matchers.
+ * <p>
+ * A format is compiled to a deterministic automaton when {@link RegexParser} supports it, and is otherwise matched
+ * by java.util.regex within a time budget.
+ */
+public class PasswordMatcherCompiler {
+    private static final Log log = LogFactory.getLog(PasswordMatcherCompiler.class);
+
+    private PasswordMatcherCompiler() {      // To prevent instantiation
+    }
+
+    /**
+     * Compile a password format.
+     *
+     * @param regularExpression The password format, in the java.util.regex syntax
+     * @param timeoutMillis     The time budget in milliseconds of matching a password by java.util.regex, or 0 for
+     *                          no budget
+     * @return The password matcher
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    public static PasswordMatcher compile(String regularExpression, long timeoutMillis) {
+        Pattern pattern = Pattern.compile(regularExpression);
+        PasswordMatcher fallback = new TimeBudgetedPasswordMatcher(pattern, timeoutMillis);
+        try {
+            List<RegexParser.Branch> branches = RegexParser.parse(regularExpression);
+            List<CharSet> charSets = new ArrayList<>();
+            charSets.add(CharSet.ALL);
+            for (RegexParser.Branch branch : branches) {
+                branch.body.collectCharSets(charSets);
+                for (RegexNode lookahead : branch.lookaheads) {
+                    lookahead.collectCharSets(charSets);
+                }
+                for (RegexNode lookahead : branch.negativeLookaheads) {
+                    lookahead.collectCharSets(charSets);
+                }
+            }
+            CharClasses charClasses = new CharClasses(charSets);
+
+            Dfa dfa = null;
+            for (RegexParser.Branch branch : branches) {
+                Dfa branchDfa = Dfa.compile(branch.body, charClasses);
+                for (RegexNode lookahead : branch.lookaheads) {
+                    branchDfa = branchDfa.product(Dfa.compile(lookahead, charClasses), Dfa.AND);
+                }
+                for (RegexNode lookahead : branch.negativeLookaheads) {
+                    branchDfa = branchDfa.product(Dfa.compile(lookahead, charClasses), Dfa.AND_NOT);
+                }
+                dfa = dfa == null ? branchDfa : dfa.product(branchDfa, Dfa.OR);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Compiled the password format " + regularExpression + " to an automaton of "
+                        + dfa.getStateCount() + " states.");
+            }
+            return new DfaPasswordMatcher(charClasses, dfa, fallback);
+        } catch (UnsupportedRegexException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("The password format " + regularExpression + " is matched by java.util.regex. "
+                        + e.getMessage());
+            }
+            return fallback;
+        }
+    }
+}
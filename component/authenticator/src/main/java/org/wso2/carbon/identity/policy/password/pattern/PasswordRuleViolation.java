@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+/**
+ * The structured password rules which a password may violate.
+ * A set of violations is reported by {@link PasswordRules#evaluate(char[])} as a bit mask of the ordinals.
+ */
+public enum PasswordRuleViolation {
+    TOO_SHORT,
+    TOO_LONG,
+    MISSING_LOWER_CASE,
+    MISSING_UPPER_CASE,
+    MISSING_DIGIT,
+    MISSING_SPECIAL_CHARACTER,
+    REPEATED_CHARACTERS,
+    BANNED_SEQUENCE;
+
+    /**
+     * Check whether a bit mask of violations has this violation.
+     *
+     * @param violations The bit mask of violations
+     * @return True if the violation is in the mask
+     */
+    public boolean isIn(int violations) {
+        return (violations & getMask()) != 0;
+    }
+
+    int getMask() {
+        return 1 << ordinal();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The structured password rules of a user store: the length, the required kinds of characters, the maximum number
+ * of repeated characters and the banned sequences.
+ * <p>
+ * All the rules are evaluated together in a single pass over the password, without allocating, and every rule the
+ * password violates is reported, so that the user can fix the password at once.
+ */
+public final class PasswordRules {
+    public static final PasswordRules NONE = new PasswordRules(0, 0, 0, 0, null);
+
+    private static final int LOWER_CASE = 1;
+    private static final int UPPER_CASE = 2;
+    private static final int DIGIT = 4;
+    private static final int SPECIAL_CHARACTER = 8;
+
+    private final int minLength;
+    private final int maxLength;
+    private final int requiredCharacters;
+    private final int maxRepeatedCharacters;
+    private final List<String> bannedSequences;
+    private final BannedSequenceMatcher bannedSequenceMatcher;
+
+    private PasswordRules(int minLength, int maxLength, int requiredCharacters, int maxRepeatedCharacters,
+                          List<String> bannedSequences) {
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.requiredCharacters = requiredCharacters;
+        this.maxRepeatedCharacters = maxRepeatedCharacters;
+        this.bannedSequences = bannedSequences;
+        this.bannedSequenceMatcher = bannedSequences == null ? null : new BannedSequenceMatcher(bannedSequences);
+    }
+
+    /**
+     * Compile the structured password rules.
+     *
+     * @param minLength             The minimum number of characters, or 0 for no minimum
+     * @param maxLength             The maximum number of characters, or 0 for no maximum
+     * @param requiredCharacters    Comma separated kinds of characters which a password must have, out of
+     *                              {@code lower}, {@code upper}, {@code digit} and {@code special}
+     * @param maxRepeatedCharacters The maximum number of times a character may be repeated in a row, or 0 for no
+     *                              maximum
+     * @param bannedSequences       Comma separated sequences which a password must not have regardless of the case
+     * @return The compiled rules
+     * @throws IllegalArgumentException if a kind of characters is unknown
+     */
+    public static PasswordRules compile(int minLength, int maxLength, String requiredCharacters,
+                                        int maxRepeatedCharacters, String bannedSequences) {
+        int required = 0;
+        for (String kind : StringUtils.split(StringUtils.defaultString(requiredCharacters), ',')) {
+            kind = kind.trim().toLowerCase(Locale.ENGLISH);
+            if ("lower".equals(kind)) {
+                required |= LOWER_CASE;
+            } else if ("upper".equals(kind)) {
+                required |= UPPER_CASE;
+            } else if ("digit".equals(kind)) {
+                required |= DIGIT;
+            } else if ("special".equals(kind)) {
+                required |= SPECIAL_CHARACTER;
+            } else if (!kind.isEmpty()) {
+                throw new IllegalArgumentException("Unknown kind of characters: " + kind);
+            }
+        }
+
+        List<String> sequences = new ArrayList<>();
+        for (String sequence : StringUtils.split(StringUtils.defaultString(bannedSequences), ',')) {
+            if (StringUtils.isNotBlank(sequence)) {
+                sequences.add(sequence.trim());
+            }
+        }
+
+        int max = Math.max(maxLength, 0);
+        int maxRepeated = Math.max(maxRepeatedCharacters, 0);
+        if (minLength <= 0 && max == 0 && required == 0 && maxRepeated == 0 && sequences.isEmpty()) {
+            return NONE;
+        }
+        return new PasswordRules(Math.max(minLength, 0), max, required, maxRepeated,
+                sequences.isEmpty() ? null : sequences);
+    }
+
+    public boolean isEmpty() {
+        return this == NONE;
+    }
+
+    /**
+     * Evaluate all the rules on a password.
+     *
+     * @param password The password
+     * @return The bit mask of the {@link PasswordRuleViolation}s, which is 0 if the password satisfies all the rules
+     */
+    public int evaluate(char[] password) {
+        if (isEmpty()) {
+            return 0;
+        }
+        int length = 0;
+        int characters = 0;
+        int repeated = 0;
+        boolean tooManyRepeated = false;
+        int bannedSequenceState = 0;
+        boolean hasBannedSequence = false;
+
+        for (int i = 0; i < password.length; i++) {
+            char c = password[i];
+            boolean lowSurrogate = i > 0 && Character.isLowSurrogate(c) && Character.isHighSurrogate(password[i - 1]);
+            if (!lowSurrogate) {
+                // A surrogate pair is a single character
+                length++;
+            }
+
+            if (Character.isLowerCase(c)) {
+                characters |= LOWER_CASE;
+            } else if (Character.isUpperCase(c)) {
+                characters |= UPPER_CASE;
+            } else if (Character.isDigit(c)) {
+                characters |= DIGIT;
+            } else if (!Character.isLetter(c) && !Character.isWhitespace(c)) {
+                characters |= SPECIAL_CHARACTER;
+            }
+
+            if (i > 0 && c == password[i - 1]) {
+                repeated++;
+            } else {
+                repeated = 1;
+            }
+            if (maxRepeatedCharacters > 0 && repeated > maxRepeatedCharacters) {
+                tooManyRepeated = true;
+            }
+
+            if (bannedSequenceMatcher != null && !hasBannedSequence) {
+                bannedSequenceState = bannedSequenceMatcher.next(bannedSequenceState, c);
+                hasBannedSequence = bannedSequenceMatcher.isMatch(bannedSequenceState);
+            }
+        }
+
+        int violations = 0;
+        if (length < minLength) {
+            violations |= PasswordRuleViolation.TOO_SHORT.getMask();
+        }
+        if (maxLength > 0 && length > maxLength) {
+            violations |= PasswordRuleViolation.TOO_LONG.getMask();
+        }
+        int missing = requiredCharacters & ~characters;
+        if ((missing & LOWER_CASE) != 0) {
+            violations |= PasswordRuleViolation.MISSING_LOWER_CASE.getMask();
+        }
+        if ((missing & UPPER_CASE) != 0) {
+            violations |= PasswordRuleViolation.MISSING_UPPER_CASE.getMask();
+        }
+        if ((missing & DIGIT) != 0) {
+            violations |= PasswordRuleViolation.MISSING_DIGIT.getMask();
+        }
+        if ((missing & SPECIAL_CHARACTER) != 0) {
+            violations |= PasswordRuleViolation.MISSING_SPECIAL_CHARACTER.getMask();
+        }
+        if (tooManyRepeated) {
+            violations |= PasswordRuleViolation.REPEATED_CHARACTERS.getMask();
+        }
+        if (hasBannedSequence) {
+            violations |= PasswordRuleViolation.BANNED_SEQUENCE.getMask();
+        }
+        return violations;
+    }
+
+    /**
+     * Describe the violations of the rules to the user.
+     *
+     * @param violations The bit mask of the violations returned by {@link #evaluate(char[])}
+     * @return A message per violation
+     */
+    public List<String> getViolationMessages(int violations) {
+        List<String> messages = new ArrayList<>();
+        if (PasswordRuleViolation.TOO_SHORT.isIn(violations)) {
+            messages.add("The password must have at least " + minLength + " characters.");
+        }
+        if (PasswordRuleViolation.TOO_LONG.isIn(violations)) {
+            messages.add("The password must have at most " + maxLength + " characters.");
+        }
+        if (PasswordRuleViolation.MISSING_LOWER_CASE.isIn(violations)) {
+            messages.add("The password must have a lower case letter.");
+        }
+        if (PasswordRuleViolation.MISSING_UPPER_CASE.isIn(violations)) {
+            messages.add("The password must have an upper case letter.");
+        }
+        if (PasswordRuleViolation.MISSING_DIGIT.isIn(violations)) {
+            messages.add("The password must have a digit.");
+        }
+        if (PasswordRuleViolation.MISSING_SPECIAL_CHARACTER.isIn(violations)) {
+            messages.add("The password must have a special character.");
+        }
+        if (PasswordRuleViolation.REPEATED_CHARACTERS.isIn(violations)) {
+            messages.add("The password must not repeat a character more than " + maxRepeatedCharacters
+                    + " times in a row.");
+        }
+        if (PasswordRuleViolation.BANNED_SEQUENCE.isIn(violations)) {
+            messages.add("The password must not contain any of " + StringUtils.join(bannedSequences, ", ") + ".");
+        }
+        return messages;
+    }
+}
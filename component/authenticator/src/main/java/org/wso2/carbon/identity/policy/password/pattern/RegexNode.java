@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A node of the syntax tree of a regular expression.
+ */
+abstract class RegexNode {
+    static final int UNBOUNDED = -1;
+
+    static final RegexNode EMPTY = new Sequence(Collections.<RegexNode>emptyList());
+
+    /**
+     * Collect the character sets used by this node.
+     *
+     * @param charSets The list to which the character sets are added
+     */
+    abstract void collectCharSets(List<CharSet> charSets);
+
+    static RegexNode sequence(RegexNode... nodes) {
+        return new Sequence(Arrays.asList(nodes));
+    }
+
+    /**
+     * A single character of a set.
+     */
+    static final class Chars extends RegexNode {
+        final CharSet charSet;
+
+        Chars(CharSet charSet) {
+            this.charSet = charSet;
+        }
+
+        @Override
+        void collectCharSets(List<CharSet> charSets) {
+            charSets.add(charSet);
+        }
+    }
+
+    /**
+     * The nodes one after the other.
+     */
+    static final class Sequence extends RegexNode {
+        final List<RegexNode> nodes;
+
+        Sequence(List<RegexNode> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void collectCharSets(List<CharSet> charSets) {
+            for (RegexNode node : nodes) {
+                node.collectCharSets(charSets);
+            }
+        }
+    }
+
+    /**
+     * Any one of the nodes.
+     */
+    static final class Alternation extends RegexNode {
+        final List<RegexNode> nodes;
+
+        Alternation(List<RegexNode> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void collectCharSets(List<CharSet> charSets) {
+            for (RegexNode node : nodes) {
+                node.collectCharSets(charSets);
+            }
+        }
+    }
+
+    /**
+     * A node repeated between a minimum and a maximum number of times.
+     */
+    static final class Repetition extends RegexNode {
+        final RegexNode node;
+        final int min;
+        final int max;
+
+        Repetition(RegexNode node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        void collectCharSets(List<CharSet> charSets) {
+            node.collectCharSets(charSets);
+        }
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses the subset of the java.util.regex syntax which can be matched by a deterministic automaton.
+ * <p>
+ * The supported constructs are the literals and escapes, the character classes without nesting or intersection,
+ * the predefined and the ASCII POSIX classes, the capturing, non-capturing and named groups, the alternations, and
+ * the greedy and lazy quantifiers. The CASE_INSENSITIVE and DOTALL flags are supported at the start of the
+ * expression. Since the whole password is matched, '^' and '$' are supported at the start and the end of the
+ * expression. The lookaheads are supported at the start of the expression, as in {@code ^(?=.*\d)(?=.*[a-z]).{8,}$},
+ * where they intersect the expression with the passwords having a matching prefix. A '$' inside a lookahead is
+ * rejected, since java.util.regex also matches it before a final line terminator, which would otherwise be left to
+ * the body of the expression.
+ * <p>
+ * Everything else, such as back references, lookbehinds, possessive quantifiers and boundaries, is rejected, so
+ * that an expression is either matched exactly as java.util.regex would, or not at all.
+ */
+final class RegexParser {
+    private static final int MAX_REPETITION = 1000;
+
+    private final String regex;
+    private int position;
+    private boolean caseInsensitive;
+    private boolean dotAll;
+
+    private RegexParser(String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * Parse a regular expression which has already been compiled by java.util.regex.
+     *
+     * @param regex The regular expression
+     * @return The top level alternatives of the expression
+     * @throws UnsupportedRegexException if the expression uses an unsupported construct
+     */
+    static List<Branch> parse(String regex) throws UnsupportedRegexException {
+        return new RegexParser(regex).parse();
+    }
+
+    private List<Branch> parse() throws UnsupportedRegexException {
+        for (int i = 0; i < regex.length(); i++) {
+            if (Character.isSurrogate(regex.charAt(i))) {
+                throw unsupported("supplementary characters");
+            }
+        }
+        parseFlags();
+        List<Branch> branches = new ArrayList<>();
+        do {
+            branches.add(parseBranch());
+        } while (consume('|'));
+        if (position < regex.length()) {
+            throw unsupported("'" + regex.charAt(position) + "' at " + position);
+        }
+        return branches;
+    }
+
+    private void parseFlags() {
+        if (!regex.startsWith("(?")) {
+            return;
+        }
+        int end = 2;
+        while (end < regex.length() && (regex.charAt(end) == 'i' || regex.charAt(end) == 's')) {
+            end++;
+        }
+        if (end == 2 || end >= regex.length() || regex.charAt(end) != ')') {
+            // Not a flag group, which is parsed as a group construct
+            return;
+        }
+        for (int i = 2; i < end; i++) {
+            if (regex.charAt(i) == 'i') {
+                caseInsensitive = true;
+            } else {
+                dotAll = true;
+            }
+        }
+        position = end + 1;
+    }
+
+    private Branch parseBranch() throws UnsupportedRegexException {
+        consume('^');
+        List<RegexNode> lookaheads = new ArrayList<>();
+        List<RegexNode> negativeLookaheads = new ArrayList<>();
+        while (regex.startsWith("(?=", position) || regex.startsWith("(?!", position)) {
+            boolean negative = regex.charAt(position + 2) == '!';
+            position += 3;
+            RegexNode lookahead = parseLookahead();
+            expect(')');
+            if (negative) {
+                negativeLookaheads.add(lookahead);
+            } else {
+                lookaheads.add(lookahead);
+            }
+        }
+        RegexNode body = parseSequence();
+        if (consume('$') && position < regex.length() && regex.charAt(position) != '|') {
+            throw unsupported("'$' before the end");
+        }
+        return new Branch(body, lookaheads, negativeLookaheads);
+    }
+
+    /**
+     * Parse a lookahead at the start of the password, as the passwords having a prefix matched by the lookahead.
+     *
+     * @return The lookahead followed by any characters
+     * @throws UnsupportedRegexException if the lookahead uses an unsupported construct, or ends with '$'
+     */
+    private RegexNode parseLookahead() throws UnsupportedRegexException {
+        List<RegexNode> alternatives = new ArrayList<>();
+        do {
+            consume('^');
+            RegexNode node = parseSequence();
+            if (position < regex.length() && regex.charAt(position) == '$') {
+                throw unsupported("'$' in a lookahead");
+            }
+            alternatives.add(RegexNode.sequence(node,
+                    new RegexNode.Repetition(new RegexNode.Chars(CharSet.ALL), 0, RegexNode.UNBOUNDED)));
+        } while (consume('|'));
+        return alternatives.size() == 1 ? alternatives.get(0) : new RegexNode.Alternation(alternatives);
+    }
+
+    private RegexNode parseGroup() throws UnsupportedRegexException {
+        List<RegexNode> alternatives = new ArrayList<>();
+        do {
+            alternatives.add(parseSequence());
+        } while (consume('|'));
+        return alternatives.size() == 1 ? alternatives.get(0) : new RegexNode.Alternation(alternatives);
+    }
+
+    private RegexNode parseSequence() throws UnsupportedRegexException {
+        List<RegexNode> nodes = new ArrayList<>();
+        while (position < regex.length()) {
+            char c = regex.charAt(position);
+            if (c == '|' || c == ')' || c == '$') {
+                break;
+            }
+            nodes.add(parseQuantifier(parseAtom()));
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new RegexNode.Sequence(nodes);
+    }
+
+    private RegexNode parseAtom() throws UnsupportedRegexException {
+        char c = regex.charAt(position++);
+        switch (c) {
+            case '(':
+                if (regex.startsWith("?:", position)) {
+                    position += 2;
+                } else if (regex.startsWith("?<", position) && position + 2 < regex.length()
+                        && Character.isLetter(regex.charAt(position + 2))) {
+                    int end = regex.indexOf('>', position);
+                    if (end < 0) {
+                        throw unsupported("unclosed group name");
+                    }
+                    position = end + 1;
+                } else if (position < regex.length() && regex.charAt(position) == '?') {
+                    throw unsupported("group construct at " + (position - 1));
+                }
+                RegexNode group = parseGroup();
+                expect(')');
+                return group;
+            case '[':
+                return new RegexNode.Chars(parseClass());
+            case '.':
+                return new RegexNode.Chars(dotAll ? CharSet.ALL : CharSet.LINE_TERMINATOR.complement());
+            case '\\':
+                return new RegexNode.Chars(parseEscape());
+            case '^':
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw unsupported("'" + c + "' at " + (position - 1));
+            default:
+                return new RegexNode.Chars(literal(c));
+        }
+    }
+
+    private RegexNode parseQuantifier(RegexNode atom) throws UnsupportedRegexException {
+        if (position >= regex.length()) {
+            return atom;
+        }
+        int min;
+        int max;
+        char c = regex.charAt(position);
+        if (c == '*') {
+            min = 0;
+            max = RegexNode.UNBOUNDED;
+            position++;
+        } else if (c == '+') {
+            min = 1;
+            max = RegexNode.UNBOUNDED;
+            position++;
+        } else if (c == '?') {
+            min = 0;
+            max = 1;
+            position++;
+        } else if (c == '{') {
+            position++;
+            min = parseNumber();
+            max = min;
+            if (consume(',')) {
+                max = position < regex.length() && regex.charAt(position) == '}' ? RegexNode.UNBOUNDED
+                        : parseNumber();
+            }
+            expect('}');
+            if (max != RegexNode.UNBOUNDED && max < min) {
+                throw unsupported("invalid repetition");
+            }
+        } else {
+            return atom;
+        }
+
+        if (consume('+')) {
+            throw unsupported("possessive quantifier");
+        }
+        // A lazy quantifier matches the same passwords when the whole password is matched
+        consume('?');
+        if (position < regex.length() && "*+?{".indexOf(regex.charAt(position)) >= 0) {
+            throw unsupported("repeated quantifier");
+        }
+        return new RegexNode.Repetition(atom, min, max);
+    }
+
+    private int parseNumber() throws UnsupportedRegexException {
+        int start = position;
+        while (position < regex.length() && position - start < 5 && Character.isDigit(regex.charAt(position))) {
+            position++;
+        }
+        if (position == start) {
+            throw unsupported("invalid repetition");
+        }
+        int number = Integer.parseInt(regex.substring(start, position));
+        if (number > MAX_REPETITION) {
+            throw unsupported("repetition over " + MAX_REPETITION);
+        }
+        return number;
+    }
+
+    private CharSet parseClass() throws UnsupportedRegexException {
+        boolean negated = consume('^');
+        CharSet charSet = CharSet.EMPTY;
+        boolean first = true;
+        while (true) {
+            if (position >= regex.length()) {
+                throw unsupported("unclosed character class");
+            }
+            char c = regex.charAt(position);
+            if (c == ']' && !first) {
+                position++;
+                break;
+            }
+            if (c == ']' || c == '[' || regex.startsWith("&&", position)) {
+                throw unsupported("nested character class at " + position);
+            }
+            position++;
+            first = false;
+
+            int low;
+            if (c == '\\') {
+                if (isClassEscape()) {
+                    charSet = charSet.union(parsePredefinedClass());
+                    continue;
+                }
+                low = parseLiteralEscape();
+            } else {
+                low = c;
+            }
+            if (position + 1 < regex.length() && regex.charAt(position) == '-' && regex.charAt(position + 1) != ']') {
+                position++;
+                char h = regex.charAt(position++);
+                int high;
+                if (h == '\\') {
+                    if (isClassEscape()) {
+                        throw unsupported("invalid range");
+                    }
+                    high = parseLiteralEscape();
+                } else if (h == '[') {
+                    throw unsupported("nested character class");
+                } else {
+                    high = h;
+                }
+                if (high < low) {
+                    throw unsupported("invalid range");
+                }
+                charSet = charSet.union(CharSet.range(low, high));
+            } else {
+                charSet = charSet.union(CharSet.of((char) low));
+            }
+        }
+        if (caseInsensitive) {
+            charSet = charSet.caseInsensitive();
+        }
+        return negated ? charSet.complement() : charSet;
+    }
+
+    private CharSet parseEscape() throws UnsupportedRegexException {
+        if (position >= regex.length()) {
+            throw unsupported("trailing '\\'");
+        }
+        if (isClassEscape()) {
+            return parsePredefinedClass();
+        }
+        return literal((char) parseLiteralEscape());
+    }
+
+    private boolean isClassEscape() {
+        return position < regex.length() && "dDwWsSpP".indexOf(regex.charAt(position)) >= 0;
+    }
+
+    private CharSet parsePredefinedClass() throws UnsupportedRegexException {
+        char c = regex.charAt(position++);
+        switch (c) {
+            case 'd':
+                return CharSet.DIGIT;
+            case 'D':
+                return CharSet.DIGIT.complement();
+            case 'w':
+                return CharSet.WORD;
+            case 'W':
+                return CharSet.WORD.complement();
+            case 's':
+                return CharSet.SPACE;
+            case 'S':
+                return CharSet.SPACE.complement();
+            default:
+                String name;
+                if (position < regex.length() && regex.charAt(position) == '{') {
+                    int end = regex.indexOf('}', position);
+                    if (end < 0) {
+                        throw unsupported("unclosed property name");
+                    }
+                    name = regex.substring(position + 1, end);
+                    position = end + 1;
+                } else if (position < regex.length()) {
+                    name = regex.substring(position, position + 1);
+                    position++;
+                } else {
+                    throw unsupported("missing property name");
+                }
+                CharSet charSet = getPosixClass(name);
+                return c == 'P' ? charSet.complement() : charSet;
+        }
+    }
+
+    private CharSet getPosixClass(String name) throws UnsupportedRegexException {
+        switch (name) {
+            case "Lower":
+                if (caseInsensitive) {
+                    throw unsupported("case insensitive \\p{Lower}");
+                }
+                return CharSet.LOWER;
+            case "Upper":
+                if (caseInsensitive) {
+                    throw unsupported("case insensitive \\p{Upper}");
+                }
+                return CharSet.UPPER;
+            case "ASCII":
+                return CharSet.range(0, 0x7F);
+            case "Alpha":
+                return CharSet.ALPHA;
+            case "Digit":
+                return CharSet.DIGIT;
+            case "Alnum":
+                return CharSet.ALNUM;
+            case "Punct":
+                return CharSet.PUNCT;
+            case "Graph":
+                return CharSet.ALNUM.union(CharSet.PUNCT);
+            case "Print":
+                return CharSet.ALNUM.union(CharSet.PUNCT).union(CharSet.of(' '));
+            case "Blank":
+                return CharSet.of(' ').union(CharSet.of('\t'));
+            case "Cntrl":
+                return CharSet.range(0, 0x1F).union(CharSet.of((char) 0x7F));
+            case "XDigit":
+                return CharSet.DIGIT.union(CharSet.range('a', 'f')).union(CharSet.range('A', 'F'));
+            case "Space":
+                return CharSet.SPACE;
+            default:
+                throw unsupported("\\p{" + name + "}");
+        }
+    }
+
+    private int parseLiteralEscape() throws UnsupportedRegexException {
+        if (position >= regex.length()) {
+            throw unsupported("trailing '\\'");
+        }
+        char c = regex.charAt(position++);
+        switch (c) {
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case 'a':
+                return 0x07;
+            case 'e':
+                return 0x1B;
+            case 'x':
+                return parseHex(2);
+            case 'u':
+                return parseHex(4);
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    throw unsupported("\\" + c);
+                }
+                return c;
+        }
+    }
+
+    private int parseHex(int digits) throws UnsupportedRegexException {
+        if (position + digits > regex.length()) {
+            throw unsupported("invalid hexadecimal escape");
+        }
+        int value = 0;
+        for (int i = 0; i < digits; i++) {
+            int digit = Character.digit(regex.charAt(position++), 16);
+            if (digit < 0) {
+                throw unsupported("invalid hexadecimal escape");
+            }
+            value = value * 16 + digit;
+        }
+        if (Character.isSurrogate((char) value)) {
+            throw unsupported("supplementary characters");
+        }
+        return value;
+    }
+
+    private CharSet literal(char c) {
+        return caseInsensitive ? CharSet.of(c).caseInsensitive() : CharSet.of(c);
+    }
+
+    private boolean consume(char c) {
+        if (position < regex.length() && regex.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws UnsupportedRegexException {
+        if (!consume(c)) {
+            throw unsupported("missing '" + c + "' at " + position);
+        }
+    }
+
+    private UnsupportedRegexException unsupported(String construct) {
+        return new UnsupportedRegexException("Unsupported " + construct + " in " + regex);
+    }
+
+    /**
+     * A top level alternative of an expression.
+     * It matches the passwords matched by its body and its lookaheads, but none of its negative lookaheads.
+     */
+    static final class Branch {
+        final RegexNode body;
+        final List<RegexNode> lookaheads;
+        final List<RegexNode> negativeLookaheads;
+
+        Branch(RegexNode body, List<RegexNode> lookaheads, List<RegexNode> negativeLookaheads) {
+            this.body = body;
+            this.lookaheads = Collections.unmodifiableList(lookaheads);
+            this.negativeLookaheads = Collections.unmodifiableList(negativeLookaheads);
+        }
+    }
+}
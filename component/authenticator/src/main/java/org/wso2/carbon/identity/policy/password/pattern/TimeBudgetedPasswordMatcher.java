@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a password format with java.util.regex, giving up after a time budget.
+ * <p>
+ * The backtracking of java.util.regex may take exponential time for some formats, such as {@code (a+)+b}. The
+ * matcher reads the password through a sequence which checks the deadline, and a password which can not be
+ * matched in time is rejected.
+ */
+final class TimeBudgetedPasswordMatcher implements PasswordMatcher {
+    private static final Log log = LogFactory.getLog(TimeBudgetedPasswordMatcher.class);
+
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+
+    private final Pattern pattern;
+    private final long timeoutMillis;
+
+    /**
+     * @param pattern       The compiled password format
+     * @param timeoutMillis The time budget of a match in milliseconds, or 0 for no budget
+     */
+    TimeBudgetedPasswordMatcher(Pattern pattern, long timeoutMillis) {
+        this.pattern = pattern;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public boolean matches(CharSequence password) {
+        if (timeoutMillis <= 0) {
+            return pattern.matcher(password).matches();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            return pattern.matcher(new DeadlineCharSequence(password, deadline)).matches();
+        } catch (MatchTimeoutException e) {
+            log.warn("Matching a password against the format " + pattern.pattern() + " took more than "
+                    + timeoutMillis + " ms. The password is rejected.");
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isLinearTime() {
+        return false;
+    }
+
+    private static final class DeadlineCharSequence implements CharSequence {
+        private final CharSequence sequence;
+        private final long deadline;
+        private int reads;
+
+        private DeadlineCharSequence(CharSequence sequence, long deadline) {
+            this.sequence = sequence;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                throw new MatchTimeoutException();
+            }
+            return sequence.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return sequence.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DeadlineCharSequence(sequence.subSequence(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return sequence.toString();
+        }
+    }
+
+    private static final class MatchTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private MatchTimeoutException() {
+            super(null, null, false, false);
+        }
+    }
+}
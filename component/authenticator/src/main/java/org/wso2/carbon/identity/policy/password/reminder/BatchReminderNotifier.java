@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delivers the password expiry reminders of the users of a tenant together, so that they share the work common to
+ * the tenant, such as rendering the email template and connecting to the mail server.
+ */
+public interface BatchReminderNotifier extends ReminderNotifier {
+
+    /**
+     * Send the password expiry reminders of the users of a tenant.
+     * This is called within the tenant flow of the tenant.
+     *
+     * @param tenantDomain The tenant domain of the users
+     * @param reminders    The reminders
+     * @param config       The password expiry policy of the tenant
+     * @return The reminders which could not be sent, mapped to the cause. These reminders are retried later.
+     */
+    Map<PasswordExpiryReminder, Exception> sendReminders(String tenantDomain, List<PasswordExpiryReminder> reminders,
+                                                         PasswordPolicyConfig config);
+}
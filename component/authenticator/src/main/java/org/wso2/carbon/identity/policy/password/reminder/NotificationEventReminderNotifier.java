@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import org.apache.commons.lang.StringUtils;
+import org.wso2.carbon.identity.event.IdentityEventConstants;
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.event.event.Event;
+import org.wso2.carbon.identity.event.services.IdentityEventService;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.internal.PasswordPolicyDataHolder;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends the password expiry reminders as notification events of the Identity Server.
+ * <p>
+ * The notification event handlers of the server resolve the email address of the user and send the email using the
+ * configured email template, in the same way as the account recovery notifications.
+ */
+public class NotificationEventReminderNotifier implements ReminderNotifier {
+    private final String templateType;
+
+    public NotificationEventReminderNotifier(String templateType) {
+        this.templateType = templateType;
+    }
+
+    @Override
+    public void sendReminder(PasswordExpiryReminder reminder, PasswordPolicyConfig config)
+            throws IdentityEventException {
+        IdentityEventService identityEventService = PasswordPolicyDataHolder.getInstance().getIdentityEventService();
+        if (identityEventService == null) {
+            throw new IdentityEventException("The identity event service is not available");
+        }
+
+        String domain = UserCoreUtil.extractDomainFromName(reminder.getTenantAwareUsername());
+        if (StringUtils.isBlank(domain)) {
+            domain = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+        }
+        long remainingDays = reminder.getRemainingDays(config, System.currentTimeMillis());
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(IdentityEventConstants.EventProperty.USER_NAME,
+                UserCoreUtil.removeDomainFromName(reminder.getTenantAwareUsername()));
+        properties.put(IdentityEventConstants.EventProperty.USER_STORE_DOMAIN, domain);
+        properties.put(IdentityEventConstants.EventProperty.TENANT_DOMAIN, reminder.getTenantDomain());
+        properties.put(PasswordPolicyConstants.NOTIFICATION_TEMPLATE_TYPE_PROPERTY, templateType);
+        properties.put(PasswordPolicyConstants.NOTIFICATION_REMAINING_DAYS_PROPERTY, Long.toString(remainingDays));
+        identityEventService.handleEvent(new Event(IdentityEventConstants.Event.TRIGGER_NOTIFICATION, properties));
+    }
+}
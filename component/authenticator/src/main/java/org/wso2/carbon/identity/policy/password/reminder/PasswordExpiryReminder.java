@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A password expiry reminder scheduled for a user.
+ */
+public class PasswordExpiryReminder {
+    private final String tenantDomain;
+    private final String tenantAwareUsername;
+    private final long lastPasswordUpdateTime;
+    private final long reminderTime;
+    private final int attempts;
+
+    public PasswordExpiryReminder(String tenantDomain, String tenantAwareUsername, long lastPasswordUpdateTime,
+                                  long reminderTime) {
+        this(tenantDomain, tenantAwareUsername, lastPasswordUpdateTime, reminderTime, 0);
+    }
+
+    private PasswordExpiryReminder(String tenantDomain, String tenantAwareUsername, long lastPasswordUpdateTime,
+                                   long reminderTime, int attempts) {
+        this.tenantDomain = tenantDomain;
+        this.tenantAwareUsername = tenantAwareUsername;
+        this.lastPasswordUpdateTime = lastPasswordUpdateTime;
+        this.reminderTime = reminderTime;
+        this.attempts = attempts;
+    }
+
+    /**
+     * Get the key identifying the user of this reminder.
+     *
+     * @return The key of the user
+     */
+    public String getUserKey() {
+        return PasswordUpdateTimeCache.getUserKey(tenantDomain, tenantAwareUsername);
+    }
+
+    /**
+     * Get a copy of this reminder which is due at a different time.
+     *
+     * @param reminderTime The time at which the reminder is due
+     * @return The rescheduled reminder
+     */
+    PasswordExpiryReminder reschedule(long reminderTime) {
+        return new PasswordExpiryReminder(tenantDomain, tenantAwareUsername, lastPasswordUpdateTime, reminderTime,
+                attempts);
+    }
+
+    /**
+     * Get a copy of this reminder to be retried after a failed delivery.
+     *
+     * @param reminderTime The time at which the reminder is retried
+     * @return The reminder with an incremented attempt count
+     */
+    PasswordExpiryReminder nextAttempt(long reminderTime) {
+        return new PasswordExpiryReminder(tenantDomain, tenantAwareUsername, lastPasswordUpdateTime, reminderTime,
+                attempts + 1);
+    }
+
+    /**
+     * Get the number of whole days left until the password expires.
+     *
+     * @param config The password expiry policy of the tenant of the user
+     * @param now    The current time in milliseconds
+     * @return The number of remaining days, which is 0 if the password has already expired
+     */
+    public long getRemainingDays(PasswordPolicyConfig config, long now) {
+        long expiryTime = lastPasswordUpdateTime + TimeUnit.DAYS.toMillis(config.getPasswordExpiryInDays());
+        return Math.max(0, TimeUnit.MILLISECONDS.toDays(expiryTime - now));
+    }
+
+    public String getTenantDomain() {
+        return tenantDomain;
+    }
+
+    public String getTenantAwareUsername() {
+        return tenantAwareUsername;
+    }
+
+    public long getLastPasswordUpdateTime() {
+        return lastPasswordUpdateTime;
+    }
+
+    public long getReminderTime() {
+        return reminderTime;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,746 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.cluster.MembershipListener;
+import org.wso2.carbon.identity.policy.password.cluster.TenantShardManager;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.mail.SmtpConnection;
+import org.wso2.carbon.identity.policy.password.mail.SmtpConnectionPool;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeWriter;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.utils.CarbonUtils;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends the password expiry reminders from within the Identity Server, without IS Analytics.
+ * <p>
+ * This is disabled by default. When enabled, the password change handler schedules a reminder for the user upon
+ * each password change, at the prior reminder time before the password expires. The reminders are kept in a
+ * min-heap ordered by their due time, and a background thread sleeps until the next one is due instead of
+ * periodically scanning all the users. The scheduled reminders are journaled to disk and are recovered on the next
+ * start, so that they survive restarts.
+ * <p>
+ * The reminder times are computed from the password expiry policy of the tenant. They are computed again when the
+ * resident identity provider of the tenant is updated, and just before a reminder is sent.
+ * <p>
+ * In a cluster, only the node owning a tenant schedules the reminders of the tenant. The reminders of the password
+ * changes made on the other nodes are scheduled by the {@link ReminderSweeper}. Before a reminder is sent, the last
+ * password update time is read again and a cluster wide lock is taken, so that a reminder is neither sent for a
+ * password which has been changed since, nor sent twice while the tenants are being reassigned.
+ * <p>
+ * The due reminders are sent together per tenant, at a rate limited globally and per tenant. A reminder which could
+ * not be sent is retried after an exponentially growing interval with a random jitter, so that the reminders failed
+ * during an outage of the mail server are not all retried at once.
+ */
+public class PasswordExpiryReminderScheduler implements Runnable {
+    private static final Log log = LogFactory.getLog(PasswordExpiryReminderScheduler.class);
+
+    private static final PasswordExpiryReminderScheduler instance = new PasswordExpiryReminderScheduler();
+
+    private static final long SHUTDOWN_TIMEOUT = 30000;
+    private static final long MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int BATCH_SIZE = 100;
+    private static final int JOURNAL_COMPACTION_THRESHOLD = 10000;
+    private static final String REMINDER_LOCK_PREFIX = "password-expiry-reminder:";
+    private static final long REMINDER_LOCK_LEASE = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_RETRY_BACKOFF_SHIFT = 6;
+    private static final String[] CLAIM_URIS = new String[]{
+            PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM};
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ReminderQueue queue = new ReminderQueue();
+    private ReminderJournal journal;
+
+    private volatile boolean running;
+    private volatile ReminderNotifier notifier;
+    private volatile ReminderRateLimiter rateLimiter = new ReminderRateLimiter(0, 0);
+    private Thread schedulerThread;
+    private long retryIntervalMillis;
+    private int maxAttempts;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final MembershipListener membershipListener = new MembershipListener() {
+        @Override
+        public void membershipChanged(Set<String> liveNodes) {
+            removeRemoteTenants();
+        }
+    };
+
+    private PasswordExpiryReminderScheduler() {     // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the PasswordExpiryReminderScheduler
+     *
+     * @return A singleton instance of the PasswordExpiryReminderScheduler
+     */
+    public static PasswordExpiryReminderScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start sending the password expiry reminders if the embedded reminders are enabled.
+     * The reminders left in the journal by the previous run are scheduled again.
+     */
+    public synchronized void start() {
+        if (running || !Boolean.parseBoolean(getProperty(PasswordPolicyConstants.REMINDER_ENABLE))) {
+            return;
+        }
+
+        retryIntervalMillis = TimeUnit.SECONDS.toMillis(NumberUtils.toInt(
+                getProperty(PasswordPolicyConstants.REMINDER_RETRY_INTERVAL),
+                PasswordPolicyConstants.REMINDER_RETRY_INTERVAL_DEFAULT_VALUE));
+        maxAttempts = NumberUtils.toInt(getProperty(PasswordPolicyConstants.REMINDER_MAX_ATTEMPTS),
+                PasswordPolicyConstants.REMINDER_MAX_ATTEMPTS_DEFAULT_VALUE);
+        rateLimiter = new ReminderRateLimiter(
+                NumberUtils.toInt(getProperty(PasswordPolicyConstants.REMINDER_RATE_LIMIT)),
+                NumberUtils.toInt(getProperty(PasswordPolicyConstants.REMINDER_TENANT_RATE_LIMIT)));
+        if (notifier == null) {
+            if (PasswordPolicyConstants.REMINDER_NOTIFIER_SMTP.equalsIgnoreCase(
+                    getProperty(PasswordPolicyConstants.REMINDER_NOTIFIER))) {
+                notifier = createSmtpNotifier();
+            }
+            if (notifier == null) {
+                String templateType = getProperty(PasswordPolicyConstants.REMINDER_NOTIFICATION_TEMPLATE);
+                if (StringUtils.isBlank(templateType)) {
+                    templateType = PasswordPolicyConstants.REMINDER_NOTIFICATION_TEMPLATE_DEFAULT_VALUE;
+                }
+                notifier = new NotificationEventReminderNotifier(templateType);
+            }
+        }
+        start(new ReminderJournal(getJournalFile()));
+    }
+
+    private void start(ReminderJournal reminderJournal) {
+        lock.lock();
+        try {
+            queue.clear();
+            journal = reminderJournal;
+            try {
+                Collection<PasswordExpiryReminder> reminders = journal.recover();
+                for (PasswordExpiryReminder reminder : reminders) {
+                    queue.schedule(reminder.reschedule(getReminderTime(reminder.getTenantDomain(),
+                            reminder.getLastPasswordUpdateTime())));
+                }
+                journal.rewrite(queue.getReminders());
+                if (!reminders.isEmpty()) {
+                    log.info("Recovered " + reminders.size() + " scheduled password expiry reminders");
+                }
+            } catch (IOException e) {
+                log.error("Error occurred while recovering the password expiry reminders from the journal. "
+                        + "The reminders scheduled before the last shutdown are lost.", e);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        running = true;
+        TenantShardManager.getInstance().addListener(membershipListener);
+        schedulerThread = new Thread(this, "PasswordExpiryReminderScheduler");
+        schedulerThread.setDaemon(true);
+        schedulerThread.start();
+        if (log.isDebugEnabled()) {
+            log.debug("Password expiry reminder scheduler is started with " + queue.size() + " reminders");
+        }
+    }
+
+    /**
+     * Stop sending the password expiry reminders.
+     * The scheduled reminders remain in the journal for the next start.
+     */
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        TenantShardManager.getInstance().removeListener(membershipListener);
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            schedulerThread.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (schedulerThread.isAlive()) {
+            log.warn("Timed out while waiting for the password expiry reminders being sent");
+        }
+        lock.lock();
+        try {
+            journal.close();
+        } finally {
+            lock.unlock();
+        }
+        if (notifier instanceof SmtpReminderNotifier) {
+            ((SmtpReminderNotifier) notifier).close();
+            notifier = null;
+        }
+        schedulerThread = null;
+    }
+
+    /**
+     * Schedule the password expiry reminder of a user, replacing the reminder of the previous password.
+     * In a cluster, the reminder is scheduled only if this node owns the tenant of the user.
+     *
+     * @param tenantDomain           The tenant domain of the user
+     * @param tenantAwareUsername    The domain qualified username of the user
+     * @param lastPasswordUpdateTime The time at which the password was changed
+     */
+    public void schedule(String tenantDomain, String tenantAwareUsername, long lastPasswordUpdateTime) {
+        if (!running || StringUtils.isBlank(tenantDomain)
+                || !TenantShardManager.getInstance().isLocal(tenantDomain)) {
+            return;
+        }
+        PasswordExpiryReminder reminder = new PasswordExpiryReminder(tenantDomain, tenantAwareUsername,
+                lastPasswordUpdateTime, getReminderTime(tenantDomain, lastPasswordUpdateTime));
+        lock.lock();
+        try {
+            PasswordExpiryReminder scheduledReminder = queue.get(reminder.getUserKey());
+            if (scheduledReminder != null && scheduledReminder.getAttempts() == 0
+                    && scheduledReminder.getLastPasswordUpdateTime() == lastPasswordUpdateTime
+                    && scheduledReminder.getReminderTime() == reminder.getReminderTime()) {
+                // Already scheduled, e.g. by a previous sweep
+                return;
+            }
+            queue.schedule(reminder);
+            appendToJournal(reminder, false);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Scheduled the password expiry reminder of " + tenantAwareUsername + " of the tenant "
+                    + tenantDomain + " at " + reminder.getReminderTime());
+        }
+    }
+
+    /**
+     * Cancel the password expiry reminder of a user.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The domain qualified username of the user
+     */
+    public void cancel(String tenantDomain, String tenantAwareUsername) {
+        if (!running) {
+            return;
+        }
+        lock.lock();
+        try {
+            PasswordExpiryReminder reminder =
+                    queue.remove(PasswordUpdateTimeCache.getUserKey(tenantDomain, tenantAwareUsername));
+            if (reminder != null) {
+                appendToJournal(reminder, true);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compute the reminder times of the users of a tenant again, after the password expiry policy is changed.
+     *
+     * @param tenantDomain The tenant domain
+     */
+    public void rescheduleTenant(String tenantDomain) {
+        if (!running) {
+            return;
+        }
+        lock.lock();
+        try {
+            List<PasswordExpiryReminder> reminders = queue.getReminders(tenantDomain);
+            if (reminders.isEmpty()) {
+                return;
+            }
+            for (PasswordExpiryReminder reminder : reminders) {
+                queue.schedule(reminder.reschedule(getReminderTime(tenantDomain,
+                        reminder.getLastPasswordUpdateTime())));
+            }
+            changed.signalAll();
+            if (log.isDebugEnabled()) {
+                log.debug("Rescheduled " + reminders.size() + " password expiry reminders of the tenant "
+                        + tenantDomain);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget the state kept for sending the reminders of a tenant, when the tenant is unloaded.
+     * The scheduled reminders of the tenant are kept.
+     *
+     * @param tenantDomain The tenant domain
+     */
+    public void invalidateTenant(String tenantDomain) {
+        rateLimiter.removeTenant(tenantDomain);
+        ReminderNotifier reminderNotifier = notifier;
+        if (reminderNotifier instanceof SmtpReminderNotifier) {
+            ((SmtpReminderNotifier) reminderNotifier).invalidate(tenantDomain);
+        }
+    }
+
+    /**
+     * Remove the reminders of the tenants which are now owned by the other nodes of the cluster.
+     */
+    private void removeRemoteTenants() {
+        if (!running) {
+            return;
+        }
+        int removedCount = 0;
+        lock.lock();
+        try {
+            for (PasswordExpiryReminder reminder : queue.getReminders()) {
+                if (!TenantShardManager.getInstance().isLocal(reminder.getTenantDomain())) {
+                    queue.remove(reminder.getUserKey());
+                    appendToJournal(reminder, true);
+                    removedCount++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (removedCount > 0 && log.isDebugEnabled()) {
+            log.debug("Removed " + removedCount + " password expiry reminders of the tenants owned by the other "
+                    + "nodes");
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            List<PasswordExpiryReminder> dueReminders;
+            try {
+                dueReminders = awaitDueReminders();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            process(dueReminders);
+        }
+    }
+
+    private List<PasswordExpiryReminder> awaitDueReminders() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                List<PasswordExpiryReminder> dueReminders = queue.pollDue(now, BATCH_SIZE);
+                if (!dueReminders.isEmpty() || !running) {
+                    return dueReminders;
+                }
+                long nextReminderTime = queue.getNextReminderTime();
+                long waitMillis = nextReminderTime < 0 ? MAX_WAIT_MILLIS
+                        : Math.min(nextReminderTime - now, MAX_WAIT_MILLIS);
+                changed.await(waitMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void process(List<PasswordExpiryReminder> dueReminders) {
+        // The reminders to be sent, grouped by the tenant
+        Map<String, List<PasswordExpiryReminder>> readyReminders = new LinkedHashMap<>();
+        Map<PasswordExpiryReminder, String> lockNames = new IdentityHashMap<>();
+        for (PasswordExpiryReminder reminder : dueReminders) {
+            if (prepare(reminder, lockNames)) {
+                List<PasswordExpiryReminder> tenantReminders = readyReminders.get(reminder.getTenantDomain());
+                if (tenantReminders == null) {
+                    tenantReminders = new ArrayList<>();
+                    readyReminders.put(reminder.getTenantDomain(), tenantReminders);
+                }
+                tenantReminders.add(reminder);
+            }
+        }
+        for (Map.Entry<String, List<PasswordExpiryReminder>> entry : readyReminders.entrySet()) {
+            send(entry.getKey(), entry.getValue(), lockNames);
+        }
+    }
+
+    /**
+     * Check whether a due reminder is to be sent now.
+     *
+     * @param reminder  The reminder
+     * @param lockNames The cluster wide locks taken for the reminders to be sent
+     * @return True if the reminder is to be sent now
+     */
+    private boolean prepare(PasswordExpiryReminder reminder, Map<PasswordExpiryReminder, String> lockNames) {
+        String tenantDomain = reminder.getTenantDomain();
+        PasswordPolicyConfig config = PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain);
+        if (reminder.getAttempts() == 0) {
+            long reminderTime = getReminderTime(config, reminder.getLastPasswordUpdateTime());
+            if (reminderTime > System.currentTimeMillis()) {
+                // The policy was extended after the reminder was scheduled
+                requeue(reminder.reschedule(reminderTime));
+                return false;
+            }
+        }
+        if (!config.isEnableEmailNotifications()) {
+            complete(reminder);
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long waitMillis = rateLimiter.tryAcquire(tenantDomain, now);
+        if (waitMillis > 0) {
+            // Postponed without counting as an attempt
+            requeue(reminder.reschedule(now + waitMillis));
+            return false;
+        }
+        if (TenantShardManager.getInstance().isClustered()) {
+            if (!TenantShardManager.getInstance().isLocal(tenantDomain) || isStale(reminder)) {
+                complete(reminder);
+                return false;
+            }
+            String lockName = REMINDER_LOCK_PREFIX + reminder.getUserKey() + ":"
+                    + reminder.getLastPasswordUpdateTime();
+            // The lock is held until its lease expires, so that the other nodes do not send the reminder again
+            if (!TenantShardManager.getInstance().tryLock(lockName, REMINDER_LOCK_LEASE)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("The password expiry reminder of " + reminder.getTenantAwareUsername()
+                            + " of the tenant " + tenantDomain + " is sent by another node");
+                }
+                complete(reminder);
+                return false;
+            }
+            lockNames.put(reminder, lockName);
+        }
+        return true;
+    }
+
+    private void send(String tenantDomain, List<PasswordExpiryReminder> reminders,
+                      Map<PasswordExpiryReminder, String> lockNames) {
+        PasswordPolicyConfig config = PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain);
+        ReminderNotifier reminderNotifier = notifier;
+        Map<PasswordExpiryReminder, Exception> failures = new IdentityHashMap<>();
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain, true);
+            if (reminderNotifier instanceof BatchReminderNotifier) {
+                failures = ((BatchReminderNotifier) reminderNotifier).sendReminders(tenantDomain, reminders, config);
+            } else {
+                for (PasswordExpiryReminder reminder : reminders) {
+                    try {
+                        reminderNotifier.sendReminder(reminder, config);
+                    } catch (IdentityEventException | RuntimeException e) {
+                        failures.put(reminder, e);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            for (PasswordExpiryReminder reminder : reminders) {
+                failures.put(reminder, e);
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+
+        for (PasswordExpiryReminder reminder : reminders) {
+            Exception failure = failures.get(reminder);
+            if (failure == null) {
+                sentCount.incrementAndGet();
+                complete(reminder);
+                if (log.isDebugEnabled()) {
+                    log.debug("Sent the password expiry reminder to " + reminder.getTenantAwareUsername()
+                            + " of the tenant " + tenantDomain);
+                }
+                continue;
+            }
+            String lockName = lockNames.get(reminder);
+            if (lockName != null) {
+                TenantShardManager.getInstance().unlock(lockName);
+            }
+            if (reminder.getAttempts() + 1 < maxAttempts) {
+                log.warn("Error occurred while sending the password expiry reminder to "
+                        + reminder.getTenantAwareUsername() + " of the tenant " + tenantDomain
+                        + ". The reminder will be retried.", failure);
+                requeue(reminder.nextAttempt(getRetryTime(reminder)));
+            } else {
+                failedCount.incrementAndGet();
+                log.error("Giving up the password expiry reminder of " + reminder.getTenantAwareUsername()
+                        + " of the tenant " + tenantDomain + " after " + (reminder.getAttempts() + 1)
+                        + " attempts", failure);
+                complete(reminder);
+            }
+        }
+    }
+
+    /**
+     * Get the time at which a failed reminder is retried. The interval doubles with each attempt, and a random
+     * jitter of up to half of the interval spreads out the retries of the reminders which failed together.
+     *
+     * @param reminder The failed reminder
+     * @return The time at which the reminder is retried
+     */
+    private long getRetryTime(PasswordExpiryReminder reminder) {
+        long interval = retryIntervalMillis << Math.min(reminder.getAttempts(), MAX_RETRY_BACKOFF_SHIFT);
+        return System.currentTimeMillis() + interval / 2 + ThreadLocalRandom.current().nextLong(interval / 2 + 1);
+    }
+
+    /**
+     * Check whether the password of the user has been changed after a reminder was scheduled, possibly on another
+     * node of the cluster.
+     *
+     * @param reminder The reminder
+     * @return True if the reminder is of a previous password
+     */
+    private boolean isStale(PasswordExpiryReminder reminder) {
+        String tenantDomain = reminder.getTenantDomain();
+        String tenantAwareUsername = reminder.getTenantAwareUsername();
+        Long lastPasswordUpdateTime = PasswordUpdateTimeWriter.getInstance()
+                .getPendingTimestamp(tenantDomain, tenantAwareUsername);
+        if (lastPasswordUpdateTime == null) {
+            Long cachedPasswordUpdateTime = PasswordUpdateTimeCache.getInstance().get(tenantDomain,
+                    tenantAwareUsername);
+            if (cachedPasswordUpdateTime != null && cachedPasswordUpdateTime > reminder.getLastPasswordUpdateTime()) {
+                // Changed since the reminder was scheduled, which needs no user store read to confirm
+                return true;
+            }
+            try {
+                UserStoreManager userStoreManager =
+                        UserStoreManagerCache.getInstance().getUserStoreManager(tenantDomain);
+                Map<String, String> claimValueMap =
+                        userStoreManager.getUserClaimValues(tenantAwareUsername, CLAIM_URIS, null);
+                String claimValue = claimValueMap == null ? null
+                        : claimValueMap.get(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM);
+                if (claimValue == null) {
+                    return true;
+                }
+                lastPasswordUpdateTime = Long.parseLong(claimValue);
+                PasswordUpdateTimeCache.getInstance().putIfNewer(tenantDomain, tenantAwareUsername,
+                        lastPasswordUpdateTime);
+            } catch (UserStoreException | RuntimeException e) {
+                // Better to send a reminder twice than not at all
+                if (log.isDebugEnabled()) {
+                    log.debug("Error occurred while reading the last password update time of " + tenantAwareUsername
+                            + " of the tenant " + tenantDomain, e);
+                }
+                return false;
+            }
+        }
+        return lastPasswordUpdateTime != reminder.getLastPasswordUpdateTime();
+    }
+
+    /**
+     * Schedule a reminder again unless the password was changed while it was being processed.
+     *
+     * @param reminder The reminder
+     */
+    private void requeue(PasswordExpiryReminder reminder) {
+        lock.lock();
+        try {
+            if (queue.get(reminder.getUserKey()) == null) {
+                queue.schedule(reminder);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void complete(PasswordExpiryReminder reminder) {
+        lock.lock();
+        try {
+            appendToJournal(reminder, true);
+            if (journal.getLineCount() > 2 * queue.size() + JOURNAL_COMPACTION_THRESHOLD) {
+                journal.rewrite(queue.getReminders());
+            }
+        } catch (IOException e) {
+            log.warn("Error occurred while compacting the password expiry reminder journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void appendToJournal(PasswordExpiryReminder reminder, boolean completed) {
+        try {
+            if (completed) {
+                journal.appendCompleted(reminder);
+            } else {
+                journal.appendScheduled(reminder);
+            }
+        } catch (IOException e) {
+            log.warn("Error occurred while journaling the password expiry reminder of "
+                    + reminder.getTenantAwareUsername() + ". The reminder will not survive a restart.", e);
+        }
+    }
+
+    static long getReminderTime(String tenantDomain, long lastPasswordUpdateTime) {
+        return getReminderTime(PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain),
+                lastPasswordUpdateTime);
+    }
+
+    /**
+     * Get the time at which the password expiry reminder is sent.
+     *
+     * @param config                 The password expiry policy of the tenant
+     * @param lastPasswordUpdateTime The time at which the password was changed
+     * @return The prior reminder time before the password expires
+     */
+    static long getReminderTime(PasswordPolicyConfig config, long lastPasswordUpdateTime) {
+        int reminderDelayInDays = Math.max(0,
+                config.getPasswordExpiryInDays() - config.getPriorReminderTimeInDays());
+        return lastPasswordUpdateTime + TimeUnit.DAYS.toMillis(reminderDelayInDays);
+    }
+
+    /**
+     * Create the notifier sending the reminders directly to the configured SMTP server.
+     *
+     * @return The notifier, or null if the SMTP server is not configured properly
+     */
+    private static SmtpReminderNotifier createSmtpNotifier() {
+        String host = getProperty(PasswordPolicyConstants.REMINDER_SMTP_HOST);
+        String from = getProperty(PasswordPolicyConstants.REMINDER_SMTP_FROM);
+        if (StringUtils.isBlank(host) || StringUtils.isBlank(from)) {
+            log.error("The SMTP server host and the sender address of the password expiry reminders are not "
+                    + "configured. The reminders are sent as notification events instead.");
+            return null;
+        }
+        if (!SmtpConnection.isValidAddress(from)) {
+            log.error("The sender address of the password expiry reminders is not valid. "
+                    + "The reminders are sent as notification events instead.");
+            return null;
+        }
+
+        String body = SmtpReminderNotifier.DEFAULT_TEMPLATE;
+        File templateFile = getFile(PasswordPolicyConstants.REMINDER_SMTP_TEMPLATE,
+                PasswordPolicyConstants.REMINDER_SMTP_TEMPLATE_DEFAULT_VALUE);
+        if (templateFile.isFile()) {
+            try {
+                body = new String(Files.readAllBytes(templateFile.toPath()), Charset.forName("UTF-8"));
+            } catch (IOException e) {
+                log.error("Error occurred while reading the password expiry reminder template " + templateFile
+                        + ". The default template is used instead.", e);
+            }
+        }
+        String subject = getProperty(PasswordPolicyConstants.REMINDER_SMTP_SUBJECT);
+        if (StringUtils.isBlank(subject)) {
+            subject = PasswordPolicyConstants.REMINDER_SMTP_SUBJECT_DEFAULT_VALUE;
+        }
+
+        SmtpConnectionPool connectionPool = new SmtpConnectionPool(host,
+                NumberUtils.toInt(getProperty(PasswordPolicyConstants.REMINDER_SMTP_PORT),
+                        PasswordPolicyConstants.REMINDER_SMTP_PORT_DEFAULT_VALUE),
+                (int) TimeUnit.SECONDS.toMillis(NumberUtils.toInt(
+                        getProperty(PasswordPolicyConstants.REMINDER_SMTP_TIMEOUT),
+                        PasswordPolicyConstants.REMINDER_SMTP_TIMEOUT_DEFAULT_VALUE)),
+                Boolean.parseBoolean(getProperty(PasswordPolicyConstants.REMINDER_SMTP_START_TLS)),
+                getProperty(PasswordPolicyConstants.REMINDER_SMTP_USERNAME),
+                getProperty(PasswordPolicyConstants.REMINDER_SMTP_PASSWORD),
+                NumberUtils.toInt(getProperty(PasswordPolicyConstants.REMINDER_SMTP_POOL_SIZE),
+                        PasswordPolicyConstants.REMINDER_SMTP_POOL_SIZE_DEFAULT_VALUE),
+                TimeUnit.SECONDS.toMillis(NumberUtils.toInt(
+                        getProperty(PasswordPolicyConstants.REMINDER_SMTP_MAX_IDLE_TIME),
+                        PasswordPolicyConstants.REMINDER_SMTP_MAX_IDLE_TIME_DEFAULT_VALUE)));
+        return new SmtpReminderNotifier(connectionPool, from, subject, body, "text/html",
+                NumberUtils.toInt(getProperty(PasswordPolicyConstants.REMINDER_SMTP_MAX_RECIPIENTS),
+                        PasswordPolicyConstants.REMINDER_SMTP_MAX_RECIPIENTS_DEFAULT_VALUE));
+    }
+
+    private static File getJournalFile() {
+        return getFile(PasswordPolicyConstants.REMINDER_JOURNAL,
+                PasswordPolicyConstants.REMINDER_JOURNAL_DEFAULT_VALUE);
+    }
+
+    private static File getFile(String propertyName, String defaultPath) {
+        String path = getProperty(propertyName);
+        if (StringUtils.isBlank(path)) {
+            path = defaultPath;
+        }
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(CarbonUtils.getCarbonHome(), path);
+        }
+        return file;
+    }
+
+    private static String getProperty(String propertyName) {
+        return PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                propertyName);
+    }
+
+    /**
+     * Replace the notifier which delivers the reminders.
+     *
+     * @param notifier The notifier
+     */
+    public void setNotifier(ReminderNotifier notifier) {
+        this.notifier = notifier;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Get the number of users having a scheduled reminder.
+     *
+     * @return The number of scheduled reminders
+     */
+    public int getScheduledCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
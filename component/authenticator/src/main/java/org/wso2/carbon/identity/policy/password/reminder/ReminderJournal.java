@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append only file which keeps the scheduled password expiry reminders across restarts.
+ * <p>
+ * Each line records either a scheduled reminder or a completed one, as the record type, the last password update
+ * time, the tenant domain and the tenant aware username separated by tabs. A completed record only removes the
+ * reminder scheduled for the same last password update time, so that a password change made while the previous
+ * reminder was being sent is not lost. Only the last password update times are kept, since the reminder times are
+ * derived from the password expiry policy of the tenant when the reminders are recovered.
+ * <p>
+ * This class is not thread safe. The callers are expected to synchronize the access.
+ */
+public class ReminderJournal {
+    private static final Log log = LogFactory.getLog(ReminderJournal.class);
+
+    private static final char SEPARATOR = '\t';
+    private static final char SCHEDULED = 'S';
+    private static final char COMPLETED = 'C';
+
+    private final File file;
+    private Writer writer;
+    private int lineCount;
+
+    public ReminderJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the reminders which were not completed before the last shutdown.
+     *
+     * @return The recovered reminders, without the reminder times
+     * @throws IOException if the journal could not be read
+     */
+    public Collection<PasswordExpiryReminder> recover() throws IOException {
+        Map<String, PasswordExpiryReminder> reminders = new LinkedHashMap<>();
+        lineCount = 0;
+        if (!file.exists()) {
+            return reminders.values();
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                String[] fields = line.split(String.valueOf(SEPARATOR), 4);
+                long lastPasswordUpdateTime;
+                try {
+                    if (fields.length != 4 || fields[0].length() != 1) {
+                        throw new NumberFormatException();
+                    }
+                    lastPasswordUpdateTime = Long.parseLong(fields[1]);
+                } catch (NumberFormatException e) {
+                    // A partially written line from a crash
+                    log.warn("Ignoring malformed entry in the password expiry reminder journal " + file);
+                    continue;
+                }
+
+                String userKey = PasswordUpdateTimeCache.getUserKey(fields[2], fields[3]);
+                if (fields[0].charAt(0) == SCHEDULED) {
+                    reminders.put(userKey, new PasswordExpiryReminder(fields[2], fields[3], lastPasswordUpdateTime, 0));
+                } else {
+                    PasswordExpiryReminder reminder = reminders.get(userKey);
+                    if (reminder != null && reminder.getLastPasswordUpdateTime() == lastPasswordUpdateTime) {
+                        reminders.remove(userKey);
+                    }
+                }
+            }
+        }
+        return reminders.values();
+    }
+
+    /**
+     * Record a scheduled reminder.
+     *
+     * @param reminder The reminder
+     * @throws IOException if the record could not be written
+     */
+    public void appendScheduled(PasswordExpiryReminder reminder) throws IOException {
+        append(SCHEDULED, reminder);
+    }
+
+    /**
+     * Record a reminder which was sent or discarded.
+     *
+     * @param reminder The reminder
+     * @throws IOException if the record could not be written
+     */
+    public void appendCompleted(PasswordExpiryReminder reminder) throws IOException {
+        append(COMPLETED, reminder);
+    }
+
+    /**
+     * Replace the content of the journal with the given reminders.
+     *
+     * @param reminders The reminders which are still scheduled
+     * @throws IOException if the journal could not be rewritten
+     */
+    public void rewrite(Collection<PasswordExpiryReminder> reminders) throws IOException {
+        close();
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        Writer temporaryWriter = openWriter(temporaryFile, false);
+        try {
+            lineCount = 0;
+            for (PasswordExpiryReminder reminder : reminders) {
+                write(temporaryWriter, SCHEDULED, reminder);
+            }
+        } finally {
+            temporaryWriter.close();
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Get the number of lines in the journal, including the records of the completed reminders.
+     *
+     * @return The number of lines in the journal
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Close the journal file.
+     */
+    public void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Error occurred while closing the password expiry reminder journal " + file, e);
+            }
+            writer = null;
+        }
+    }
+
+    private void append(char type, PasswordExpiryReminder reminder) throws IOException {
+        Writer journalWriter = getWriter();
+        write(journalWriter, type, reminder);
+        journalWriter.flush();
+    }
+
+    private void write(Writer journalWriter, char type, PasswordExpiryReminder reminder) throws IOException {
+        journalWriter.write(type);
+        journalWriter.write(SEPARATOR);
+        journalWriter.write(Long.toString(reminder.getLastPasswordUpdateTime()));
+        journalWriter.write(SEPARATOR);
+        journalWriter.write(reminder.getTenantDomain());
+        journalWriter.write(SEPARATOR);
+        journalWriter.write(reminder.getTenantAwareUsername());
+        journalWriter.write('\n');
+        lineCount++;
+    }
+
+    private Writer getWriter() throws IOException {
+        if (writer == null) {
+            writer = openWriter(file, true);
+        }
+        return writer;
+    }
+
+    private static Writer openWriter(File file, boolean append) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create the directory " + parent);
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8));
+    }
+}
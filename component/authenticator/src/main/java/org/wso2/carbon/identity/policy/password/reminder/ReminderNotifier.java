@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+
+/**
+ * Delivers the password expiry reminders to the users.
+ */
+public interface ReminderNotifier {
+
+    /**
+     * Send a password expiry reminder.
+     * This is called within the tenant flow of the tenant of the user.
+     *
+     * @param reminder The reminder
+     * @param config   The password expiry policy of the tenant of the user
+     * @throws IdentityEventException if the reminder could not be sent. The reminder is retried later.
+     */
+    void sendReminder(PasswordExpiryReminder reminder, PasswordPolicyConfig config) throws IdentityEventException;
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The password expiry reminders ordered by the time at which they are due.
+ * <p>
+ * The reminders are kept in a binary min-heap, so that the next due reminder is found without scanning the users.
+ * Each user has at most one live reminder. A reminder which is replaced or cancelled is only dropped from the index,
+ * and is discarded when it reaches the head of the heap. The heap is rebuilt when such stale entries dominate it.
+ * <p>
+ * This class is not thread safe. The callers are expected to synchronize the access.
+ */
+public class ReminderQueue {
+    private static final int COMPACTION_THRESHOLD = 1024;
+
+    private static final Comparator<PasswordExpiryReminder> REMINDER_TIME_COMPARATOR =
+            new Comparator<PasswordExpiryReminder>() {
+                @Override
+                public int compare(PasswordExpiryReminder reminder1, PasswordExpiryReminder reminder2) {
+                    return Long.compare(reminder1.getReminderTime(), reminder2.getReminderTime());
+                }
+            };
+
+    private PriorityQueue<PasswordExpiryReminder> heap = new PriorityQueue<>(16, REMINDER_TIME_COMPARATOR);
+    private final Map<String, PasswordExpiryReminder> index = new HashMap<>();
+
+    /**
+     * Schedule a reminder, replacing the reminder of the same user if there is one.
+     *
+     * @param reminder The reminder
+     * @return The replaced reminder or null if the user had no reminder
+     */
+    public PasswordExpiryReminder schedule(PasswordExpiryReminder reminder) {
+        PasswordExpiryReminder replaced = index.put(reminder.getUserKey(), reminder);
+        heap.add(reminder);
+        if (replaced != null) {
+            compactIfRequired();
+        }
+        return replaced;
+    }
+
+    /**
+     * Remove the reminder of a user.
+     *
+     * @param userKey The key of the user
+     * @return The removed reminder or null if the user had no reminder
+     */
+    public PasswordExpiryReminder remove(String userKey) {
+        PasswordExpiryReminder removed = index.remove(userKey);
+        if (removed != null) {
+            compactIfRequired();
+        }
+        return removed;
+    }
+
+    /**
+     * Get the reminder of a user.
+     *
+     * @param userKey The key of the user
+     * @return The reminder or null if the user has no reminder
+     */
+    public PasswordExpiryReminder get(String userKey) {
+        return index.get(userKey);
+    }
+
+    /**
+     * Remove the reminders which are due.
+     *
+     * @param now        The current time
+     * @param maxResults The maximum number of reminders to remove
+     * @return The due reminders, in the order they became due
+     */
+    public List<PasswordExpiryReminder> pollDue(long now, int maxResults) {
+        List<PasswordExpiryReminder> dueReminders = new ArrayList<>();
+        while (dueReminders.size() < maxResults) {
+            PasswordExpiryReminder head = peekLive();
+            if (head == null || head.getReminderTime() > now) {
+                break;
+            }
+            heap.poll();
+            index.remove(head.getUserKey());
+            dueReminders.add(head);
+        }
+        return dueReminders;
+    }
+
+    /**
+     * Get the time at which the next reminder is due.
+     *
+     * @return The time of the next reminder or -1 if there is none
+     */
+    public long getNextReminderTime() {
+        PasswordExpiryReminder head = peekLive();
+        return head == null ? -1 : head.getReminderTime();
+    }
+
+    /**
+     * Get the reminders of the users of a tenant.
+     *
+     * @param tenantDomain The tenant domain
+     * @return The reminders of the tenant
+     */
+    public List<PasswordExpiryReminder> getReminders(String tenantDomain) {
+        List<PasswordExpiryReminder> reminders = new ArrayList<>();
+        for (PasswordExpiryReminder reminder : index.values()) {
+            if (reminder.getTenantDomain().equals(tenantDomain)) {
+                reminders.add(reminder);
+            }
+        }
+        return reminders;
+    }
+
+    /**
+     * Get all the scheduled reminders.
+     *
+     * @return A copy of the reminders, in no particular order
+     */
+    public Collection<PasswordExpiryReminder> getReminders() {
+        return new ArrayList<>(index.values());
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public void clear() {
+        heap.clear();
+        index.clear();
+    }
+
+    private PasswordExpiryReminder peekLive() {
+        PasswordExpiryReminder head = heap.peek();
+        while (head != null && index.get(head.getUserKey()) != head) {
+            // Replaced or cancelled after it was scheduled
+            heap.poll();
+            head = heap.peek();
+        }
+        return head;
+    }
+
+    private void compactIfRequired() {
+        if (heap.size() - index.size() > Math.max(COMPACTION_THRESHOLD, index.size())) {
+            PriorityQueue<PasswordExpiryReminder> compactedHeap =
+                    new PriorityQueue<>(Math.max(16, index.size()), REMINDER_TIME_COMPARATOR);
+            compactedHeap.addAll(index.values());
+            heap = compactedHeap;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which the password expiry reminders are sent, across all the tenants and per tenant, so that
+ * the mail server is not flooded when many passwords expire on the same day.
+ * <p>
+ * Each limit is a token bucket which refills continuously and holds up to a second worth of reminders, so that
+ * short bursts are smoothed out instead of being sent at once.
+ */
+public class ReminderRateLimiter {
+    private final TokenBucket globalBucket;
+    private final double tenantLimitPerMinute;
+    private final Map<String, TokenBucket> tenantBuckets = new HashMap<>();
+
+    /**
+     * Create a rate limiter.
+     *
+     * @param globalLimitPerMinute The maximum number of reminders sent per minute, or 0 for no limit
+     * @param tenantLimitPerMinute The maximum number of reminders sent per minute to the users of a tenant, or 0 for
+     *                             no limit
+     */
+    public ReminderRateLimiter(int globalLimitPerMinute, int tenantLimitPerMinute) {
+        this.globalBucket = globalLimitPerMinute > 0 ? new TokenBucket(globalLimitPerMinute) : null;
+        this.tenantLimitPerMinute = tenantLimitPerMinute;
+    }
+
+    /**
+     * Take the permission to send a reminder to a user of a tenant.
+     *
+     * @param tenantDomain The tenant domain of the user
+     * @param now          The current time in milliseconds
+     * @return 0 if the reminder can be sent now, or else the number of milliseconds to wait before trying again
+     */
+    public synchronized long tryAcquire(String tenantDomain, long now) {
+        TokenBucket tenantBucket = null;
+        if (tenantLimitPerMinute > 0) {
+            tenantBucket = tenantBuckets.get(tenantDomain);
+            if (tenantBucket == null) {
+                tenantBucket = new TokenBucket(tenantLimitPerMinute);
+                tenantBuckets.put(tenantDomain, tenantBucket);
+            }
+        }
+        // Nothing is taken from either bucket unless both allow the reminder
+        long waitMillis = Math.max(tenantBucket == null ? 0 : tenantBucket.getWaitMillis(now),
+                globalBucket == null ? 0 : globalBucket.getWaitMillis(now));
+        if (waitMillis > 0) {
+            return waitMillis;
+        }
+        if (tenantBucket != null) {
+            tenantBucket.take();
+        }
+        if (globalBucket != null) {
+            globalBucket.take();
+        }
+        return 0;
+    }
+
+    /**
+     * Forget the usage of a tenant, e.g. when the tenant is unloaded.
+     *
+     * @param tenantDomain The tenant domain
+     */
+    public synchronized void removeTenant(String tenantDomain) {
+        tenantBuckets.remove(tenantDomain);
+    }
+
+    private static class TokenBucket {
+        private final double tokensPerMilli;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillTime = -1;
+
+        TokenBucket(double limitPerMinute) {
+            this.tokensPerMilli = limitPerMinute / TimeUnit.MINUTES.toMillis(1);
+            this.capacity = Math.max(1, limitPerMinute / TimeUnit.MINUTES.toSeconds(1));
+            this.tokens = capacity;
+        }
+
+        long getWaitMillis(long now) {
+            if (lastRefillTime >= 0 && now > lastRefillTime) {
+                tokens = Math.min(capacity, tokens + (now - lastRefillTime) * tokensPerMilli);
+            }
+            lastRefillTime = Math.max(lastRefillTime, now);
+            return tokens >= 1 ? 0 : Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerMilli));
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.cluster.MembershipListener;
+import org.wso2.carbon.identity.policy.password.cluster.TenantShardManager;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.scan.ExpiringUser;
+import org.wso2.carbon.identity.policy.password.scan.ExpiryScanListener;
+import org.wso2.carbon.identity.policy.password.scan.ExpiryScanProgress;
+import org.wso2.carbon.identity.policy.password.scan.ExpiryScanRequest;
+import org.wso2.carbon.identity.policy.password.scan.PasswordExpiryScanner;
+import org.wso2.carbon.user.api.Tenant;
+import org.wso2.carbon.user.api.TenantManager;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the password expiry reminders of the tenants owned by this node of a cluster.
+ * <p>
+ * In a cluster the passwords of the users of a tenant are changed on any node, while the reminders of the tenant are
+ * sent only by the node owning the tenant. Therefore the owner periodically scans the users of its tenants and
+ * schedules the reminders falling due before the next sweep. A tenant gained upon a membership change is swept
+ * immediately, starting from one sweep interval back. The sweeps are only run while the node is a member of a cluster.
+ * <p>
+ * The tenants of a sweep are scanned together as one fork/join job, and the policy of each tenant is resolved once
+ * per sweep instead of once per user.
+ */
+public class ReminderSweeper implements MembershipListener {
+    private static final Log log = LogFactory.getLog(ReminderSweeper.class);
+
+    private static final ReminderSweeper instance = new ReminderSweeper();
+
+    private static final String SWEEP_LOCK_PREFIX = "password-expiry-sweep:";
+
+    private final Map<String, Long> sweptUntil = new ConcurrentHashMap<>();
+    private final Set<String> ownedTenants = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private ScheduledExecutorService executor;
+    private volatile long sweepIntervalMillis;
+
+    private ReminderSweeper() {     // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the ReminderSweeper
+     *
+     * @return A singleton instance of the ReminderSweeper
+     */
+    public static ReminderSweeper getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start sweeping the tenants owned by this node if the embedded reminders are running.
+     */
+    public synchronized void start() {
+        if (executor != null || !PasswordExpiryReminderScheduler.getInstance().isRunning()) {
+            return;
+        }
+        int sweepIntervalInHours = NumberUtils.toInt(getProperty(PasswordPolicyConstants.REMINDER_SWEEP_INTERVAL),
+                PasswordPolicyConstants.REMINDER_SWEEP_INTERVAL_DEFAULT_VALUE);
+        if (sweepIntervalInHours <= 0) {
+            return;
+        }
+        sweepIntervalMillis = TimeUnit.HOURS.toMillis(sweepIntervalInHours);
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "PasswordExpiryReminderSweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep(false);
+            }
+        }, 0, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+        TenantShardManager.getInstance().addListener(this);
+    }
+
+    /**
+     * Stop sweeping the tenants.
+     */
+    public synchronized void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        TenantShardManager.getInstance().removeListener(this);
+        executor.shutdownNow();
+        executor = null;
+        sweptUntil.clear();
+        ownedTenants.clear();
+    }
+
+    @Override
+    public synchronized void membershipChanged(Set<String> liveNodes) {
+        if (executor == null) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sweep(true);
+            }
+        });
+    }
+
+    /**
+     * Sweep the tenants owned by this node.
+     *
+     * @param gainedOnly Whether to sweep only the tenants gained since the last sweep
+     */
+    private void sweep(boolean gainedOnly) {
+        if (!TenantShardManager.getInstance().isClustered()) {
+            sweptUntil.clear();
+            ownedTenants.clear();
+            return;
+        }
+        List<String> tenantDomains;
+        try {
+            tenantDomains = getTenantDomains();
+        } catch (UserStoreException | RuntimeException e) {
+            log.error("Error occurred while listing the tenants to sweep the password expiry reminders", e);
+            return;
+        }
+
+        List<String> sweptTenantDomains = new ArrayList<>();
+        for (String tenantDomain : tenantDomains) {
+            if (!TenantShardManager.getInstance().isLocal(tenantDomain)) {
+                // The new owner sweeps the tenant from now on
+                if (ownedTenants.remove(tenantDomain)) {
+                    sweptUntil.remove(tenantDomain);
+                }
+                continue;
+            }
+            if (ownedTenants.add(tenantDomain) || !gainedOnly) {
+                sweptTenantDomains.add(tenantDomain);
+            }
+        }
+        sweep(sweptTenantDomains);
+    }
+
+    /**
+     * Sweep the given tenants together, so that the users of all of them are scanned in parallel.
+     *
+     * @param tenantDomains The tenant domains
+     */
+    private void sweep(List<String> tenantDomains) {
+        final Map<String, SweepWindow> windows = new HashMap<>();
+        List<ExpiryScanRequest> requests = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String tenantDomain : tenantDomains) {
+            if (!TenantShardManager.getInstance().tryLock(SWEEP_LOCK_PREFIX + tenantDomain, sweepIntervalMillis)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("The password expiry reminders of the tenant " + tenantDomain
+                            + " are being swept by another node");
+                }
+                continue;
+            }
+            // A gained tenant starts a sweep interval back, so that the reminders which fell due since the last
+            // sweep of the previous owner are sent now rather than missed
+            Long previousWindowEnd = sweptUntil.get(tenantDomain);
+            long windowStart = previousWindowEnd == null ? now - sweepIntervalMillis : previousWindowEnd;
+            // Overlap the next sweep, so that a delayed sweep does not miss any reminder
+            long windowEnd = now + 2 * sweepIntervalMillis;
+            PasswordPolicyConfig config = PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain);
+            windows.put(tenantDomain, new SweepWindow(config, windowStart, windowEnd));
+            requests.add(new ExpiryScanRequest(tenantDomain,
+                    windowEnd + TimeUnit.DAYS.toMillis(config.getPriorReminderTimeInDays())));
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        try {
+            final PasswordExpiryReminderScheduler scheduler = PasswordExpiryReminderScheduler.getInstance();
+            List<ExpiryScanProgress> results = PasswordExpiryScanner.getInstance().scanAllAndWait(requests,
+                    new ExpiryScanListener() {
+                        @Override
+                        public void onUser(ExpiringUser user) {
+                            Long lastPasswordUpdateTime = user.getLastPasswordUpdateTime();
+                            if (lastPasswordUpdateTime == null) {
+                                return;
+                            }
+                            SweepWindow window = windows.get(user.getTenantDomain());
+                            long reminderTime = PasswordExpiryReminderScheduler.getReminderTime(window.config,
+                                    lastPasswordUpdateTime);
+                            if (reminderTime >= window.start && reminderTime < window.end) {
+                                scheduler.schedule(user.getTenantDomain(), user.getTenantAwareUsername(),
+                                        lastPasswordUpdateTime);
+                            }
+                        }
+
+                        @Override
+                        public void onProgress(ExpiryScanProgress progress) {
+                        }
+                    });
+            for (ExpiryScanProgress progress : results) {
+                sweptUntil.put(progress.getTenantDomain(), windows.get(progress.getTenantDomain()).end);
+                if (log.isDebugEnabled()) {
+                    log.debug("Swept the password expiry reminders of the tenant " + progress.getTenantDomain()
+                            + ": " + progress);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error occurred while sweeping the password expiry reminders of the tenants " + windows.keySet(),
+                    e);
+        } finally {
+            for (String tenantDomain : windows.keySet()) {
+                TenantShardManager.getInstance().unlock(SWEEP_LOCK_PREFIX + tenantDomain);
+            }
+        }
+    }
+
+    private static List<String> getTenantDomains() throws UserStoreException {
+        List<String> tenantDomains = new ArrayList<>();
+        tenantDomains.add(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+        RealmService realmService = IdentityTenantUtil.getRealmService();
+        if (realmService != null) {
+            TenantManager tenantManager = realmService.getTenantManager();
+            Tenant[] tenants = tenantManager.getAllTenants();
+            if (tenants != null) {
+                for (Tenant tenant : tenants) {
+                    if (tenant.isActive()) {
+                        tenantDomains.add(tenant.getDomain());
+                    }
+                }
+            }
+        }
+        return tenantDomains;
+    }
+
+    private static String getProperty(String propertyName) {
+        return PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                propertyName);
+    }
+
+    /**
+     * The policy of a tenant and the range of the reminder times scheduled by a sweep of the tenant.
+     */
+    private static class SweepWindow {
+        private final PasswordPolicyConfig config;
+        private final long start;
+        private final long end;
+
+        SweepWindow(PasswordPolicyConfig config, long start, long end) {
+            this.config = config;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
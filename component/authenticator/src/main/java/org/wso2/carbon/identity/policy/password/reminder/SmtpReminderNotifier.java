@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.reminder;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.mail.MailTemplate;
+import org.wso2.carbon.identity.policy.password.mail.SmtpConnection;
+import org.wso2.carbon.identity.policy.password.mail.SmtpConnectionPool;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends the password expiry reminders as emails directly to an SMTP server.
+ * <p>
+ * The email template is rendered once per tenant with the values common to the tenant. The users of a tenant who
+ * would receive the same email are sent one email with all of them as recipients, and the emails are sent over
+ * pooled connections instead of connecting for each email. The rate of the reminders is limited by the scheduler.
+ */
+public class SmtpReminderNotifier implements BatchReminderNotifier, Closeable {
+    private static final Log log = LogFactory.getLog(SmtpReminderNotifier.class);
+
+    public static final String TENANT_DOMAIN_PLACEHOLDER = "tenant-domain";
+    public static final String USERNAME_PLACEHOLDER = "username";
+    public static final String USER_STORE_DOMAIN_PLACEHOLDER = "user-store-domain";
+    public static final String REMAINING_DAYS_PLACEHOLDER =
+            PasswordPolicyConstants.NOTIFICATION_REMAINING_DAYS_PROPERTY;
+
+    /**
+     * The template used when no template file is found. It has no values specific to a user other than the number
+     * of remaining days, so that the users reminded on the same day share one email.
+     */
+    public static final String DEFAULT_TEMPLATE = "Hi,<br/><br/>"
+            + "Your password for the account in the {{tenant-domain}} organization will expire in "
+            + "{{remaining-days}} days. Please login and change your password.<br/><br/>"
+            + "Thank you!";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String CRLF = "\r\n";
+    private static final String[] CLAIM_URIS = new String[]{PasswordPolicyConstants.EMAIL_ADDRESS_CLAIM};
+
+    private final SmtpConnectionPool connectionPool;
+    private final String from;
+    private final MailTemplate subjectTemplate;
+    private final MailTemplate bodyTemplate;
+    private final String contentType;
+    private final int maxRecipients;
+    private final Map<String, MailTemplate[]> tenantTemplates = new ConcurrentHashMap<>();
+
+    /**
+     * Create a notifier sending the reminders through the given connections.
+     *
+     * @param connectionPool The connections to the SMTP server
+     * @param from           The sender address of the emails
+     * @param subject        The subject template of the emails
+     * @param body           The body template of the emails
+     * @param contentType    The content type of the body, e.g. text/html
+     * @param maxRecipients  The maximum number of recipients of an email
+     */
+    public SmtpReminderNotifier(SmtpConnectionPool connectionPool, String from, String subject, String body,
+                                String contentType, int maxRecipients) {
+        this.connectionPool = connectionPool;
+        this.from = from;
+        this.subjectTemplate = MailTemplate.parse(subject);
+        this.bodyTemplate = MailTemplate.parse(body);
+        this.contentType = contentType;
+        this.maxRecipients = Math.max(1, maxRecipients);
+    }
+
+    @Override
+    public void sendReminder(PasswordExpiryReminder reminder, PasswordPolicyConfig config)
+            throws IdentityEventException {
+        Map<PasswordExpiryReminder, Exception> failures =
+                sendReminders(reminder.getTenantDomain(), Collections.singletonList(reminder), config);
+        Exception failure = failures.get(reminder);
+        if (failure instanceof IdentityEventException) {
+            throw (IdentityEventException) failure;
+        } else if (failure != null) {
+            throw new IdentityEventException("Error occurred while sending the password expiry reminder", failure);
+        }
+    }
+
+    @Override
+    public Map<PasswordExpiryReminder, Exception> sendReminders(String tenantDomain,
+                                                                List<PasswordExpiryReminder> reminders,
+                                                                PasswordPolicyConfig config) {
+        Map<PasswordExpiryReminder, Exception> failures = new IdentityHashMap<>();
+        MailTemplate[] templates = getTenantTemplates(tenantDomain);
+        long now = System.currentTimeMillis();
+
+        // Group the users receiving the same email, so that it is sent once to all of them
+        Map<String, Email> emails = new LinkedHashMap<>();
+        for (PasswordExpiryReminder reminder : reminders) {
+            String emailAddress;
+            try {
+                emailAddress = getEmailAddress(reminder);
+            } catch (IdentityEventException e) {
+                failures.put(reminder, e);
+                continue;
+            }
+            if (StringUtils.isBlank(emailAddress)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("No password expiry reminder is sent to " + reminder.getTenantAwareUsername()
+                            + " of the tenant " + tenantDomain + " since the user has no email address");
+                }
+                continue;
+            }
+            if (!SmtpConnection.isValidAddress(emailAddress)) {
+                failures.put(reminder, new IdentityEventException("The email address of "
+                        + reminder.getTenantAwareUsername() + " of the tenant " + tenantDomain + " is not valid"));
+                continue;
+            }
+            Map<String, String> values = getValues(reminder, config, now);
+            String subject = templates[0].format(values);
+            String body = templates[1].format(values);
+            String key = subject + '\0' + body;
+            Email email = emails.get(key);
+            if (email == null) {
+                email = new Email(subject, body);
+                emails.put(key, email);
+            }
+            email.reminders.add(reminder);
+            email.recipients.add(emailAddress);
+        }
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z", Locale.US);
+        IOException connectionFailure = null;
+        for (Email email : emails.values()) {
+            for (int start = 0; start < email.recipients.size(); start += maxRecipients) {
+                int end = Math.min(email.recipients.size(), start + maxRecipients);
+                List<PasswordExpiryReminder> batch = email.reminders.subList(start, end);
+                List<String> recipients = email.recipients.subList(start, end);
+                if (connectionFailure == null) {
+                    try {
+                        send(email, recipients, batch, dateFormat, failures);
+                        continue;
+                    } catch (IOException e) {
+                        // Do not wait for the SMTP server again for each of the remaining emails
+                        connectionFailure = e;
+                    }
+                }
+                for (PasswordExpiryReminder reminder : batch) {
+                    failures.put(reminder, connectionFailure);
+                }
+            }
+        }
+        return failures;
+    }
+
+    private void send(Email email, List<String> recipients, List<PasswordExpiryReminder> reminders,
+                      SimpleDateFormat dateFormat, Map<PasswordExpiryReminder, Exception> failures)
+            throws IOException {
+        String message = createMessage(email, recipients.size() == 1 ? recipients.get(0) : null, dateFormat);
+        SmtpConnection connection = connectionPool.borrow();
+        List<String> rejectedRecipients;
+        boolean broken = true;
+        try {
+            rejectedRecipients = connection.send(from, recipients, message);
+            broken = false;
+        } catch (IOException e) {
+            // Fail only this email, the next one is sent over another connection
+            for (PasswordExpiryReminder reminder : reminders) {
+                failures.put(reminder, e);
+            }
+            return;
+        } finally {
+            connectionPool.release(connection, broken);
+        }
+        for (int i = 0; i < recipients.size(); i++) {
+            if (rejectedRecipients.contains(recipients.get(i))) {
+                failures.put(reminders.get(i), new IdentityEventException("The SMTP server rejected the recipient "
+                        + recipients.get(i)));
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Sent a password expiry reminder to " + (recipients.size() - rejectedRecipients.size())
+                    + " recipients");
+        }
+    }
+
+    /**
+     * Get the email address of the user of a reminder.
+     *
+     * @param reminder The reminder
+     * @return The email address, or null if the user has none
+     * @throws IdentityEventException if the email address could not be read
+     */
+    protected String getEmailAddress(PasswordExpiryReminder reminder) throws IdentityEventException {
+        try {
+            UserStoreManager userStoreManager =
+                    UserStoreManagerCache.getInstance().getUserStoreManager(reminder.getTenantDomain());
+            Map<String, String> claimValueMap =
+                    userStoreManager.getUserClaimValues(reminder.getTenantAwareUsername(), CLAIM_URIS, null);
+            return claimValueMap == null ? null : claimValueMap.get(PasswordPolicyConstants.EMAIL_ADDRESS_CLAIM);
+        } catch (UserStoreException e) {
+            throw new IdentityEventException("Error occurred while reading the email address of "
+                    + reminder.getTenantAwareUsername(), e);
+        }
+    }
+
+    private MailTemplate[] getTenantTemplates(String tenantDomain) {
+        MailTemplate[] templates = tenantTemplates.get(tenantDomain);
+        if (templates == null) {
+            Map<String, String> values = Collections.singletonMap(TENANT_DOMAIN_PLACEHOLDER, tenantDomain);
+            templates = new MailTemplate[]{subjectTemplate.render(values), bodyTemplate.render(values)};
+            tenantTemplates.put(tenantDomain, templates);
+        }
+        return templates;
+    }
+
+    private Map<String, String> getValues(PasswordExpiryReminder reminder, PasswordPolicyConfig config, long now) {
+        String domain = UserCoreUtil.extractDomainFromName(reminder.getTenantAwareUsername());
+        if (StringUtils.isBlank(domain)) {
+            domain = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+        }
+        Map<String, String> values = new HashMap<>();
+        values.put(USERNAME_PLACEHOLDER, UserCoreUtil.removeDomainFromName(reminder.getTenantAwareUsername()));
+        values.put(USER_STORE_DOMAIN_PLACEHOLDER, domain);
+        values.put(REMAINING_DAYS_PLACEHOLDER, Long.toString(reminder.getRemainingDays(config, now)));
+        return values;
+    }
+
+    private String createMessage(Email email, String to, SimpleDateFormat dateFormat) {
+        StringBuilder message = new StringBuilder();
+        message.append("Date: ").append(dateFormat.format(new Date())).append(CRLF);
+        message.append("From: ").append(from).append(CRLF);
+        // The recipients of a shared email are not disclosed to each other
+        message.append("To: ").append(to != null ? to : "undisclosed-recipients:;").append(CRLF);
+        message.append("Subject: =?UTF-8?B?").append(Base64.encodeBase64String(email.subject.getBytes(UTF_8)))
+                .append("?=").append(CRLF);
+        message.append("MIME-Version: 1.0").append(CRLF);
+        message.append("Content-Type: ").append(contentType).append("; charset=UTF-8").append(CRLF);
+        message.append("Content-Transfer-Encoding: base64").append(CRLF);
+        message.append(CRLF);
+        // Base64 lines never start with a dot, so the message needs no dot stuffing
+        message.append(new String(Base64.encodeBase64Chunked(email.body.getBytes(UTF_8)), UTF_8));
+        return message.toString();
+    }
+
+    /**
+     * Forget the rendered templates of a tenant, e.g. when the tenant is unloaded.
+     *
+     * @param tenantDomain The tenant domain
+     */
+    public void invalidate(String tenantDomain) {
+        tenantTemplates.remove(tenantDomain);
+    }
+
+    @Override
+    public void close() {
+        connectionPool.close();
+    }
+
+    private static class Email {
+        private final String subject;
+        private final String body;
+        private final List<PasswordExpiryReminder> reminders = new ArrayList<>();
+        private final List<String> recipients = new ArrayList<>();
+
+        Email(String subject, String body) {
+            this.subject = subject;
+            this.body = body;
+        }
+    }
+}
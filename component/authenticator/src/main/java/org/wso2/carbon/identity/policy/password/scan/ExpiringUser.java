@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.scan;
+
+/**
+ * A user whose password is expired or about to expire, found by an expiry scan.
+ */
+public class ExpiringUser {
+    private final String tenantDomain;
+    private final String tenantAwareUsername;
+    private final Long lastPasswordUpdateTime;
+    private final Long expiryTime;
+
+    public ExpiringUser(String tenantDomain, String tenantAwareUsername, Long lastPasswordUpdateTime,
+                        Long expiryTime) {
+        this.tenantDomain = tenantDomain;
+        this.tenantAwareUsername = tenantAwareUsername;
+        this.lastPasswordUpdateTime = lastPasswordUpdateTime;
+        this.expiryTime = expiryTime;
+    }
+
+    public String getTenantDomain() {
+        return tenantDomain;
+    }
+
+    public String getTenantAwareUsername() {
+        return tenantAwareUsername;
+    }
+
+    /**
+     * Get the last password update time of the user.
+     *
+     * @return The last password update time or null if it is not set, in which case the password is considered
+     * expired
+     */
+    public Long getLastPasswordUpdateTime() {
+        return lastPasswordUpdateTime;
+    }
+
+    /**
+     * Get the time at which the password of the user expires.
+     *
+     * @return The expiry time or null if the last password update time is not set
+     */
+    public Long getExpiryTime() {
+        return expiryTime;
+    }
+}
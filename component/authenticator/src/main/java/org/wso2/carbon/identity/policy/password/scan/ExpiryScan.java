@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.scan;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.deadline.PasswordExpiryDeadline;
+import org.wso2.carbon.identity.policy.password.metrics.CounterMetric;
+import org.wso2.carbon.identity.policy.password.metrics.LatencyMetric;
+import org.wso2.carbon.identity.policy.password.metrics.PasswordPolicyMetrics;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeWriter;
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single expiry scan over the user stores of a tenant, run as a fork/join task.
+ * <p>
+ * The scan forks a task per user store, which lists the users page by page and forks a task per page to read the
+ * last password update times. The idle workers steal the forked tasks, so that the user stores of a large tenant, and
+ * the pages of a large user store, are read in parallel with the other scans. A user store task waits for its oldest
+ * page once the configured number of pages is being read, which bounds both the concurrent reads from the user store
+ * and the pages held in memory.
+ */
+class ExpiryScan extends RecursiveTask<ExpiryScanProgress> {
+    private static final Log log = LogFactory.getLog(ExpiryScan.class);
+
+    private static final long serialVersionUID = 4629413880193370586L;
+
+    private static final String[] CLAIM_URIS = new String[]{
+            PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM};
+
+    private final ExpiryScanRequest request;
+    private final transient ExpiryScanListener listener;
+    private final transient ForkJoinPool pool;
+    private final int pageSize;
+    private final String alphabet;
+    private final int maxPagesPerUserStore;
+
+    private final AtomicLong listedCount = new AtomicLong();
+    private final AtomicLong scannedCount = new AtomicLong();
+    private final AtomicLong matchedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private long startTime;
+
+    private transient UserStoreManager userStoreManager;
+    private int passwordExpiryInDays;
+
+    ExpiryScan(ExpiryScanRequest request, ExpiryScanListener listener, ForkJoinPool pool, int pageSize,
+               String alphabet, int maxPagesPerUserStore) {
+        this.request = request;
+        this.listener = listener;
+        this.pool = pool;
+        this.pageSize = pageSize;
+        this.alphabet = alphabet;
+        this.maxPagesPerUserStore = maxPagesPerUserStore;
+    }
+
+    @Override
+    protected ExpiryScanProgress compute() {
+        String tenantDomain = request.getTenantDomain();
+        startTime = System.currentTimeMillis();
+        // The policy of the tenant is resolved once and shared by the tasks of the scan
+        passwordExpiryInDays = PasswordPolicyConfigManager.getInstance().getConfig(tenantDomain)
+                .getPasswordExpiryInDays();
+        List<UserStoreScan> userStoreScans = new ArrayList<>();
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain, true);
+            userStoreManager = UserStoreManagerCache.getInstance().getUserStoreManager(tenantDomain);
+            for (String domain : getDomains()) {
+                userStoreScans.add(new UserStoreScan(domain));
+            }
+        } catch (org.wso2.carbon.user.api.UserStoreException e) {
+            completeExceptionally(e);
+            return null;
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+
+        invokeAll(userStoreScans);
+        if (isAborted()) {
+            cancel(false);      // No effect if the scan has already failed or been cancelled
+            return null;
+        }
+        ExpiryScanProgress progress = getProgress(true);
+        listener.onProgress(progress);
+        return progress;
+    }
+
+    String getTenantDomain() {
+        return request.getTenantDomain();
+    }
+
+    private List<String> getDomains() {
+        List<String> domains = new ArrayList<>();
+        for (String domain : UserListPager.getDomains(userStoreManager)) {
+            if (request.getUserStoreDomain() == null || request.getUserStoreDomain().equalsIgnoreCase(domain)) {
+                domains.add(domain);
+            }
+        }
+        return domains;
+    }
+
+    /**
+     * Check whether the scan is cancelled, has failed or the scanner is shut down.
+     *
+     * @return True if the scan should not go on
+     */
+    private boolean isAborted() {
+        return isDone() || pool.isShutdown();
+    }
+
+    private void scan(List<String> page) {
+        String tenantDomain = request.getTenantDomain();
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain, true);
+            for (String tenantAwareUsername : page) {
+                if (isAborted()) {
+                    return;
+                }
+                Long lastPasswordUpdateTime;
+                try {
+                    lastPasswordUpdateTime = getLastPasswordUpdateTime(tenantAwareUsername);
+                } catch (org.wso2.carbon.user.core.UserStoreException | RuntimeException e) {
+                    failedCount.incrementAndGet();
+                    PasswordPolicyMetrics.getInstance().increment(CounterMetric.FAILURE, tenantDomain);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Error occurred while reading the last password update time of "
+                                + tenantAwareUsername + " of the tenant " + tenantDomain, e);
+                    }
+                    continue;
+                }
+                scannedCount.incrementAndGet();
+
+                Long expiryTime = lastPasswordUpdateTime == null ? null
+                        : PasswordExpiryDeadline.getDeadline(lastPasswordUpdateTime, passwordExpiryInDays);
+                if (expiryTime == null || expiryTime <= request.getExpiringBefore()) {
+                    matchedCount.incrementAndGet();
+                    try {
+                        listener.onUser(new ExpiringUser(tenantDomain, tenantAwareUsername, lastPasswordUpdateTime,
+                                expiryTime));
+                    } catch (RuntimeException e) {
+                        log.error("Error occurred in the expiry scan listener of the tenant " + tenantDomain, e);
+                    }
+                }
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        if (!isAborted()) {
+            listener.onProgress(getProgress(false));
+        }
+    }
+
+    private Long getLastPasswordUpdateTime(String tenantAwareUsername)
+            throws org.wso2.carbon.user.core.UserStoreException {
+        Long pendingPasswordUpdateTime = PasswordUpdateTimeWriter.getInstance()
+                .getPendingTimestamp(request.getTenantDomain(), tenantAwareUsername);
+        if (pendingPasswordUpdateTime != null) {
+            return pendingPasswordUpdateTime;
+        }
+
+        long readStartTime = System.nanoTime();
+        Map<String, String> claimValueMap = userStoreManager.getUserClaimValues(tenantAwareUsername, CLAIM_URIS,
+                null);
+        PasswordPolicyMetrics.getInstance().recordLatency(LatencyMetric.CLAIM_READ, request.getTenantDomain(),
+                readStartTime);
+        String lastPasswordUpdateTime = claimValueMap == null ? null
+                : claimValueMap.get(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM);
+        return lastPasswordUpdateTime == null ? null : Long.parseLong(lastPasswordUpdateTime);
+    }
+
+    private ExpiryScanProgress getProgress(boolean completed) {
+        return new ExpiryScanProgress(request.getTenantDomain(), listedCount.get(), scannedCount.get(),
+                matchedCount.get(), failedCount.get(), System.currentTimeMillis() - startTime, completed);
+    }
+
+    /**
+     * Lists the users of a user store and forks the reading of each page.
+     */
+    private class UserStoreScan extends RecursiveAction {
+        private static final long serialVersionUID = -5317462278329441781L;
+
+        private final String domain;
+
+        UserStoreScan(String domain) {
+            this.domain = domain;
+        }
+
+        @Override
+        protected void compute() {
+            Deque<PageScan> pagesInFlight = new ArrayDeque<>();
+            UserListPager pager = new UserListPager(userStoreManager, domain, pageSize, alphabet);
+            try {
+                List<String> page;
+                while (!isAborted() && (page = nextPage(pager)) != null) {
+                    listedCount.addAndGet(page.size());
+                    if (pagesInFlight.size() >= maxPagesPerUserStore) {
+                        // Runs the other tasks of the pool until the oldest page is read
+                        pagesInFlight.poll().join();
+                    }
+                    PageScan pageScan = new PageScan(page);
+                    pageScan.fork();
+                    pagesInFlight.add(pageScan);
+                }
+            } catch (org.wso2.carbon.user.core.UserStoreException e) {
+                ExpiryScan.this.completeExceptionally(e);
+            } finally {
+                for (PageScan pageScan : pagesInFlight) {
+                    pageScan.join();
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Listed the users of the domain " + domain + " of the tenant " + request.getTenantDomain()
+                        + " with " + pager.getListCount() + " listings");
+            }
+        }
+
+        private List<String> nextPage(UserListPager pager) throws org.wso2.carbon.user.core.UserStoreException {
+            try {
+                PrivilegedCarbonContext.startTenantFlow();
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(request.getTenantDomain(),
+                        true);
+                return pager.nextPage();
+            } finally {
+                PrivilegedCarbonContext.endTenantFlow();
+            }
+        }
+    }
+
+    /**
+     * Reads the last password update times of a page of users.
+     */
+    private class PageScan extends RecursiveAction {
+        private static final long serialVersionUID = 2204716893047154723L;
+
+        private final transient List<String> page;
+
+        PageScan(List<String> page) {
+            this.page = page;
+        }
+
+        @Override
+        protected void compute() {
+            scan(page);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.scan;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The expiry scans of several tenants, run in parallel as fork/join tasks.
+ * <p>
+ * The scans are forked together, so that the workers left idle by the small tenants steal the user store and page
+ * tasks of the large ones. A scan which fails does not fail the others.
+ */
+class ExpiryScanBatch extends RecursiveTask<List<ExpiryScanProgress>> {
+    private static final Log log = LogFactory.getLog(ExpiryScanBatch.class);
+
+    private static final long serialVersionUID = -2847410127459713369L;
+
+    private final List<ExpiryScan> scans;
+    private final transient ForkJoinPool pool;
+
+    ExpiryScanBatch(List<ExpiryScan> scans, ForkJoinPool pool) {
+        this.scans = scans;
+        this.pool = pool;
+    }
+
+    @Override
+    protected List<ExpiryScanProgress> compute() {
+        for (ExpiryScan scan : scans) {
+            scan.fork();
+        }
+        List<ExpiryScanProgress> results = new ArrayList<>();
+        for (ExpiryScan scan : scans) {
+            scan.quietlyJoin();
+            if (scan.isCompletedNormally() && scan.getRawResult() != null) {
+                results.add(scan.getRawResult());
+            } else if (scan.getException() != null && !scan.isCancelled()) {
+                log.error("Error occurred in the expiry scan of the tenant " + scan.getTenantDomain(),
+                        scan.getException());
+            }
+        }
+        if (pool.isShutdown()) {
+            cancel(false);
+            return null;
+        }
+        return results;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        for (ExpiryScan scan : scans) {
+            scan.cancel(mayInterruptIfRunning);
+        }
+        return super.cancel(mayInterruptIfRunning);
+    }
+}
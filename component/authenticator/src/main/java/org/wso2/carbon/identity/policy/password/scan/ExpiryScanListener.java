@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.scan;
+
+/**
+ * Receives the results of an expiry scan as they are found.
+ * <p>
+ * The methods are called concurrently from the worker threads of the scan, so the implementations need to be
+ * thread safe.
+ */
+public interface ExpiryScanListener {
+
+    /**
+     * Called for each user whose password is expired or expires before the requested time.
+     *
+     * @param user The user
+     */
+    void onUser(ExpiringUser user);
+
+    /**
+     * Called whenever a page of users is scanned, and once more when the scan is completed.
+     *
+     * @param progress The progress of the scan
+     */
+    void onProgress(ExpiryScanProgress progress);
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.scan;
+
+/**
+ * A snapshot of the progress of an expiry scan.
+ */
+public class ExpiryScanProgress {
+    private final String tenantDomain;
+    private final long listedCount;
+    private final long scannedCount;
+    private final long matchedCount;
+    private final long failedCount;
+    private final long elapsedMillis;
+    private final boolean completed;
+
+    public ExpiryScanProgress(String tenantDomain, long listedCount, long scannedCount, long matchedCount,
+                              long failedCount, long elapsedMillis, boolean completed) {
+        this.tenantDomain = tenantDomain;
+        this.listedCount = listedCount;
+        this.scannedCount = scannedCount;
+        this.matchedCount = matchedCount;
+        this.failedCount = failedCount;
+        this.elapsedMillis = elapsedMillis;
+        this.completed = completed;
+    }
+
+    public String getTenantDomain() {
+        return tenantDomain;
+    }
+
+    /**
+     * Get the number of users listed from the user stores so far.
+     *
+     * @return The number of listed users
+     */
+    public long getListedCount() {
+        return listedCount;
+    }
+
+    /**
+     * Get the number of users whose last password update time was read.
+     *
+     * @return The number of scanned users
+     */
+    public long getScannedCount() {
+        return scannedCount;
+    }
+
+    /**
+     * Get the number of users reported to the listener.
+     *
+     * @return The number of expiring users
+     */
+    public long getMatchedCount() {
+        return matchedCount;
+    }
+
+    /**
+     * Get the number of users whose last password update time could not be read.
+     *
+     * @return The number of failed users
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public String toString() {
+        return "tenant: " + tenantDomain + ", listed: " + listedCount + ", scanned: " + scannedCount
+                + ", matched: " + matchedCount + ", failed: " + failedCount + ", elapsed: " + elapsedMillis + " ms";
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.scan;
+
+/**
+ * The parameters of a scan for the users whose password is expired or about to expire.
+ */
+public class ExpiryScanRequest {
+    private final String tenantDomain;
+    private final String userStoreDomain;
+    private final long expiringBefore;
+
+    /**
+     * Create a scan over all the user stores of a tenant.
+     *
+     * @param tenantDomain   The tenant domain
+     * @param expiringBefore The users whose password expires at or before this time are reported
+     */
+    public ExpiryScanRequest(String tenantDomain, long expiringBefore) {
+        this(tenantDomain, null, expiringBefore);
+    }
+
+    /**
+     * Create a scan over a user store of a tenant.
+     *
+     * @param tenantDomain    The tenant domain
+     * @param userStoreDomain The domain of the user store or null to scan all the user stores
+     * @param expiringBefore  The users whose password expires at or before this time are reported
+     */
+    public ExpiryScanRequest(String tenantDomain, String userStoreDomain, long expiringBefore) {
+        this.tenantDomain = tenantDomain;
+        this.userStoreDomain = userStoreDomain;
+        this.expiringBefore = expiringBefore;
+    }
+
+    public String getTenantDomain() {
+        return tenantDomain;
+    }
+
+    public String getUserStoreDomain() {
+        return userStoreDomain;
+    }
+
+    public long getExpiringBefore() {
+        return expiringBefore;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.scan;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the users whose password is expired or about to expire.
+ * <p>
+ * The users of the user stores of a tenant are listed page by page, and their last password update times are read
+ * by a fork/join pool of worker threads shared by all the scans. The scan of a tenant is split into a task per user
+ * store and a task per page, which the idle workers steal, so that a large tenant does not hold up the scans of the
+ * other tenants. The number of pages of a user store read at a time is bounded, to protect the LDAP and JDBC servers
+ * behind the user stores. The users are reported to a listener as they are found, instead of being collected into a
+ * list, so that large user stores can be scanned without loading all the users into memory.
+ * <p>
+ * The expiry time of a password is the last password update time plus the password expiry period of the tenant.
+ * The users without a last password update time are reported as well, since they are prompted to change the
+ * password on the next login.
+ */
+public class PasswordExpiryScanner {
+    private static final PasswordExpiryScanner instance = new PasswordExpiryScanner();
+
+    private ForkJoinPool pool;
+    private int pageSize;
+    private String alphabet;
+    private int maxPagesPerUserStore;
+
+    private PasswordExpiryScanner() {     // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the PasswordExpiryScanner
+     *
+     * @return A singleton instance of the PasswordExpiryScanner
+     */
+    public static PasswordExpiryScanner getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start a scan in the background.
+     *
+     * @param request  The parameters of the scan
+     * @param listener The listener which receives the users and the progress of the scan
+     * @return The result of the scan, which can also be used to cancel it
+     */
+    public Future<ExpiryScanProgress> scan(ExpiryScanRequest request, ExpiryScanListener listener) {
+        ForkJoinPool scanPool = getPool();
+        ExpiryScan scan = createScan(request, listener, scanPool);
+        scanPool.execute(scan);
+        return scan;
+    }
+
+    /**
+     * Run a scan and wait for it to complete.
+     *
+     * @param request  The parameters of the scan
+     * @param listener The listener which receives the users and the progress of the scan
+     * @return The final progress of the scan
+     * @throws Exception if the user stores could not be listed or the scan is interrupted
+     */
+    public ExpiryScanProgress scanAndWait(ExpiryScanRequest request, ExpiryScanListener listener) throws Exception {
+        ForkJoinPool scanPool = getPool();
+        return await(createScan(request, listener, scanPool), scanPool);
+    }
+
+    /**
+     * Run the scans of several tenants in parallel and wait for them to complete.
+     * A scan which fails is logged and left out of the results, without failing the other scans.
+     *
+     * @param requests The parameters of the scans
+     * @param listener The listener which receives the users and the progress of all the scans
+     * @return The final progress of the scans which completed, in the order of the requests
+     * @throws Exception if the scans are interrupted
+     */
+    public List<ExpiryScanProgress> scanAllAndWait(List<ExpiryScanRequest> requests, ExpiryScanListener listener)
+            throws Exception {
+        ForkJoinPool scanPool = getPool();
+        List<ExpiryScan> scans = new ArrayList<>();
+        for (ExpiryScanRequest request : requests) {
+            scans.add(createScan(request, listener, scanPool));
+        }
+        return await(new ExpiryScanBatch(scans, scanPool), scanPool);
+    }
+
+    /**
+     * Stop the worker threads. The scans in progress are aborted.
+     */
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            int threadCount = Math.max(1, NumberUtils.toInt(getProperty(PasswordPolicyConstants.SCAN_THREAD_COUNT),
+                    PasswordPolicyConstants.SCAN_THREAD_COUNT_DEFAULT_VALUE));
+            pageSize = Math.max(1, NumberUtils.toInt(getProperty(PasswordPolicyConstants.SCAN_PAGE_SIZE),
+                    PasswordPolicyConstants.SCAN_PAGE_SIZE_DEFAULT_VALUE));
+            alphabet = getProperty(PasswordPolicyConstants.SCAN_PREFIX_ALPHABET);
+            if (StringUtils.isEmpty(alphabet)) {
+                alphabet = PasswordPolicyConstants.SCAN_PREFIX_ALPHABET_DEFAULT_VALUE;
+            }
+            maxPagesPerUserStore = Math.max(1, NumberUtils.toInt(
+                    getProperty(PasswordPolicyConstants.SCAN_USER_STORE_CONCURRENCY),
+                    PasswordPolicyConstants.SCAN_USER_STORE_CONCURRENCY_DEFAULT_VALUE));
+            pool = new ForkJoinPool(threadCount, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool forkJoinPool) {
+                    ForkJoinWorkerThread thread = new ForkJoinWorkerThread(forkJoinPool) {
+                    };
+                    thread.setName("PasswordExpiryScanWorker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, null, false);
+        }
+        return pool;
+    }
+
+    private synchronized ExpiryScan createScan(ExpiryScanRequest request, ExpiryScanListener listener,
+                                               ForkJoinPool scanPool) {
+        return new ExpiryScan(request, listener, scanPool, pageSize, alphabet, maxPagesPerUserStore);
+    }
+
+    /**
+     * Run a task in the pool and wait for its result.
+     *
+     * @param task     The task
+     * @param scanPool The pool in which the task is run
+     * @param <T>      The type of the result of the task
+     * @return The result of the task
+     * @throws Exception the exception thrown by the task, or an InterruptedException if the waiting thread is
+     *                   interrupted or the scanner is shut down
+     */
+    private static <T> T await(ForkJoinTask<T> task, ForkJoinPool scanPool) throws Exception {
+        try {
+            scanPool.execute(task);
+            return task.get();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            throw e;
+        } catch (CancellationException | RejectedExecutionException e) {
+            throw new InterruptedException("The expiry scanner is shut down");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static String getProperty(String propertyName) {
+        return PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                propertyName);
+    }
+}
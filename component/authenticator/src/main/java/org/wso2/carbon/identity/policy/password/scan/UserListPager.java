@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.scan;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Lists the users of a user store page by page.
+ * <p>
+ * The user store API only lists the users matching a filter up to a limit, which is also capped by the
+ * MaxUserNameListLength of the user store. The username space is therefore partitioned by prefix. A prefix whose
+ * listing reaches the limit is split into one prefix per character of the alphabet, until each listing fits into a
+ * page. Only the pending prefixes are kept in memory, so that the whole user store is never loaded at once.
+ * <p>
+ * The users whose name continues with a character outside the alphabet can only be found in a listing of their
+ * prefix. Those found there are returned, but the others are missed. The alphabet should therefore cover the
+ * characters used in the usernames of the user store.
+ * <p>
+ * This class is not thread safe.
+ */
+public class UserListPager {
+    private static final Log log = LogFactory.getLog(UserListPager.class);
+
+    private static final int MAX_PREFIX_LENGTH = 32;
+
+    private final UserStoreManager userStoreManager;
+    private final String domain;
+    private final boolean primary;
+    private final int limit;
+    private final String alphabet;
+    private final Deque<String> prefixes = new ArrayDeque<>();
+    private int listCount;
+
+    /**
+     * Create a pager over the users of a user store.
+     *
+     * @param userStoreManager The primary user store manager of the tenant
+     * @param domain           The domain of the user store to be listed
+     * @param pageSize         The maximum number of users in a page
+     * @param alphabet         The characters by which a prefix is split when it has too many users
+     */
+    public UserListPager(UserStoreManager userStoreManager, String domain, int pageSize, String alphabet) {
+        this.userStoreManager = userStoreManager;
+        this.domain = domain;
+        this.primary = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equalsIgnoreCase(domain);
+        this.limit = getLimit(userStoreManager, domain, pageSize);
+        this.alphabet = alphabet;
+        prefixes.push("");
+    }
+
+    /**
+     * Get the next page of users.
+     *
+     * @return The domain qualified usernames or null if all the users are listed
+     * @throws UserStoreException if the users could not be listed
+     */
+    public List<String> nextPage() throws UserStoreException {
+        while (!prefixes.isEmpty()) {
+            String prefix = prefixes.pop();
+            List<String> usernames = listUsers(prefix + "*", limit);
+            if (usernames.size() < limit) {
+                if (!usernames.isEmpty()) {
+                    return usernames;
+                }
+                continue;
+            }
+            if (prefix.length() >= MAX_PREFIX_LENGTH) {
+                log.warn("Listing only " + usernames.size() + " users starting with " + prefix + " in the domain "
+                        + domain + ". Increase the MaxUserNameListLength of the user store to list all of them.");
+                return usernames;
+            }
+
+            // Too many users. Split the prefix, pushing in reverse to list the users in the order of the alphabet.
+            for (int i = alphabet.length() - 1; i >= 0; i--) {
+                prefixes.push(prefix + alphabet.charAt(i));
+            }
+            List<String> page = new ArrayList<>();
+            if (!prefix.isEmpty()) {
+                // The user whose name is the prefix itself is not covered by the longer prefixes
+                page.addAll(listUsers(prefix, 1));
+            }
+            for (String username : usernames) {
+                String name = UserCoreUtil.removeDomainFromName(username);
+                if (name.length() > prefix.length() && !isInAlphabet(name.charAt(prefix.length()))) {
+                    page.add(username);
+                }
+            }
+            if (!page.isEmpty()) {
+                return page;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the domains of the user stores of a tenant.
+     *
+     * @param userStoreManager The primary user store manager of the tenant
+     * @return The domains of the primary and the secondary user stores
+     */
+    public static List<String> getDomains(UserStoreManager userStoreManager) {
+        List<String> domains = new ArrayList<>();
+        UserStoreManager domainUserStoreManager = userStoreManager;
+        while (domainUserStoreManager != null) {
+            String domain = null;
+            if (domainUserStoreManager.getRealmConfiguration() != null) {
+                domain = domainUserStoreManager.getRealmConfiguration()
+                        .getUserStoreProperty(UserCoreConstants.RealmConfig.PROPERTY_DOMAIN_NAME);
+            }
+            if (StringUtils.isBlank(domain)) {
+                domain = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+            }
+            domains.add(domain);
+            domainUserStoreManager = domainUserStoreManager.getSecondaryUserStoreManager();
+        }
+        return domains;
+    }
+
+    /**
+     * Get the number of listings made against the user store.
+     *
+     * @return The number of listings
+     */
+    public int getListCount() {
+        return listCount;
+    }
+
+    private List<String> listUsers(String filter, int maxItemLimit) throws UserStoreException {
+        listCount++;
+        List<String> usernames = new ArrayList<>();
+        if (primary) {
+            // The primary user store manager also lists the matching users of the secondary user stores,
+            // which are domain qualified
+            String[] users = userStoreManager.listUsers(filter, maxItemLimit);
+            if (users != null) {
+                for (String user : users) {
+                    if (user.indexOf(UserCoreConstants.DOMAIN_SEPARATOR.charAt(0)) < 0) {
+                        usernames.add(user);
+                    }
+                }
+            }
+        } else {
+            String[] users = userStoreManager.listUsers(domain + UserCoreConstants.DOMAIN_SEPARATOR + filter,
+                    maxItemLimit);
+            if (users != null) {
+                for (String user : users) {
+                    usernames.add(UserCoreUtil.addDomainToName(UserCoreUtil.removeDomainFromName(user), domain));
+                }
+            }
+        }
+        return usernames;
+    }
+
+    private boolean isInAlphabet(char character) {
+        return alphabet.indexOf(character) >= 0 || alphabet.indexOf(Character.toLowerCase(character)) >= 0;
+    }
+
+    private static int getLimit(UserStoreManager userStoreManager, String domain, int pageSize) {
+        UserStoreManager domainUserStoreManager = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME
+                .equalsIgnoreCase(domain) ? userStoreManager : userStoreManager.getSecondaryUserStoreManager(domain);
+        if (domainUserStoreManager == null || domainUserStoreManager.getRealmConfiguration() == null) {
+            return pageSize;
+        }
+        String maxUserListProperty = domainUserStoreManager.getRealmConfiguration()
+                .getUserStoreProperty(UserCoreConstants.RealmConfig.PROPERTY_MAX_USER_LIST);
+        try {
+            int maxUserList = Integer.parseInt(maxUserListProperty);
+            return maxUserList > 0 ? Math.min(pageSize, maxUserList) : pageSize;
+        } catch (NumberFormatException e) {
+            return pageSize;
+        }
+    }
+}
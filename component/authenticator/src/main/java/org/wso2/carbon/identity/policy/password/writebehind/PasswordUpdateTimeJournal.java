@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.writebehind;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Append only file which keeps the queued last password update timestamps across restarts.
+ * <p>
+ * Each update is written as a line of the timestamp, the tenant domain and the tenant aware username separated by
+ * tabs. The removal of the updates of a deleted user is written as a line with {@code -} in place of the
+ * timestamp. The file is flushed to the operating system on each append. It is truncated once all the queued updates
+ * are written to the user stores, or rewritten with the remaining updates when it grows too large.
+ * <p>
+ * This class is not thread safe. The callers are expected to synchronize the access.
+ */
+public class PasswordUpdateTimeJournal {
+    private static final Log log = LogFactory.getLog(PasswordUpdateTimeJournal.class);
+
+    private static final char SEPARATOR = '\t';
+    private static final String REMOVAL_MARKER = "-";
+
+    private final File file;
+    private Writer writer;
+    private int lineCount;
+
+    public PasswordUpdateTimeJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the updates which were not written to the user stores before the last shutdown.
+     *
+     * @return The recovered updates, in the order they were queued
+     * @throws IOException if the journal could not be read
+     */
+    public List<PendingPasswordUpdate> recover() throws IOException {
+        List<PendingPasswordUpdate> updates = new ArrayList<>();
+        if (!file.exists()) {
+            return updates;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(String.valueOf(SEPARATOR), 3);
+                if (fields.length != 3) {
+                    // A partially written line from a crash
+                    log.warn("Ignoring malformed entry in the password update time journal " + file);
+                    continue;
+                }
+                if (REMOVAL_MARKER.equals(fields[0])) {
+                    removeUpdates(updates, PasswordUpdateTimeCache.getUserKey(fields[1], fields[2]));
+                    continue;
+                }
+                try {
+                    updates.add(new PendingPasswordUpdate(fields[1], fields[2], Long.parseLong(fields[0])));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring malformed entry in the password update time journal " + file);
+                }
+            }
+        }
+        lineCount = updates.size();
+        return updates;
+    }
+
+    private static void removeUpdates(List<PendingPasswordUpdate> updates, String userKey) {
+        Iterator<PendingPasswordUpdate> iterator = updates.iterator();
+        while (iterator.hasNext()) {
+            if (userKey.equals(iterator.next().getUserKey())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Append an update to the journal.
+     *
+     * @param update The update
+     * @throws IOException if the update could not be written
+     */
+    public void append(PendingPasswordUpdate update) throws IOException {
+        appendLine(Long.toString(update.getTimestamp()), update.getTenantDomain(), update.getTenantAwareUsername());
+    }
+
+    /**
+     * Append the removal of the updates of a user, so that they are not recovered.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user
+     * @throws IOException if the removal could not be written
+     */
+    public void appendRemoval(String tenantDomain, String tenantAwareUsername) throws IOException {
+        appendLine(REMOVAL_MARKER, tenantDomain, tenantAwareUsername);
+    }
+
+    private void appendLine(String timestamp, String tenantDomain, String tenantAwareUsername) throws IOException {
+        Writer journalWriter = getWriter();
+        journalWriter.write(timestamp);
+        journalWriter.write(SEPARATOR);
+        journalWriter.write(tenantDomain);
+        journalWriter.write(SEPARATOR);
+        journalWriter.write(tenantAwareUsername);
+        journalWriter.write('\n');
+        journalWriter.flush();
+        lineCount++;
+    }
+
+    /**
+     * Replace the content of the journal with the given updates.
+     *
+     * @param updates The updates which are still pending
+     * @throws IOException if the journal could not be rewritten
+     */
+    public void rewrite(Collection<PendingPasswordUpdate> updates) throws IOException {
+        close();
+        if (updates.isEmpty()) {
+            writer = openWriter(file, false);
+            lineCount = 0;
+            return;
+        }
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        Writer temporaryWriter = openWriter(temporaryFile, false);
+        try {
+            writer = temporaryWriter;
+            lineCount = 0;
+            for (PendingPasswordUpdate update : updates) {
+                append(update);
+            }
+        } finally {
+            writer = null;
+            temporaryWriter.close();
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        lineCount = updates.size();
+    }
+
+    /**
+     * Get the number of lines in the journal, including the updates which were already written.
+     *
+     * @return The number of lines in the journal
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Close the journal file.
+     */
+    public void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Error occurred while closing the password update time journal " + file, e);
+            }
+            writer = null;
+        }
+    }
+
+    private Writer getWriter() throws IOException {
+        if (writer == null) {
+            writer = openWriter(file, true);
+        }
+        return writer;
+    }
+
+    private static Writer openWriter(File file, boolean append) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create the directory " + parent);
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.writebehind;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of the last password update timestamps waiting to be written to the user stores.
+ * <p>
+ * Repeated updates of the same user are coalesced into a single entry holding the latest timestamp. When the queue
+ * is full, the producers wait for the given timeout and are rejected afterwards, so that they can fall back to a
+ * synchronous write. The queued updates are appended to a journal, if one is given, so that they survive restarts.
+ */
+public class PasswordUpdateTimeQueue {
+    private static final Log log = LogFactory.getLog(PasswordUpdateTimeQueue.class);
+
+    private final int capacity;
+    private final PasswordUpdateTimeJournal journal;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<String, PendingPasswordUpdate> pendingUpdates = new LinkedHashMap<>();
+    // The drained updates being written, which are still reported as pending until they are completed
+    private final Map<String, PendingPasswordUpdate> inFlightUpdates = new HashMap<>();
+    private long oldestInFlightEnqueueTime;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param capacity The maximum number of users having a pending update
+     * @param journal  The journal to which the updates are appended or null if the updates need not be durable
+     */
+    public PasswordUpdateTimeQueue(int capacity, PasswordUpdateTimeJournal journal) {
+        this.capacity = capacity;
+        this.journal = journal;
+    }
+
+    /**
+     * Load the updates left in the journal by the previous run.
+     *
+     * @return The number of users having a recovered update
+     * @throws IOException if the journal could not be read
+     */
+    public int recover() throws IOException {
+        if (journal == null) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            for (PendingPasswordUpdate update : journal.recover()) {
+                PendingPasswordUpdate existingUpdate = pendingUpdates.get(update.getUserKey());
+                pendingUpdates.put(update.getUserKey(),
+                        existingUpdate == null ? update : existingUpdate.merge(update));
+            }
+            return pendingUpdates.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue an update, waiting for the given time if the queue is full.
+     *
+     * @param update        The update
+     * @param timeoutMillis The maximum time to wait for free space in the queue
+     * @return True if the update was queued. False if the queue stayed full or the update could not be journaled.
+     */
+    public boolean offer(PendingPasswordUpdate update, long timeoutMillis) {
+        String userKey = update.getUserKey();
+        lock.lock();
+        try {
+            PendingPasswordUpdate existingUpdate = pendingUpdates.get(userKey);
+            if (existingUpdate == null) {
+                long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                while (pendingUpdates.size() >= capacity) {
+                    if (remainingNanos <= 0) {
+                        rejectedCount.incrementAndGet();
+                        return false;
+                    }
+                    remainingNanos = notFull.awaitNanos(remainingNanos);
+                }
+                // The same user may have been queued while waiting
+                existingUpdate = pendingUpdates.get(userKey);
+            }
+
+            if (journal != null) {
+                journal.append(update);
+            }
+            if (existingUpdate == null) {
+                pendingUpdates.put(userKey, update);
+                enqueuedCount.incrementAndGet();
+                notEmpty.signal();
+            } else {
+                pendingUpdates.put(userKey, existingUpdate.merge(update));
+                coalescedCount.incrementAndGet();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedCount.incrementAndGet();
+            return false;
+        } catch (IOException e) {
+            log.error("Error occurred while journaling the password update time of "
+                    + update.getTenantAwareUsername(), e);
+            rejectedCount.incrementAndGet();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put back an update which could not be written, unless a newer update of the same user is already queued, or
+     * the user was removed while the update was being written.
+     * The capacity of the queue is not enforced, since the update was already accepted once.
+     *
+     * @param update The update to be retried
+     */
+    public void requeue(PendingPasswordUpdate update) {
+        lock.lock();
+        try {
+            PendingPasswordUpdate existingUpdate = pendingUpdates.get(update.getUserKey());
+            if (existingUpdate == null && inFlightUpdates.containsKey(update.getUserKey())) {
+                pendingUpdates.put(update.getUserKey(), update);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the queued and the drained updates of a user, such as a deleted user, and journal the removal so that the
+     * updates are not recovered after a restart. A drained update which is being written is not retried.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user
+     * @return True if the user had an update waiting to be written
+     */
+    public boolean remove(String tenantDomain, String tenantAwareUsername) {
+        String userKey = PasswordUpdateTimeCache.getUserKey(tenantDomain, tenantAwareUsername);
+        lock.lock();
+        try {
+            boolean removed = pendingUpdates.remove(userKey) != null;
+            removed |= inFlightUpdates.remove(userKey) != null;
+            if (!removed) {
+                return false;
+            }
+            notFull.signal();
+            if (journal != null) {
+                journal.appendRemoval(tenantDomain, tenantAwareUsername);
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Error occurred while journaling the removal of the password update time of "
+                    + tenantAwareUsername, e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the queued updates, waiting until the given number of users are queued or the given time elapses.
+     * The removed updates are kept in the journal until {@link #complete()} is called.
+     *
+     * @param batchSize  The number of queued users which triggers an immediate drain
+     * @param waitMillis The maximum time to wait for the queue to fill up
+     * @return The removed updates, in the order they were first queued
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<PendingPasswordUpdate> drain(int batchSize, long waitMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            while (pendingUpdates.size() < batchSize && remainingNanos > 0) {
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+
+            List<PendingPasswordUpdate> updates = new ArrayList<>(pendingUpdates.values());
+            inFlightUpdates.putAll(pendingUpdates);
+            pendingUpdates.clear();
+            oldestInFlightEnqueueTime = 0;
+            for (PendingPasswordUpdate update : updates) {
+                if (oldestInFlightEnqueueTime == 0 || update.getEnqueueTime() < oldestInFlightEnqueueTime) {
+                    oldestInFlightEnqueueTime = update.getEnqueueTime();
+                }
+            }
+            notFull.signalAll();
+            return updates;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Mark the drained updates as written, and compact the journal.
+     */
+    public void complete() {
+        lock.lock();
+        try {
+            inFlightUpdates.clear();
+            oldestInFlightEnqueueTime = 0;
+            if (journal != null && (pendingUpdates.isEmpty() || journal.getLineCount() > capacity)) {
+                journal.rewrite(pendingUpdates.values());
+            }
+        } catch (IOException e) {
+            log.error("Error occurred while compacting the password update time journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wake up a thread waiting in {@link #drain(int, long)}.
+     */
+    public void wakeUp() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the timestamp of a user which is queued, or drained but not yet completed.
+     *
+     * @param userKey The key of the user
+     * @return The pending timestamp or null if the user has no update waiting to be written
+     */
+    public Long getPendingTimestamp(String userKey) {
+        lock.lock();
+        try {
+            PendingPasswordUpdate update = pendingUpdates.get(userKey);
+            if (update == null) {
+                update = inFlightUpdates.get(userKey);
+            }
+            return update == null ? null : update.getTimestamp();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the journal.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of users having a queued update.
+     *
+     * @return The queue depth
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pendingUpdates.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the time since the oldest update which is not yet written was queued.
+     *
+     * @return The lag in milliseconds or 0 if there are no updates to be written
+     */
+    public long getLagMillis() {
+        lock.lock();
+        try {
+            long oldestEnqueueTime = oldestInFlightEnqueueTime;
+            Iterator<PendingPasswordUpdate> iterator = pendingUpdates.values().iterator();
+            if (iterator.hasNext()) {
+                long enqueueTime = iterator.next().getEnqueueTime();
+                if (oldestEnqueueTime == 0 || enqueueTime < oldestEnqueueTime) {
+                    oldestEnqueueTime = enqueueTime;
+                }
+            }
+            return oldestEnqueueTime == 0 ? 0 : System.currentTimeMillis() - oldestEnqueueTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.writebehind;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.deadline.PasswordExpiryDeadline;
+import org.wso2.carbon.identity.policy.password.metrics.CounterMetric;
+import org.wso2.carbon.identity.policy.password.metrics.LatencyMetric;
+import org.wso2.carbon.identity.policy.password.metrics.PasswordPolicyMetrics;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.CarbonUtils;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the last password update timestamps to the user stores asynchronously.
+ * <p>
+ * This is disabled by default. When enabled, the password change handler queues the timestamps instead of writing
+ * them within the credential update event. A background thread writes the queued timestamps, grouped by the tenant
+ * and the user store, whenever the batch size is reached or the flush interval elapses.
+ */
+public class PasswordUpdateTimeWriter implements Runnable {
+    private static final Log log = LogFactory.getLog(PasswordUpdateTimeWriter.class);
+
+    private static final PasswordUpdateTimeWriter instance = new PasswordUpdateTimeWriter();
+
+    private static final long SHUTDOWN_TIMEOUT = 30000;
+
+    private volatile PasswordUpdateTimeQueue queue;
+    private volatile boolean running;
+    private Thread workerThread;
+    private int batchSize;
+    private long flushIntervalMillis;
+    private long offerTimeoutMillis;
+    private int maxAttempts;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private PasswordUpdateTimeWriter() {     // Prevent instantiation
+    }
+
+    /**
+     * Return a singleton instance of the PasswordUpdateTimeWriter
+     *
+     * @return A singleton instance of the PasswordUpdateTimeWriter
+     */
+    public static PasswordUpdateTimeWriter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start writing the queued timestamps if the write behind mode is enabled.
+     * The timestamps left in the journal by the previous run are queued again.
+     */
+    public synchronized void start() {
+        if (running || !Boolean.parseBoolean(getProperty(PasswordPolicyConstants.WRITE_BEHIND_ENABLE))) {
+            return;
+        }
+
+        int queueSize = NumberUtils.toInt(getProperty(PasswordPolicyConstants.WRITE_BEHIND_QUEUE_SIZE),
+                PasswordPolicyConstants.WRITE_BEHIND_QUEUE_SIZE_DEFAULT_VALUE);
+        batchSize = NumberUtils.toInt(getProperty(PasswordPolicyConstants.WRITE_BEHIND_BATCH_SIZE),
+                PasswordPolicyConstants.WRITE_BEHIND_BATCH_SIZE_DEFAULT_VALUE);
+        flushIntervalMillis = NumberUtils.toInt(getProperty(PasswordPolicyConstants.WRITE_BEHIND_FLUSH_INTERVAL),
+                PasswordPolicyConstants.WRITE_BEHIND_FLUSH_INTERVAL_DEFAULT_VALUE);
+        offerTimeoutMillis = NumberUtils.toInt(getProperty(PasswordPolicyConstants.WRITE_BEHIND_OFFER_TIMEOUT),
+                PasswordPolicyConstants.WRITE_BEHIND_OFFER_TIMEOUT_DEFAULT_VALUE);
+        maxAttempts = NumberUtils.toInt(getProperty(PasswordPolicyConstants.WRITE_BEHIND_MAX_ATTEMPTS),
+                PasswordPolicyConstants.WRITE_BEHIND_MAX_ATTEMPTS_DEFAULT_VALUE);
+
+        PasswordUpdateTimeQueue passwordUpdateTimeQueue =
+                new PasswordUpdateTimeQueue(queueSize, new PasswordUpdateTimeJournal(getJournalFile()));
+        try {
+            int recoveredCount = passwordUpdateTimeQueue.recover();
+            if (recoveredCount > 0) {
+                log.info("Recovered " + recoveredCount + " password update timestamps to be written to user stores");
+            }
+        } catch (IOException e) {
+            log.error("Error occurred while recovering the password update timestamps from the journal. "
+                    + "The timestamps which were not written before the last shutdown are lost.", e);
+        }
+
+        queue = passwordUpdateTimeQueue;
+        running = true;
+        workerThread = new Thread(this, "PasswordUpdateTimeWriter");
+        workerThread.setDaemon(true);
+        workerThread.start();
+        if (log.isDebugEnabled()) {
+            log.debug("Password update time write behind is started with the queue size " + queueSize
+                    + " and the batch size " + batchSize);
+        }
+    }
+
+    /**
+     * Stop accepting timestamps and write the already queued ones.
+     * Any timestamps which could not be written before the timeout remain in the journal for the next start.
+     */
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        queue.wakeUp();
+        try {
+            workerThread.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (workerThread.isAlive()) {
+            log.warn("Timed out while writing the queued password update timestamps. "
+                    + "The remaining timestamps will be written on the next start.");
+        }
+        queue.close();
+        workerThread = null;
+    }
+
+    /**
+     * Queue the last password update timestamp of a user.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The domain qualified username of the user
+     * @param timestamp           The last password update timestamp
+     * @return True if the timestamp is queued. False if the caller should write the timestamp synchronously.
+     */
+    public boolean offer(String tenantDomain, String tenantAwareUsername, long timestamp) {
+        if (!running || StringUtils.isBlank(tenantDomain)) {
+            return false;
+        }
+        return queue.offer(new PendingPasswordUpdate(tenantDomain, tenantAwareUsername, timestamp),
+                offerTimeoutMillis);
+    }
+
+    /**
+     * Drop the timestamp of a deleted user which is yet to be written.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user
+     */
+    public void remove(String tenantDomain, String tenantAwareUsername) {
+        PasswordUpdateTimeQueue passwordUpdateTimeQueue = queue;
+        if (passwordUpdateTimeQueue == null || StringUtils.isBlank(tenantDomain)) {
+            return;
+        }
+        if (passwordUpdateTimeQueue.remove(tenantDomain, tenantAwareUsername) && log.isDebugEnabled()) {
+            log.debug("Dropped the queued password update time of the deleted user " + tenantAwareUsername);
+        }
+    }
+
+    /**
+     * Get the last password update timestamp of a user which is yet to be written.
+     *
+     * @param tenantDomain        The tenant domain of the user
+     * @param tenantAwareUsername The tenant aware username of the user
+     * @return The queued timestamp or null if there is none
+     */
+    public Long getPendingTimestamp(String tenantDomain, String tenantAwareUsername) {
+        PasswordUpdateTimeQueue passwordUpdateTimeQueue = queue;
+        if (passwordUpdateTimeQueue == null) {
+            return null;
+        }
+        return passwordUpdateTimeQueue.getPendingTimestamp(
+                PasswordUpdateTimeCache.getUserKey(tenantDomain, tenantAwareUsername));
+    }
+
+    @Override
+    public void run() {
+        PasswordUpdateTimeQueue passwordUpdateTimeQueue = queue;
+        while (true) {
+            boolean stopping = !running;
+            List<PendingPasswordUpdate> updates;
+            try {
+                updates = passwordUpdateTimeQueue.drain(batchSize, stopping ? 0 : flushIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            for (Map.Entry<String, List<PendingPasswordUpdate>> userStoreUpdates :
+                    groupByUserStore(updates).entrySet()) {
+                List<PendingPasswordUpdate> userStoreBatch = userStoreUpdates.getValue();
+                for (int i = 0; i < userStoreBatch.size(); i += batchSize) {
+                    write(passwordUpdateTimeQueue,
+                            userStoreBatch.subList(i, Math.min(i + batchSize, userStoreBatch.size())), stopping);
+                }
+            }
+            passwordUpdateTimeQueue.complete();
+
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    private Map<String, List<PendingPasswordUpdate>> groupByUserStore(List<PendingPasswordUpdate> updates) {
+        Map<String, List<PendingPasswordUpdate>> userStoreUpdates = new LinkedHashMap<>();
+        for (PendingPasswordUpdate update : updates) {
+            String userStoreKey = update.getTenantDomain() + ":" + getDomain(update.getTenantAwareUsername());
+            List<PendingPasswordUpdate> batch = userStoreUpdates.get(userStoreKey);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                userStoreUpdates.put(userStoreKey, batch);
+            }
+            batch.add(update);
+        }
+        return userStoreUpdates;
+    }
+
+    /**
+     * Write a batch of timestamps belonging to a single user store.
+     *
+     * @param passwordUpdateTimeQueue The queue to which the failed updates are returned
+     * @param updates                 The updates of the same tenant and user store
+     * @param stopping                True if the writer is being stopped, in which case the failed updates are
+     *                                left in the journal instead of being retried
+     */
+    private void write(PasswordUpdateTimeQueue passwordUpdateTimeQueue, List<PendingPasswordUpdate> updates,
+                       boolean stopping) {
+        String tenantDomain = updates.get(0).getTenantDomain();
+        String domain = getDomain(updates.get(0).getTenantAwareUsername());
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            carbonContext.setTenantDomain(tenantDomain, true);
+
+            UserStoreManager userStoreManager;
+            try {
+                userStoreManager = UserStoreManagerCache.getInstance().getUserStoreManager(tenantDomain, domain);
+            } catch (UserStoreException | RuntimeException e) {
+                PasswordPolicyMetrics.getInstance().increment(CounterMetric.FAILURE, tenantDomain);
+                log.error("Error occurred while loading the user store manager of the domain " + domain
+                        + " of the tenant " + tenantDomain, e);
+                for (PendingPasswordUpdate update : updates) {
+                    retry(passwordUpdateTimeQueue, update, stopping);
+                }
+                return;
+            }
+
+            for (PendingPasswordUpdate update : updates) {
+                Map<String, String> claimMap = new HashMap<>();
+                claimMap.put(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM,
+                        Long.toString(update.getTimestamp()));
+                PasswordExpiryDeadline.addClaim(claimMap, tenantDomain, update.getTimestamp());
+                try {
+                    long writeStartTime = System.nanoTime();
+                    userStoreManager.setUserClaimValues(
+                            UserCoreUtil.removeDomainFromName(update.getTenantAwareUsername()), claimMap, null);
+                    PasswordPolicyMetrics.getInstance().recordLatency(LatencyMetric.CLAIM_WRITE, tenantDomain,
+                            writeStartTime);
+                    writtenCount.incrementAndGet();
+                } catch (org.wso2.carbon.user.core.UserStoreException | RuntimeException e) {
+                    PasswordPolicyMetrics.getInstance().increment(CounterMetric.FAILURE, tenantDomain);
+                    log.error("Error occurred while updating the claim "
+                            + PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM + " of "
+                            + update.getTenantAwareUsername(), e);
+                    retry(passwordUpdateTimeQueue, update, stopping);
+                }
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Wrote " + updates.size() + " password update timestamps to the domain " + domain
+                    + " of the tenant " + tenantDomain);
+        }
+    }
+
+    private void retry(PasswordUpdateTimeQueue passwordUpdateTimeQueue, PendingPasswordUpdate update,
+                       boolean stopping) {
+        PendingPasswordUpdate nextAttempt = update.nextAttempt();
+        if (stopping || nextAttempt.getAttempts() < maxAttempts) {
+            // When stopping, the update is left in the journal by the final compaction
+            passwordUpdateTimeQueue.requeue(nextAttempt);
+            if (!stopping) {
+                PasswordPolicyMetrics.getInstance().increment(CounterMetric.RETRY, update.getTenantDomain());
+            }
+        } else {
+            failedCount.incrementAndGet();
+            // The cached timestamp was never persisted, so the user store needs to be consulted again
+            PasswordUpdateTimeCache.getInstance().invalidate(update.getTenantDomain(),
+                    update.getTenantAwareUsername());
+            log.error("Giving up the password update time of " + update.getTenantAwareUsername() + " of the tenant "
+                    + update.getTenantDomain() + " after " + nextAttempt.getAttempts() + " attempts");
+        }
+    }
+
+    private static String getDomain(String tenantAwareUsername) {
+        String domain = UserCoreUtil.extractDomainFromName(tenantAwareUsername);
+        if (StringUtils.isBlank(domain)) {
+            domain = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+        }
+        return domain.toUpperCase(Locale.ENGLISH);
+    }
+
+    private static File getJournalFile() {
+        String journal = getProperty(PasswordPolicyConstants.WRITE_BEHIND_JOURNAL);
+        if (StringUtils.isBlank(journal)) {
+            journal = PasswordPolicyConstants.WRITE_BEHIND_JOURNAL_DEFAULT_VALUE;
+        }
+        File journalFile = new File(journal);
+        if (!journalFile.isAbsolute()) {
+            journalFile = new File(CarbonUtils.getCarbonHome(), journal);
+        }
+        return journalFile;
+    }
+
+    private static String getProperty(String propertyName) {
+        return PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                propertyName);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Get the number of users having a timestamp waiting to be written.
+     *
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        PasswordUpdateTimeQueue passwordUpdateTimeQueue = queue;
+        return passwordUpdateTimeQueue == null ? 0 : passwordUpdateTimeQueue.size();
+    }
+
+    /**
+     * Get the time since the oldest timestamp which is not yet written was queued.
+     *
+     * @return The lag in milliseconds
+     */
+    public long getLagMillis() {
+        PasswordUpdateTimeQueue passwordUpdateTimeQueue = queue;
+        return passwordUpdateTimeQueue == null ? 0 : passwordUpdateTimeQueue.getLagMillis();
+    }
+
+    public long getEnqueuedCount() {
+        PasswordUpdateTimeQueue passwordUpdateTimeQueue = queue;
+        return passwordUpdateTimeQueue == null ? 0 : passwordUpdateTimeQueue.getEnqueuedCount();
+    }
+
+    public long getCoalescedCount() {
+        PasswordUpdateTimeQueue passwordUpdateTimeQueue = queue;
+        return passwordUpdateTimeQueue == null ? 0 : passwordUpdateTimeQueue.getCoalescedCount();
+    }
+
+    public long getRejectedCount() {
+        PasswordUpdateTimeQueue passwordUpdateTimeQueue = queue;
+        return passwordUpdateTimeQueue == null ? 0 : passwordUpdateTimeQueue.getRejectedCount();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
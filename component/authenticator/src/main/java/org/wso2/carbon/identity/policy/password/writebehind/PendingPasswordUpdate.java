@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.policy.password.writebehind;
+
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+
+/**
+ * A last password update timestamp waiting to be written to the user store.
+ */
+public class PendingPasswordUpdate {
+    private final String tenantDomain;
+    private final String tenantAwareUsername;
+    private final long timestamp;
+    private final long enqueueTime;
+    private final int attempts;
+
+    public PendingPasswordUpdate(String tenantDomain, String tenantAwareUsername, long timestamp) {
+        this(tenantDomain, tenantAwareUsername, timestamp, System.currentTimeMillis(), 0);
+    }
+
+    private PendingPasswordUpdate(String tenantDomain, String tenantAwareUsername, long timestamp, long enqueueTime,
+                                  int attempts) {
+        this.tenantDomain = tenantDomain;
+        this.tenantAwareUsername = tenantAwareUsername;
+        this.timestamp = timestamp;
+        this.enqueueTime = enqueueTime;
+        this.attempts = attempts;
+    }
+
+    /**
+     * Get the key identifying the user of this update.
+     *
+     * @return The key of the user
+     */
+    public String getUserKey() {
+        return PasswordUpdateTimeCache.getUserKey(tenantDomain, tenantAwareUsername);
+    }
+
+    /**
+     * Merge a newer update of the same user into this one.
+     * The time at which the user was first queued is retained, so that the lag is not hidden by frequent updates.
+     *
+     * @param update The newer update of the same user
+     * @return The merged update
+     */
+    PendingPasswordUpdate merge(PendingPasswordUpdate update) {
+        return new PendingPasswordUpdate(tenantDomain, update.tenantAwareUsername,
+                Math.max(timestamp, update.timestamp), Math.min(enqueueTime, update.enqueueTime), 0);
+    }
+
+    /**
+     * Get a copy of this update to be retried after a failed write.
+     *
+     * @return The update with an incremented attempt count
+     */
+    PendingPasswordUpdate nextAttempt() {
+        return new PendingPasswordUpdate(tenantDomain, tenantAwareUsername, timestamp, enqueueTime, attempts + 1);
+    }
+
+    public String getTenantDomain() {
+        return tenantDomain;
+    }
+
+    public String getTenantAwareUsername() {
+        return tenantAwareUsername;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getEnqueueTime() {
+        return enqueueTime;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
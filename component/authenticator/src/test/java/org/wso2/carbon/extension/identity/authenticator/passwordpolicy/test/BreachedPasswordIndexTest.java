@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.breach.BreachedPasswordChecker;
+import org.wso2.carbon.identity.policy.password.breach.BreachedPasswordIndex;
+import org.wso2.carbon.identity.policy.password.breach.BreachedPasswordIndexBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+/**
+ * Tests for the breached password index
+ */
+public class BreachedPasswordIndexTest {
+    private File indexFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        indexFile = File.createTempFile("breached-passwords", ".idx");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        BreachedPasswordChecker.getInstance().shutdown();
+        Assert.assertTrue(indexFile.delete());
+    }
+
+    @Test
+    public void testBuildAndLookup() throws Exception {
+        Random random = new Random(1234);
+        byte[][] hashes = new byte[5000][20];
+        StringBuilder hashList = new StringBuilder("# SHA-1 hashes\n");
+        for (byte[] hash : hashes) {
+            random.nextBytes(hash);
+            hashList.append(toHex(hash)).append(':').append(random.nextInt(100)).append('\n');
+        }
+        // Duplicates in different runs are indexed once
+        hashList.append(toHex(hashes[0]).toLowerCase()).append('\n');
+
+        long entryCount = new BreachedPasswordIndexBuilder(10, 700).build(new StringReader(hashList.toString()),
+                indexFile);
+        Assert.assertEquals(entryCount, hashes.length);
+
+        try (BreachedPasswordIndex index = BreachedPasswordIndex.open(indexFile)) {
+            Assert.assertEquals(index.getEntryCount(), hashes.length);
+            for (byte[] hash : hashes) {
+                Assert.assertTrue(index.contains(hash));
+            }
+            byte[] hash = new byte[20];
+            for (int i = 0; i < 1000; i++) {
+                random.nextBytes(hash);
+                Assert.assertFalse(index.contains(hash));
+            }
+        }
+    }
+
+    @Test
+    public void testBreachedPassword() throws Exception {
+        String hashList = toHex(sha1("P@ssw0rd")) + ":1000\n" + toHex(sha1("letmein")) + ":20\n";
+        new BreachedPasswordIndexBuilder(10, 1000).build(new StringReader(hashList), indexFile);
+
+        BreachedPasswordChecker checker = BreachedPasswordChecker.getInstance();
+        Assert.assertFalse(checker.isBreached("P@ssw0rd".toCharArray()));
+        checker.start(BreachedPasswordIndex.open(indexFile));
+        Assert.assertTrue(checker.isEnabled());
+        Assert.assertTrue(checker.isBreached("P@ssw0rd".toCharArray()));
+        Assert.assertTrue(checker.isBreached("letmein".toCharArray()));
+        Assert.assertFalse(checker.isBreached("correct horse battery staple".toCharArray()));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testInvalidHash() throws IOException {
+        new BreachedPasswordIndexBuilder(10, 1000).build(new StringReader("0123456789\n"), indexFile);
+    }
+
+    private static byte[] sha1(String password) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-1").digest(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(String.format("%02X", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.policy.password.analytics.CredentialUpdate;
+import org.wso2.carbon.identity.policy.password.analytics.CredentialUpdatePublisher;
+import org.wso2.carbon.identity.policy.password.analytics.CredentialUpdateRingBuffer;
+import org.wso2.carbon.identity.policy.password.analytics.CredentialUpdateSink;
+import org.wso2.carbon.identity.policy.password.analytics.CredentialUpdateSpool;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the batched publishing of the credential update events and their spool
+ */
+public class CredentialUpdatePublisherTest {
+    private static final String TENANT_DOMAIN = "carbon.super";
+
+    @AfterMethod
+    public void tearDown() {
+        CredentialUpdatePublisher.getInstance().shutdown();
+    }
+
+    @Test
+    public void testRingBuffer() {
+        CredentialUpdateRingBuffer ringBuffer = new CredentialUpdateRingBuffer(3);
+        Assert.assertEquals(ringBuffer.capacity(), 4);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(ringBuffer.offer(createUpdate("user" + i, i)));
+        }
+        Assert.assertFalse(ringBuffer.offer(createUpdate("user4", 4)));
+
+        List<CredentialUpdate> updates = new ArrayList<>();
+        Assert.assertEquals(ringBuffer.drainTo(updates, 3), 3);
+        Assert.assertEquals(updates.get(0).getUsername(), "user0");
+        Assert.assertEquals(updates.get(2).getUsername(), "user2");
+        Assert.assertEquals(ringBuffer.size(), 1);
+
+        // The drained slots are reused
+        Assert.assertTrue(ringBuffer.offer(createUpdate("user4", 4)));
+        updates.clear();
+        ringBuffer.drainTo(updates, 10);
+        Assert.assertEquals(updates.size(), 2);
+        Assert.assertEquals(updates.get(1).getUsername(), "user4");
+    }
+
+    @Test
+    public void testSpoolSurvivesReopen() throws Exception {
+        File spoolFile = createSpoolFile();
+        CredentialUpdateSpool spool = CredentialUpdateSpool.open(spoolFile, 4096);
+        Assert.assertTrue(spool.isEmpty());
+        Assert.assertEquals(spool.append(Arrays.asList(createUpdate("alice", 1L), createUpdate("bob", 2L),
+                createUpdate("carol", 3L))), 3);
+        spool.remove(1);
+        spool.close();
+
+        spool = CredentialUpdateSpool.open(spoolFile, 4096);
+        try {
+            Assert.assertEquals(spool.size(), 2);
+            List<CredentialUpdate> updates = spool.peek(10);
+            Assert.assertEquals(updates.size(), 2);
+            Assert.assertEquals(updates.get(0).getUsername(), "bob");
+            Assert.assertEquals(updates.get(0).getUserStoreDomain(), "PRIMARY");
+            Assert.assertEquals(updates.get(0).getTenantDomain(), TENANT_DOMAIN);
+            Assert.assertEquals(updates.get(1).getUpdateTimestamp(), 3L);
+
+            spool.remove(2);
+            Assert.assertTrue(spool.isEmpty());
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void testSpoolRejectsEventsWhenFull() throws Exception {
+        CredentialUpdateSpool spool = CredentialUpdateSpool.open(createSpoolFile(), 128);
+        try {
+            List<CredentialUpdate> updates = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                updates.add(createUpdate("user" + i, i));
+            }
+            int appended = spool.append(updates);
+            Assert.assertTrue(appended > 0 && appended < updates.size());
+            Assert.assertEquals(spool.append(Collections.singletonList(createUpdate("user10", 10L))), 0);
+
+            // The space is reclaimed once the spool is drained
+            spool.remove(appended);
+            Assert.assertEquals(spool.append(Collections.singletonList(createUpdate("user10", 10L))), 1);
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void testEventsAreReplayedInOrderAfterFailure() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.failing = true;
+        CredentialUpdatePublisher publisher = CredentialUpdatePublisher.getInstance();
+        publisher.start(sink, CredentialUpdateSpool.open(createSpoolFile(), 4096), 16, 2, 10, 50);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(publisher.offer(TENANT_DOMAIN, "PRIMARY/user" + i, i));
+        }
+        waitFor(sink, 0, publisher, 5);
+        Assert.assertEquals(publisher.getPublishedCount(), 0);
+
+        // The events published after the recovery follow the spooled ones
+        sink.failing = false;
+        Assert.assertTrue(publisher.offer(TENANT_DOMAIN, "PRIMARY/user5", 5));
+        waitFor(sink, 6, publisher, 0);
+        List<String> usernames = sink.getUsernames();
+        Assert.assertEquals(usernames, Arrays.asList("user0", "user1", "user2", "user3", "user4", "user5"));
+        Assert.assertEquals(publisher.getDroppedCount(), 0);
+    }
+
+    @Test
+    public void testBufferedEventsAreSpooledOnShutdown() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.failing = true;
+        File spoolFile = createSpoolFile();
+        CredentialUpdatePublisher publisher = CredentialUpdatePublisher.getInstance();
+        publisher.start(sink, CredentialUpdateSpool.open(spoolFile, 4096), 16, 100, TimeUnit.MINUTES.toMillis(1),
+                TimeUnit.MINUTES.toMillis(1));
+        Assert.assertTrue(publisher.offer(TENANT_DOMAIN, "SECONDARY/alice", 1L));
+        publisher.shutdown();
+        Assert.assertFalse(publisher.offer(TENANT_DOMAIN, "SECONDARY/bob", 2L));
+
+        CredentialUpdateSpool spool = CredentialUpdateSpool.open(spoolFile, 4096);
+        try {
+            List<CredentialUpdate> updates = spool.peek(10);
+            Assert.assertEquals(updates.size(), 1);
+            Assert.assertEquals(updates.get(0).getUsername(), "alice");
+            Assert.assertEquals(updates.get(0).getUserStoreDomain(), "SECONDARY");
+        } finally {
+            spool.close();
+        }
+    }
+
+    private void waitFor(RecordingSink sink, int published, CredentialUpdatePublisher publisher, int backlog)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while ((sink.getUsernames().size() != published || publisher.getBacklog() != backlog)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(sink.getUsernames().size(), published);
+        Assert.assertEquals(publisher.getBacklog(), backlog);
+    }
+
+    private CredentialUpdate createUpdate(String username, long timestamp) {
+        return new CredentialUpdate(username, "PRIMARY", TENANT_DOMAIN, timestamp);
+    }
+
+    private File createSpoolFile() throws Exception {
+        File spoolFile = File.createTempFile("credential-updates", ".spool");
+        Assert.assertTrue(spoolFile.delete());
+        spoolFile.deleteOnExit();
+        return spoolFile;
+    }
+
+    /**
+     * A sink which records the published events, or fails while requested
+     */
+    private static class RecordingSink implements CredentialUpdateSink {
+        private final List<String> usernames = new ArrayList<>();
+        private volatile boolean failing;
+
+        @Override
+        public synchronized void publish(List<CredentialUpdate> updates) throws IdentityEventException {
+            if (failing) {
+                throw new IdentityEventException("Connection refused");
+            }
+            for (CredentialUpdate update : updates) {
+                usernames.add(update.getUsername());
+            }
+        }
+
+        synchronized List<String> getUsernames() {
+            return new ArrayList<>(usernames);
+        }
+    }
+}
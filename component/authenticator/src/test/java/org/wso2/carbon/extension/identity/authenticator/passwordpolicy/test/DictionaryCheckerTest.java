@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.dictionary.DictionaryChecker;
+import org.wso2.carbon.identity.policy.password.dictionary.LeetNormalizer;
+import org.wso2.carbon.identity.policy.password.dictionary.WordTrie;
+import org.wso2.carbon.identity.policy.password.dictionary.WordTrieBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+/**
+ * Tests for the dictionary and context word checks of the new passwords
+ */
+public class DictionaryCheckerTest {
+    private File wordsDirectory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        wordsDirectory = Files.createTempDirectory("password-policy-words").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        DictionaryChecker.getInstance().shutdown();
+        for (File file : wordsDirectory.listFiles()) {
+            Assert.assertTrue(file.delete());
+        }
+        Assert.assertTrue(wordsDirectory.delete());
+    }
+
+    @Test
+    public void testContainsWord() throws IOException {
+        WordTrie wordTrie = new WordTrieBuilder()
+                .addWords(new StringReader("password\nDragon\n# comment\nshe\nhers\nhis\n"))
+                .build();
+        Assert.assertEquals(wordTrie.getWordCount(), 5);
+
+        Assert.assertTrue(wordTrie.containsWord(LeetNormalizer.normalize("P@55w0rd!".toCharArray()), 4));
+        Assert.assertTrue(wordTrie.containsWord(LeetNormalizer.normalize("x_DR4G0N_x".toCharArray()), 4));
+        Assert.assertFalse(wordTrie.containsWord(LeetNormalizer.normalize("Tr0ub4dor&3".toCharArray()), 4));
+
+        // The words shorter than the minimum length are ignored, also when found through the failure links
+        Assert.assertFalse(wordTrie.containsWord(LeetNormalizer.normalize("ushe".toCharArray()), 4));
+        Assert.assertTrue(wordTrie.containsWord(LeetNormalizer.normalize("ushe".toCharArray()), 3));
+        Assert.assertTrue(wordTrie.containsWord(LeetNormalizer.normalize("ushers".toCharArray()), 4));
+    }
+
+    @Test
+    public void testWordTrieFile() throws IOException {
+        File trieFile = new File(wordsDirectory, "dictionary.trie");
+        new WordTrieBuilder().addWord("sunshine").addWord("monkey").write(trieFile);
+
+        WordTrie wordTrie = WordTrie.open(trieFile);
+        Assert.assertEquals(wordTrie.getWordCount(), 2);
+        Assert.assertTrue(wordTrie.containsWord(LeetNormalizer.normalize("Mmonkey99".toCharArray()), 4));
+        Assert.assertTrue(wordTrie.containsWord(LeetNormalizer.normalize("5un5h1ne".toCharArray()), 4));
+        Assert.assertFalse(wordTrie.containsWord(LeetNormalizer.normalize("sunshin".toCharArray()), 4));
+    }
+
+    @Test
+    public void testTenantWords() throws IOException {
+        WordTrie dictionary = new WordTrieBuilder().addWord("password").build();
+        DictionaryChecker checker = DictionaryChecker.getInstance();
+        char[] dictionaryPassword = LeetNormalizer.normalize("pa55word".toCharArray());
+        Assert.assertFalse(checker.containsDictionaryWord(dictionaryPassword, "wso2.com"));
+        checker.start(Collections.singletonList(dictionary), wordsDirectory, 4);
+
+        char[] password = LeetNormalizer.normalize("Acme-Rocket-42".toCharArray());
+        Assert.assertTrue(checker.containsDictionaryWord(dictionaryPassword, "wso2.com"));
+        Assert.assertFalse(checker.containsDictionaryWord(password, "wso2.com"));
+
+        File words = new File(wordsDirectory, "wso2.com.txt");
+        Files.write(words.toPath(), "rocket\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(checker.containsDictionaryWord(password, "wso2.com"));
+        Assert.assertFalse(checker.containsDictionaryWord(password, "acme.com"));
+
+        // The word list is reloaded when it changes
+        Files.write(words.toPath(), "comet\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(words.setLastModified(words.lastModified() + 2000));
+        Assert.assertFalse(checker.containsDictionaryWord(password, "wso2.com"));
+    }
+
+    @Test
+    public void testContainsContextWord() {
+        DictionaryChecker checker = DictionaryChecker.getInstance();
+        checker.start(Collections.<WordTrie>emptyList(), wordsDirectory, 4);
+
+        char[] password = LeetNormalizer.normalize("J0hn.Sm1th2018".toCharArray());
+        Assert.assertTrue(checker.containsContextWord(password, "john.smith@example.com", "carbon.super"));
+        Assert.assertTrue(checker.containsContextWord(password, "jsmith", "smith-corp.com"));
+        Assert.assertFalse(checker.containsContextWord(password, "jdoe", "wso2.com", "PRIMARY"));
+        // The words shorter than the minimum length are ignored
+        Assert.assertFalse(checker.containsContextWord(password, "joh", null));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.pattern.EditDistance;
+
+import java.util.Random;
+
+/**
+ * Tests for the bounded edit distance between the current and the new passwords
+ */
+public class EditDistanceTest {
+
+    @Test
+    public void testIsWithin() {
+        Assert.assertTrue(EditDistance.isWithin("Password1", "Password2", 1));
+        Assert.assertTrue(EditDistance.isWithin("Password1", "password12", 1));
+        Assert.assertFalse(EditDistance.isWithin("Password1", "Passw0rd12", 1));
+        Assert.assertTrue(EditDistance.isWithin("Password1", "Passw0rd12", 2));
+        Assert.assertFalse(EditDistance.isWithin("Password1", "Tr0ub4dor&3", 4));
+        Assert.assertTrue(EditDistance.isWithin("abc", "xyz", 3));
+        Assert.assertTrue(EditDistance.isWithin("", "", 0));
+        Assert.assertFalse(EditDistance.isWithin("a", "b", -1));
+    }
+
+    @Test
+    public void testIsWithinAgainstFullMatrix() {
+        Random random = new Random(42);
+        for (int n = 0; n < 2000; n++) {
+            char[] first = randomPassword(random);
+            char[] second = randomPassword(random);
+            int distance = distance(first, second);
+            for (int maxDistance = 0; maxDistance <= 6; maxDistance++) {
+                Assert.assertEquals(EditDistance.isWithin(new String(first), new String(second), maxDistance),
+                        distance <= maxDistance, new String(first) + " " + new String(second) + " " + maxDistance);
+            }
+        }
+    }
+
+    private static char[] randomPassword(Random random) {
+        char[] password = new char[random.nextInt(10)];
+        for (int i = 0; i < password.length; i++) {
+            password[i] = "abcAB".charAt(random.nextInt(5));
+        }
+        return password;
+    }
+
+    private static int distance(char[] first, char[] second) {
+        int[][] matrix = new int[first.length + 1][second.length + 1];
+        for (int i = 0; i <= first.length; i++) {
+            for (int j = 0; j <= second.length; j++) {
+                if (i == 0 || j == 0) {
+                    matrix[i][j] = i + j;
+                } else {
+                    int substitution = Character.toLowerCase(first[i - 1]) == Character.toLowerCase(second[j - 1])
+                            ? 0 : 1;
+                    matrix[i][j] = Math.min(matrix[i - 1][j - 1] + substitution,
+                            Math.min(matrix[i - 1][j], matrix[i][j - 1]) + 1);
+                }
+            }
+        }
+        return matrix[first.length][second.length];
+    }
+}
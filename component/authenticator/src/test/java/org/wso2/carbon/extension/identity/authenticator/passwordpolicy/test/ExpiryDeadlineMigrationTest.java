@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.cluster.InMemoryCluster;
+import org.wso2.carbon.identity.policy.password.cluster.InMemoryClusterCoordinator;
+import org.wso2.carbon.identity.policy.password.cluster.TenantShardManager;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.deadline.ExpiryDeadlineMigrationResult;
+import org.wso2.carbon.identity.policy.password.deadline.ExpiryDeadlineMigrator;
+import org.wso2.carbon.identity.policy.password.deadline.PasswordExpiryDeadline;
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.core.UserRealm;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests for the password expiry deadline claim
+ */
+@PrepareForTest({IdentityTenantUtil.class, PasswordPolicyUtils.class})
+public class ExpiryDeadlineMigrationTest {
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final int TENANT_ID = -1234;
+    private static final String DEADLINE_CLAIM = "http://wso2.org/claims/identity/passwordExpiryTime";
+    // A password expires once more than the 30 days of the policy have passed
+    private static final long PASSWORD_EXPIRY_IN_MILLIS = TimeUnit.DAYS.toMillis(31);
+
+    @Mock
+    private RealmService realmService;
+
+    @Mock
+    private UserRealm userRealm;
+
+    @Mock
+    private UserStoreManager userStoreManager;
+
+    private final Map<String, Map<String, String>> userClaims = new HashMap<>();
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        initMocks(this);
+        mockStatic(IdentityTenantUtil.class);
+        mockStatic(PasswordPolicyUtils.class);
+        when(IdentityTenantUtil.getRealmService()).thenReturn(realmService);
+        when(IdentityTenantUtil.getTenantId(TENANT_DOMAIN)).thenReturn(TENANT_ID);
+        when(realmService.getTenantUserRealm(TENANT_ID)).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        when(userStoreManager.getRealmConfiguration()).thenReturn(new RealmConfiguration());
+        when(PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.EXPIRY_DEADLINE_CLAIM)).thenReturn(DEADLINE_CLAIM);
+        UserStoreManagerCache.getInstance().clear();
+        PasswordPolicyConfigManager.getInstance().updateConfig(TENANT_DOMAIN, new PasswordPolicyConfig(30, false, 0));
+
+        userClaims.clear();
+        when(userStoreManager.listUsers(anyString(), anyInt())).thenAnswer(new Answer<String[]>() {
+            @Override
+            public String[] answer(InvocationOnMock invocation) {
+                if (!"*".equals(invocation.getArguments()[0])) {
+                    return new String[0];
+                }
+                return userClaims.keySet().toArray(new String[userClaims.size()]);
+            }
+        });
+        when(userStoreManager.getUserClaimValues(anyString(), any(String[].class), anyString()))
+                .thenAnswer(new Answer<Map<String, String>>() {
+                    @Override
+                    public Map<String, String> answer(InvocationOnMock invocation) {
+                        return userClaims.get(invocation.getArguments()[0]);
+                    }
+                });
+    }
+
+    @Test
+    public void testAddClaim() {
+        Map<String, String> claimMap = new HashMap<>();
+        PasswordExpiryDeadline.addClaim(claimMap, TENANT_DOMAIN, 1000L);
+        Assert.assertEquals(claimMap.get(DEADLINE_CLAIM), Long.toString(1000L + PASSWORD_EXPIRY_IN_MILLIS));
+
+        when(PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.EXPIRY_DEADLINE_CLAIM)).thenReturn(null);
+        claimMap.clear();
+        PasswordExpiryDeadline.addClaim(claimMap, TENANT_DOMAIN, 1000L);
+        Assert.assertTrue(claimMap.isEmpty());
+    }
+
+    @Test
+    public void testMigrationWritesOutdatedDeadlines() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Map<String, String> claims = new HashMap<>();
+            if (i != 5) {
+                // The user5 has never changed the password
+                claims.put(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM, Long.toString(i * 1000L));
+            }
+            userClaims.put("user" + i, claims);
+        }
+        // The deadline of the user1 is up to date, while that of the user2 is of a previous policy
+        userClaims.get("user1").put(DEADLINE_CLAIM, Long.toString(1000L + PASSWORD_EXPIRY_IN_MILLIS));
+        userClaims.get("user2").put(DEADLINE_CLAIM, Long.toString(2000L));
+
+        ExpiryDeadlineMigrationResult result = ExpiryDeadlineMigrator.getInstance().migrateAndWait(TENANT_DOMAIN);
+        Assert.assertEquals(result.getListedCount(), 10);
+        Assert.assertEquals(result.getUpdatedCount(), 8);
+        Assert.assertEquals(result.getFailedCount(), 0);
+
+        verify(userStoreManager, times(1)).setUserClaimValues(eq("user2"),
+                eq(Collections.singletonMap(DEADLINE_CLAIM, Long.toString(2000L + PASSWORD_EXPIRY_IN_MILLIS))),
+                anyString());
+        verify(userStoreManager, never()).setUserClaimValues(eq("user1"), any(Map.class), anyString());
+        verify(userStoreManager, never()).setUserClaimValues(eq("user5"), any(Map.class), anyString());
+    }
+
+    @Test
+    public void testMigrationOnlyWhenTheExpiryPeriodChanges() throws Exception {
+        Map<String, String> claims = new HashMap<>();
+        claims.put(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM, "1000");
+        userClaims.put("user1", claims);
+        ExpiryDeadlineMigrator migrator = ExpiryDeadlineMigrator.getInstance();
+        PasswordPolicyConfig config = PasswordPolicyConfigManager.getInstance().getConfig(TENANT_DOMAIN);
+
+        Assert.assertNull(migrator.migrateIfChanged(TENANT_DOMAIN, new PasswordPolicyConfig(30, true, 0), config));
+        Future<ExpiryDeadlineMigrationResult> migration =
+                migrator.migrateIfChanged(TENANT_DOMAIN, new PasswordPolicyConfig(60, false, 0), config);
+        Assert.assertNotNull(migration);
+        Assert.assertEquals(migration.get().getUpdatedCount(), 1);
+
+        // In a cluster, the deadlines are recomputed only by the node owning the tenant
+        InMemoryCluster cluster = new InMemoryCluster();
+        InMemoryClusterCoordinator node1 = new InMemoryClusterCoordinator(cluster, "node1");
+        InMemoryClusterCoordinator node2 = new InMemoryClusterCoordinator(cluster, "node2");
+        node1.join();
+        node2.join();
+        try {
+            TenantShardManager.getInstance().setCoordinator(node1);
+            if (TenantShardManager.getInstance().isLocal(TENANT_DOMAIN)) {
+                TenantShardManager.getInstance().setCoordinator(node2);
+            }
+            Assert.assertNull(migrator.migrateIfChanged(TENANT_DOMAIN, new PasswordPolicyConfig(60, false, 0),
+                    config));
+        } finally {
+            TenantShardManager.getInstance().setCoordinator(null);
+        }
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+        return new PowerMockObjectFactory();
+    }
+}
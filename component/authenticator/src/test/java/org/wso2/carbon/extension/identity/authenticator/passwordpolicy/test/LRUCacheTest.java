@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.cache.LRUCache;
+
+/**
+ * Tests for the bounded LRU cache
+ */
+public class LRUCacheTest {
+
+    @Test
+    public void testGetAndPut() {
+        LRUCache<String, Long> cache = new LRUCache<>(100);
+        Assert.assertNull(cache.get("user"));
+        cache.put("user", 10L);
+        Assert.assertEquals(cache.get("user"), Long.valueOf(10L));
+        cache.put("user", 20L);
+        Assert.assertEquals(cache.get("user"), Long.valueOf(20L));
+        Assert.assertEquals(cache.getHitCount(), 2);
+        Assert.assertEquals(cache.getMissCount(), 1);
+
+        cache.remove("user");
+        Assert.assertNull(cache.get("user"));
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        LRUCache<Integer, Integer> cache = new LRUCache<>(160);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+        Assert.assertTrue(cache.size() <= 160, "The cache grew beyond its capacity: " + cache.size());
+        Assert.assertEquals(cache.get(9999), Integer.valueOf(9999));
+
+        cache.clear();
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testEntriesExpire() throws InterruptedException {
+        LRUCache<String, Long> cache = new LRUCache<>(100, 50);
+        cache.put("user", 10L);
+        Assert.assertEquals(cache.get("user"), Long.valueOf(10L));
+
+        Thread.sleep(100);
+        Assert.assertNull(cache.get("user"));
+        Assert.assertEquals(cache.size(), 0);
+    }
+}
@@ -41,12 +41,17 @@ import org.wso2.carbon.identity.governance.IdentityGovernanceException;
 import org.wso2.carbon.identity.policy.password.PasswordChangeHandler;
 import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
 import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+import org.wso2.carbon.identity.policy.password.deadline.PasswordExpiryDeadline;
 import org.wso2.carbon.user.api.RealmConfiguration;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.UserRealm;
 import org.wso2.carbon.user.core.UserStoreManager;
 import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
@@ -231,6 +236,96 @@ public class PasswordChangeHandlerTest {
         Assert.assertTrue(claims.containsKey(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM));
     }
 
+    @Test
+    public void testHandleEventUpdatesPasswordUpdateTimeCache() throws UserStoreException, IdentityEventException {
+        mockStatic(PasswordPolicyUtils.class);
+
+        RealmConfiguration realmConfig = new RealmConfiguration();
+        realmConfig.getUserStoreProperties().put("DomainName", "domain");
+        when(userStoreManager.getRealmConfiguration()).thenReturn(realmConfig);
+
+        Event event = new Event("POST_UPDATE_CREDENTIAL");
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_NAME, USERNAME);
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_STORE_MANAGER, userStoreManager);
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.TENANT_DOMAIN, TENANT_DOMAIN);
+
+        PasswordUpdateTimeCache.getInstance().put(TENANT_DOMAIN, "DOMAIN/" + USERNAME, 0L);
+        passwordChangeHandler.handleEvent(event);
+
+        verify(userStoreManager, times(1))
+                .setUserClaimValues(eq(USERNAME), claimValueArguementCaptor.capture(), isNull(String.class));
+        String timestamp = claimValueArguementCaptor.getValue()
+                .get(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM);
+        Assert.assertEquals(PasswordUpdateTimeCache.getInstance().get(TENANT_DOMAIN, "DOMAIN/" + USERNAME),
+                Long.valueOf(timestamp));
+    }
+
+    @Test
+    public void testHandleDeleteUserEvent() throws UserStoreException, IdentityEventException {
+        mockStatic(PasswordPolicyUtils.class);
+
+        RealmConfiguration realmConfig = new RealmConfiguration();
+        realmConfig.getUserStoreProperties().put("DomainName", "domain");
+        when(userStoreManager.getRealmConfiguration()).thenReturn(realmConfig);
+
+        Event event = new Event("POST_DELETE_USER");
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_NAME, USERNAME);
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_STORE_MANAGER, userStoreManager);
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.TENANT_DOMAIN, TENANT_DOMAIN);
+
+        PasswordUpdateTimeCache.getInstance().put(TENANT_DOMAIN, "DOMAIN/" + USERNAME, 0L);
+        passwordChangeHandler.handleEvent(event);
+
+        verify(userStoreManager, times(0))
+                .setUserClaimValues(eq(USERNAME), Matchers.<Map<String, String>>any(), isNull(String.class));
+        Assert.assertNull(PasswordUpdateTimeCache.getInstance().get(TENANT_DOMAIN, "DOMAIN/" + USERNAME));
+    }
+
+    @Test
+    public void testHandleSetLastPasswordUpdateClaimEvent() throws UserStoreException, IdentityEventException {
+        String deadlineClaim = "http://wso2.org/claims/identity/passwordExpiryTime";
+        mockStatic(PasswordPolicyUtils.class);
+        when(PasswordPolicyUtils.getIdentityEventProperty(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME,
+                PasswordPolicyConstants.EXPIRY_DEADLINE_CLAIM)).thenReturn(deadlineClaim);
+
+        RealmConfiguration realmConfig = new RealmConfiguration();
+        realmConfig.getUserStoreProperties().put("DomainName", "domain");
+        when(userStoreManager.getRealmConfiguration()).thenReturn(realmConfig);
+
+        // The other claims of the user are not of interest
+        Event event = new Event(IdentityEventConstants.Event.POST_SET_USER_CLAIMS);
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_NAME, USERNAME);
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_STORE_MANAGER, userStoreManager);
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.TENANT_DOMAIN, TENANT_DOMAIN);
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_CLAIMS,
+                Collections.singletonMap("http://wso2.org/claims/country", "Sri Lanka"));
+        PasswordUpdateTimeCache.getInstance().put(TENANT_DOMAIN, "DOMAIN/" + USERNAME, 5000L);
+        passwordChangeHandler.handleEvent(event);
+        Assert.assertEquals(PasswordUpdateTimeCache.getInstance().get(TENANT_DOMAIN, "DOMAIN/" + USERNAME),
+                Long.valueOf(5000L));
+
+        // A last password update time set on the user profile replaces the cached one
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_CLAIMS,
+                Collections.singletonMap(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM, "1000"));
+        passwordChangeHandler.handleEvent(event);
+        Assert.assertEquals(PasswordUpdateTimeCache.getInstance().get(TENANT_DOMAIN, "DOMAIN/" + USERNAME),
+                Long.valueOf(1000L));
+        verify(userStoreManager, times(1)).setUserClaimValues(eq(USERNAME), eq(Collections.singletonMap(
+                deadlineClaim, Long.toString(PasswordExpiryDeadline.getDeadline(TENANT_DOMAIN, 1000L)))),
+                isNull(String.class));
+
+        // The claim writes of a password change already carry the deadline
+        Map<String, String> claims = new HashMap<>();
+        claims.put(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM, "2000");
+        claims.put(deadlineClaim, Long.toString(PasswordExpiryDeadline.getDeadline(TENANT_DOMAIN, 2000L)));
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_CLAIMS, claims);
+        passwordChangeHandler.handleEvent(event);
+        Assert.assertEquals(PasswordUpdateTimeCache.getInstance().get(TENANT_DOMAIN, "DOMAIN/" + USERNAME),
+                Long.valueOf(2000L));
+        verify(userStoreManager, times(1))
+                .setUserClaimValues(eq(USERNAME), Matchers.<Map<String, String>>any(), isNull(String.class));
+    }
+
     @Test(expectedExceptions = {IdentityEventException.class})
     public void testHandleEventWithUserStoreExceptionInSetLastPasswordUpdateUserClaim()
             throws UserStoreException, IdentityEventException {
@@ -300,7 +395,7 @@ public class PasswordChangeHandlerTest {
     @Test
     public void testGetPropertyNameMapping() {
         Map<String, String> propertyNameMapping = passwordChangeHandler.getPropertyNameMapping();
-        Assert.assertEquals(propertyNameMapping.size(), 3);
+        Assert.assertEquals(propertyNameMapping.size(), 4);
         Assert.assertEquals(
                 propertyNameMapping.get(PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS),
                 PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS_DISPLAYED_NAME
@@ -313,12 +408,16 @@ public class PasswordChangeHandlerTest {
                 propertyNameMapping.get(PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS),
                 PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS_DISPLAYED_NAME
         );
+        Assert.assertEquals(
+                propertyNameMapping.get(PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE),
+                PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE_DISPLAYED_NAME
+        );
     }
 
     @Test
     public void testGetPropertyDescriptionMapping() {
         Map<String, String> propertyDescriptionMapping = passwordChangeHandler.getPropertyDescriptionMapping();
-        Assert.assertEquals(propertyDescriptionMapping.size(), 3);
+        Assert.assertEquals(propertyDescriptionMapping.size(), 4);
         Assert.assertEquals(
                 propertyDescriptionMapping.get(PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS),
                 PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS_DESCRIPTION
@@ -331,15 +430,20 @@ public class PasswordChangeHandlerTest {
                 propertyDescriptionMapping.get(PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS),
                 PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS_DESCRIPTION
         );
+        Assert.assertEquals(
+                propertyDescriptionMapping.get(PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE),
+                PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE_DESCRIPTION
+        );
     }
 
     @Test
     public void testGetPropertyNames() {
         String[] propertyNames = passwordChangeHandler.getPropertyNames();
-        Assert.assertEquals(propertyNames.length, 3);
+        Assert.assertEquals(propertyNames.length, 4);
         Assert.assertEquals(propertyNames[0], PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS);
         Assert.assertEquals(propertyNames[1], PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS);
         Assert.assertEquals(propertyNames[2], PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS);
+        Assert.assertEquals(propertyNames[3], PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE);
     }
 
     @Test
@@ -360,7 +464,7 @@ public class PasswordChangeHandlerTest {
         when(moduleConfiguration.getModuleProperties()).thenReturn(moduleProperties);
 
         Properties defaultPropertyValues = passwordChangeHandler.getDefaultPropertyValues(TENANT_DOMAIN);
-        Assert.assertEquals(defaultPropertyValues.size(), 3);
+        Assert.assertEquals(defaultPropertyValues.size(), 4);
         Assert.assertEquals(
                 defaultPropertyValues.get(PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS),
                 "30"
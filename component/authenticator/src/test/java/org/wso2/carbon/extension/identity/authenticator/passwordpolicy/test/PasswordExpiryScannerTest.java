@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.scan.ExpiringUser;
+import org.wso2.carbon.identity.policy.password.scan.ExpiryScanListener;
+import org.wso2.carbon.identity.policy.password.scan.ExpiryScanProgress;
+import org.wso2.carbon.identity.policy.password.scan.ExpiryScanRequest;
+import org.wso2.carbon.identity.policy.password.scan.PasswordExpiryScanner;
+import org.wso2.carbon.identity.policy.password.scan.UserListPager;
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserRealm;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.service.RealmService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests for the bulk password expiry scans
+ */
+@PrepareForTest({IdentityTenantUtil.class, PasswordPolicyUtils.class})
+public class PasswordExpiryScannerTest {
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final int TENANT_ID = -1234;
+    private static final String OTHER_TENANT_DOMAIN = "wso2.com";
+    private static final int OTHER_TENANT_ID = 1;
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789";
+    private static final int MAX_USER_LIST = 20;
+
+    @Mock
+    private RealmService realmService;
+
+    @Mock
+    private UserRealm userRealm;
+
+    @Mock
+    private UserStoreManager userStoreManager;
+
+    private final List<String> usernames = new ArrayList<>();
+    private final Map<String, String> lastPasswordUpdateTimes = new HashMap<>();
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        initMocks(this);
+        mockStatic(IdentityTenantUtil.class);
+        mockStatic(PasswordPolicyUtils.class);
+        when(IdentityTenantUtil.getRealmService()).thenReturn(realmService);
+        when(IdentityTenantUtil.getTenantId(TENANT_DOMAIN)).thenReturn(TENANT_ID);
+        when(realmService.getTenantUserRealm(TENANT_ID)).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        UserStoreManagerCache.getInstance().clear();
+        PasswordPolicyConfigManager.getInstance().updateConfig(TENANT_DOMAIN, new PasswordPolicyConfig(30, false, 0));
+
+        RealmConfiguration realmConfiguration = new RealmConfiguration();
+        realmConfiguration.getUserStoreProperties()
+                .put(UserCoreConstants.RealmConfig.PROPERTY_MAX_USER_LIST, Integer.toString(MAX_USER_LIST));
+        when(userStoreManager.getRealmConfiguration()).thenReturn(realmConfiguration);
+
+        usernames.clear();
+        lastPasswordUpdateTimes.clear();
+        when(userStoreManager.listUsers(anyString(), anyInt())).thenAnswer(new Answer<String[]>() {
+            @Override
+            public String[] answer(InvocationOnMock invocation) {
+                String filter = ((String) invocation.getArguments()[0]).toLowerCase(Locale.ENGLISH);
+                int limit = Math.min((Integer) invocation.getArguments()[1], MAX_USER_LIST);
+                List<String> matches = new ArrayList<>();
+                for (String username : usernames) {
+                    String name = username.toLowerCase(Locale.ENGLISH);
+                    boolean matched = filter.endsWith("*") ? name.startsWith(filter.substring(0, filter.length() - 1))
+                            : name.equals(filter);
+                    if (matched && matches.size() < limit) {
+                        matches.add(username);
+                    }
+                }
+                return matches.toArray(new String[matches.size()]);
+            }
+        });
+        when(userStoreManager.getUserClaimValues(anyString(), any(String[].class), anyString()))
+                .thenAnswer(new Answer<Map<String, String>>() {
+                    @Override
+                    public Map<String, String> answer(InvocationOnMock invocation) {
+                        Map<String, String> claims = new HashMap<>();
+                        String lastPasswordUpdateTime = lastPasswordUpdateTimes.get(invocation.getArguments()[0]);
+                        if (lastPasswordUpdateTime != null) {
+                            claims.put(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM,
+                                    lastPasswordUpdateTime);
+                        }
+                        return claims;
+                    }
+                });
+    }
+
+    @Test
+    public void testPagerListsEachUserOnce() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            usernames.add("user" + i);
+        }
+        usernames.add("u");
+        usernames.add("User_Admin");
+        Collections.sort(usernames);
+
+        UserListPager pager = new UserListPager(userStoreManager, "PRIMARY", 100, ALPHABET);
+        Set<String> listedUsernames = new HashSet<>();
+        List<String> page;
+        while ((page = pager.nextPage()) != null) {
+            Assert.assertTrue(page.size() <= MAX_USER_LIST, "The page is larger than the user store limit");
+            for (String username : page) {
+                Assert.assertTrue(listedUsernames.add(username), "Listed twice: " + username);
+            }
+        }
+        Assert.assertEquals(listedUsernames, new HashSet<>(usernames));
+    }
+
+    @Test
+    public void testScanReportsExpiringUsers() throws Exception {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            usernames.add("user" + i);
+            // One user in ten changed the password 40 days ago, and one has never changed it
+            long lastPasswordUpdateTime = now - TimeUnit.DAYS.toMillis(i % 10 == 0 ? 40 : 1);
+            if (i != 5) {
+                lastPasswordUpdateTimes.put("user" + i, Long.toString(lastPasswordUpdateTime));
+            }
+        }
+
+        final Set<String> expiringUsernames = Collections.synchronizedSet(new HashSet<String>());
+        ExpiryScanProgress progress = PasswordExpiryScanner.getInstance().scanAndWait(
+                new ExpiryScanRequest(TENANT_DOMAIN, now), new ExpiryScanListener() {
+                    @Override
+                    public void onUser(ExpiringUser user) {
+                        expiringUsernames.add(user.getTenantAwareUsername());
+                    }
+
+                    @Override
+                    public void onProgress(ExpiryScanProgress progress) {
+                    }
+                });
+
+        Assert.assertTrue(progress.isCompleted());
+        Assert.assertEquals(progress.getListedCount(), 100);
+        Assert.assertEquals(progress.getScannedCount(), 100);
+        Assert.assertEquals(progress.getMatchedCount(), 11);
+        Assert.assertEquals(expiringUsernames.size(), 11);
+        Assert.assertTrue(expiringUsernames.contains("user5"));
+        Assert.assertTrue(expiringUsernames.contains("user90"));
+    }
+
+    @Test
+    public void testScanAllReportsExpiringUsersOfEachTenant() throws Exception {
+        when(IdentityTenantUtil.getTenantId(OTHER_TENANT_DOMAIN)).thenReturn(OTHER_TENANT_ID);
+        when(realmService.getTenantUserRealm(OTHER_TENANT_ID)).thenReturn(userRealm);
+        PasswordPolicyConfigManager.getInstance().updateConfig(OTHER_TENANT_DOMAIN,
+                new PasswordPolicyConfig(60, false, 0));
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            usernames.add("user" + i);
+            // Expired in the tenant with a 30 day policy, but not in the tenant with a 60 day policy
+            lastPasswordUpdateTimes.put("user" + i, Long.toString(now - TimeUnit.DAYS.toMillis(i < 10 ? 90 : 40)));
+        }
+
+        final Map<String, Set<String>> expiringUsernames = new ConcurrentHashMap<>();
+        expiringUsernames.put(TENANT_DOMAIN, Collections.synchronizedSet(new HashSet<String>()));
+        expiringUsernames.put(OTHER_TENANT_DOMAIN, Collections.synchronizedSet(new HashSet<String>()));
+        List<ExpiryScanProgress> results = PasswordExpiryScanner.getInstance().scanAllAndWait(
+                Arrays.asList(new ExpiryScanRequest(TENANT_DOMAIN, now),
+                        new ExpiryScanRequest(OTHER_TENANT_DOMAIN, now)), new ExpiryScanListener() {
+                    @Override
+                    public void onUser(ExpiringUser user) {
+                        expiringUsernames.get(user.getTenantDomain()).add(user.getTenantAwareUsername());
+                    }
+
+                    @Override
+                    public void onProgress(ExpiryScanProgress progress) {
+                    }
+                });
+
+        Assert.assertEquals(results.size(), 2);
+        Assert.assertEquals(results.get(0).getTenantDomain(), TENANT_DOMAIN);
+        Assert.assertEquals(results.get(0).getMatchedCount(), 100);
+        Assert.assertEquals(results.get(1).getTenantDomain(), OTHER_TENANT_DOMAIN);
+        Assert.assertEquals(results.get(1).getMatchedCount(), 10);
+        Assert.assertEquals(expiringUsernames.get(TENANT_DOMAIN).size(), 100);
+        Assert.assertEquals(expiringUsernames.get(OTHER_TENANT_DOMAIN).size(), 10);
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+        return new PowerMockObjectFactory();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.pattern.PasswordMatcher;
+import org.wso2.carbon.identity.policy.password.pattern.PasswordMatcherCompiler;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for the linear time password format matchers
+ */
+public class PasswordMatcherTest {
+    private static final String[] LINEAR_TIME_FORMATS = new String[]{
+            "^[\\S]{5,30}$",
+            "^(?=.*[A-Z])(?=.*\\d).{8,}$",
+            "^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d)(?=.*[!@#$%^&*]).{8,64}$",
+            "^(?!.*(?:password|123)).{6,}$",
+            "(?i)^[a-z][a-z0-9_]{3,15}$",
+            "^[\\p{Alnum}\\p{Punct}]{8,}$",
+            "^(?:\\d{4}|[a-f]+)$|^x.*",
+            "(a+)+b",
+            "^[^\\s'\"]+\\.?$"
+    };
+
+    private static final String[] BACKTRACKING_FORMATS = new String[]{
+            "^(\\w)\\1.*$",
+            "(?<=a)b",
+            "\\bpass\\b",
+            "a++b",
+            "^(?=.{8,20}$).*",
+            "(?i)(?=\\p{Cntrl}$)\\s*?$"
+    };
+
+    private static final char[] ALPHABET = "aAbBxz019_!.' \n\u00e9".toCharArray();
+
+    @Test
+    public void testLinearTimeFormatsMatchAsJavaRegex() {
+        Random random = new Random(1234);
+        for (String format : LINEAR_TIME_FORMATS) {
+            Pattern pattern = Pattern.compile(format);
+            PasswordMatcher matcher = PasswordMatcherCompiler.compile(format, 0);
+            Assert.assertTrue(matcher.isLinearTime(), format);
+            for (int i = 0; i < 2000; i++) {
+                String password = randomPassword(random);
+                Assert.assertEquals(matcher.matches(password), pattern.matcher(password).matches(),
+                        format + " on " + password);
+            }
+        }
+    }
+
+    @Test
+    public void testBackTrackingFormatsMatchAsJavaRegex() {
+        Random random = new Random(1234);
+        for (String format : BACKTRACKING_FORMATS) {
+            Pattern pattern = Pattern.compile(format);
+            PasswordMatcher matcher = PasswordMatcherCompiler.compile(format, 1000);
+            Assert.assertFalse(matcher.isLinearTime(), format);
+            for (int i = 0; i < 200; i++) {
+                String password = randomPassword(random);
+                Assert.assertEquals(matcher.matches(password), pattern.matcher(password).matches(),
+                        format + " on " + password);
+            }
+        }
+    }
+
+    @Test
+    public void testSurrogatePairIsOneCharacter() {
+        PasswordMatcher matcher = PasswordMatcherCompiler.compile("^.{3}$", 0);
+        Assert.assertTrue(matcher.isLinearTime());
+        Assert.assertTrue(matcher.matches("ab\ud83d\ude00"));
+        Assert.assertFalse(matcher.matches("abc\ud83d\ude00"));
+    }
+
+    @Test
+    public void testLookaheadEndMatchesBeforeFinalLineTerminator() {
+        Pattern pattern = Pattern.compile("^(?=.{3}$).*\\s*");
+        PasswordMatcher matcher = PasswordMatcherCompiler.compile(pattern.pattern(), 1000);
+        for (String password : new String[]{"abc", "abc\n", "abc\r\n", "ab\r\n", "abcd\n"}) {
+            Assert.assertEquals(matcher.matches(password), pattern.matcher(password).matches(), password);
+        }
+        Assert.assertTrue(matcher.matches("abc\n"));
+    }
+
+    @Test
+    public void testCatastrophicBacktrackingIsBounded() {
+        String password = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!";
+
+        PasswordMatcher matcher = PasswordMatcherCompiler.compile("^(a+)+$", 100);
+        Assert.assertTrue(matcher.isLinearTime());
+        Assert.assertFalse(matcher.matches(password));
+
+        PasswordMatcher backtrackingMatcher = PasswordMatcherCompiler.compile("^(a+)+\\1$", 100);
+        Assert.assertFalse(backtrackingMatcher.isLinearTime());
+        long start = System.currentTimeMillis();
+        Assert.assertFalse(backtrackingMatcher.matches(password));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    private String randomPassword(Random random) {
+        char[] password = new char[random.nextInt(20)];
+        for (int i = 0; i < password.length; i++) {
+            password[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(password);
+    }
+}
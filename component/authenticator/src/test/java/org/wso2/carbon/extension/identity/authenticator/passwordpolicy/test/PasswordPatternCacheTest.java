@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.cache.PasswordPatternCache;
+import org.wso2.carbon.identity.policy.password.cache.PasswordPatternRule;
+import org.wso2.carbon.user.api.RealmConfiguration;
+
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+/**
+ * Tests for the compiled password format rule cache
+ */
+@PrepareForTest({PasswordPolicyUtils.class})
+public class PasswordPatternCacheTest {
+    private static final int TENANT_ID = -1234;
+    private static final String DOMAIN = "PRIMARY";
+    private static final String REGULAR_EXPRESSION = "^[\\S]{5,30}$";
+
+    private PasswordPatternCache passwordPatternCache;
+
+    @BeforeMethod
+    public void setUp() {
+        mockStatic(PasswordPolicyUtils.class);
+        passwordPatternCache = PasswordPatternCache.getInstance();
+        passwordPatternCache.clear();
+    }
+
+    @Test
+    public void testGetRuleIsCompiledOnce() {
+        RealmConfiguration realmConfiguration = createRealmConfiguration(REGULAR_EXPRESSION, null);
+        long misses = passwordPatternCache.getMissCount();
+        long hits = passwordPatternCache.getHitCount();
+
+        PasswordPatternRule rule = passwordPatternCache.getRule(TENANT_ID, DOMAIN, realmConfiguration);
+        Assert.assertTrue(rule.hasPattern());
+        Assert.assertTrue(rule.getMatcher().matches("123456"));
+        Assert.assertFalse(rule.getMatcher().matches("123"));
+        Assert.assertTrue(rule.getMatcher().isLinearTime());
+        Assert.assertTrue(rule.getMatcher().matches("123456"));
+
+        Assert.assertSame(passwordPatternCache.getRule(TENANT_ID, DOMAIN, realmConfiguration), rule);
+        Assert.assertSame(passwordPatternCache.getRule(TENANT_ID, "primary", realmConfiguration), rule);
+        Assert.assertEquals(passwordPatternCache.getMissCount() - misses, 1);
+        Assert.assertEquals(passwordPatternCache.getHitCount() - hits, 2);
+    }
+
+    @Test
+    public void testGetRuleWithChangedRealmConfiguration() {
+        RealmConfiguration realmConfiguration = createRealmConfiguration(REGULAR_EXPRESSION, null);
+        PasswordPatternRule rule = passwordPatternCache.getRule(TENANT_ID, DOMAIN, realmConfiguration);
+
+        RealmConfiguration redeployedRealmConfiguration = createRealmConfiguration("^[\\S]{8,30}$", "Too short");
+        PasswordPatternRule recompiledRule = passwordPatternCache.getRule(TENANT_ID, DOMAIN,
+                redeployedRealmConfiguration);
+        Assert.assertNotSame(recompiledRule, rule);
+        Assert.assertFalse(recompiledRule.getMatcher().matches("123456"));
+        Assert.assertEquals(recompiledRule.getViolationErrorMessage(), "Too short");
+    }
+
+    @Test
+    public void testGetRuleWithoutRegularExpression() {
+        RealmConfiguration realmConfiguration = createRealmConfiguration(null, null);
+        PasswordPatternRule rule = passwordPatternCache.getRule(TENANT_ID, DOMAIN, realmConfiguration);
+        Assert.assertFalse(rule.hasPattern());
+    }
+
+    @Test
+    public void testGetRuleIsScopedByTenantAndDomain() {
+        RealmConfiguration realmConfiguration = createRealmConfiguration(REGULAR_EXPRESSION, null);
+        PasswordPatternRule rule = passwordPatternCache.getRule(TENANT_ID, DOMAIN, realmConfiguration);
+        long misses = passwordPatternCache.getMissCount();
+
+        passwordPatternCache.getRule(1, DOMAIN, realmConfiguration);
+        passwordPatternCache.getRule(TENANT_ID, "SECONDARY", realmConfiguration);
+        Assert.assertEquals(passwordPatternCache.getMissCount() - misses, 2);
+
+        passwordPatternCache.invalidate(TENANT_ID, DOMAIN);
+        Assert.assertNotSame(passwordPatternCache.getRule(TENANT_ID, DOMAIN, realmConfiguration), rule);
+    }
+
+    private RealmConfiguration createRealmConfiguration(String regularExpression, String violationErrorMessage) {
+        RealmConfiguration realmConfiguration = new RealmConfiguration();
+        if (regularExpression != null) {
+            realmConfiguration.getUserStoreProperties()
+                    .put(PasswordPolicyConstants.PASSWORD_JAVA_REG_EX_PROPERTY, regularExpression);
+        }
+        if (violationErrorMessage != null) {
+            realmConfiguration.getUserStoreProperties()
+                    .put(PasswordPolicyConstants.PASSWORD_JAVA_REG_EX_VIOLATION_ERROR_MSG_PROPERTY,
+                            violationErrorMessage);
+        }
+        return realmConfiguration;
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+        return new PowerMockObjectFactory();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.common.model.Property;
+import org.wso2.carbon.identity.governance.IdentityGovernanceException;
+import org.wso2.carbon.identity.governance.IdentityGovernanceService;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.internal.PasswordPolicyDataHolder;
+import org.wso2.carbon.identity.policy.password.listener.PasswordPolicyResidentIdPListener;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests for the password expiry policy snapshots
+ */
+@PrepareForTest({PasswordPolicyUtils.class})
+public class PasswordPolicyConfigManagerTest {
+    private static final String TENANT_DOMAIN = "carbon.super";
+
+    private static final String[] PROPERTY_NAMES = new String[]{
+            PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS,
+            PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS,
+            PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS,
+            PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE
+    };
+
+    @Mock
+    private IdentityGovernanceService identityGovernanceService;
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        mockStatic(PasswordPolicyUtils.class);
+        PasswordPolicyDataHolder.getInstance().setIdentityGovernanceService(identityGovernanceService);
+        PasswordPolicyConfigManager.getInstance().clear();
+    }
+
+    @Test
+    public void testGetDefaultConfig() {
+        when(PasswordPolicyUtils.getIdentityEventProperty(TENANT_DOMAIN,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS)).thenReturn("45");
+        when(PasswordPolicyUtils.getIdentityEventProperty(TENANT_DOMAIN,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS)).thenReturn("true");
+        when(PasswordPolicyUtils.getIdentityEventProperty(TENANT_DOMAIN,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_REMINDER_TIME_IN_DAYS)).thenReturn("5");
+
+        PasswordPolicyConfig config = PasswordPolicyConfigManager.getInstance().getDefaultConfig(TENANT_DOMAIN);
+        Assert.assertEquals(config.getPasswordExpiryInDays(), 45);
+        Assert.assertTrue(config.isEnableEmailNotifications());
+        Assert.assertEquals(config.getPriorReminderTimeInDays(), 5);
+
+        // The snapshot is reused until it is cleared
+        Assert.assertSame(PasswordPolicyConfigManager.getInstance().getDefaultConfig(TENANT_DOMAIN), config);
+        PasswordPolicyConfigManager.getInstance().clear();
+        Assert.assertNotSame(PasswordPolicyConfigManager.getInstance().getDefaultConfig(TENANT_DOMAIN), config);
+    }
+
+    @Test
+    public void testGetDefaultConfigWithoutModuleConfiguration() {
+        PasswordPolicyConfig config = PasswordPolicyConfigManager.getInstance().getDefaultConfig(TENANT_DOMAIN);
+        Assert.assertEquals(config.getPasswordExpiryInDays(),
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS_DEFAULT_VALUE);
+        Assert.assertEquals(config.isEnableEmailNotifications(),
+                PasswordPolicyConstants.CONNECTOR_CONFIG_ENABLE_EMAIL_NOTIFICATIONS_DEFAULT_VALUE);
+        Assert.assertEquals(config.getPriorReminderTimeInDays(),
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_NOTICE_TIME_IN_DAYS_DEFAULT_VALUE);
+    }
+
+    @Test
+    public void testGetDefaultConfigWithInvalidValue() {
+        when(PasswordPolicyUtils.getIdentityEventProperty(TENANT_DOMAIN,
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS)).thenReturn("thirty");
+
+        PasswordPolicyConfig config = PasswordPolicyConfigManager.getInstance().getDefaultConfig(TENANT_DOMAIN);
+        Assert.assertEquals(config.getPasswordExpiryInDays(),
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS_DEFAULT_VALUE);
+    }
+
+    @Test
+    public void testUpdateConfig() {
+        PasswordPolicyConfig config = new PasswordPolicyConfig(10, false, 2);
+        PasswordPolicyConfigManager.getInstance().updateConfig(TENANT_DOMAIN, config);
+        Assert.assertSame(PasswordPolicyConfigManager.getInstance().getConfig(TENANT_DOMAIN), config);
+        Assert.assertEquals(config.toProperties()
+                .getProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS), "10");
+    }
+
+    @Test
+    public void testGetConfigFromGovernanceService() throws Exception {
+        when(PasswordPolicyUtils.getPasswordExpiryPropertyNames()).thenReturn(PROPERTY_NAMES);
+        when(identityGovernanceService.getConfiguration(PROPERTY_NAMES, TENANT_DOMAIN)).thenReturn(new Property[]{
+                createProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS, "60"),
+                createProperty(PasswordPolicyConstants.CONNECTOR_CONFIG_MIN_EDIT_DISTANCE, "3")
+        });
+
+        PasswordPolicyConfig config = PasswordPolicyConfigManager.getInstance().getConfig(TENANT_DOMAIN);
+        Assert.assertEquals(config.getPasswordExpiryInDays(), 60);
+        Assert.assertEquals(config.getMinEditDistance(), 3);
+        Assert.assertEquals(config.getPriorReminderTimeInDays(),
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PRIOR_NOTICE_TIME_IN_DAYS_DEFAULT_VALUE);
+
+        // The tenant configuration is resolved again only after it is invalidated
+        Assert.assertSame(PasswordPolicyConfigManager.getInstance().getConfig(TENANT_DOMAIN), config);
+        verify(identityGovernanceService, times(1)).getConfiguration(PROPERTY_NAMES, TENANT_DOMAIN);
+
+        new PasswordPolicyResidentIdPListener().doPostUpdateResidentIdP(null, TENANT_DOMAIN);
+        PasswordPolicyConfigManager.getInstance().getConfig(TENANT_DOMAIN);
+        verify(identityGovernanceService, times(2)).getConfiguration(PROPERTY_NAMES, TENANT_DOMAIN);
+    }
+
+    @Test
+    public void testGetConfigWithGovernanceServiceError() throws IdentityGovernanceException {
+        when(PasswordPolicyUtils.getPasswordExpiryPropertyNames()).thenReturn(PROPERTY_NAMES);
+        when(identityGovernanceService.getConfiguration(PROPERTY_NAMES, TENANT_DOMAIN))
+                .thenThrow(new IdentityGovernanceException("Dummy exception"));
+
+        PasswordPolicyConfig config = PasswordPolicyConfigManager.getInstance().getConfig(TENANT_DOMAIN);
+        Assert.assertEquals(config.getPasswordExpiryInDays(),
+                PasswordPolicyConstants.CONNECTOR_CONFIG_PASSWORD_EXPIRY_IN_DAYS_DEFAULT_VALUE);
+
+        // Failures are not cached
+        PasswordPolicyConfigManager.getInstance().getConfig(TENANT_DOMAIN);
+        verify(identityGovernanceService, times(2)).getConfiguration(PROPERTY_NAMES, TENANT_DOMAIN);
+    }
+
+    private Property createProperty(String name, String value) {
+        Property property = new Property();
+        property.setName(name);
+        property.setValue(value);
+        return property;
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+        return new PowerMockObjectFactory();
+    }
+}
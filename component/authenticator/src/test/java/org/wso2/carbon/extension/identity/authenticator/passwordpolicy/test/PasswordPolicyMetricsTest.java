@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.metrics.CounterMetric;
+import org.wso2.carbon.identity.policy.password.metrics.DefaultMetricsRegistry;
+import org.wso2.carbon.identity.policy.password.metrics.LatencyHistogram;
+import org.wso2.carbon.identity.policy.password.metrics.LatencyMetric;
+import org.wso2.carbon.identity.policy.password.metrics.MetricsRegistry;
+import org.wso2.carbon.identity.policy.password.metrics.PasswordPolicyMetrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Tests for the measurements of the connector
+ */
+public class PasswordPolicyMetricsTest {
+    private static final String TENANT_DOMAIN = "carbon.super";
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        Assert.assertEquals(histogram.getCount(), 100);
+        Assert.assertEquals(histogram.getMaxInMicros(), 50000);
+        // 100 microseconds falls in the bucket from 64 to 127 microseconds
+        Assert.assertEquals(histogram.getPercentileInMicros(50), 127);
+        Assert.assertEquals(histogram.getPercentileInMicros(99), 127);
+        Assert.assertEquals(histogram.getPercentileInMicros(100), 50000);
+        Assert.assertEquals(histogram.getMeanInMicros(), 599.0, 0.001);
+    }
+
+    @Test
+    public void testCountersArePerTenant() {
+        DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+        registry.increment(CounterMetric.EXPIRED, TENANT_DOMAIN);
+        registry.increment(CounterMetric.EXPIRED, TENANT_DOMAIN);
+        registry.increment(CounterMetric.NOT_EXPIRED, "wso2.com");
+
+        Assert.assertEquals(registry.getCount(CounterMetric.EXPIRED, TENANT_DOMAIN), 2);
+        Assert.assertEquals(registry.getCount(CounterMetric.EXPIRED, "wso2.com"), 0);
+        Assert.assertEquals(registry.getNotExpiredCounts().get("wso2.com"), Long.valueOf(1));
+
+        registry.reset();
+        Assert.assertEquals(registry.getCount(CounterMetric.EXPIRED, TENANT_DOMAIN), 0);
+    }
+
+    @Test
+    public void testPluggableRegistry() {
+        final AtomicInteger latencies = new AtomicInteger();
+        final AtomicInteger counts = new AtomicInteger();
+        MetricsRegistry registry = new MetricsRegistry() {
+            @Override
+            public void recordLatency(LatencyMetric metric, String tenantDomain, long latencyInNanos) {
+                latencies.incrementAndGet();
+            }
+
+            @Override
+            public void increment(CounterMetric metric, String tenantDomain) {
+                counts.incrementAndGet();
+            }
+        };
+
+        PasswordPolicyMetrics metrics = PasswordPolicyMetrics.getInstance();
+        metrics.addRegistry(registry);
+        metrics.recordLatency(LatencyMetric.CLAIM_READ, TENANT_DOMAIN, System.nanoTime());
+        metrics.increment(CounterMetric.FAILURE, null);
+        Assert.assertEquals(latencies.get(), 1);
+        Assert.assertEquals(counts.get(), 1);
+        Assert.assertTrue(metrics.getDefaultRegistry().getFailureCounts()
+                .containsKey(PasswordPolicyMetrics.UNKNOWN_TENANT));
+
+        metrics.removeRegistry(registry);
+        metrics.increment(CounterMetric.FAILURE, TENANT_DOMAIN);
+        Assert.assertEquals(counts.get(), 1);
+    }
+
+    @Test
+    public void testMetricsAreExposedThroughJmx() throws Exception {
+        DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+        registry.recordLatency(LatencyMetric.CLAIM_WRITE, TENANT_DOMAIN, TimeUnit.MICROSECONDS.toNanos(10));
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.wso2.carbon.identity.policy.password.test:type=Metrics");
+        mBeanServer.registerMBean(registry, objectName);
+        try {
+            CompositeData latency = (CompositeData) mBeanServer.getAttribute(objectName, "ClaimWriteLatency");
+            Assert.assertEquals(latency.get("count"), 1L);
+            Assert.assertEquals(latency.get("maxInMicros"), 10L);
+        } finally {
+            mBeanServer.unregisterMBean(objectName);
+        }
+    }
+}
@@ -21,6 +21,8 @@ package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.testng.PowerMockObjectFactory;
 import org.powermock.reflect.Whitebox;
@@ -43,8 +45,13 @@ import org.wso2.carbon.identity.application.authentication.framework.model.Authe
 import org.wso2.carbon.identity.application.authentication.framework.util.FrameworkUtils;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.governance.IdentityGovernanceService;
+import org.wso2.carbon.identity.policy.password.PasswordExpiryDecision;
 import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
 import org.wso2.carbon.identity.policy.password.PasswordResetEnforcer;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfigManager;
+import org.wso2.carbon.identity.policy.password.deadline.PasswordExpiryDeadline;
 import org.wso2.carbon.identity.policy.password.internal.PasswordPolicyDataHolder;
 import org.wso2.carbon.user.api.RealmConfiguration;
 import org.wso2.carbon.user.core.UserRealm;
@@ -55,11 +62,16 @@ import org.wso2.carbon.utils.CarbonUtils;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.doThrow;
@@ -345,6 +357,73 @@ public class PasswordResetEnforcerTest {
                 .sendRedirect(Matchers.matches(".*&authFailure=true&authFailureMsg=.*"));
     }
 
+    @Test
+    public void testInitiateAuthRequestWithExpiryDecision() throws Exception {
+        mockStatic(ConfigurationFacade.class);
+        mockStatic(FrameworkUtils.class);
+
+        when(context.getSequenceConfig()).thenReturn(sequenceConfig);
+        when(sequenceConfig.getStepMap()).thenReturn(mockedMap);
+        when(mockedMap.get(anyObject())).thenReturn(stepConfig);
+        AuthenticatedUser user = AuthenticatedUser.createLocalAuthenticatedUserFromSubjectIdentifier("admin");
+        when(stepConfig.getAuthenticatedAutenticator()).thenReturn(authenticatorConfig);
+        when(authenticatorConfig.getApplicationAuthenticator()).thenReturn(localApplicationAuthenticator);
+        when(stepConfig.getAuthenticatedUser()).thenReturn(user);
+        when(ConfigurationFacade.getInstance()).thenReturn(configurationFacade);
+        when(configurationFacade.getAuthenticationEndpointURL()).thenReturn("login.do");
+
+        // The decision made earlier in the flow is reused without reading the user store
+        context.setProperty(PasswordPolicyConstants.PASSWORD_EXPIRY_DECISION,
+                new PasswordExpiryDecision("carbon.super", "admin", 1461315067665L, 30, true));
+        when(context.isRetrying()).thenReturn(true);
+        AuthenticatorFlowStatus status = Whitebox.invokeMethod(passwordResetEnforcer, "initiateAuthRequest",
+                httpServletResponse, context, "");
+        Assert.assertEquals(status, AuthenticatorFlowStatus.INCOMPLETE);
+        verify(httpServletResponse, times(1))
+                .sendRedirect(Matchers.matches(".*&authFailure=true&authFailureMsg=.*"));
+
+        context.setProperty(PasswordPolicyConstants.PASSWORD_EXPIRY_DECISION,
+                new PasswordExpiryDecision("carbon.super", "admin", System.currentTimeMillis(), 30, false));
+        status = Whitebox.invokeMethod(passwordResetEnforcer, "initiateAuthRequest", httpServletResponse, context,
+                "");
+        Assert.assertEquals(status, AuthenticatorFlowStatus.SUCCESS_COMPLETED);
+    }
+
+    @Test
+    public void testEvaluatePasswordExpiryAtTheDeadline() throws Exception {
+        mockStatic(IdentityTenantUtil.class);
+        when(IdentityTenantUtil.getTenantId("carbon.super")).thenReturn(-1234);
+        when(IdentityTenantUtil.getRealmService()).thenReturn(realmService);
+        when(realmService.getTenantUserRealm(-1234)).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        when(userStoreManager.getRealmConfiguration()).thenReturn(realmConfiguration);
+        UserStoreManagerCache.getInstance().clear();
+        PasswordPolicyConfigManager.getInstance().updateConfig("carbon.super", new PasswordPolicyConfig(30, false, 0));
+
+        // The password of bob reaches its deadline now, while that of alice has a minute left
+        long expiredTime = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(31);
+        long validTime = expiredTime + TimeUnit.MINUTES.toMillis(1);
+        final Map<String, String> lastPasswordUpdateTimes = new HashMap<>();
+        lastPasswordUpdateTimes.put("alice", Long.toString(validTime));
+        lastPasswordUpdateTimes.put("bob", Long.toString(expiredTime));
+        when(userStoreManager.getUserClaimValues(anyString(), any(String[].class), anyString()))
+                .thenAnswer(new Answer<Map<String, String>>() {
+                    @Override
+                    public Map<String, String> answer(InvocationOnMock invocation) {
+                        return Collections.singletonMap(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM,
+                                lastPasswordUpdateTimes.get(invocation.getArguments()[0]));
+                    }
+                });
+
+        PasswordExpiryDecision decision = Whitebox.invokeMethod(passwordResetEnforcer, "evaluatePasswordExpiry",
+                "carbon.super", "alice");
+        Assert.assertFalse(decision.isExpired());
+        Assert.assertEquals(decision.getDeadline(), Long.valueOf(PasswordExpiryDeadline.getDeadline(validTime, 30)));
+        decision = Whitebox.invokeMethod(passwordResetEnforcer, "evaluatePasswordExpiry", "carbon.super", "bob");
+        Assert.assertTrue(decision.isExpired());
+        Assert.assertTrue(PasswordExpiryDeadline.getDeadline(expiredTime, 30) <= System.currentTimeMillis());
+    }
+
     @Test
     public void testProcessAuthenticationResponse() throws Exception {
         mockStatic(IdentityTenantUtil.class);
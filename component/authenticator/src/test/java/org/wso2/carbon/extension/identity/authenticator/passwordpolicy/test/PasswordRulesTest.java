@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.pattern.PasswordRuleViolation;
+import org.wso2.carbon.identity.policy.password.pattern.PasswordRules;
+
+/**
+ * Tests for the structured password rules
+ */
+public class PasswordRulesTest {
+
+    @Test
+    public void testWithoutRules() {
+        PasswordRules rules = PasswordRules.compile(0, 0, null, 0, " , ");
+        Assert.assertTrue(rules.isEmpty());
+        Assert.assertEquals(rules.evaluate("a".toCharArray()), 0);
+    }
+
+    @Test
+    public void testAllViolationsAreReported() {
+        PasswordRules rules = PasswordRules.compile(8, 16, "lower, upper,digit,special", 2, "password,qwerty");
+        Assert.assertEquals(rules.evaluate("Secret#2024".toCharArray()), 0);
+
+        int violations = rules.evaluate("paSSSword".toCharArray());
+        Assert.assertTrue(PasswordRuleViolation.MISSING_DIGIT.isIn(violations));
+        Assert.assertTrue(PasswordRuleViolation.MISSING_SPECIAL_CHARACTER.isIn(violations));
+        Assert.assertTrue(PasswordRuleViolation.REPEATED_CHARACTERS.isIn(violations));
+        Assert.assertFalse(PasswordRuleViolation.TOO_SHORT.isIn(violations));
+        Assert.assertFalse(PasswordRuleViolation.MISSING_LOWER_CASE.isIn(violations));
+        Assert.assertFalse(PasswordRuleViolation.BANNED_SEQUENCE.isIn(violations));
+        Assert.assertEquals(rules.getViolationMessages(violations).size(), 3);
+
+        violations = rules.evaluate("abc".toCharArray());
+        Assert.assertTrue(PasswordRuleViolation.TOO_SHORT.isIn(violations));
+        Assert.assertTrue(PasswordRuleViolation.MISSING_UPPER_CASE.isIn(violations));
+        Assert.assertTrue(rules.getViolationMessages(violations)
+                .contains("The password must have at least 8 characters."));
+
+        Assert.assertTrue(PasswordRuleViolation.TOO_LONG.isIn(rules.evaluate("Aa1#Aa1#Aa1#Aa1#A".toCharArray())));
+    }
+
+    @Test
+    public void testSurrogatePairIsOneCharacter() {
+        PasswordRules rules = PasswordRules.compile(3, 3, null, 0, null);
+        Assert.assertEquals(rules.evaluate("ab\ud83d\ude00".toCharArray()), 0);
+        Assert.assertTrue(PasswordRuleViolation.TOO_LONG.isIn(rules.evaluate("abc\ud83d\ude00".toCharArray())));
+    }
+
+    @Test
+    public void testBannedSequencesIgnoreCase() {
+        PasswordRules rules = PasswordRules.compile(0, 0, null, 0, "pass, word,sword,1234");
+        Assert.assertTrue(PasswordRuleViolation.BANNED_SEQUENCE.isIn(rules.evaluate("MyPASSphrase".toCharArray())));
+        Assert.assertTrue(PasswordRuleViolation.BANNED_SEQUENCE.isIn(rules.evaluate("xSWORx-Swordfish".toCharArray())));
+        Assert.assertTrue(PasswordRuleViolation.BANNED_SEQUENCE.isIn(rules.evaluate("a112345".toCharArray())));
+        Assert.assertEquals(rules.evaluate("pas-wor-sw0rd-123".toCharArray()), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownRequiredCharacters() {
+        PasswordRules.compile(0, 0, "lower,symbol", 0, null);
+    }
+}
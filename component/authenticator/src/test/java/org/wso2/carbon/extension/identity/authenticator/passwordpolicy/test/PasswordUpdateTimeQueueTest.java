@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeJournal;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeQueue;
+import org.wso2.carbon.identity.policy.password.writebehind.PendingPasswordUpdate;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Tests for the queue of the password update timestamps waiting to be written
+ */
+public class PasswordUpdateTimeQueueTest {
+    private static final String TENANT_DOMAIN = "carbon.super";
+
+    @Test
+    public void testUpdatesOfSameUserAreCoalesced() throws Exception {
+        PasswordUpdateTimeQueue queue = new PasswordUpdateTimeQueue(10, null);
+        Assert.assertTrue(queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "admin", 100L), 0));
+        Assert.assertTrue(queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "PRIMARY/admin", 200L), 0));
+        Assert.assertTrue(queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "SECONDARY/admin", 300L), 0));
+
+        Assert.assertEquals(queue.size(), 2);
+        Assert.assertEquals(queue.getCoalescedCount(), 1);
+        Assert.assertEquals(queue.getPendingTimestamp(PasswordUpdateTimeCache.getUserKey(TENANT_DOMAIN, "admin")),
+                Long.valueOf(200L));
+
+        List<PendingPasswordUpdate> updates = queue.drain(1, 0);
+        Assert.assertEquals(updates.size(), 2);
+        Assert.assertEquals(updates.get(0).getTimestamp(), 200L);
+        Assert.assertEquals(queue.size(), 0);
+        // The drained updates stay visible while they are being written
+        Assert.assertEquals(queue.getPendingTimestamp(PasswordUpdateTimeCache.getUserKey(TENANT_DOMAIN, "admin")),
+                Long.valueOf(200L));
+
+        queue.complete();
+        Assert.assertNull(queue.getPendingTimestamp(PasswordUpdateTimeCache.getUserKey(TENANT_DOMAIN, "admin")));
+    }
+
+    @Test
+    public void testFullQueueRejectsNewUsers() throws Exception {
+        PasswordUpdateTimeQueue queue = new PasswordUpdateTimeQueue(1, null);
+        Assert.assertTrue(queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "admin", 100L), 0));
+        Assert.assertFalse(queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "user1", 100L), 10));
+        Assert.assertEquals(queue.getRejectedCount(), 1);
+
+        // A user which is already queued is coalesced even when the queue is full
+        Assert.assertTrue(queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "admin", 200L), 0));
+        Assert.assertTrue(queue.getLagMillis() >= 0);
+    }
+
+    @Test
+    public void testQueuedUpdatesSurviveRestart() throws Exception {
+        File journalFile = new File(Files.createTempDirectory("password-policy").toFile(), "journal");
+
+        PasswordUpdateTimeQueue queue = new PasswordUpdateTimeQueue(10, new PasswordUpdateTimeJournal(journalFile));
+        queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "admin", 100L), 0);
+        queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "admin", 200L), 0);
+        queue.offer(new PendingPasswordUpdate("wso2.com", "SECONDARY/user1", 300L), 0);
+        queue.close();
+
+        PasswordUpdateTimeQueue recoveredQueue =
+                new PasswordUpdateTimeQueue(10, new PasswordUpdateTimeJournal(journalFile));
+        Assert.assertEquals(recoveredQueue.recover(), 2);
+        Assert.assertEquals(recoveredQueue.getPendingTimestamp(
+                PasswordUpdateTimeCache.getUserKey(TENANT_DOMAIN, "admin")), Long.valueOf(200L));
+        Assert.assertEquals(recoveredQueue.getPendingTimestamp(
+                PasswordUpdateTimeCache.getUserKey("wso2.com", "SECONDARY/user1")), Long.valueOf(300L));
+
+        // The journal is truncated once the drained updates are written
+        recoveredQueue.drain(1, 0);
+        recoveredQueue.complete();
+        recoveredQueue.close();
+        Assert.assertEquals(new PasswordUpdateTimeQueue(10, new PasswordUpdateTimeJournal(journalFile)).recover(), 0);
+    }
+
+    @Test
+    public void testRemovedUserIsNotWrittenOrRecovered() throws Exception {
+        File journalFile = new File(Files.createTempDirectory("password-policy").toFile(), "journal");
+        String userKey = PasswordUpdateTimeCache.getUserKey(TENANT_DOMAIN, "admin");
+
+        PasswordUpdateTimeQueue queue = new PasswordUpdateTimeQueue(10, new PasswordUpdateTimeJournal(journalFile));
+        queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "admin", 100L), 0);
+        queue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "user1", 200L), 0);
+        Assert.assertTrue(queue.remove(TENANT_DOMAIN, "admin"));
+        Assert.assertFalse(queue.remove(TENANT_DOMAIN, "admin"));
+        Assert.assertNull(queue.getPendingTimestamp(userKey));
+        Assert.assertEquals(queue.size(), 1);
+        queue.close();
+
+        PasswordUpdateTimeQueue recoveredQueue =
+                new PasswordUpdateTimeQueue(10, new PasswordUpdateTimeJournal(journalFile));
+        Assert.assertEquals(recoveredQueue.recover(), 1);
+        Assert.assertNull(recoveredQueue.getPendingTimestamp(userKey));
+
+        // A user removed while its update is being written is not retried
+        recoveredQueue.offer(new PendingPasswordUpdate(TENANT_DOMAIN, "admin", 300L), 0);
+        List<PendingPasswordUpdate> updates = recoveredQueue.drain(1, 0);
+        Assert.assertTrue(recoveredQueue.remove(TENANT_DOMAIN, "admin"));
+        for (PendingPasswordUpdate update : updates) {
+            recoveredQueue.requeue(update);
+        }
+        Assert.assertNull(recoveredQueue.getPendingTimestamp(userKey));
+        Assert.assertEquals(recoveredQueue.size(), 1);
+        recoveredQueue.close();
+    }
+}
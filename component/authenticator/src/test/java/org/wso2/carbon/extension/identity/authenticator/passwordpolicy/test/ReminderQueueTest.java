@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.cache.PasswordUpdateTimeCache;
+import org.wso2.carbon.identity.policy.password.reminder.PasswordExpiryReminder;
+import org.wso2.carbon.identity.policy.password.reminder.ReminderJournal;
+import org.wso2.carbon.identity.policy.password.reminder.ReminderQueue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tests for the scheduled password expiry reminders
+ */
+public class ReminderQueueTest {
+    private static final String TENANT_DOMAIN = "carbon.super";
+
+    @Test
+    public void testRemindersAreDueInOrder() {
+        ReminderQueue queue = new ReminderQueue();
+        queue.schedule(new PasswordExpiryReminder(TENANT_DOMAIN, "user1", 10L, 300L));
+        queue.schedule(new PasswordExpiryReminder(TENANT_DOMAIN, "user2", 10L, 100L));
+        queue.schedule(new PasswordExpiryReminder(TENANT_DOMAIN, "user3", 10L, 200L));
+        Assert.assertEquals(queue.getNextReminderTime(), 100L);
+
+        Assert.assertTrue(queue.pollDue(50L, 10).isEmpty());
+        List<PasswordExpiryReminder> dueReminders = queue.pollDue(250L, 10);
+        Assert.assertEquals(dueReminders.size(), 2);
+        Assert.assertEquals(dueReminders.get(0).getTenantAwareUsername(), "user2");
+        Assert.assertEquals(dueReminders.get(1).getTenantAwareUsername(), "user3");
+        Assert.assertEquals(queue.size(), 1);
+        Assert.assertEquals(queue.getNextReminderTime(), 300L);
+
+        Assert.assertEquals(queue.pollDue(1000L, 10).size(), 1);
+        Assert.assertEquals(queue.getNextReminderTime(), -1L);
+    }
+
+    @Test
+    public void testReplacedAndRemovedRemindersAreNotDue() {
+        ReminderQueue queue = new ReminderQueue();
+        queue.schedule(new PasswordExpiryReminder(TENANT_DOMAIN, "user1", 10L, 100L));
+        queue.schedule(new PasswordExpiryReminder(TENANT_DOMAIN, "PRIMARY/user1", 20L, 500L));
+        queue.schedule(new PasswordExpiryReminder(TENANT_DOMAIN, "user2", 10L, 200L));
+        queue.remove(PasswordUpdateTimeCache.getUserKey(TENANT_DOMAIN, "user2"));
+
+        Assert.assertEquals(queue.size(), 1);
+        Assert.assertEquals(queue.getNextReminderTime(), 500L);
+        List<PasswordExpiryReminder> dueReminders = queue.pollDue(1000L, 10);
+        Assert.assertEquals(dueReminders.size(), 1);
+        Assert.assertEquals(dueReminders.get(0).getLastPasswordUpdateTime(), 20L);
+    }
+
+    @Test
+    public void testPollDueIsBounded() {
+        ReminderQueue queue = new ReminderQueue();
+        for (int i = 0; i < 5000; i++) {
+            queue.schedule(new PasswordExpiryReminder(TENANT_DOMAIN, "user" + i, 10L, i));
+            // Replacing the reminders leaves stale entries in the heap until they are compacted
+            queue.schedule(new PasswordExpiryReminder(TENANT_DOMAIN, "user" + i, 20L, 5000 - i));
+        }
+        List<PasswordExpiryReminder> dueReminders = queue.pollDue(5000L, 100);
+        Assert.assertEquals(dueReminders.size(), 100);
+        Assert.assertEquals(dueReminders.get(0).getTenantAwareUsername(), "user4999");
+        Assert.assertEquals(queue.size(), 4900);
+        Assert.assertEquals(queue.getReminders("wso2.com").size(), 0);
+        Assert.assertEquals(queue.getReminders(TENANT_DOMAIN).size(), 4900);
+    }
+
+    @Test
+    public void testRemindersSurviveRestart() throws Exception {
+        File journalFile = new File(Files.createTempDirectory("password-policy").toFile(), "journal");
+
+        ReminderJournal journal = new ReminderJournal(journalFile);
+        PasswordExpiryReminder sentReminder = new PasswordExpiryReminder(TENANT_DOMAIN, "user1", 10L, 100L);
+        journal.appendScheduled(sentReminder);
+        journal.appendScheduled(new PasswordExpiryReminder(TENANT_DOMAIN, "user2", 10L, 100L));
+        journal.appendScheduled(new PasswordExpiryReminder("wso2.com", "SECONDARY/user3", 10L, 100L));
+        journal.appendCompleted(sentReminder);
+        // The password was changed again while the previous reminder was being sent
+        journal.appendScheduled(new PasswordExpiryReminder(TENANT_DOMAIN, "user2", 20L, 200L));
+        journal.appendCompleted(new PasswordExpiryReminder(TENANT_DOMAIN, "user2", 10L, 100L));
+        journal.close();
+
+        ReminderJournal recoveredJournal = new ReminderJournal(journalFile);
+        List<PasswordExpiryReminder> reminders = new ArrayList<>(recoveredJournal.recover());
+        Assert.assertEquals(reminders.size(), 2);
+        Assert.assertEquals(reminders.get(0).getTenantAwareUsername(), "user2");
+        Assert.assertEquals(reminders.get(0).getLastPasswordUpdateTime(), 20L);
+        Assert.assertEquals(reminders.get(1).getTenantDomain(), "wso2.com");
+        Assert.assertEquals(reminders.get(1).getTenantAwareUsername(), "SECONDARY/user3");
+        Assert.assertEquals(recoveredJournal.getLineCount(), 6);
+
+        recoveredJournal.rewrite(reminders);
+        recoveredJournal.close();
+        Collection<PasswordExpiryReminder> compactedReminders = new ReminderJournal(journalFile).recover();
+        Assert.assertEquals(compactedReminders.size(), 2);
+        Assert.assertEquals(Files.readAllLines(journalFile.toPath()).size(), 2);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.PasswordExpiryDecision;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyUtils;
+import org.wso2.carbon.identity.policy.password.cache.SessionExpiryDeadlineCache;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+/**
+ * Tests for the password expiry deadlines recorded in the SSO sessions
+ */
+@PrepareForTest({PasswordPolicyUtils.class})
+public class SessionExpiryDeadlineCacheTest {
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final String SESSION = "5b1c2d9e";
+
+    private SessionExpiryDeadlineCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        mockStatic(PasswordPolicyUtils.class);
+        cache = SessionExpiryDeadlineCache.getInstance();
+        cache.clear();
+    }
+
+    @Test
+    public void testDeadlineIsReusedInTheSession() {
+        PasswordExpiryDecision decision = new PasswordExpiryDecision(TENANT_DOMAIN, "admin",
+                System.currentTimeMillis() - TimeUnit.DAYS.toMillis(10), 30, false);
+        cache.put(SESSION, decision);
+
+        Assert.assertSame(cache.get(SESSION, TENANT_DOMAIN, "admin", 30), decision);
+        Assert.assertSame(cache.get(SESSION, TENANT_DOMAIN, "PRIMARY/admin", 30), decision);
+        Assert.assertNull(cache.get("other-session", TENANT_DOMAIN, "admin", 30));
+        Assert.assertNull(cache.get(SESSION, TENANT_DOMAIN, "alice", 30));
+        Assert.assertNull(cache.get(null, TENANT_DOMAIN, "admin", 30));
+
+        cache.invalidateTenant(TENANT_DOMAIN);
+        Assert.assertNull(cache.get(SESSION, TENANT_DOMAIN, "admin", 30));
+    }
+
+    @Test
+    public void testDeadlineIsDroppedWhenThePolicyChanges() {
+        cache.put(SESSION, new PasswordExpiryDecision(TENANT_DOMAIN, "admin",
+                System.currentTimeMillis() - TimeUnit.DAYS.toMillis(10), 30, false));
+
+        Assert.assertNull(cache.get(SESSION, TENANT_DOMAIN, "admin", 5));
+        Assert.assertNull(cache.get(SESSION, TENANT_DOMAIN, "admin", 30));
+    }
+
+    @Test
+    public void testDeadlineIsDroppedOnceItPasses() {
+        long lastPasswordUpdateTime = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(31);
+        PasswordExpiryDecision decision = new PasswordExpiryDecision(TENANT_DOMAIN, "admin", lastPasswordUpdateTime,
+                30, false);
+        Assert.assertEquals(decision.getDeadline().longValue(), lastPasswordUpdateTime + TimeUnit.DAYS.toMillis(31));
+        cache.put(SESSION, decision);
+        Assert.assertNull(cache.get(SESSION, TENANT_DOMAIN, "admin", 30));
+
+        // The expired passwords are not recorded
+        cache.put(SESSION, new PasswordExpiryDecision(TENANT_DOMAIN, "admin", null, 30, true));
+        Assert.assertNull(cache.get(SESSION, TENANT_DOMAIN, "admin", 30));
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+        return new PowerMockObjectFactory();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.cache.SingleFlight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the coalescing of the concurrent loads of the same key
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentLoadsAreShared() throws Exception {
+        final SingleFlight<String, Long> singleFlight = new SingleFlight<>();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        final Callable<Long> loader = new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                loads.incrementAndGet();
+                loadStarted.countDown();
+                Assert.assertTrue(releaseLoad.await(10, TimeUnit.SECONDS));
+                return 42L;
+            }
+        };
+
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            results.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    return singleFlight.load("carbon.super:PRIMARY:admin", loader);
+                }
+            }));
+            Assert.assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+            for (int i = 1; i < callers; i++) {
+                results.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return singleFlight.load("carbon.super:PRIMARY:admin", loader);
+                    }
+                }));
+            }
+            // Let the other callers join the load in flight
+            Thread.sleep(200);
+            releaseLoad.countDown();
+
+            for (Future<Long> result : results) {
+                Assert.assertEquals(result.get(10, TimeUnit.SECONDS).longValue(), 42L);
+            }
+            Assert.assertEquals(loads.get(), 1);
+            Assert.assertEquals(singleFlight.getInFlightCount(), 0);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // A later load is not served from the completed one
+        singleFlight.load("carbon.super:PRIMARY:admin", loader);
+        Assert.assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void testFailedLoadIsNotKept() throws Exception {
+        SingleFlight<String, Long> singleFlight = new SingleFlight<>();
+        try {
+            singleFlight.load("carbon.super:PRIMARY:admin", new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    throw new IOException("Connection refused");
+                }
+            });
+            Assert.fail("The failure of the load is not thrown");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+
+        Long value = singleFlight.load("carbon.super:PRIMARY:admin", new Callable<Long>() {
+            @Override
+            public Long call() {
+                return 7L;
+            }
+        });
+        Assert.assertEquals(value.longValue(), 7L);
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.apache.commons.codec.binary.Base64;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.policy.password.config.PasswordPolicyConfig;
+import org.wso2.carbon.identity.policy.password.mail.SmtpConnection;
+import org.wso2.carbon.identity.policy.password.mail.SmtpConnectionPool;
+import org.wso2.carbon.identity.policy.password.reminder.PasswordExpiryReminder;
+import org.wso2.carbon.identity.policy.password.reminder.ReminderRateLimiter;
+import org.wso2.carbon.identity.policy.password.reminder.SmtpReminderNotifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for sending the password expiry reminders to an SMTP server, against a local SMTP stand-in
+ */
+public class SmtpReminderNotifierTest {
+    private static final String TENANT_DOMAIN = "wso2.com";
+    private static final String FROM = "noreply@wso2.com";
+    private static final PasswordPolicyConfig CONFIG = new PasswordPolicyConfig(30, true, 5);
+
+    private SmtpServer smtpServer;
+    private SmtpConnectionPool connectionPool;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        smtpServer = new SmtpServer();
+        connectionPool = new SmtpConnectionPool("127.0.0.1", smtpServer.getPort(), 5000, false, null, null, 2,
+                TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        connectionPool.close();
+        smtpServer.close();
+    }
+
+    @Test
+    public void testUsersShareOneEmail() throws Exception {
+        SmtpReminderNotifier notifier = createNotifier("Expires in {{remaining-days}} days at {{tenant-domain}}", 50);
+        List<PasswordExpiryReminder> reminders = Arrays.asList(createReminder("alice"), createReminder("bob"),
+                createReminder("carol"));
+
+        Map<PasswordExpiryReminder, Exception> failures = notifier.sendReminders(TENANT_DOMAIN, reminders, CONFIG);
+        Assert.assertTrue(failures.isEmpty());
+        Assert.assertEquals(smtpServer.messages.size(), 1);
+        Message message = smtpServer.messages.get(0);
+        Assert.assertEquals(message.recipients, Arrays.asList("alice@wso2.com", "bob@wso2.com", "carol@wso2.com"));
+        Assert.assertTrue(message.data.contains("To: undisclosed-recipients:;"));
+        Assert.assertEquals(message.getBody(), "Expires in 5 days at wso2.com");
+
+        // The connection is reused for the next reminders
+        notifier.sendReminders(TENANT_DOMAIN, Collections.singletonList(createReminder("dave")), CONFIG);
+        Assert.assertEquals(smtpServer.messages.size(), 2);
+        Assert.assertTrue(smtpServer.messages.get(1).data.contains("To: dave@wso2.com"));
+        Assert.assertEquals(smtpServer.connections.get(), 1);
+        Assert.assertEquals(connectionPool.getOpenedCount(), 1);
+    }
+
+    @Test
+    public void testPersonalizedEmails() throws Exception {
+        SmtpReminderNotifier notifier = createNotifier("Hi {{username}} of {{user-store-domain}}", 50);
+        Map<PasswordExpiryReminder, Exception> failures = notifier.sendReminders(TENANT_DOMAIN,
+                Arrays.asList(createReminder("alice"), createReminder("SECONDARY/bob")), CONFIG);
+        Assert.assertTrue(failures.isEmpty());
+        Assert.assertEquals(smtpServer.messages.size(), 2);
+        Assert.assertEquals(smtpServer.messages.get(0).getBody(), "Hi alice of PRIMARY");
+        Assert.assertEquals(smtpServer.messages.get(1).getBody(), "Hi bob of SECONDARY");
+        Assert.assertEquals(smtpServer.connections.get(), 1);
+    }
+
+    @Test
+    public void testRecipientsAreBatched() throws Exception {
+        SmtpReminderNotifier notifier = createNotifier("Your password expires soon", 2);
+        List<PasswordExpiryReminder> reminders = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            reminders.add(createReminder("user" + i));
+        }
+        Assert.assertTrue(notifier.sendReminders(TENANT_DOMAIN, reminders, CONFIG).isEmpty());
+        Assert.assertEquals(smtpServer.messages.size(), 3);
+        Assert.assertEquals(smtpServer.messages.get(2).recipients, Collections.singletonList("user4@wso2.com"));
+    }
+
+    @Test
+    public void testRejectedRecipientFails() throws Exception {
+        smtpServer.rejectedRecipients.add("bob@wso2.com");
+        SmtpReminderNotifier notifier = createNotifier("Your password expires soon", 50);
+        PasswordExpiryReminder bob = createReminder("bob");
+        Map<PasswordExpiryReminder, Exception> failures = notifier.sendReminders(TENANT_DOMAIN,
+                Arrays.asList(createReminder("alice"), bob), CONFIG);
+        Assert.assertEquals(failures.size(), 1);
+        Assert.assertTrue(failures.containsKey(bob));
+        Assert.assertEquals(smtpServer.messages.get(0).recipients, Collections.singletonList("alice@wso2.com"));
+    }
+
+    @Test
+    public void testAddressInjectingCommandsFails() throws Exception {
+        SmtpReminderNotifier notifier = new SmtpReminderNotifier(connectionPool, FROM, "Password expiry",
+                "Your password expires soon", "text/plain", 50) {
+            @Override
+            protected String getEmailAddress(PasswordExpiryReminder reminder) {
+                if ("mallory".equals(reminder.getTenantAwareUsername())) {
+                    return "mallory@wso2.com>\r\nRCPT TO:<victim@example.com";
+                }
+                return reminder.getTenantAwareUsername() + "@" + TENANT_DOMAIN;
+            }
+        };
+        PasswordExpiryReminder mallory = createReminder("mallory");
+        Map<PasswordExpiryReminder, Exception> failures = notifier.sendReminders(TENANT_DOMAIN,
+                Arrays.asList(createReminder("alice"), mallory), CONFIG);
+        Assert.assertEquals(failures.size(), 1);
+        Assert.assertTrue(failures.get(mallory) instanceof IdentityEventException);
+        Assert.assertEquals(smtpServer.messages.size(), 1);
+        Assert.assertEquals(smtpServer.messages.get(0).recipients, Collections.singletonList("alice@wso2.com"));
+
+        Assert.assertFalse(SmtpConnection.isValidAddress("bob@wso2.com\n"));
+        Assert.assertFalse(SmtpConnection.isValidAddress("b\u00f6b@wso2.com"));
+        Assert.assertFalse(SmtpConnection.isValidAddress("<bob@wso2.com"));
+    }
+
+    @Test
+    public void testUnavailableServerFailsAllReminders() throws Exception {
+        SmtpReminderNotifier notifier = createNotifier("Hi {{username}}", 50);
+        smtpServer.close();
+        List<PasswordExpiryReminder> reminders = Arrays.asList(createReminder("alice"), createReminder("bob"));
+        Map<PasswordExpiryReminder, Exception> failures = notifier.sendReminders(TENANT_DOMAIN, reminders, CONFIG);
+        Assert.assertEquals(failures.size(), 2);
+        Assert.assertTrue(failures.get(reminders.get(0)) instanceof IOException);
+    }
+
+    @Test
+    public void testRateLimits() {
+        // 120 per minute globally, i.e. bursts of 2, and 60 per minute per tenant, i.e. bursts of 1
+        ReminderRateLimiter rateLimiter = new ReminderRateLimiter(120, 60);
+        long now = 1000000;
+        Assert.assertEquals(rateLimiter.tryAcquire("a.com", now), 0);
+        Assert.assertEquals(rateLimiter.tryAcquire("a.com", now), 1000);
+        Assert.assertEquals(rateLimiter.tryAcquire("b.com", now), 0);
+        // The global limit is reached, although c.com has not sent any
+        Assert.assertEquals(rateLimiter.tryAcquire("c.com", now), 500);
+
+        Assert.assertEquals(rateLimiter.tryAcquire("c.com", now + 500), 0);
+        Assert.assertEquals(rateLimiter.tryAcquire("a.com", now + 1000), 0);
+
+        ReminderRateLimiter unlimited = new ReminderRateLimiter(0, 0);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(unlimited.tryAcquire("a.com", now), 0);
+        }
+    }
+
+    private SmtpReminderNotifier createNotifier(String body, int maxRecipients) {
+        return new SmtpReminderNotifier(connectionPool, FROM, "Password expiry", body, "text/plain",
+                maxRecipients) {
+            @Override
+            protected String getEmailAddress(PasswordExpiryReminder reminder) {
+                String username = reminder.getTenantAwareUsername();
+                return username.substring(username.indexOf('/') + 1) + "@" + TENANT_DOMAIN;
+            }
+        };
+    }
+
+    private PasswordExpiryReminder createReminder(String tenantAwareUsername) {
+        // The password expires in 5 days and a few hours
+        long lastPasswordUpdateTime = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(25)
+                + TimeUnit.HOURS.toMillis(3);
+        return new PasswordExpiryReminder(TENANT_DOMAIN, tenantAwareUsername, lastPasswordUpdateTime,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * A message received by the SMTP stand-in
+     */
+    private static class Message {
+        private final List<String> recipients;
+        private final String data;
+
+        Message(List<String> recipients, String data) {
+            this.recipients = recipients;
+            this.data = data;
+        }
+
+        String getBody() {
+            String body = data.substring(data.indexOf("\r\n\r\n") + 4);
+            return new String(Base64.decodeBase64(body), Charset.forName("UTF-8"));
+        }
+    }
+
+    /**
+     * A minimal SMTP server accepting the messages on a local port
+     */
+    private static class SmtpServer implements Runnable {
+        private final ServerSocket serverSocket;
+        private final List<Message> messages = new CopyOnWriteArrayList<>();
+        private final Set<String> rejectedRecipients = Collections.synchronizedSet(new HashSet<String>());
+        private final AtomicInteger connections = new AtomicInteger();
+
+        SmtpServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            Thread thread = new Thread(this, "SmtpServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            handle(socket);
+                        }
+                    });
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void handle(Socket socket) {
+            Charset ascii = Charset.forName("US-ASCII");
+            try (Socket connection = socket) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), ascii));
+                OutputStream output = connection.getOutputStream();
+                reply(output, "220 localhost ESMTP");
+                List<String> recipients = new ArrayList<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String command = line.toUpperCase();
+                    if (command.startsWith("EHLO")) {
+                        reply(output, "250-localhost\r\n250 8BITMIME");
+                    } else if (command.startsWith("MAIL FROM:")) {
+                        recipients = new ArrayList<>();
+                        reply(output, "250 OK");
+                    } else if (command.startsWith("RCPT TO:")) {
+                        String recipient = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                        if (rejectedRecipients.contains(recipient)) {
+                            reply(output, "550 No such user");
+                        } else {
+                            recipients.add(recipient);
+                            reply(output, "250 OK");
+                        }
+                    } else if (command.equals("DATA")) {
+                        reply(output, "354 End data with <CR><LF>.<CR><LF>");
+                        StringBuilder data = new StringBuilder();
+                        while ((line = reader.readLine()) != null && !line.equals(".")) {
+                            data.append(line).append("\r\n");
+                        }
+                        messages.add(new Message(recipients, data.toString()));
+                        reply(output, "250 Queued");
+                    } else if (command.equals("QUIT")) {
+                        reply(output, "221 Bye");
+                        return;
+                    } else {
+                        reply(output, "250 OK");
+                    }
+                }
+            } catch (IOException e) {
+                // The client has gone
+            }
+        }
+
+        private void reply(OutputStream output, String reply) throws IOException {
+            output.write((reply + "\r\n").getBytes(Charset.forName("US-ASCII")));
+            output.flush();
+        }
+    }
+}
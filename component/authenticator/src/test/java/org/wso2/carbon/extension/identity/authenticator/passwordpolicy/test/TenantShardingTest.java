@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.cluster.InMemoryCluster;
+import org.wso2.carbon.identity.policy.password.cluster.InMemoryClusterCoordinator;
+import org.wso2.carbon.identity.policy.password.cluster.MembershipListener;
+import org.wso2.carbon.identity.policy.password.cluster.TenantShardManager;
+import org.wso2.carbon.identity.policy.password.cluster.TenantShards;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the assignment of the tenants to the nodes of a cluster
+ */
+public class TenantShardingTest {
+    private static final int NODE_COUNT = 3;
+    private static final int TENANT_COUNT = 300;
+
+    @AfterMethod
+    public void tearDown() {
+        TenantShardManager.getInstance().setCoordinator(null);
+    }
+
+    @Test
+    public void testEachTenantIsOwnedByOneNode() {
+        InMemoryCluster cluster = new InMemoryCluster();
+        TenantShards[] nodes = startNodes(cluster);
+
+        int[] ownedCounts = new int[NODE_COUNT];
+        for (int i = 0; i < TENANT_COUNT; i++) {
+            String tenantDomain = "tenant" + i + ".com";
+            int owners = 0;
+            for (int node = 0; node < NODE_COUNT; node++) {
+                Assert.assertEquals(nodes[node].getOwner(tenantDomain), nodes[0].getOwner(tenantDomain));
+                if (nodes[node].isLocal(tenantDomain)) {
+                    owners++;
+                    ownedCounts[node]++;
+                }
+            }
+            Assert.assertEquals(owners, 1, "Owners of " + tenantDomain);
+        }
+        for (int ownedCount : ownedCounts) {
+            // Roughly a third of the tenants each
+            Assert.assertTrue(ownedCount > TENANT_COUNT / 6, "Owned tenants: " + ownedCount);
+        }
+    }
+
+    @Test
+    public void testLeavingNodeMovesOnlyItsTenants() {
+        InMemoryCluster cluster = new InMemoryCluster();
+        TenantShards[] nodes = startNodes(cluster);
+        final AtomicInteger notifications = new AtomicInteger();
+        nodes[0].addListener(new MembershipListener() {
+            @Override
+            public void membershipChanged(Set<String> liveNodes) {
+                notifications.incrementAndGet();
+            }
+        });
+
+        Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < TENANT_COUNT; i++) {
+            owners.put("tenant" + i + ".com", nodes[0].getOwner("tenant" + i + ".com"));
+        }
+        ((InMemoryClusterCoordinator) nodes[2].getCoordinator()).leave();
+        Assert.assertEquals(notifications.get(), 1);
+
+        int movedCount = 0;
+        for (Map.Entry<String, String> owner : owners.entrySet()) {
+            String newOwner = nodes[0].getOwner(owner.getKey());
+            Assert.assertEquals(nodes[1].getOwner(owner.getKey()), newOwner);
+            if ("node2".equals(owner.getValue())) {
+                Assert.assertNotEquals(newOwner, "node2");
+                movedCount++;
+            } else {
+                Assert.assertEquals(newOwner, owner.getValue());
+            }
+        }
+        Assert.assertTrue(movedCount > 0);
+
+        // The tenants move back when the node joins again
+        ((InMemoryClusterCoordinator) nodes[2].getCoordinator()).join();
+        for (Map.Entry<String, String> owner : owners.entrySet()) {
+            Assert.assertEquals(nodes[2].getOwner(owner.getKey()), owner.getValue());
+        }
+    }
+
+    @Test
+    public void testLocksAreExclusive() throws InterruptedException {
+        InMemoryCluster cluster = new InMemoryCluster();
+        InMemoryClusterCoordinator node1 = new InMemoryClusterCoordinator(cluster, "node1");
+        InMemoryClusterCoordinator node2 = new InMemoryClusterCoordinator(cluster, "node2");
+        node1.join();
+        node2.join();
+
+        Assert.assertTrue(node1.tryLock("lock", 60000));
+        Assert.assertTrue(node1.tryLock("lock", 60000));
+        Assert.assertFalse(node2.tryLock("lock", 60000));
+        node1.unlock("lock");
+        Assert.assertTrue(node2.tryLock("lock", 60000));
+
+        // The locks of a leaving node are released
+        node2.leave();
+        Assert.assertFalse(node2.tryLock("lock", 60000));
+        Assert.assertTrue(node1.tryLock("lock", 60000));
+
+        // An expired lease is taken over
+        node2.join();
+        Assert.assertTrue(node1.tryLock("lease", 1));
+        Thread.sleep(10);
+        Assert.assertTrue(node2.tryLock("lease", 60000));
+        Assert.assertFalse(node1.tryLock("lease", 60000));
+    }
+
+    @Test
+    public void testStandaloneNodeOwnsAllTenants() {
+        TenantShardManager shardManager = TenantShardManager.getInstance();
+        Assert.assertFalse(shardManager.isClustered());
+        Assert.assertTrue(shardManager.isLocal("tenant1.com"));
+        Assert.assertTrue(shardManager.tryLock("lock", 60000));
+
+        InMemoryCluster cluster = new InMemoryCluster();
+        InMemoryClusterCoordinator node1 = new InMemoryClusterCoordinator(cluster, "node1");
+        InMemoryClusterCoordinator node2 = new InMemoryClusterCoordinator(cluster, "node2");
+        node1.join();
+        node2.join();
+        shardManager.setCoordinator(node1);
+        Assert.assertTrue(shardManager.isClustered());
+        int localCount = 0;
+        for (int i = 0; i < TENANT_COUNT; i++) {
+            if (shardManager.isLocal("tenant" + i + ".com")) {
+                localCount++;
+            }
+        }
+        Assert.assertTrue(localCount > 0 && localCount < TENANT_COUNT, "Local tenants: " + localCount);
+
+        node2.leave();
+        for (int i = 0; i < TENANT_COUNT; i++) {
+            Assert.assertTrue(shardManager.isLocal("tenant" + i + ".com"));
+        }
+    }
+
+    private TenantShards[] startNodes(InMemoryCluster cluster) {
+        TenantShards[] nodes = new TenantShards[NODE_COUNT];
+        for (int node = 0; node < NODE_COUNT; node++) {
+            InMemoryClusterCoordinator coordinator = new InMemoryClusterCoordinator(cluster, "node" + node);
+            coordinator.join();
+            nodes[node] = new TenantShards(coordinator);
+            nodes[node].start();
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.identity.policy.password.listener.PasswordPolicyTenantUnloadObserver;
+import org.wso2.carbon.user.core.UserRealm;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.service.RealmService;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests for the cached user store managers of the tenants
+ */
+@PrepareForTest({IdentityTenantUtil.class})
+public class UserStoreManagerCacheTest {
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final int TENANT_ID = -1234;
+
+    @Mock
+    private RealmService realmService;
+
+    @Mock
+    private UserRealm userRealm;
+
+    @Mock
+    private UserStoreManager userStoreManager;
+
+    @Mock
+    private UserStoreManager secondaryUserStoreManager;
+
+    private UserStoreManagerCache userStoreManagerCache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        initMocks(this);
+        mockStatic(IdentityTenantUtil.class);
+        when(IdentityTenantUtil.getRealmService()).thenReturn(realmService);
+        when(IdentityTenantUtil.getTenantId(TENANT_DOMAIN)).thenReturn(TENANT_ID);
+        when(realmService.getTenantUserRealm(TENANT_ID)).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        when(userStoreManager.getSecondaryUserStoreManager("SECONDARY")).thenReturn(secondaryUserStoreManager);
+
+        userStoreManagerCache = UserStoreManagerCache.getInstance();
+        userStoreManagerCache.clear();
+    }
+
+    @Test
+    public void testGetUserStoreManagerIsResolvedOnce() throws Exception {
+        Assert.assertSame(userStoreManagerCache.getUserStoreManager(TENANT_DOMAIN), userStoreManager);
+        Assert.assertSame(userStoreManagerCache.getUserStoreManager(TENANT_DOMAIN), userStoreManager);
+        Assert.assertEquals(userStoreManagerCache.getTenantId(TENANT_DOMAIN), TENANT_ID);
+        verify(realmService, times(1)).getTenantUserRealm(TENANT_ID);
+    }
+
+    @Test
+    public void testGetSecondaryUserStoreManager() throws Exception {
+        Assert.assertSame(userStoreManagerCache.getUserStoreManager(TENANT_DOMAIN, "PRIMARY"), userStoreManager);
+        Assert.assertSame(userStoreManagerCache.getUserStoreManager(TENANT_DOMAIN, null), userStoreManager);
+        Assert.assertSame(userStoreManagerCache.getUserStoreManager(TENANT_DOMAIN, "SECONDARY"),
+                secondaryUserStoreManager);
+        verify(realmService, times(1)).getTenantUserRealm(TENANT_ID);
+    }
+
+    @Test
+    public void testTenantUnloadInvalidatesUserStoreManager() throws Exception {
+        userStoreManagerCache.getUserStoreManager(TENANT_DOMAIN);
+        new PasswordPolicyTenantUnloadObserver().invalidateTenant(TENANT_DOMAIN, TENANT_ID);
+        userStoreManagerCache.getUserStoreManager(TENANT_DOMAIN);
+        verify(realmService, times(2)).getTenantUserRealm(TENANT_ID);
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+        return new PowerMockObjectFactory();
+    }
+}
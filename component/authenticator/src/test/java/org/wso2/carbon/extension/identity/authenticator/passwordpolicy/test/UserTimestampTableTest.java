@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.policy.password.cache.UserTimestampTable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for the open addressed table of the timestamps of the users
+ */
+public class UserTimestampTableTest {
+
+    @Test
+    public void testGetAndPut() {
+        UserTimestampTable table = new UserTimestampTable(100, 0);
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user"), UserTimestampTable.NO_VALUE);
+        table.put("carbon.super:PRIMARY:user", 10L);
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user"), 10L);
+        table.put("carbon.super:PRIMARY:user", 20L);
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user"), 20L);
+        Assert.assertEquals(table.size(), 1);
+        Assert.assertEquals(table.getHitCount(), 2);
+        Assert.assertEquals(table.getMissCount(), 1);
+
+        table.remove("carbon.super:PRIMARY:user");
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user"), UserTimestampTable.NO_VALUE);
+        Assert.assertEquals(table.size(), 0);
+    }
+
+    @Test
+    public void testPutIfNewerKeepsTheLaterTimestamp() {
+        UserTimestampTable table = new UserTimestampTable(100, 0);
+        table.putIfNewer("carbon.super:PRIMARY:user", 10L);
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user"), 10L);
+
+        // A password change cached while an older timestamp was being read from the user store
+        table.put("carbon.super:PRIMARY:user", 20L);
+        table.putIfNewer("carbon.super:PRIMARY:user", 10L);
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user"), 20L);
+
+        table.putIfNewer("carbon.super:PRIMARY:user", 30L);
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user"), 30L);
+    }
+
+    @Test
+    public void testRemovalsKeepTheOtherEntriesReachable() {
+        UserTimestampTable table = new UserTimestampTable(100000, 0);
+        Map<String, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            String userKey = "carbon.super:PRIMARY:user" + random.nextInt(50000);
+            if (random.nextInt(3) == 0) {
+                table.remove(userKey);
+                expected.remove(userKey);
+            } else {
+                table.put(userKey, i);
+                expected.put(userKey, (long) i);
+            }
+        }
+
+        Assert.assertEquals(table.size(), expected.size());
+        for (int i = 0; i < 50000; i++) {
+            String userKey = "carbon.super:PRIMARY:user" + i;
+            Long timestamp = expected.get(userKey);
+            Assert.assertEquals(table.get(userKey), timestamp == null ? UserTimestampTable.NO_VALUE : timestamp,
+                    "Wrong timestamp of " + userKey);
+        }
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        UserTimestampTable table = new UserTimestampTable(160, 0);
+        for (int i = 0; i < 10000; i++) {
+            table.put("carbon.super:PRIMARY:user" + i, i);
+        }
+        Assert.assertTrue(table.size() <= 160, "The table grew beyond its capacity: " + table.size());
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user9999"), 9999L);
+
+        table.clear();
+        Assert.assertEquals(table.size(), 0);
+    }
+
+    @Test
+    public void testRecentlyReadEntriesAreKept() {
+        UserTimestampTable table = new UserTimestampTable(1600, 0);
+        for (int i = 0; i < 10000; i++) {
+            table.put("carbon.super:PRIMARY:user" + i, i);
+            Assert.assertEquals(table.get("carbon.super:PRIMARY:user0"), 0L);
+        }
+    }
+
+    @Test
+    public void testEntriesExpire() throws InterruptedException {
+        UserTimestampTable table = new UserTimestampTable(100, 50);
+        table.put("carbon.super:PRIMARY:user", 10L);
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user"), 10L);
+
+        Thread.sleep(100);
+        Assert.assertEquals(table.get("carbon.super:PRIMARY:user"), UserTimestampTable.NO_VALUE);
+        Assert.assertEquals(table.size(), 0);
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws InterruptedException {
+        final UserTimestampTable table = new UserTimestampTable(100000, 0);
+        final int usersPerThread = 5000;
+        Thread[] threads = new Thread[8];
+        final boolean[] failed = new boolean[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < usersPerThread; i++) {
+                        String userKey = "carbon.super:PRIMARY:user" + thread + "-" + i;
+                        table.put(userKey, i);
+                        if (table.get(userKey) != i) {
+                            failed[thread] = true;
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (boolean threadFailed : failed) {
+            Assert.assertFalse(threadFailed);
+        }
+        Assert.assertEquals(table.size(), threads.length * usersPerThread);
+    }
+}
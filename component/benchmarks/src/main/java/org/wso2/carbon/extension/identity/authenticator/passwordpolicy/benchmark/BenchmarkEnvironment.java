@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.benchmark;
+
+import org.wso2.carbon.identity.application.authentication.framework.ApplicationAuthenticator;
+import org.wso2.carbon.identity.application.authentication.framework.config.model.AuthenticatorConfig;
+import org.wso2.carbon.identity.application.authentication.framework.config.model.SequenceConfig;
+import org.wso2.carbon.identity.application.authentication.framework.config.model.StepConfig;
+import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
+import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.cache.UserStoreManagerCache;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Sets up the minimal environment needed to run the connector outside of the Identity Server.
+ * <p>
+ * A temporary Carbon home holding the identity-event.properties and application-authentication.xml files is
+ * created, and the in memory user store is installed as the realm service. Since the connector reads its
+ * configurations once per JVM, this needs to be done before the connector is used for the first time in a fork.
+ */
+public final class BenchmarkEnvironment {
+    public static final String TENANT_DOMAIN = MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
+    public static final String USERNAME = "admin";
+
+    private static final String IDENTITY_EVENT_PROPERTIES = "identity-event.properties";
+    private static final String APPLICATION_AUTHENTICATION_XML = "application-authentication.xml";
+    private static final String AUTHENTICATION_ENDPOINT_URL = "https://localhost:9443/authenticationendpoint/"
+            + PasswordPolicyConstants.LOGIN_STANDARD_PAGE;
+
+    private BenchmarkEnvironment() {
+    }
+
+    /**
+     * Create a Carbon home with the given connector properties and point the connector to it.
+     *
+     * @param connectorProperties The passwordExpiry module properties, in addition to the subscriptions
+     * @throws IOException if the configuration files could not be written
+     */
+    public static void setUp(Properties connectorProperties) throws IOException {
+        File carbonHome = Files.createTempDirectory("password-policy-benchmark").toFile();
+        File identityConfigDirectory = new File(carbonHome, "repository" + File.separator + "conf"
+                + File.separator + "identity");
+        if (!identityConfigDirectory.mkdirs()) {
+            throw new IOException("Unable to create the directory " + identityConfigDirectory);
+        }
+
+        Properties identityEventProperties = new Properties();
+        identityEventProperties.setProperty("module.name.1",
+                PasswordPolicyConstants.PASSWORD_CHANGE_EVENT_HANDLER_NAME);
+        identityEventProperties.setProperty("passwordExpiry.subscription.1", "POST_UPDATE_CREDENTIAL");
+        identityEventProperties.setProperty("passwordExpiry.subscription.2", "POST_UPDATE_CREDENTIAL_BY_ADMIN");
+        identityEventProperties.setProperty("passwordExpiry.subscription.3", "POST_ADD_USER");
+        identityEventProperties.setProperty(PasswordPolicyConstants.WRITE_BEHIND_JOURNAL,
+                new File(carbonHome, "password-update-time.journal").getAbsolutePath());
+        identityEventProperties.putAll(connectorProperties);
+        try (OutputStream outputStream = Files.newOutputStream(
+                new File(identityConfigDirectory, IDENTITY_EVENT_PROPERTIES).toPath())) {
+            identityEventProperties.store(outputStream, null);
+        }
+
+        try (Writer writer = Files.newBufferedWriter(
+                new File(identityConfigDirectory, APPLICATION_AUTHENTICATION_XML).toPath(), StandardCharsets.UTF_8)) {
+            writer.write("<ApplicationAuthentication "
+                    + "xmlns=\"http://wso2.org/projects/carbon/application-authentication.xml\">\n"
+                    + "    <AuthenticationEndpointURL>" + AUTHENTICATION_ENDPOINT_URL
+                    + "</AuthenticationEndpointURL>\n"
+                    + "</ApplicationAuthentication>\n");
+        }
+
+        System.setProperty("carbon.home", carbonHome.getAbsolutePath());
+    }
+
+    /**
+     * Use the given in memory user store as the user realm of the super tenant.
+     *
+     * @param userStore The in memory user store
+     */
+    public static void install(InMemoryUserStore userStore) {
+        IdentityTenantUtil.setRealmService(userStore.getRealmService());
+        UserStoreManagerCache.getInstance().clear();
+    }
+
+    /**
+     * Create an authentication context in which the given user was authenticated by a local authenticator in the
+     * previous step.
+     *
+     * @param localAuthenticator A local authenticator
+     * @param username           The username of the authenticated user
+     * @return The authentication context
+     */
+    public static AuthenticationContext createAuthenticationContext(ApplicationAuthenticator localAuthenticator,
+                                                                    String username) {
+        AuthenticatedUser authenticatedUser = new AuthenticatedUser();
+        authenticatedUser.setUserName(username);
+        authenticatedUser.setTenantDomain(TENANT_DOMAIN);
+        authenticatedUser.setAuthenticatedSubjectIdentifier(username);
+
+        AuthenticatorConfig authenticatorConfig = new AuthenticatorConfig();
+        authenticatorConfig.setApplicationAuthenticator(localAuthenticator);
+
+        StepConfig stepConfig = new StepConfig();
+        stepConfig.setAuthenticatedUser(authenticatedUser);
+        stepConfig.setAuthenticatedAutenticator(authenticatorConfig);
+
+        Map<Integer, StepConfig> stepMap = new HashMap<>();
+        stepMap.put(1, stepConfig);
+        SequenceConfig sequenceConfig = new SequenceConfig();
+        sequenceConfig.setStepMap(stepMap);
+
+        AuthenticationContext context = new AuthenticationContext();
+        context.setSequenceConfig(sequenceConfig);
+        context.setCurrentStep(2);
+        context.setContextIdentifier("benchmark-context");
+        context.setCallerSessionKey("benchmark-session");
+        context.setQueryParams("client_id=benchmark");
+        return context;
+    }
+
+    /**
+     * Create a request carrying the given parameters.
+     *
+     * @param parameters The request parameters
+     * @return The request
+     */
+    public static HttpServletRequest createRequest(final Map<String, String> parameters) {
+        return (HttpServletRequest) Proxy.newProxyInstance(BenchmarkEnvironment.class.getClassLoader(),
+                new Class[]{HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getParameter".equals(method.getName())) {
+                            return parameters.get(args[0]);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Create a response which discards the redirects.
+     *
+     * @return The response
+     */
+    public static HttpServletResponse createResponse() {
+        return (HttpServletResponse) Proxy.newProxyInstance(BenchmarkEnvironment.class.getClassLoader(),
+                new Class[]{HttpServletResponse.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.benchmark;
+
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserRealm;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.user.core.tenant.TenantManager;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In memory user store of the super tenant, exposed through the user core interfaces used by the connector.
+ * <p>
+ * The interfaces are implemented with dynamic proxies which only support the operations used by the connector.
+ * Each user store read and write blocks the calling thread for the configured latency, to stand in for a remote
+ * user store such as LDAP.
+ */
+public class InMemoryUserStore {
+
+    private final long readLatencyNanos;
+    private final long writeLatencyNanos;
+    private final RealmConfiguration realmConfiguration = new RealmConfiguration();
+    private final ConcurrentMap<String, Map<String, String>> userClaims = new ConcurrentHashMap<>();
+
+    private final UserStoreManager userStoreManager;
+    private final RealmService realmService;
+
+    /**
+     * @param readLatencyMicros  The latency of each claim read, in microseconds
+     * @param writeLatencyMicros The latency of each claim and credential write, in microseconds
+     * @param passwordRegEx      The regular expression which the passwords need to match or null
+     */
+    public InMemoryUserStore(long readLatencyMicros, long writeLatencyMicros, String passwordRegEx) {
+        this.readLatencyNanos = TimeUnit.MICROSECONDS.toNanos(readLatencyMicros);
+        this.writeLatencyNanos = TimeUnit.MICROSECONDS.toNanos(writeLatencyMicros);
+
+        realmConfiguration.getUserStoreProperties().put(UserCoreConstants.RealmConfig.PROPERTY_DOMAIN_NAME,
+                UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME);
+        if (passwordRegEx != null) {
+            realmConfiguration.getUserStoreProperties().put(PasswordPolicyConstants.PASSWORD_JAVA_REG_EX_PROPERTY,
+                    passwordRegEx);
+        }
+
+        userStoreManager = createProxy(UserStoreManager.class, new UserStoreManagerHandler());
+        final UserRealm userRealm = createProxy(UserRealm.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getUserStoreManager".equals(method.getName())) {
+                    return userStoreManager;
+                }
+                return handleObjectMethod(proxy, method, args);
+            }
+        });
+        final TenantManager tenantManager = createProxy(TenantManager.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getTenantId".equals(method.getName())) {
+                    return MultitenantConstants.SUPER_TENANT_DOMAIN_NAME.equals(args[0]) ?
+                            MultitenantConstants.SUPER_TENANT_ID : MultitenantConstants.INVALID_TENANT_ID;
+                }
+                if ("getDomain".equals(method.getName())) {
+                    return MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
+                }
+                return handleObjectMethod(proxy, method, args);
+            }
+        });
+        realmService = createProxy(RealmService.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getTenantUserRealm":
+                        return userRealm;
+                    case "getTenantManager":
+                        return tenantManager;
+                    case "getBootstrapRealmConfiguration":
+                        return realmConfiguration;
+                    default:
+                        return handleObjectMethod(proxy, method, args);
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the last password update timestamp of a user without any latency.
+     *
+     * @param username  The username
+     * @param timestamp The last password update timestamp or null to remove the claim
+     */
+    public void setLastPasswordUpdateTime(String username, Long timestamp) {
+        Map<String, String> claims = getClaims(username);
+        if (timestamp == null) {
+            claims.remove(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM);
+        } else {
+            claims.put(PasswordPolicyConstants.LAST_CREDENTIAL_UPDATE_TIMESTAMP_CLAIM, Long.toString(timestamp));
+        }
+    }
+
+    public UserStoreManager getUserStoreManager() {
+        return userStoreManager;
+    }
+
+    public RealmService getRealmService() {
+        return realmService;
+    }
+
+    private Map<String, String> getClaims(String username) {
+        Map<String, String> claims = userClaims.get(username);
+        if (claims == null) {
+            claims = new ConcurrentHashMap<>();
+            Map<String, String> existingClaims = userClaims.putIfAbsent(username, claims);
+            if (existingClaims != null) {
+                claims = existingClaims;
+            }
+        }
+        return claims;
+    }
+
+    private static void simulateLatency(long latencyNanos) {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T createProxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(InMemoryUserStore.class.getClassLoader(), new Class[]{type}, handler);
+    }
+
+    private static Object handleObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return proxy.getClass().getInterfaces()[0].getSimpleName() + "@" + System.identityHashCode(proxy);
+            default:
+                throw new UnsupportedOperationException(method.getName() + " is not supported by the in memory "
+                        + "user store");
+        }
+    }
+
+    /**
+     * Implements the user store operations used by the connector.
+     */
+    private class UserStoreManagerHandler implements InvocationHandler {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getUserClaimValues":
+                    if (args.length == 3 && args[1] instanceof String[]) {
+                        simulateLatency(readLatencyNanos);
+                        Map<String, String> claims = getClaims((String) args[0]);
+                        Map<String, String> claimValues = new HashMap<>();
+                        for (String claimURI : (String[]) args[1]) {
+                            String claimValue = claims.get(claimURI);
+                            if (claimValue != null) {
+                                claimValues.put(claimURI, claimValue);
+                            }
+                        }
+                        return claimValues;
+                    }
+                    break;
+                case "setUserClaimValues":
+                    simulateLatency(writeLatencyNanos);
+                    getClaims((String) args[0]).putAll((Map<String, String>) args[1]);
+                    return null;
+                case "updateCredential":
+                case "updateCredentialByAdmin":
+                    simulateLatency(writeLatencyNanos);
+                    return null;
+                case "getRealmConfiguration":
+                    return realmConfiguration;
+                case "getSecondaryUserStoreManager":
+                    return null;
+                case "getTenantId":
+                    return MultitenantConstants.SUPER_TENANT_ID;
+                default:
+                    break;
+            }
+            return handleObjectMethod(proxy, method, args);
+        }
+    }
+}
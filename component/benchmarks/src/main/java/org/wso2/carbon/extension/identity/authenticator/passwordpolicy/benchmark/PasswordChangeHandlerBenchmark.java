@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.event.IdentityEventConstants;
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.event.event.Event;
+import org.wso2.carbon.identity.policy.password.PasswordChangeHandler;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.writebehind.PasswordUpdateTimeWriter;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the password change handler, which records the last password update time of a user.
+ * <p>
+ * The events are spread across a fixed set of users, so that the write behind mode coalesces only a part of them.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PasswordChangeHandlerBenchmark {
+    private static final int USER_COUNT = 4096;
+
+    @Param({"0", "500"})
+    public long userStoreLatencyMicros;
+
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    private PasswordChangeHandler passwordChangeHandler;
+    private Event[] events;
+
+    /**
+     * The position of a benchmark thread in the events.
+     */
+    @State(Scope.Thread)
+    public static class EventCursor {
+        private int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Properties connectorProperties = new Properties();
+        connectorProperties.setProperty(PasswordPolicyConstants.WRITE_BEHIND_ENABLE, Boolean.toString(writeBehind));
+        BenchmarkEnvironment.setUp(connectorProperties);
+
+        InMemoryUserStore userStore = new InMemoryUserStore(userStoreLatencyMicros, userStoreLatencyMicros, null);
+        BenchmarkEnvironment.install(userStore);
+        PasswordUpdateTimeWriter.getInstance().start();
+
+        passwordChangeHandler = new PasswordChangeHandler();
+        events = new Event[USER_COUNT];
+        for (int i = 0; i < USER_COUNT; i++) {
+            Event event = new Event(IdentityEventConstants.Event.POST_UPDATE_CREDENTIAL);
+            event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_NAME, "user-" + i);
+            event.getEventProperties().put(IdentityEventConstants.EventProperty.USER_STORE_MANAGER,
+                    userStore.getUserStoreManager());
+            event.getEventProperties().put(IdentityEventConstants.EventProperty.TENANT_DOMAIN,
+                    BenchmarkEnvironment.TENANT_DOMAIN);
+            events[i] = event;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PasswordUpdateTimeWriter.getInstance().shutdown();
+    }
+
+    @Benchmark
+    public void handleEvent(EventCursor cursor) throws IdentityEventException {
+        passwordChangeHandler.handleEvent(events[cursor.next++ & (USER_COUNT - 1)]);
+    }
+}
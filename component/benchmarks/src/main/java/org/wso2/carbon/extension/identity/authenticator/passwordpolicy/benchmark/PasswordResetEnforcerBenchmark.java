@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.application.authentication.framework.AuthenticatorFlowStatus;
+import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.policy.password.PasswordPolicyConstants;
+import org.wso2.carbon.identity.policy.password.PasswordResetEnforcer;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Benchmarks of the password reset enforcer in the authentication flow.
+ * <p>
+ * The user store latency stands in for the round trip to a remote user store. The password update time cache size
+ * of 0 disables the cache, which shows the cost of reading the claim on every login.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PasswordResetEnforcerBenchmark {
+    private static final String ACTIVE_USER = "active-user";
+    private static final String EXPIRED_USER = "expired-user";
+    private static final long ONE_YEAR_IN_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+    @Param({"0", "500"})
+    public long userStoreLatencyMicros;
+
+    @Param({"10000", "0"})
+    public int passwordUpdateTimeCacheSize;
+
+    private PasswordResetEnforcer passwordResetEnforcer;
+    private HttpServletRequest loginRequest;
+    private HttpServletRequest passwordChangeRequest;
+    private HttpServletResponse response;
+    private AuthenticationContext activeUserContext;
+    private AuthenticationContext expiredUserContext;
+    private Method evaluatePasswordExpiryMethod;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Properties connectorProperties = new Properties();
+        connectorProperties.setProperty(PasswordPolicyConstants.PASSWORD_UPDATE_TIME_CACHE_MAX_ENTRIES,
+                Integer.toString(passwordUpdateTimeCacheSize));
+        BenchmarkEnvironment.setUp(connectorProperties);
+
+        InMemoryUserStore userStore = new InMemoryUserStore(userStoreLatencyMicros, userStoreLatencyMicros, null);
+        userStore.setLastPasswordUpdateTime(ACTIVE_USER, System.currentTimeMillis());
+        userStore.setLastPasswordUpdateTime(EXPIRED_USER, System.currentTimeMillis() - ONE_YEAR_IN_MILLIS);
+        BenchmarkEnvironment.install(userStore);
+
+        passwordResetEnforcer = new PasswordResetEnforcer();
+        loginRequest = BenchmarkEnvironment.createRequest(Collections.<String, String>emptyMap());
+        Map<String, String> passwordChangeParameters = new HashMap<>();
+        passwordChangeParameters.put(PasswordPolicyConstants.CURRENT_PWD, "Old-Passw0rd");
+        passwordChangeParameters.put(PasswordPolicyConstants.NEW_PWD, "New-Passw0rd");
+        passwordChangeParameters.put(PasswordPolicyConstants.NEW_PWD_CONFIRMATION, "New-Passw0rd");
+        passwordChangeRequest = BenchmarkEnvironment.createRequest(passwordChangeParameters);
+        response = BenchmarkEnvironment.createResponse();
+        activeUserContext = BenchmarkEnvironment.createAuthenticationContext(passwordResetEnforcer, ACTIVE_USER);
+        expiredUserContext = BenchmarkEnvironment.createAuthenticationContext(passwordResetEnforcer, EXPIRED_USER);
+
+        evaluatePasswordExpiryMethod = PasswordResetEnforcer.class.getDeclaredMethod("evaluatePasswordExpiry",
+                String.class, String.class);
+        evaluatePasswordExpiryMethod.setAccessible(true);
+    }
+
+    /**
+     * A login of a user whose password has not expired, which completes the step.
+     */
+    @Benchmark
+    public AuthenticatorFlowStatus processNotExpired() throws AuthenticationFailedException {
+        // Each login starts a new authentication flow without an expiry decision
+        activeUserContext.setProperty(PasswordPolicyConstants.PASSWORD_EXPIRY_DECISION, null);
+        return passwordResetEnforcer.process(loginRequest, response, activeUserContext);
+    }
+
+    /**
+     * A login of a user whose password has expired, which redirects to the password reset page.
+     */
+    @Benchmark
+    public AuthenticatorFlowStatus processExpired() throws AuthenticationFailedException {
+        expiredUserContext.setProperty(PasswordPolicyConstants.PASSWORD_EXPIRY_DECISION, null);
+        return passwordResetEnforcer.process(loginRequest, response, expiredUserContext);
+    }
+
+    /**
+     * A submission of the password reset page, which validates and updates the password.
+     */
+    @Benchmark
+    public AuthenticatorFlowStatus processPasswordChange() throws AuthenticationFailedException {
+        return passwordResetEnforcer.process(passwordChangeRequest, response, expiredUserContext);
+    }
+
+    /**
+     * The expiry decision alone.
+     */
+    @Benchmark
+    public Object evaluatePasswordExpiry() throws Exception {
+        return evaluatePasswordExpiryMethod.invoke(passwordResetEnforcer, BenchmarkEnvironment.TENANT_DOMAIN,
+                ACTIVE_USER);
+    }
+}
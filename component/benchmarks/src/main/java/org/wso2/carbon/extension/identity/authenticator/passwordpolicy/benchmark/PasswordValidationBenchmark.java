@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.passwordpolicy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.policy.password.PasswordResetEnforcer;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the password format validation done before a password is changed.
+ * <p>
+ * The regular expressions are the default one of the Identity Server, one requiring each character class through
+ * look aheads, and one with nested quantifiers which backtracks heavily on long non matching passwords.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PasswordValidationBenchmark {
+    private static final String USERNAME = "admin";
+
+    @Param({
+            "^[\\S]{5,30}$",
+            "^(?=.*[0-9])(?=.*[a-z])(?=.*[A-Z])(?=.*[!@#$%&*])[\\S]{8,64}$",
+            "^([a-zA-Z0-9]+)*[!@#$%&*]$"
+    })
+    public String passwordRegEx;
+
+    @Param({"Str0ng!Passw0rd", "aaaaaaaaaaaaaaaaaaaaaaaa"})
+    public String password;
+
+    private PasswordResetEnforcer passwordResetEnforcer;
+    private UserStoreManager userStoreManager;
+    private Method validatePasswordMethod;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkEnvironment.setUp(new Properties());
+        InMemoryUserStore userStore = new InMemoryUserStore(0, 0, passwordRegEx);
+        BenchmarkEnvironment.install(userStore);
+        userStoreManager = userStore.getUserStoreManager();
+
+        passwordResetEnforcer = new PasswordResetEnforcer();
+        validatePasswordMethod = PasswordResetEnforcer.class.getDeclaredMethod("validatePassword", int.class,
+                UserStoreManager.class, String.class, String.class, String.class, String.class);
+        validatePasswordMethod.setAccessible(true);
+    }
+
+    /**
+     * Validate the password against the regular expression of the primary user store.
+     *
+     * @return True if the password is valid
+     */
+    @Benchmark
+    public boolean validatePassword() throws Exception {
+        try {
+            validatePasswordMethod.invoke(passwordResetEnforcer, MultitenantConstants.SUPER_TENANT_ID,
+                    userStoreManager, password, UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME,
+                    MultitenantConstants.SUPER_TENANT_DOMAIN_NAME, USERNAME);
+            return true;
+        } catch (InvocationTargetException e) {
+            // The password does not match the format
+            return false;
+        }
+    }
+}